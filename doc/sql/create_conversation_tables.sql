@@ -15,6 +15,7 @@ CREATE TABLE IF NOT EXISTS `fun_ai_conversation` (
     `app_id` BIGINT NOT NULL COMMENT '应用ID',
     `title` VARCHAR(255) NOT NULL DEFAULT '新会话' COMMENT '会话标题',
     `message_count` INT NOT NULL DEFAULT 0 COMMENT '消息数量',
+    `last_sequence` INT NOT NULL DEFAULT 0 COMMENT '已分配的最大消息序号',
     `last_message_time` DATETIME NOT NULL COMMENT '最后一条消息时间',
     `archived` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已归档',
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
@@ -30,6 +31,8 @@ CREATE TABLE IF NOT EXISTS `fun_ai_conversation_message` (
     `conversation_id` BIGINT NOT NULL COMMENT '会话ID',
     `role` VARCHAR(20) NOT NULL COMMENT '消息角色: user/assistant/system',
     `content` TEXT NOT NULL COMMENT '消息内容',
+    `content_encoding` TINYINT NOT NULL DEFAULT 0 COMMENT 'content 编码：0 明文，1 zstd（content_zip）',
+    `content_zip` MEDIUMBLOB DEFAULT NULL COMMENT '压缩后的消息内容（zstd frame，帧头含字典 ID）',
     `sequence` INT NOT NULL COMMENT '消息序号',
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     PRIMARY KEY (`id`),
@@ -38,6 +41,20 @@ CREATE TABLE IF NOT EXISTS `fun_ai_conversation_message` (
         REFERENCES `fun_ai_conversation` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='AI对话消息表';
 
+-- 会话消息压缩字典（只增不删）
+CREATE TABLE IF NOT EXISTS `fun_ai_message_dict` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT 'ID（最大者为当前字典）',
+    `dict_id` BIGINT NOT NULL COMMENT 'zstd 字典 ID',
+    `dict_data` MEDIUMBLOB NOT NULL COMMENT '字典内容',
+    `sample_count` INT NOT NULL DEFAULT 0 COMMENT '训练样本数',
+    `eval_raw_bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '留出样本原始字节数',
+    `eval_plain_bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '留出样本无字典压缩后字节数',
+    `eval_dict_bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '留出样本用该字典压缩后字节数',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_dict_id` (`dict_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='会话消息压缩字典';
+
 -- =====================================================
 -- 使用说明：
 -- =====================================================
@@ -49,6 +66,8 @@ CREATE TABLE IF NOT EXISTS `fun_ai_conversation_message` (
 --    POST   /api/fun-ai/conversation/create          - 创建会话
 --    GET    /api/fun-ai/conversation/list            - 获取会话列表
 --    GET    /api/fun-ai/conversation/detail          - 获取会话详情
+--    GET    /api/fun-ai/conversation/message/page    - 按 sequence 游标分页获取消息（可只取消息头）
+--    GET    /api/fun-ai/conversation/message/stream  - NDJSON 流式获取消息（从新到旧）
 --    POST   /api/fun-ai/conversation/message/add     - 添加消息
 --    POST   /api/fun-ai/conversation/title           - 更新标题
 --    GET    /api/fun-ai/conversation/delete          - 删除会话
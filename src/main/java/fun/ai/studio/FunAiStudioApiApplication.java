@@ -23,6 +23,14 @@ public class FunAiStudioApiApplication {
         }
         TimeZone.setDefault(TimeZone.getTimeZone(tz));
         System.setProperty("user.timezone", tz);
+
+        // JDK HttpClient 空闲连接保活时长（秒，进程级）：必须在任何 HttpClient 创建前设置。
+        // workspace-node 共享客户端（WorkspaceNodeHttpClient）依赖它回收空闲连接；可用 FUNAI_HTTP_KEEPALIVE_SECONDS 覆盖。
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            String keepAlive = System.getenv("FUNAI_HTTP_KEEPALIVE_SECONDS");
+            System.setProperty("jdk.httpclient.keepalive.timeout",
+                    keepAlive == null || keepAlive.isBlank() ? "30" : keepAlive.trim());
+        }
         SpringApplication.run(FunAiStudioApiApplication.class, args);
     }
 }
@@ -15,7 +15,8 @@ public class HeartbeatAlertProperties {
     private boolean enabled = true;
 
     /**
-     * 检查频率（cron），默认每 5 分钟一次
+     * 检查频率（cron），默认每 5 分钟一次：轮询 runtime 节点 + 持续 STALE 的 workspace 节点重复提醒
+     * （workspace 节点的状态变化由 WorkspaceNodeHealthTracker 事件即时告警，不依赖该频率）
      */
     private String cron = "0 */5 * * * ?";
 
@@ -35,7 +36,7 @@ public class HeartbeatAlertProperties {
     private boolean sendRecovery = true;
 
     /**
-     * 连续不健康次数阈值（达到后才触发告警）。最小为 1。
+     * 连续不健康次数阈值（达到后才触发告警）。最小为 1。仅用于 runtime 节点（workspace 节点由 SUSPECT 阶段缓冲抖动）
      */
     private int unhealthyThreshold = 1;
 
@@ -10,10 +10,15 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * 轻量邮件告警发送器（纯文本）。
+ *
+ * <p>默认写入 {@link MailOutbox} 后立即返回（异步发送、失败重试、告警合并摘要）；
+ * funai.alert.mail.outbox.enabled=false 或写入发件箱失败时，退回调用线程同步发送。</p>
  */
 @Service
 public class MailAlertService {
@@ -21,10 +26,12 @@ public class MailAlertService {
 
     private final AlertMailProperties props;
     private final JavaMailSender mailSender;
+    private final MailOutbox outbox;
 
-    public MailAlertService(AlertMailProperties props, JavaMailSender mailSender) {
+    public MailAlertService(AlertMailProperties props, JavaMailSender mailSender, MailOutbox outbox) {
         this.props = props;
         this.mailSender = mailSender;
+        this.outbox = outbox;
     }
 
     public boolean isEnabled() {
@@ -53,22 +60,8 @@ public class MailAlertService {
         String subj = (props.getSubjectPrefix() == null ? "" : props.getSubjectPrefix().trim()) + " " + (subject == null ? "" : subject);
         String text = body == null ? "" : body;
 
-        try {
-            MimeMessage msg = mailSender.createMimeMessage();
-            MimeMessageHelper h = new MimeMessageHelper(msg, false, StandardCharsets.UTF_8.name());
-            h.setFrom(new InternetAddress(from.trim()));
-            h.setTo(to.toArray(new String[0]));
-            List<String> cc = props.ccList();
-            if (cc != null && !cc.isEmpty()) {
-                h.setCc(cc.toArray(new String[0]));
-            }
-            h.setSubject(subj.trim());
-            h.setText(text, false);
-            mailSender.send(msg);
-            log.info("mail alert sent: to={}, subject={}", to, subj);
-        } catch (Exception e) {
-            log.warn("mail send failed: subject={}, err={}", subj, e.getMessage(), e);
-        }
+        if (enqueue(MailOutbox.KIND_ALERT, to, props.ccList(), subj.trim(), text, null)) return;
+        sendNow(from, to, props.ccList(), subj, text);
     }
 
     /**
@@ -78,6 +71,14 @@ public class MailAlertService {
      * @param body 邮件正文
      */
     public void sendTo(String to, String subject, String body) {
+        sendTo(to, subject, body, null);
+    }
+
+    /**
+     * 发送邮件到指定邮箱（例如验证码）：写入发件箱后立即返回，不等待 SMTP。
+     * @param validFor 内容有效期：超过后尚未发出的邮件不再发送；null 表示不过期
+     */
+    public void sendTo(String to, String subject, String body, Duration validFor) {
         if (!isEnabled()) {
             log.debug("mail alert disabled, skip: subject={}", subject);
             return;
@@ -98,11 +99,31 @@ public class MailAlertService {
         String subj = (props.getSubjectPrefix() == null ? "" : props.getSubjectPrefix().trim()) + " " + (subject == null ? "" : subject);
         String text = body == null ? "" : body;
 
+        LocalDateTime expireTime = validFor == null ? null : LocalDateTime.now().plus(validFor);
+        if (enqueue(MailOutbox.KIND_CODE, List.of(to.trim()), List.of(), subj.trim(), text, expireTime)) return;
+        sendNow(from, List.of(to.trim()), List.of(), subj, text);
+    }
+
+    private boolean enqueue(String kind, List<String> to, List<String> cc, String subj, String text, LocalDateTime expireTime) {
+        if (outbox == null || !outbox.isEnabled()) return false;
+        try {
+            outbox.enqueue(kind, to, cc, subj, text, expireTime);
+            return true;
+        } catch (Exception e) {
+            log.warn("mail outbox enqueue failed, fallback to direct send: subject={}, err={}", subj, e.getMessage());
+            return false;
+        }
+    }
+
+    private void sendNow(String from, List<String> to, List<String> cc, String subj, String text) {
         try {
             MimeMessage msg = mailSender.createMimeMessage();
             MimeMessageHelper h = new MimeMessageHelper(msg, false, StandardCharsets.UTF_8.name());
             h.setFrom(new InternetAddress(from.trim()));
-            h.setTo(to.trim());
+            h.setTo(to.toArray(new String[0]));
+            if (cc != null && !cc.isEmpty()) {
+                h.setCc(cc.toArray(new String[0]));
+            }
             h.setSubject(subj.trim());
             h.setText(text, false);
             mailSender.send(msg);
@@ -112,4 +133,3 @@ public class MailAlertService {
         }
     }
 }
-
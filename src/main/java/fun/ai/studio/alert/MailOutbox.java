@@ -0,0 +1,395 @@
+package fun.ai.studio.alert;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import fun.ai.studio.entity.FunAiMailOutbox;
+import fun.ai.studio.mapper.FunAiMailOutboxMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 邮件发件箱：告警/验证码先写入 fun_ai_mail_outbox（一次 INSERT）即返回，由后台线程发送，SMTP 慢或失败不影响调用方。
+ *
+ * <ul>
+ *     <li>验证码（CODE）：入库后立即提交到发送线程池（有界队列，满了不阻塞，由轮询补发）</li>
+ *     <li>告警（ALERT）：延迟 digest-window-seconds 再发送，窗口内发往同一收件人的多条告警合并为一封摘要</li>
+ *     <li>领取：条件 UPDATE（status=PENDING -> SENDING + claim_token），两台 API 实例同时轮询也不会重复发送</li>
+ *     <li>一批邮件一次 {@code JavaMailSender.send(MimeMessage...)}：复用同一个 SMTP 连接；逐封记录成功/失败</li>
+ *     <li>失败按 backoff-base-seconds * 2^(n-1) 退避重试，超过 max-attempts 置 FAILED；验证码过期后不再发送</li>
+ *     <li>实例在发送中退出：SENDING 超过 lease-seconds 重新置为 PENDING（极端情况下可能重复发送一封）</li>
+ *     <li>验证码正文含明文验证码：进入 SENT/FAILED（含过期）时在同一条 UPDATE 里清空 body，不随历史记录保留到 retention-days</li>
+ * </ul>
+ */
+@Component
+public class MailOutbox implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(MailOutbox.class);
+
+    public static final String KIND_ALERT = "ALERT";
+    public static final String KIND_CODE = "CODE";
+
+    private static final String STATUS_PENDING = "PENDING";
+    private static final String STATUS_SENDING = "SENDING";
+    private static final String STATUS_SENT = "SENT";
+    private static final String STATUS_FAILED = "FAILED";
+
+    private static final int CLEANUP_BATCH = 1000;
+
+    /**
+     * 验证码记录进入终态时清空正文（body 列 NOT NULL，置空串）；告警正文保留便于排查
+     */
+    private static final String REDACT_CODE_BODY_SQL = "body = CASE WHEN kind = '" + KIND_CODE + "' THEN '' ELSE body END";
+
+    private final MailOutboxProperties props;
+    private final AlertMailProperties mailProps;
+    private final JavaMailSender mailSender;
+    private final FunAiMailOutboxMapper outboxMapper;
+    private final ThreadPoolTaskExecutor executor;
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName()
+            + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+    private final AtomicLong claimSeq = new AtomicLong();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder digested = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public MailOutbox(MailOutboxProperties props,
+                      AlertMailProperties mailProps,
+                      JavaMailSender mailSender,
+                      FunAiMailOutboxMapper outboxMapper,
+                      @Qualifier("mailOutboxExecutor") ThreadPoolTaskExecutor executor) {
+        this.props = props;
+        this.mailProps = mailProps;
+        this.mailSender = mailSender;
+        this.outboxMapper = outboxMapper;
+        this.executor = executor;
+    }
+
+    public boolean isEnabled() {
+        return props != null && props.isEnabled();
+    }
+
+    /**
+     * 写入发件箱。
+     *
+     * @param subject    完整标题（已含前缀）
+     * @param expireTime 超过后不再发送；null 表示不过期
+     * @return 发件箱记录 id
+     */
+    public Long enqueue(String kind, List<String> to, List<String> cc, String subject, String body, LocalDateTime expireTime) {
+        LocalDateTime now = LocalDateTime.now();
+        FunAiMailOutbox row = new FunAiMailOutbox();
+        row.setKind(kind);
+        row.setToAddr(String.join(",", to));
+        row.setCcAddr(cc == null || cc.isEmpty() ? null : String.join(",", cc));
+        row.setSubject(subject);
+        row.setBody(body == null ? "" : body);
+        row.setStatus(STATUS_PENDING);
+        row.setAttempts(0);
+        row.setNextAttemptAt(KIND_ALERT.equals(kind) ? now.plusSeconds(Math.max(0, props.getDigestWindowSeconds())) : now);
+        row.setExpireTime(expireTime);
+        outboxMapper.insert(row);
+        enqueued.increment();
+        if (!KIND_ALERT.equals(kind)) {
+            submit(List.of(row.getId()));
+        }
+        return row.getId();
+    }
+
+    /**
+     * 轮询到期邮件（重试、告警摘要、队列溢出、重启遗留），按批提交给发送线程。
+     */
+    @Scheduled(
+            initialDelayString = "${funai.alert.mail.outbox.poll-ms:5000}",
+            fixedDelayString = "${funai.alert.mail.outbox.poll-ms:5000}"
+    )
+    public void poll() {
+        if (!isEnabled()) return;
+        try {
+            reclaimExpiredLeases();
+            int batch = Math.max(1, props.getBatchSize());
+            // 只取线程池队列放得下的量，其余留在 DB 等下一轮
+            int room = executor.getThreadPoolExecutor().getQueue().remainingCapacity();
+            int batches = Math.min(room, Math.max(1, props.getWorkers()) * 2);
+            if (batches <= 0) return;
+            QueryWrapper<FunAiMailOutbox> qw = new QueryWrapper<>();
+            qw.select("id")
+                    .eq("status", STATUS_PENDING)
+                    .le("next_attempt_at", LocalDateTime.now())
+                    .orderByAsc("id")
+                    .last("LIMIT " + (batches * batch));
+            List<FunAiMailOutbox> due = outboxMapper.selectList(qw);
+            if (due == null || due.isEmpty()) return;
+            List<Long> ids = due.stream().map(FunAiMailOutbox::getId).toList();
+            for (int i = 0; i < ids.size(); i += batch) {
+                submit(ids.subList(i, Math.min(i + batch, ids.size())));
+            }
+        } catch (Exception e) {
+            log.warn("mail outbox poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 清理已发送/已失败的历史记录（每次最多 CLEANUP_BATCH 条）；
+     * 顺带把已过期仍未发送的验证码直接置 FAILED 并清空正文（发件箱停发或积压时不会一直留着明文验证码）。
+     */
+    @Scheduled(cron = "${funai.alert.mail.outbox.cleanup-cron:0 17 * * * ?}")
+    @SchedulerLock(name = "mailOutboxCleanup", lockAtLeastFor = "PT30S", lockAtMostFor = "PT10M")
+    public void cleanup() {
+        if (!isEnabled()) return;
+        try {
+            expireStaleCodes();
+            QueryWrapper<FunAiMailOutbox> qw = new QueryWrapper<>();
+            qw.in("status", STATUS_SENT, STATUS_FAILED)
+                    .lt("update_time", LocalDateTime.now().minusDays(Math.max(1, props.getRetentionDays())))
+                    .last("LIMIT " + CLEANUP_BATCH);
+            int n = outboxMapper.delete(qw);
+            if (n > 0) log.info("mail outbox cleanup: deleted={}", n);
+        } catch (Exception e) {
+            log.warn("mail outbox cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("funai.mail_outbox.enqueued", enqueued, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.mail_outbox.sent", sent, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.mail_outbox.digested", digested, LongAdder::sum)
+                .description("合并进告警摘要的邮件数")
+                .register(registry);
+        FunctionCounter.builder("funai.mail_outbox.retried", retried, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.mail_outbox.failed", failed, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.mail_outbox.expired", expired, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.mail_outbox.rejected", rejected, LongAdder::sum)
+                .description("发送线程池队列已满、留待轮询补发的批次数")
+                .register(registry);
+        Gauge.builder("funai.mail_outbox.queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .register(registry);
+    }
+
+    private void submit(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) return;
+        try {
+            executor.execute(() -> deliver(ids));
+        } catch (TaskRejectedException e) {
+            rejected.increment();
+        }
+    }
+
+    private void reclaimExpiredLeases() {
+        UpdateWrapper<FunAiMailOutbox> uw = new UpdateWrapper<>();
+        uw.set("status", STATUS_PENDING)
+                .set("claim_token", null)
+                .eq("status", STATUS_SENDING)
+                .lt("claimed_at", LocalDateTime.now().minusSeconds(Math.max(10, props.getLeaseSeconds())));
+        int n = outboxMapper.update(null, uw);
+        if (n > 0) log.warn("mail outbox reclaimed expired leases: count={}", n);
+    }
+
+    private void expireStaleCodes() {
+        UpdateWrapper<FunAiMailOutbox> uw = new UpdateWrapper<>();
+        uw.set("status", STATUS_FAILED)
+                .set("claim_token", null)
+                .set("last_error", "expired before delivery")
+                .setSql(REDACT_CODE_BODY_SQL)
+                .eq("kind", KIND_CODE)
+                .eq("status", STATUS_PENDING)
+                .lt("expire_time", LocalDateTime.now())
+                .last("LIMIT " + CLEANUP_BATCH);
+        int n = outboxMapper.update(null, uw);
+        if (n > 0) {
+            expired.add(n);
+            log.info("mail outbox expired stale codes: count={}", n);
+        }
+    }
+
+    private void deliver(List<Long> ids) {
+        String token = instanceId + "-" + claimSeq.incrementAndGet();
+        LocalDateTime now = LocalDateTime.now();
+        UpdateWrapper<FunAiMailOutbox> claim = new UpdateWrapper<>();
+        claim.set("status", STATUS_SENDING)
+                .set("claim_token", token)
+                .set("claimed_at", now)
+                .in("id", ids)
+                .eq("status", STATUS_PENDING)
+                .le("next_attempt_at", now);
+        try {
+            if (outboxMapper.update(null, claim) == 0) return;
+            List<FunAiMailOutbox> rows = outboxMapper.selectList(
+                    new QueryWrapper<FunAiMailOutbox>().eq("claim_token", token).orderByAsc("id"));
+            List<Outgoing> out = prepare(rows, token, now);
+            if (!out.isEmpty()) send(out, token);
+        } catch (Exception e) {
+            // 未能标记结果的记录保持 SENDING，租约过期后重新发送
+            log.warn("mail outbox deliver failed: token={}, err={}", token, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 过滤过期记录，告警按收件人合并为摘要，构建 MimeMessage。
+     */
+    private List<Outgoing> prepare(List<FunAiMailOutbox> rows, String token, LocalDateTime now) {
+        Map<String, List<FunAiMailOutbox>> alertGroups = new LinkedHashMap<>();
+        List<Outgoing> out = new ArrayList<>();
+        for (FunAiMailOutbox r : rows) {
+            if (r.getExpireTime() != null && r.getExpireTime().isBefore(now)) {
+                expired.increment();
+                finish(List.of(r), token, STATUS_FAILED, "expired before delivery");
+                continue;
+            }
+            if (KIND_ALERT.equals(r.getKind())) {
+                alertGroups.computeIfAbsent(r.getToAddr() + "|" + r.getCcAddr(), k -> new ArrayList<>()).add(r);
+            } else {
+                addOutgoing(out, List.of(r), r.getSubject(), r.getBody(), token);
+            }
+        }
+        for (List<FunAiMailOutbox> group : alertGroups.values()) {
+            if (group.size() == 1) {
+                addOutgoing(out, group, group.get(0).getSubject(), group.get(0).getBody(), token);
+                continue;
+            }
+            StringBuilder body = new StringBuilder();
+            body.append("共 ").append(group.size()).append(" 条告警（").append(props.getDigestWindowSeconds())
+                    .append(" 秒内合并）\n");
+            for (FunAiMailOutbox r : group) {
+                body.append("\n==== ").append(r.getSubject()).append(" ====\n").append(r.getBody()).append("\n");
+            }
+            addOutgoing(out, group, group.get(0).getSubject() + "（等 " + group.size() + " 条告警）", body.toString(), token);
+            digested.add(group.size());
+        }
+        return out;
+    }
+
+    private void addOutgoing(List<Outgoing> out, List<FunAiMailOutbox> rows, String subject, String body, String token) {
+        FunAiMailOutbox first = rows.get(0);
+        try {
+            out.add(new Outgoing(rows, buildMessage(first.getToAddr(), first.getCcAddr(), subject, body)));
+        } catch (Exception e) {
+            // 地址等不合法：重试也不会成功
+            failed.add(rows.size());
+            finish(rows, token, STATUS_FAILED, "build message failed: " + e.getMessage());
+        }
+    }
+
+    private MimeMessage buildMessage(String to, String cc, String subject, String body) throws Exception {
+        String from = mailProps == null ? null : mailProps.getFrom();
+        if (!StringUtils.hasText(from)) throw new IllegalStateException("from is empty");
+        MimeMessage msg = mailSender.createMimeMessage();
+        MimeMessageHelper h = new MimeMessageHelper(msg, false, StandardCharsets.UTF_8.name());
+        h.setFrom(new InternetAddress(from.trim()));
+        h.setTo(to.split(","));
+        if (StringUtils.hasText(cc)) h.setCc(cc.split(","));
+        h.setSubject(subject == null ? "" : subject.trim());
+        h.setText(body == null ? "" : body, false);
+        return msg;
+    }
+
+    private void send(List<Outgoing> out, String token) {
+        MimeMessage[] msgs = new MimeMessage[out.size()];
+        for (int i = 0; i < out.size(); i++) msgs[i] = out.get(i).message();
+        Map<Object, Exception> failedMessages = Map.of();
+        Exception batchError = null;
+        try {
+            mailSender.send(msgs);
+        } catch (MailSendException e) {
+            failedMessages = e.getFailedMessages();
+            batchError = e;
+        } catch (Exception e) {
+            batchError = e;
+        }
+        for (Outgoing o : out) {
+            Exception err = failedMessages.get(o.message());
+            if (err == null && batchError != null && failedMessages.isEmpty()) err = batchError;
+            if (err == null) {
+                sent.add(o.rows().size());
+                finish(o.rows(), token, STATUS_SENT, null);
+                log.info("mail sent: to={}, subject={}", o.rows().get(0).getToAddr(), o.rows().get(0).getSubject());
+            } else {
+                retryOrFail(o.rows(), token, err);
+            }
+        }
+    }
+
+    private void retryOrFail(List<FunAiMailOutbox> rows, String token, Exception err) {
+        String msg = err.getMessage();
+        for (FunAiMailOutbox r : rows) {
+            int attempts = (r.getAttempts() == null ? 0 : r.getAttempts()) + 1;
+            UpdateWrapper<FunAiMailOutbox> uw = new UpdateWrapper<>();
+            uw.set("attempts", attempts)
+                    .set("claim_token", null)
+                    .set("last_error", truncate(msg))
+                    .eq("id", r.getId())
+                    .eq("claim_token", token);
+            if (attempts >= Math.max(1, props.getMaxAttempts())) {
+                uw.set("status", STATUS_FAILED).setSql(REDACT_CODE_BODY_SQL);
+                failed.increment();
+                log.warn("mail send failed permanently: id={}, subject={}, attempts={}, err={}",
+                        r.getId(), r.getSubject(), attempts, msg);
+            } else {
+                uw.set("status", STATUS_PENDING).set("next_attempt_at", LocalDateTime.now().plusSeconds(backoffSeconds(attempts)));
+                retried.increment();
+                log.warn("mail send failed, will retry: id={}, subject={}, attempts={}, err={}",
+                        r.getId(), r.getSubject(), attempts, msg);
+            }
+            outboxMapper.update(null, uw);
+        }
+    }
+
+    private void finish(List<FunAiMailOutbox> rows, String token, String status, String error) {
+        UpdateWrapper<FunAiMailOutbox> uw = new UpdateWrapper<>();
+        uw.set("status", status)
+                .set("claim_token", null)
+                .set("last_error", truncate(error))
+                .in("id", rows.stream().map(FunAiMailOutbox::getId).toList())
+                .eq("claim_token", token);
+        if (STATUS_SENT.equals(status)) uw.set("sent_time", LocalDateTime.now());
+        if (STATUS_SENT.equals(status) || STATUS_FAILED.equals(status)) uw.setSql(REDACT_CODE_BODY_SQL);
+        outboxMapper.update(null, uw);
+    }
+
+    private long backoffSeconds(int attempts) {
+        long base = Math.max(1, props.getBackoffBaseSeconds());
+        long max = Math.max(base, props.getBackoffMaxSeconds());
+        int shift = Math.min(20, Math.max(0, attempts - 1));
+        return Math.min(max, base << shift);
+    }
+
+    private static String truncate(String s) {
+        if (s == null) return null;
+        return s.length() > 500 ? s.substring(0, 500) : s;
+    }
+
+    private record Outgoing(List<FunAiMailOutbox> rows, MimeMessage message) {
+    }
+}
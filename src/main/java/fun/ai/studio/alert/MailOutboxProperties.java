@@ -0,0 +1,168 @@
+package fun.ai.studio.alert;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 邮件发件箱配置（{@link MailOutbox}）。
+ *
+ * <pre>
+ * funai.alert.mail.outbox.enabled=true
+ * funai.alert.mail.outbox.workers=2
+ * funai.alert.mail.outbox.queue-capacity=500
+ * funai.alert.mail.outbox.batch-size=20
+ * funai.alert.mail.outbox.poll-ms=5000
+ * funai.alert.mail.outbox.max-attempts=6
+ * funai.alert.mail.outbox.backoff-base-seconds=10
+ * funai.alert.mail.outbox.backoff-max-seconds=600
+ * funai.alert.mail.outbox.digest-window-seconds=10
+ * funai.alert.mail.outbox.lease-seconds=120
+ * funai.alert.mail.outbox.retention-days=7
+ * funai.alert.mail.outbox.cleanup-cron=0 17 * * * ?
+ * </pre>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.alert.mail.outbox")
+public class MailOutboxProperties {
+    /**
+     * false：退回同步发送（调用线程直接走 SMTP）
+     */
+    private boolean enabled = true;
+    /**
+     * 发送线程数（同时占用的 SMTP 连接数上限）
+     */
+    private int workers = 2;
+    /**
+     * 内存待发送批次队列上限；满了不阻塞调用方，由定时轮询从 DB 补发
+     */
+    private int queueCapacity = 500;
+    /**
+     * 每批最多领取的邮件数（一批复用一个 SMTP 连接）
+     */
+    private int batchSize = 20;
+    /**
+     * 轮询 DB 中到期邮件的间隔（毫秒）：重试、摘要、队列溢出、重启遗留都靠它
+     */
+    private long pollMs = 5_000;
+    /**
+     * 最大尝试次数，超过后置为 FAILED
+     */
+    private int maxAttempts = 6;
+    /**
+     * 重试退避：base * 2^(attempts-1)，不超过 max
+     */
+    private long backoffBaseSeconds = 10;
+    private long backoffMaxSeconds = 600;
+    /**
+     * 告警摘要窗口（秒）：窗口内发往同一收件人的告警合并为一封
+     */
+    private long digestWindowSeconds = 10;
+    /**
+     * 领取租约（秒）：实例在发送中退出，超时后由任一实例重新发送
+     */
+    private long leaseSeconds = 120;
+    /**
+     * SENT/FAILED 记录保留天数
+     */
+    private int retentionDays = 7;
+    /**
+     * 历史记录清理频率（cron，ShedLock 保证单实例执行）
+     */
+    private String cleanupCron = "0 17 * * * ?";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getPollMs() {
+        return pollMs;
+    }
+
+    public void setPollMs(long pollMs) {
+        this.pollMs = pollMs;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getBackoffBaseSeconds() {
+        return backoffBaseSeconds;
+    }
+
+    public void setBackoffBaseSeconds(long backoffBaseSeconds) {
+        this.backoffBaseSeconds = backoffBaseSeconds;
+    }
+
+    public long getBackoffMaxSeconds() {
+        return backoffMaxSeconds;
+    }
+
+    public void setBackoffMaxSeconds(long backoffMaxSeconds) {
+        this.backoffMaxSeconds = backoffMaxSeconds;
+    }
+
+    public long getDigestWindowSeconds() {
+        return digestWindowSeconds;
+    }
+
+    public void setDigestWindowSeconds(long digestWindowSeconds) {
+        this.digestWindowSeconds = digestWindowSeconds;
+    }
+
+    public long getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    public void setLeaseSeconds(long leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    public String getCleanupCron() {
+        return cleanupCron;
+    }
+
+    public void setCleanupCron(String cleanupCron) {
+        this.cleanupCron = cleanupCron;
+    }
+}
@@ -1,14 +1,17 @@
 package fun.ai.studio.alert;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import fun.ai.studio.config.AdminSecurityProperties;
 import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
 import fun.ai.studio.deploy.DeployAdminProxyClient;
-import fun.ai.studio.entity.FunAiWorkspaceNode;
-import fun.ai.studio.mapper.FunAiWorkspaceNodeMapper;
+import fun.ai.studio.workspace.WorkspaceNodeHealthTracker;
+import jakarta.annotation.PreDestroy;
+import net.javacrumbs.shedlock.core.LockConfiguration;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
 import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -16,18 +19,27 @@ import org.springframework.util.StringUtils;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 节点心跳告警（workspace/runtime）。
  *
  * <p>策略：仅在状态变化（HEALTHY->STALE）或异常持续超过 repeatMinutes 时重复发送，避免刷屏。</p>
+ *
+ * <ul>
+ *     <li>workspace 节点：订阅 {@link WorkspaceNodeHealthTracker} 的状态变化事件，进入 STALE / 恢复时立即发送；
+ *     两台 API 实例都会判定出同一变化，用 ShedLock（按节点 + 目标状态加锁，锁至少保持 {@link #TRANSITION_DEDUPE}）去重</li>
+ *     <li>runtime 节点：心跳在 deploy 控制面，仍由定时任务轮询；定时任务顺带对持续 STALE 的 workspace 节点做重复提醒（读内存状态，不查 DB）</li>
+ * </ul>
  */
 @Component
 public class NodeHeartbeatAlertScheduler {
@@ -36,8 +48,14 @@ public class NodeHeartbeatAlertScheduler {
     private final HeartbeatAlertProperties alertProps;
     private final MailAlertService mail;
 
-    private final FunAiWorkspaceNodeMapper wsNodeMapper;
+    /**
+     * 同一节点同一目标状态的告警在该时间内只发一次（覆盖两台实例判定的时间差）
+     */
+    private static final Duration TRANSITION_DEDUPE = Duration.ofSeconds(90);
+
+    private final WorkspaceNodeHealthTracker wsHealthTracker;
     private final WorkspaceNodeRegistryProperties wsRegistryProps;
+    private final LockProvider lockProvider;
 
     private final DeployAdminProxyClient deployAdminProxy;
     private final AdminSecurityProperties adminProps;
@@ -47,20 +65,92 @@ public class NodeHeartbeatAlertScheduler {
     private final Map<String, Long> lastAlertAtMs = new HashMap<>();
     private final Map<String, Integer> consecutiveUnhealthy = new HashMap<>();
 
+    // 状态变化事件在心跳/时间轮线程上分发：去重加锁（DB）与写发件箱交给单独线程
+    private final ExecutorService transitionSender = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "node-health-alert");
+        t.setDaemon(true);
+        return t;
+    });
+
     public NodeHeartbeatAlertScheduler(HeartbeatAlertProperties alertProps,
                                        MailAlertService mail,
-                                       FunAiWorkspaceNodeMapper wsNodeMapper,
+                                       WorkspaceNodeHealthTracker wsHealthTracker,
                                        WorkspaceNodeRegistryProperties wsRegistryProps,
+                                       LockProvider lockProvider,
                                        DeployAdminProxyClient deployAdminProxy,
                                        AdminSecurityProperties adminProps) {
         this.alertProps = alertProps;
         this.mail = mail;
-        this.wsNodeMapper = wsNodeMapper;
+        this.wsHealthTracker = wsHealthTracker;
         this.wsRegistryProps = wsRegistryProps;
+        this.lockProvider = lockProvider;
         this.deployAdminProxy = deployAdminProxy;
         this.adminProps = adminProps;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        transitionSender.shutdown();
+    }
+
+    /**
+     * workspace 节点健康状态变化：进入 STALE（含首次观察即 STALE）/ STALE 恢复为 HEALTHY 时告警。
+     * HEALTHY <-> SUSPECT 只影响选点，不告警。
+     */
+    @EventListener
+    public void onWorkspaceNodeHealth(WorkspaceNodeHealthTracker.Transition t) {
+        if (t == null || alertProps == null || !alertProps.isEnabled()) return;
+        if (mail == null || !mail.isEnabled()) return;
+        String event;
+        if (t.to() == WorkspaceNodeHealthTracker.Health.STALE) {
+            event = t.from() == null ? "[异常] " : "[下线/心跳超时] ";
+        } else if (t.to() == WorkspaceNodeHealthTracker.Health.HEALTHY
+                && t.from() == WorkspaceNodeHealthTracker.Health.STALE && alertProps.isSendRecovery()) {
+            event = "[恢复] ";
+        } else {
+            return;
+        }
+        try {
+            transitionSender.execute(() -> sendTransition(t, event + workspaceDetail(t, t.atMs())));
+        } catch (Exception e) {
+            log.warn("submit workspace node health alert failed: nodeId={}, error={}", t.nodeId(), e.getMessage());
+        }
+    }
+
+    private void sendTransition(WorkspaceNodeHealthTracker.Transition t, String event) {
+        Optional<SimpleLock> lock = lockProvider.lock(new LockConfiguration(Instant.now(),
+                "wsNodeHealth:" + t.nodeId() + ":" + t.to(), TRANSITION_DEDUPE, TRANSITION_DEDUPE));
+        if (lock.isEmpty()) {
+            log.debug("workspace node health alert already sent by another instance: nodeId={}, to={}", t.nodeId(), t.to());
+            return;
+        }
+        try {
+            String subj = t.to() == WorkspaceNodeHealthTracker.Health.STALE
+                    ? (t.from() == null ? "节点心跳告警【异常×1】" : "节点心跳告警【断联×1】")
+                    : "节点心跳告警【恢复×1】";
+            String body = "时间：" + Instant.ofEpochMilli(t.atMs()) + "\n\n"
+                    + "事件：\n- " + event + "\n";
+            mail.send(subj, body);
+        } catch (Exception e) {
+            log.warn("send workspace node health alert failed: nodeId={}, error={}", t.nodeId(), e.getMessage(), e);
+        } finally {
+            // lockAtLeastFor 生效：释放后去重窗口内其它实例仍拿不到锁
+            lock.get().unlock();
+        }
+    }
+
+    private String workspaceDetail(WorkspaceNodeHealthTracker.Transition t, long now) {
+        long lastMs = t.lastHeartbeatMs();
+        long staleMs = wsRegistryProps == null ? 60_000L : wsRegistryProps.heartbeatStaleDuration().toMillis();
+        return "Workspace 节点"
+                + " id=" + safe(t.nodeId())
+                + " name=" + safe(t.nodeName())
+                + " apiBaseUrl=" + safe(t.apiBaseUrl())
+                + " lastHeartbeatAt=" + (lastMs <= 0 ? "null" : Instant.ofEpochMilli(lastMs))
+                + " 距今秒数=" + (lastMs <= 0 ? "?" : String.valueOf((now - lastMs) / 1000))
+                + " stale阈值秒=" + (staleMs / 1000);
+    }
+
     @Scheduled(cron = "${funai.alert.heartbeat.cron:0 */5 * * * ?}")
     @SchedulerLock(name = "nodeHeartbeatAlert", lockAtLeastFor = "PT20S", lockAtMostFor = "PT3M")
     public void check() {
@@ -76,30 +166,21 @@ public class NodeHeartbeatAlertScheduler {
         List<String> events = new ArrayList<>();
         List<String> unhealthySnapshot = new ArrayList<>();
 
-        // 1) workspace nodes
+        // 1) workspace nodes：状态变化由事件即时告警，这里只对持续 STALE 的节点做重复提醒（内存状态，不查 DB）
         try {
-            Duration stale = (wsRegistryProps == null) ? Duration.ofSeconds(60) : wsRegistryProps.heartbeatStaleDuration();
-            long staleMs = Math.max(1, stale.toMillis());
-
-            List<FunAiWorkspaceNode> nodes = (wsNodeMapper == null) ? List.of() : wsNodeMapper.selectList(new QueryWrapper<>());
-            for (FunAiWorkspaceNode n : nodes == null ? List.<FunAiWorkspaceNode>of() : nodes) {
-                if (n == null) continue;
-                if (n.getEnabled() == null || n.getEnabled() != 1) continue;
-                String key = "workspace:" + (n.getId() == null ? "?" : String.valueOf(n.getId()));
-
-                long lastMs = toEpochMs(n.getLastHeartbeatAt());
-                boolean healthy = lastMs > 0 && (now - lastMs) <= staleMs;
-
-                String detail = "Workspace 节点"
-                        + " id=" + safe(n.getId())
-                        + " name=" + safe(n.getName())
-                        + " apiBaseUrl=" + safe(n.getApiBaseUrl())
-                        + " lastHeartbeatAt=" + (lastMs <= 0 ? "null" : Instant.ofEpochMilli(lastMs))
-                        + " 距今秒数=" + (lastMs <= 0 ? "?" : String.valueOf((now - lastMs) / 1000))
-                        + " stale阈值秒=" + (staleMs / 1000);
-
-                handleState(key, healthy, detail, now, repeatMs, events, unhealthySnapshot);
+            Set<String> staleKeys = new HashSet<>();
+            for (WorkspaceNodeHealthTracker.Transition t : wsHealthTracker.staleNodes()) {
+                String key = "workspace:" + t.nodeId();
+                staleKeys.add(key);
+                String detail = workspaceDetail(t, now);
+                unhealthySnapshot.add(detail);
+                long lastAt = lastAlertAtMs.getOrDefault(key, t.atMs());
+                if ((now - lastAt) >= repeatMs) {
+                    events.add("[持续异常重复告警] " + detail);
+                    lastAlertAtMs.put(key, now);
+                }
             }
+            lastAlertAtMs.keySet().removeIf(k -> k.startsWith("workspace:") && !staleKeys.contains(k));
         } catch (Exception e) {
             log.warn("workspace heartbeat alert check failed: {}", e.getMessage(), e);
         }
@@ -262,15 +343,6 @@ public class NodeHeartbeatAlertScheduler {
         }
     }
 
-    private long toEpochMs(LocalDateTime t) {
-        if (t == null) return 0;
-        try {
-            return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        } catch (Exception ignore) {
-            return 0;
-        }
-    }
-
     private long parseHeartbeatMs(Object lastHeartbeatAt, Object lastHeartbeatAtMs) {
         // 1) prefer explicit ms
         try {
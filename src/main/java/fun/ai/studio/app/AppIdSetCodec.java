@@ -0,0 +1,95 @@
+package fun.ai.studio.app;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 应用 ID 集合的紧凑表示（孤儿数据对账用）：升序 ID 逐个取差值，按 unsigned LEB128 varint 写出，再 Base64。
+ *
+ * <p>应用 ID 为自增主键，相邻差值通常很小：每个 ID 约 1~2 字节（JSON 数组约 8~10 字节）。
+ * 接收方按同样规则累加即可还原，也可以边解码边与本地目录做归并比较，不需要先构造 Set。</p>
+ *
+ * <pre>
+ * {"encoding": "delta-varint", "count": 3, "maxId": 1007, "data": "6Af..."}
+ * </pre>
+ */
+public final class AppIdSetCodec {
+
+    public static final String ENCODING = "delta-varint";
+
+    private AppIdSetCodec() {
+    }
+
+    /**
+     * 增量编码器：ID 必须严格升序追加（主键游标分页读出的顺序）。
+     */
+    public static final class Encoder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private long last;
+        private int count;
+
+        public void add(long id) {
+            if (id <= last) {
+                throw new IllegalArgumentException("ids must be strictly ascending and positive: " + id + " after " + last);
+            }
+            long delta = id - last;
+            while ((delta & ~0x7FL) != 0) {
+                out.write((int) ((delta & 0x7F) | 0x80));
+                delta >>>= 7;
+            }
+            out.write((int) delta);
+            last = id;
+            count++;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public long maxId() {
+            return last;
+        }
+
+        public byte[] toBytes() {
+            return out.toByteArray();
+        }
+
+        /**
+         * 请求体中的 ID 集合字段。
+         */
+        public Map<String, Object> toPayload() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("encoding", ENCODING);
+            m.put("count", count);
+            m.put("maxId", last);
+            m.put("data", Base64.getEncoder().encodeToString(out.toByteArray()));
+            return m;
+        }
+    }
+
+    public static long[] decode(byte[] data) {
+        long[] ids = new long[Math.max(16, data.length)];
+        int n = 0;
+        long last = 0;
+        int i = 0;
+        while (i < data.length) {
+            long delta = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (i >= data.length || shift > 63) {
+                    throw new IllegalArgumentException("truncated varint at byte " + i);
+                }
+                b = data[i++] & 0xFF;
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            last += delta;
+            ids[n++] = last;
+        }
+        return Arrays.copyOf(ids, n);
+    }
+}
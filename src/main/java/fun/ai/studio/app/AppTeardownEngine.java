@@ -0,0 +1,409 @@
+package fun.ai.studio.app;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import fun.ai.studio.conversation.ConversationWriteBehindBuffer;
+import fun.ai.studio.entity.FunAiAppTombstone;
+import fun.ai.studio.entity.FunAiConversation;
+import fun.ai.studio.mapper.FunAiAppTombstoneMapper;
+import fun.ai.studio.mapper.FunAiConversationMapper;
+import fun.ai.studio.mapper.FunAiConversationMessageMapper;
+import fun.ai.studio.mapper.FunAiWorkspaceRunMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 应用删除后的子数据清理（会话、消息、workspace 运行记录），替代原先一个事务里整体删除。
+ *
+ * <ul>
+ *     <li>墓碑：应用行删除后先写 fun_ai_app_tombstone 并加入 {@link AppTombstoneIndex}，会话读写立即把应用视为已删除，
+ *     子数据在后台清理（appTeardownExecutor）</li>
+ *     <li>分段：每条语句按索引范围 + LIMIT 只处理一段——会话按 user_id + app_id 取主键游标页，消息按 conversation_id IN (页) 删除，
+ *     运行记录按 app_id 解除关联；语句自动提交，行锁只持有一条语句的时间；段间让出 yield-ms，段大小按 target-chunk-ms 自适应</li>
+ *     <li>续做：执行中定期写心跳；实例退出/失败后，心跳超过 lease-seconds 的墓碑由定时任务接手（各步骤均幂等）</li>
+ *     <li>执行权：任务开始时按条件写入执行令牌（run_token），失败则跳过；心跳与进度累加都以令牌为条件，
+ *     同一墓碑被重复提交或原执行者被接手后，只有一个执行者的清理量计入墓碑</li>
+ *     <li>吞吐：每个应用的行数/段数/耗时累加到墓碑并打日志，累计值见 {@link #stats()} 与 funai.app_teardown.* 指标</li>
+ * </ul>
+ *
+ * <p>workspace placement 按用户分配（与应用无关），不在此清理。</p>
+ */
+@Component
+public class AppTeardownEngine implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(AppTeardownEngine.class);
+
+    static final String STATUS_PENDING = "PENDING";
+    static final String STATUS_DONE = "DONE";
+
+    private static final int RESUME_BATCH = 100;
+
+    private final FunAiAppTombstoneMapper tombstoneMapper;
+    private final FunAiConversationMapper conversationMapper;
+    private final FunAiConversationMessageMapper messageMapper;
+    private final FunAiWorkspaceRunMapper runMapper;
+    private final ConversationWriteBehindBuffer writeBehind;
+    private final AppTombstoneIndex tombstoneIndex;
+    private final AppTeardownProperties props;
+    private final Executor executor;
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName()
+            + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+    private final AtomicLong runSeq = new AtomicLong();
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder conversationsDeleted = new LongAdder();
+    private final LongAdder messagesDeleted = new LongAdder();
+    private final LongAdder runsCleared = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder chunkMs = new LongAdder();
+    private volatile long lastRowsPerSecond;
+
+    /**
+     * 心跳时发现执行权已被接手：停止执行，本次清理量不计入墓碑（由接手者继续）
+     */
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException(Long appId) {
+            super("app teardown lease lost: appId=" + appId);
+        }
+    }
+
+    /**
+     * 单次执行的进度：段大小在执行内自适应，计数在结束时累加到墓碑
+     */
+    private static final class Progress {
+        /**
+         * 墓碑 appId 与执行令牌（写心跳用）；同步删除会话时为空
+         */
+        private final Long tombstoneAppId;
+        private final String runToken;
+        private int chunkSize;
+        private long conversations;
+        private long messages;
+        private long runs;
+        private long chunks;
+        private long heartbeatMs = System.currentTimeMillis();
+
+        Progress(Long tombstoneAppId, String runToken) {
+            this.tombstoneAppId = tombstoneAppId;
+            this.runToken = runToken;
+        }
+
+        long rows() {
+            return conversations + messages + runs;
+        }
+    }
+
+    public AppTeardownEngine(FunAiAppTombstoneMapper tombstoneMapper,
+                             FunAiConversationMapper conversationMapper,
+                             FunAiConversationMessageMapper messageMapper,
+                             FunAiWorkspaceRunMapper runMapper,
+                             ConversationWriteBehindBuffer writeBehind,
+                             AppTombstoneIndex tombstoneIndex,
+                             AppTeardownProperties props,
+                             @Qualifier("appTeardownExecutor") Executor executor) {
+        this.tombstoneMapper = tombstoneMapper;
+        this.conversationMapper = conversationMapper;
+        this.messageMapper = messageMapper;
+        this.runMapper = runMapper;
+        this.writeBehind = writeBehind;
+        this.tombstoneIndex = tombstoneIndex;
+        this.props = props;
+        this.executor = executor;
+    }
+
+    /**
+     * 应用行已删除：写墓碑后异步分段清理子数据。墓碑写入失败时抛出（调用方记录日志，由孤儿数据清理兜底）。
+     */
+    public void teardown(Long userId, Long appId) {
+        if (userId == null || appId == null) {
+            throw new IllegalArgumentException("userId/appId 不能为空");
+        }
+        tombstoneMapper.upsertPending(appId, userId);
+        tombstoneIndex.add(appId);
+        started.increment();
+        submit(userId, appId);
+    }
+
+    /**
+     * 同步分段删除某应用的全部会话及消息（不写墓碑）。
+     */
+    public void deleteConversations(Long userId, Long appId) {
+        Progress p = newProgress(null, null);
+        try {
+            deleteConversations(userId, appId, p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("清理应用会话被中断: appId=" + appId);
+        }
+    }
+
+    /**
+     * 续做心跳过期的未完成清理，并清除保留期外的已完成墓碑。
+     */
+    @Scheduled(cron = "${funai.app.teardown.resume-cron:0 0/5 * * * ?}")
+    @SchedulerLock(name = "appTeardownResume", lockAtLeastFor = "PT30S", lockAtMostFor = "PT10M")
+    public void resumeStale() {
+        try {
+            LocalDateTime staleBefore = staleBefore();
+            List<FunAiAppTombstone> stale = tombstoneMapper.selectList(
+                new LambdaQueryWrapper<FunAiAppTombstone>()
+                    .select(FunAiAppTombstone::getAppId, FunAiAppTombstone::getUserId)
+                    .eq(FunAiAppTombstone::getStatus, STATUS_PENDING)
+                    .and(w -> w.isNull(FunAiAppTombstone::getHeartbeatAt)
+                            .or().lt(FunAiAppTombstone::getHeartbeatAt, staleBefore))
+                    .last("LIMIT " + RESUME_BATCH)
+            );
+            for (FunAiAppTombstone t : stale) {
+                if (tombstoneMapper.claimStale(t.getAppId(), staleBefore) == 1) {
+                    resumed.increment();
+                    log.info("resume app teardown: userId={}, appId={}", t.getUserId(), t.getAppId());
+                    submit(t.getUserId(), t.getAppId());
+                }
+            }
+
+            if (props.getRetentionDays() > 0) {
+                int purged = tombstoneMapper.delete(
+                    new LambdaQueryWrapper<FunAiAppTombstone>()
+                        .eq(FunAiAppTombstone::getStatus, STATUS_DONE)
+                        .lt(FunAiAppTombstone::getFinishTime, LocalDateTime.now().minusDays(props.getRetentionDays()))
+                        .last("LIMIT 1000")
+                );
+                if (purged > 0) {
+                    log.info("purged expired app tombstones: count={}", purged);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("resume app teardown failed: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("running", running.get());
+        out.put("pendingTombstones", tombstoneIndex.size());
+        out.put("started", started.sum());
+        out.put("completed", completed.sum());
+        out.put("failed", failed.sum());
+        out.put("resumed", resumed.sum());
+        out.put("skipped", skipped.sum());
+        out.put("conversationsDeleted", conversationsDeleted.sum());
+        out.put("messagesDeleted", messagesDeleted.sum());
+        out.put("runsCleared", runsCleared.sum());
+        out.put("chunks", chunks.sum());
+        long n = chunks.sum();
+        out.put("avgChunkMs", n == 0 ? 0 : chunkMs.sum() / n);
+        out.put("lastRowsPerSecond", lastRowsPerSecond);
+        return out;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("funai.app_teardown.running", running, AtomicInteger::get).register(registry);
+        Gauge.builder("funai.app_teardown.pending_tombstones", tombstoneIndex, AppTombstoneIndex::size).register(registry);
+        FunctionCounter.builder("funai.app_teardown.completed", completed, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.app_teardown.failed", failed, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.app_teardown.rows", this,
+                        e -> e.conversationsDeleted.sum() + e.messagesDeleted.sum() + e.runsCleared.sum())
+                .description("已删除/解除关联的子数据行数（会话 + 消息 + 运行记录）")
+                .register(registry);
+        FunctionCounter.builder("funai.app_teardown.chunks", chunks, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.app_teardown.chunk_ms", chunkMs, LongAdder::sum)
+                .description("分段语句累计耗时（毫秒，不含让出时间）")
+                .register(registry);
+    }
+
+    private void submit(Long userId, Long appId) {
+        try {
+            executor.execute(() -> run(userId, appId));
+        } catch (RejectedExecutionException e) {
+            // 墓碑已写入，心跳过期后由续做任务接手
+            log.warn("app teardown rejected, will resume later: userId={}, appId={}", userId, appId);
+        }
+    }
+
+    private void run(Long userId, Long appId) {
+        // 排队期间可能已被续做任务再次提交（或已完成）：先占用执行权，失败则由持有者执行
+        String token = instanceId + "-" + runSeq.incrementAndGet();
+        try {
+            if (tombstoneMapper.claimForRun(appId, token, staleBefore()) != 1) {
+                skipped.increment();
+                log.info("app teardown already running or done, skip: userId={}, appId={}", userId, appId);
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("claim app teardown failed, will resume later: userId={}, appId={}, error={}", userId, appId, e.getMessage());
+            return;
+        }
+
+        running.incrementAndGet();
+        Progress p = newProgress(appId, token);
+        long t0 = System.nanoTime();
+        String error = null;
+        boolean done = false;
+        try {
+            deleteConversations(userId, appId, p);
+            clearRuns(appId, p);
+            done = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
+        } catch (LeaseLostException e) {
+            skipped.increment();
+            log.warn("app teardown lease lost, stop: userId={}, appId={}", userId, appId);
+            return;
+        } catch (Exception e) {
+            failed.increment();
+            error = e.getMessage();
+            log.warn("app teardown failed, will resume later: userId={}, appId={}, error={}", userId, appId, error, e);
+        } finally {
+            running.decrementAndGet();
+        }
+
+        long ms = (System.nanoTime() - t0) / 1_000_000L;
+        long rowsPerSecond = ms == 0 ? p.rows() : p.rows() * 1000L / ms;
+        try {
+            tombstoneMapper.addProgress(appId, token, p.conversations, p.messages, p.runs, p.chunks, ms,
+                    abbreviate(error), done);
+        } catch (Exception e) {
+            log.warn("save app teardown progress failed: appId={}, error={}", appId, e.getMessage());
+        }
+        if (done) {
+            completed.increment();
+            lastRowsPerSecond = rowsPerSecond;
+            log.info("app teardown done: userId={}, appId={}, conversations={}, messages={}, runs={}, chunks={}, ms={}, rowsPerSec={}",
+                    userId, appId, p.conversations, p.messages, p.runs, p.chunks, ms, rowsPerSecond);
+        }
+    }
+
+    /**
+     * 会话按主键游标分页（user_id + app_id 索引），每页先分段删消息，再按主键删会话。
+     */
+    private void deleteConversations(Long userId, Long appId, Progress p) throws InterruptedException {
+        long lastId = 0L;
+        while (true) {
+            int pageSize = p.chunkSize;
+            List<Long> ids = conversationMapper.selectList(
+                new LambdaQueryWrapper<FunAiConversation>()
+                    .select(FunAiConversation::getId)
+                    .eq(FunAiConversation::getUserId, userId)
+                    .eq(FunAiConversation::getAppId, appId)
+                    .gt(FunAiConversation::getId, lastId)
+                    .orderByAsc(FunAiConversation::getId)
+                    .last("LIMIT " + pageSize)
+            ).stream().map(FunAiConversation::getId).toList();
+            if (ids.isEmpty()) {
+                return;
+            }
+            lastId = ids.get(ids.size() - 1);
+            // 未落库的消息直接丢弃
+            ids.forEach(writeBehind::discard);
+
+            long messages = drain(p, limit -> messageMapper.deleteByConversationIds(ids, limit));
+            p.messages += messages;
+            messagesDeleted.add(messages);
+
+            int conversations = chunk(p, limit -> conversationMapper.deleteBatchIds(ids));
+            p.conversations += conversations;
+            conversationsDeleted.add(conversations);
+
+            if (ids.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private void clearRuns(Long appId, Progress p) throws InterruptedException {
+        long runs = drain(p, limit -> runMapper.clearAppId(appId, limit));
+        p.runs += runs;
+        runsCleared.add(runs);
+    }
+
+    /**
+     * 重复执行带 LIMIT 的语句直到影响行数不足一段。
+     */
+    private long drain(Progress p, IntUnaryOperator stmt) throws InterruptedException {
+        long total = 0;
+        while (true) {
+            int limit = p.chunkSize;
+            int n = chunk(p, stmt);
+            total += n;
+            if (n < limit) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * 执行一段（一条自动提交的语句）：按耗时调整下一段大小，定期写心跳，然后让出 yield-ms。
+     */
+    private int chunk(Progress p, IntUnaryOperator stmt) throws InterruptedException {
+        long t0 = System.nanoTime();
+        int n = stmt.applyAsInt(p.chunkSize);
+        long ms = (System.nanoTime() - t0) / 1_000_000L;
+        p.chunks++;
+        chunks.increment();
+        chunkMs.add(ms);
+
+        long target = Math.max(1L, props.getTargetChunkMs());
+        int min = Math.max(1, props.getMinChunkSize());
+        int max = Math.max(min, props.getMaxChunkSize());
+        if (ms > target) {
+            p.chunkSize = Math.max(min, p.chunkSize / 2);
+        } else if (ms * 2 < target && n >= p.chunkSize) {
+            p.chunkSize = Math.min(max, p.chunkSize + p.chunkSize / 2);
+        }
+
+        long now = System.currentTimeMillis();
+        if (p.tombstoneAppId != null && now - p.heartbeatMs > Math.max(30L, props.getLeaseSeconds()) * 1000L / 3) {
+            p.heartbeatMs = now;
+            if (tombstoneMapper.heartbeat(p.tombstoneAppId, p.runToken) == 0) {
+                throw new LeaseLostException(p.tombstoneAppId);
+            }
+        }
+        if (props.getYieldMs() > 0) {
+            Thread.sleep(props.getYieldMs());
+        }
+        return n;
+    }
+
+    private LocalDateTime staleBefore() {
+        return LocalDateTime.now().minusSeconds(Math.max(30L, props.getLeaseSeconds()));
+    }
+
+    private Progress newProgress(Long tombstoneAppId, String runToken) {
+        Progress p = new Progress(tombstoneAppId, runToken);
+        int min = Math.max(1, props.getMinChunkSize());
+        p.chunkSize = Math.min(Math.max(min, props.getChunkSize()), Math.max(min, props.getMaxChunkSize()));
+        return p;
+    }
+
+    private static String abbreviate(String s) {
+        if (s == null) return null;
+        return s.length() <= 500 ? s : s.substring(0, 500);
+    }
+}
@@ -0,0 +1,132 @@
+package fun.ai.studio.app;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 应用删除后子数据分段清理配置（{@link AppTeardownEngine}）。
+ *
+ * <pre>
+ * funai.app.teardown.chunk-size=500
+ * funai.app.teardown.min-chunk-size=50
+ * funai.app.teardown.max-chunk-size=2000
+ * funai.app.teardown.target-chunk-ms=100
+ * funai.app.teardown.yield-ms=20
+ * funai.app.teardown.lease-seconds=300
+ * funai.app.teardown.resume-cron=0 0/5 * * * ?
+ * funai.app.teardown.retention-days=30
+ * funai.app.teardown.tombstone-refresh-ms=5000
+ * </pre>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.app.teardown")
+public class AppTeardownProperties {
+    /**
+     * 单条 DELETE/UPDATE 影响行数的初始上限（每条语句单独提交，行锁只持有一条语句的时间）
+     */
+    private int chunkSize = 500;
+    /**
+     * 自适应调整的下限
+     */
+    private int minChunkSize = 50;
+    /**
+     * 自适应调整的上限
+     */
+    private int maxChunkSize = 2000;
+    /**
+     * 单条语句目标耗时（毫秒）：超过则减半，明显低于则放大
+     */
+    private long targetChunkMs = 100;
+    /**
+     * 两条语句之间让出的时间（毫秒），给在线写入让路、让从库追上
+     */
+    private long yieldMs = 20;
+    /**
+     * 执行中心跳超过该时长（秒）未更新，视为执行实例已退出，由续做任务接手
+     */
+    private long leaseSeconds = 300;
+    /**
+     * 续做未完成清理 + 清除过期墓碑的 cron（ShedLock 保证多实例只跑一次）
+     */
+    private String resumeCron = "0 0/5 * * * ?";
+    /**
+     * 已完成的墓碑保留天数（供孤儿数据对账参考）
+     */
+    private int retentionDays = 30;
+    /**
+     * 从 DB 刷新未完成墓碑集合的间隔（毫秒）：另一台实例删除的应用在此间隔内对本实例的读取生效
+     */
+    private long tombstoneRefreshMs = 5000;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    public void setMinChunkSize(int minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public long getTargetChunkMs() {
+        return targetChunkMs;
+    }
+
+    public void setTargetChunkMs(long targetChunkMs) {
+        this.targetChunkMs = targetChunkMs;
+    }
+
+    public long getYieldMs() {
+        return yieldMs;
+    }
+
+    public void setYieldMs(long yieldMs) {
+        this.yieldMs = yieldMs;
+    }
+
+    public long getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    public void setLeaseSeconds(long leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    public String getResumeCron() {
+        return resumeCron;
+    }
+
+    public void setResumeCron(String resumeCron) {
+        this.resumeCron = resumeCron;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    public long getTombstoneRefreshMs() {
+        return tombstoneRefreshMs;
+    }
+
+    public void setTombstoneRefreshMs(long tombstoneRefreshMs) {
+        this.tombstoneRefreshMs = tombstoneRefreshMs;
+    }
+}
@@ -0,0 +1,76 @@
+package fun.ai.studio.app;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import fun.ai.studio.entity.FunAiAppTombstone;
+import fun.ai.studio.mapper.FunAiAppTombstoneMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 子数据尚未清理完的已删除应用（PENDING 墓碑）集合：会话读写据此把应用视为已删除。
+ *
+ * <ul>
+ *     <li>本实例删除的应用写入墓碑后立即加入（{@link #add(Long)}）</li>
+ *     <li>其它实例删除的应用由定时刷新（tombstone-refresh-ms）从 DB 加载，集合很小（只含清理中的应用）</li>
+ *     <li>清理完成（DONE）后子数据已不存在，不再需要拦截</li>
+ * </ul>
+ */
+@Component
+public class AppTombstoneIndex {
+    private static final Logger log = LoggerFactory.getLogger(AppTombstoneIndex.class);
+
+    private final FunAiAppTombstoneMapper tombstoneMapper;
+    private final AppTeardownProperties props;
+
+    private volatile Set<Long> pending = Set.of();
+    /**
+     * 本实例新加入的 appId -> 加入时间：保留两个刷新周期，避免与进行中的刷新竞争而短暂丢失
+     */
+    private final Map<Long, Long> local = new ConcurrentHashMap<>();
+
+    public AppTombstoneIndex(FunAiAppTombstoneMapper tombstoneMapper, AppTeardownProperties props) {
+        this.tombstoneMapper = tombstoneMapper;
+        this.props = props;
+    }
+
+    public boolean isDeleted(Long appId) {
+        return appId != null && (pending.contains(appId) || local.containsKey(appId));
+    }
+
+    public void add(Long appId) {
+        if (appId != null) {
+            local.put(appId, System.currentTimeMillis());
+        }
+    }
+
+    public int size() {
+        Set<Long> all = new HashSet<>(pending);
+        all.addAll(local.keySet());
+        return all.size();
+    }
+
+    @Scheduled(fixedDelayString = "${funai.app.teardown.tombstone-refresh-ms:5000}")
+    public void refresh() {
+        try {
+            Set<Long> fresh = new HashSet<>();
+            tombstoneMapper.selectList(
+                new LambdaQueryWrapper<FunAiAppTombstone>()
+                    .select(FunAiAppTombstone::getAppId)
+                    .eq(FunAiAppTombstone::getStatus, AppTeardownEngine.STATUS_PENDING)
+            ).forEach(t -> fresh.add(t.getAppId()));
+            pending = Set.copyOf(fresh);
+            long expireBefore = System.currentTimeMillis() - 2 * Math.max(1000L, props.getTombstoneRefreshMs());
+            local.entrySet().removeIf(e -> e.getValue() < expireBefore);
+        } catch (Exception e) {
+            // 刷新失败保留上一次结果
+            log.warn("refresh app tombstones failed: {}", e.getMessage());
+        }
+    }
+}
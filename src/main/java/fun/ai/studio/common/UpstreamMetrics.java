@@ -0,0 +1,87 @@
+package fun.ai.studio.common;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 上游调用耗时（workspace-node / deploy / deploy-admin / gitea）。
+ *
+ * <pre>
+ * funai.upstream.requests{client, method, uri, outcome=ok|http_4xx|http_5xx|timeout|error}
+ * </pre>
+ *
+ * <p>uri 为去掉 query、并把数字/长 hex 段归一为 {id} 的路径，避免 tag 基数随 userId/appId 增长。
+ * 写入 Metrics.globalRegistry（Spring Boot actuator 会把应用 MeterRegistry 挂到 global 上）。</p>
+ */
+public final class UpstreamMetrics {
+
+    public static final String CLIENT_WORKSPACE_NODE = "workspace-node";
+    public static final String CLIENT_DEPLOY = "deploy";
+    public static final String CLIENT_DEPLOY_ADMIN = "deploy-admin";
+    public static final String CLIENT_GITEA = "gitea";
+
+    private UpstreamMetrics() {
+    }
+
+    /**
+     * @param status HTTP 状态码；未拿到响应时传 -1（由 error 判断 timeout/error）
+     */
+    public static void record(String client, String method, String pathAndQuery, int status, Throwable error, long nanos) {
+        Timer.builder("funai.upstream.requests")
+                .description("上游 HTTP 调用耗时")
+                .tag("client", client)
+                .tag("method", method == null ? "GET" : method)
+                .tag("uri", normalizePath(pathAndQuery))
+                .tag("outcome", outcome(status, error))
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(Metrics.globalRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    static String outcome(int status, Throwable error) {
+        if (status >= 500) return "http_5xx";
+        if (status >= 400) return "http_4xx";
+        if (status > 0) return "ok";
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HttpTimeoutException || t instanceof TimeoutException) return "timeout";
+        }
+        return "error";
+    }
+
+    static String normalizePath(String pathAndQuery) {
+        if (pathAndQuery == null || pathAndQuery.isEmpty()) return "/";
+        int q = pathAndQuery.indexOf('?');
+        String p = q >= 0 ? pathAndQuery.substring(0, q) : pathAndQuery;
+        if (p.indexOf('/') < 0) return p;
+        StringBuilder sb = new StringBuilder(p.length());
+        int i = 0;
+        while (i < p.length()) {
+            int slash = p.indexOf('/', i);
+            int end = slash < 0 ? p.length() : slash;
+            String seg = p.substring(i, end);
+            sb.append(isIdLike(seg) ? "{id}" : seg);
+            if (slash < 0) break;
+            sb.append('/');
+            i = slash + 1;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isIdLike(String seg) {
+        if (seg.isEmpty()) return false;
+        boolean allDigits = true;
+        boolean allHex = seg.length() >= 16;
+        for (int i = 0; i < seg.length(); i++) {
+            char c = seg.charAt(i);
+            if (c < '0' || c > '9') allDigits = false;
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-')) allHex = false;
+        }
+        return allDigits || allHex;
+    }
+}
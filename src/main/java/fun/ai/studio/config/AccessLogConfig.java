@@ -0,0 +1,21 @@
+package fun.ai.studio.config;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class AccessLogConfig {
+
+    @Bean
+    public FilterRegistrationBean<AccessLogFilter> accessLogFilterRegistration(AccessLogWriter writer) {
+        FilterRegistrationBean<AccessLogFilter> reg = new FilterRegistrationBean<>();
+        reg.setFilter(new AccessLogFilter(writer));
+        reg.addUrlPatterns("/*");
+        // 最先执行：覆盖 AdminAuthFilter/Spring Security 的拒绝响应，并统计完整耗时；异步代理需要 asyncSupported
+        reg.setAsyncSupported(true);
+        reg.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return reg;
+    }
+}
@@ -0,0 +1,136 @@
+package fun.ai.studio.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 访问日志：在请求完成时（含异步代理完成）记录 requestId、耗时、状态码、响应字节数、代理上游，
+ * 交给 {@link AccessLogWriter} 异步写出；请求入口不再做格式化/参数打印。
+ *
+ * <p>最先执行（见 AccessLogConfig），因此同时负责生成 requestId（request attribute REQ_ID，
+ * 优先沿用入口 Nginx 传入的 X-Request-Id）。</p>
+ */
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    public static final String ATTR_REQUEST_ID = "REQ_ID";
+    /**
+     * 代理等流式响应写出的字节数（Long）；未设置时取 Content-Length
+     */
+    public static final String ATTR_BYTES_OUT = "funai.access.bytesOut";
+
+    private static final String HDR_REQUEST_ID = "X-Request-Id";
+    private static final String HDR_UPSTREAM = "X-WS-Upstream";
+    private static final int MAX_INCOMING_ID_LEN = 64;
+
+    private static final String ID_PREFIX = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+    private static final AtomicLong ID_SEQ = new AtomicLong();
+
+    private final AccessLogWriter writer;
+
+    public AccessLogFilter(AccessLogWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * 当前请求的 requestId（不存在则生成：进程随机前缀 + 自增序号，不使用 UUID）。
+     */
+    public static String requestId(HttpServletRequest request) {
+        Object existing = request.getAttribute(ATTR_REQUEST_ID);
+        if (existing instanceof String s && !s.isEmpty()) {
+            return s;
+        }
+        String id = request.getHeader(HDR_REQUEST_ID);
+        if (id == null || id.isEmpty() || id.length() > MAX_INCOMING_ID_LEN) {
+            id = ID_PREFIX + Long.toHexString(ID_SEQ.incrementAndGet());
+        }
+        request.setAttribute(ATTR_REQUEST_ID, id);
+        return id;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = requestId(request);
+        if (writer == null || !writer.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long startMs = System.currentTimeMillis();
+        long t0 = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(request, response, requestId, startMs, t0));
+            } else {
+                record(request, response, requestId, startMs, t0);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, String requestId, long startMs, long t0) {
+        long latency = System.nanoTime() - t0;
+        String uri = request.getRequestURI();
+        int status = response.getStatus();
+        if (!writer.shouldLog(uri, status, latency)) return;
+        writer.offer(new AccessLogWriter.Entry(startMs, requestId, request.getMethod(), uri, status, latency,
+                bytesOut(request, response), response.getHeader(HDR_UPSTREAM)));
+    }
+
+    private static long bytesOut(HttpServletRequest request, HttpServletResponse response) {
+        Object attr = request.getAttribute(ATTR_BYTES_OUT);
+        if (attr instanceof Number n) return n.longValue();
+        String cl = response.getHeader("Content-Length");
+        if (cl != null) {
+            try {
+                return Long.parseLong(cl.trim());
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return -1;
+    }
+
+    private final class CompletionListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final String requestId;
+        private final long startMs;
+        private final long t0;
+
+        CompletionListener(HttpServletRequest request, HttpServletResponse response, String requestId, long startMs, long t0) {
+            this.request = request;
+            this.response = response;
+            this.requestId = requestId;
+            this.startMs = startMs;
+            this.t0 = t0;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response, requestId, startMs, t0);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 再次 startAsync 时监听器会被清除，需要重新注册
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
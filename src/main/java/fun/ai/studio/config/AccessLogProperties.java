@@ -0,0 +1,88 @@
+package fun.ai.studio.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 访问日志（AccessLogFilter -> AccessLogWriter）配置：请求完成时记录一行，异步写入 logger fun.ai.studio.access。
+ *
+ * <pre>
+ * funai.access-log.enabled=true
+ * funai.access-log.buffer-size=8192
+ * funai.access-log.slow-ms=1000
+ * funai.access-log.default-sample-rate=1.0
+ * funai.access-log.sample-rates[/api/fun-ai/workspace/internal/]=0
+ * </pre>
+ *
+ * <p>采样只作用于“成功且不慢”的请求：status &gt;= 400 或耗时 &gt;= slow-ms 的请求总是记录。
+ * 路径按最长前缀匹配 sample-rates；0 表示只记录错误/慢请求。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.access-log")
+public class AccessLogProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 环形缓冲区容量（向上取 2 的幂）；写线程跟不上时新记录直接丢弃并计数，不阻塞请求线程
+     */
+    private int bufferSize = 8192;
+
+    /**
+     * 慢请求阈值（毫秒），超过则不受采样影响
+     */
+    private long slowMs = 1000;
+
+    /**
+     * 未命中 sample-rates 的路径采样率（0~1）
+     */
+    private double defaultSampleRate = 1.0;
+
+    /**
+     * 路径前缀 -> 采样率（0~1）
+     */
+    private Map<String, Double> sampleRates = new LinkedHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public long getSlowMs() {
+        return slowMs;
+    }
+
+    public void setSlowMs(long slowMs) {
+        this.slowMs = slowMs;
+    }
+
+    public double getDefaultSampleRate() {
+        return defaultSampleRate;
+    }
+
+    public void setDefaultSampleRate(double defaultSampleRate) {
+        this.defaultSampleRate = defaultSampleRate;
+    }
+
+    public Map<String, Double> getSampleRates() {
+        return sampleRates;
+    }
+
+    public void setSampleRates(Map<String, Double> sampleRates) {
+        this.sampleRates = sampleRates;
+    }
+}
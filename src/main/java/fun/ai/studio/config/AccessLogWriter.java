@@ -0,0 +1,211 @@
+package fun.ai.studio.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 访问日志异步写出：请求线程只做采样判断 + 一次 CAS 入队（无锁环形缓冲，多生产者/单消费者），
+ * 单个后台线程复用 StringBuilder 编码后写入 logger fun.ai.studio.access。
+ *
+ * <p>缓冲区满时丢弃新记录（funai.access_log.dropped 计数），不阻塞请求线程。</p>
+ */
+@Component
+public class AccessLogWriter implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(AccessLogWriter.class);
+    private static final Logger ACCESS = LoggerFactory.getLogger("fun.ai.studio.access");
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * 一条访问记录（请求完成时构造）。
+     *
+     * @param bytes    响应字节数；未知为 -1
+     * @param upstream 代理上游（workspace-node baseUrl）；非代理请求为 null
+     */
+    public record Entry(long startMs, String requestId, String method, String uri, int status,
+                        long latencyNanos, long bytes, String upstream) {
+    }
+
+    private record SampleRule(String prefix, double rate) {
+    }
+
+    private final AccessLogProperties props;
+    private final List<SampleRule> rules;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    private volatile boolean running = true;
+    private Thread consumer;
+
+    public AccessLogWriter(AccessLogProperties props) {
+        this.props = props;
+        int cap = Integer.highestOneBit(Math.max(64, props == null ? 8192 : props.getBufferSize()) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(cap);
+        this.mask = cap - 1;
+        List<SampleRule> r = new ArrayList<>();
+        if (props != null && props.getSampleRates() != null) {
+            props.getSampleRates().forEach((k, v) -> {
+                if (k != null && !k.isBlank() && v != null) r.add(new SampleRule(k.trim(), v));
+            });
+        }
+        // 最长前缀优先
+        r.sort(Comparator.comparingInt((SampleRule x) -> x.prefix().length()).reversed());
+        this.rules = List.copyOf(r);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) return;
+        consumer = new Thread(this::runConsumer, "access-log-writer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread t = consumer;
+        if (t == null) return;
+        LockSupport.unpark(t);
+        try {
+            t.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 功能开启且 access logger 为 INFO 级别（可通过 logging.level.fun.ai.studio.access=OFF 整体关闭）。
+     */
+    public boolean isEnabled() {
+        return props != null && props.isEnabled() && ACCESS.isInfoEnabled();
+    }
+
+    /**
+     * 采样判断（在构造 Entry 之前调用，被采样掉的请求零分配）。
+     */
+    public boolean shouldLog(String uri, int status, long latencyNanos) {
+        if (status >= 400) return true;
+        if (props != null && latencyNanos >= TimeUnit.MILLISECONDS.toNanos(props.getSlowMs())) return true;
+        double rate = sampleRate(uri);
+        if (rate >= 1.0) return true;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) return true;
+        sampledOut.increment();
+        return false;
+    }
+
+    /**
+     * 入队；缓冲区满返回 false（记录被丢弃）。
+     */
+    public boolean offer(Entry e) {
+        long capacity = mask + 1L;
+        while (true) {
+            long t = tail.get();
+            if (t - head >= capacity) {
+                dropped.increment();
+                return false;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.set((int) (t & mask), e);
+                return true;
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("capacity", mask + 1);
+        out.put("pending", Math.max(0, tail.get() - head));
+        out.put("written", written.sum());
+        out.put("dropped", dropped.sum());
+        out.put("sampledOut", sampledOut.sum());
+        return out;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("funai.access_log.written", written, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.access_log.dropped", dropped, LongAdder::sum)
+                .description("访问日志缓冲区满被丢弃的记录数")
+                .register(registry);
+    }
+
+    private double sampleRate(String uri) {
+        if (uri != null) {
+            for (SampleRule r : rules) {
+                if (uri.startsWith(r.prefix())) return r.rate();
+            }
+        }
+        return props == null ? 1.0 : props.getDefaultSampleRate();
+    }
+
+    private void runConsumer() {
+        StringBuilder sb = new StringBuilder(256);
+        while (true) {
+            boolean any = false;
+            long h = head;
+            while (true) {
+                int idx = (int) (h & mask);
+                Entry e = slots.get(idx);
+                // null：队列为空，或生产者已占位尚未写入（下一轮再取）
+                if (e == null) break;
+                slots.set(idx, null);
+                head = ++h;
+                any = true;
+                try {
+                    sb.setLength(0);
+                    encode(sb, e);
+                    ACCESS.info(sb.toString());
+                    written.increment();
+                } catch (Exception ex) {
+                    log.debug("access log write failed: {}", ex.toString());
+                }
+            }
+            if (!running && tail.get() == head) return;
+            if (!any) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    static void encode(StringBuilder sb, Entry e) {
+        sb.append('[').append(e.requestId() == null ? "-" : e.requestId()).append("] ")
+                .append(e.method()).append(' ')
+                .append(e.uri())
+                .append(" status=").append(e.status())
+                .append(" ms=").append(TimeUnit.NANOSECONDS.toMillis(e.latencyNanos()))
+                .append(" bytes=");
+        if (e.bytes() < 0) {
+            sb.append('-');
+        } else {
+            sb.append(e.bytes());
+        }
+        if (e.upstream() != null) {
+            sb.append(" upstream=").append(e.upstream());
+        }
+        sb.append(" start=").append(e.startMs());
+    }
+}
@@ -12,7 +12,7 @@ public class AdminAuthConfig {
     public FilterRegistrationBean<AdminAuthFilter> adminAuthFilterRegistration(AdminSecurityProperties props) {
         FilterRegistrationBean<AdminAuthFilter> reg = new FilterRegistrationBean<>();
         reg.setFilter(new AdminAuthFilter(props));
-        reg.addUrlPatterns("/api/fun-ai/admin/*");
+        reg.addUrlPatterns("/api/fun-ai/admin/*", "/actuator/*");
         // 尽量早执行，避免进入业务层
         reg.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
         return reg;
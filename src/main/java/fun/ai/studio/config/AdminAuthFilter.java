@@ -15,9 +15,9 @@ import java.util.List;
 import java.util.Locale;
 
 /**
- * /api/fun-ai/admin/** 管理接口鉴权：
+ * /api/fun-ai/admin/** 管理接口、/actuator/**（除 health）指标端点鉴权：
  * - 来源 IP 在白名单内
- * - Header 携带 X-Admin-Token
+ * - Header 携带 X-Admin-Token（/actuator/** 也接受 Authorization: Bearer &lt;admin token&gt;，便于 Prometheus 配置）
  *
  * 注意：不要依赖 Spring Security/JWT（运维独立控制）。
  */
@@ -30,6 +30,8 @@ public class AdminAuthFilter extends OncePerRequestFilter {
     // feedback 接口也使用 JWT + userType 验证，跳过 AdminAuthFilter
     private static final String FEEDBACK_PREFIX = "/api/fun-ai/admin/feedback/";
     private static final String HDR = "X-Admin-Token";
+    private static final String ACTUATOR_PREFIX = "/actuator/";
+    private static final String ACTUATOR_HEALTH = "/actuator/health";
 
     private final AdminSecurityProperties props;
 
@@ -41,7 +43,13 @@ public class AdminAuthFilter extends OncePerRequestFilter {
     protected boolean shouldNotFilter(HttpServletRequest request) {
         if (request == null) return true;
         String uri = request.getRequestURI();
-        if (!StringUtils.hasText(uri) || !uri.startsWith(PREFIX)) return true;
+        if (!StringUtils.hasText(uri)) return true;
+        if (uri.startsWith(ACTUATOR_PREFIX)) {
+            // 健康检查不鉴权（探活/负载均衡）
+            if (uri.equals(ACTUATOR_HEALTH) || uri.startsWith(ACTUATOR_HEALTH + "/")) return true;
+            return props != null && !props.isEnabled();
+        }
+        if (!uri.startsWith(PREFIX)) return true;
         // workspace-files 接口使用 JWT + userType 验证，跳过此 filter
         if (uri.startsWith(WORKSPACE_FILES_PREFIX)) return true;
         // feedback 接口使用 JWT + userType 验证，跳过此 filter
@@ -85,6 +93,9 @@ public class AdminAuthFilter extends OncePerRequestFilter {
         }
 
         String got = request.getHeader(HDR);
+        if (got == null && uri != null && uri.startsWith(ACTUATOR_PREFIX)) {
+            got = bearerToken(request);
+        }
         if (!expected.equals(got)) {
             denyAsJson(response, 401, "admin unauthorized");
             return;
@@ -93,6 +104,14 @@ public class AdminAuthFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private String bearerToken(HttpServletRequest request) {
+        String h = request.getHeader("Authorization");
+        if (h == null) return null;
+        h = h.trim();
+        if (h.length() < 7 || !h.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return h.substring(7).trim();
+    }
+
     private boolean isAllowedIp(String ip, List<String> allowed) {
         if (!StringUtils.hasText(ip)) return false;
         if (allowed == null || allowed.isEmpty()) return false;
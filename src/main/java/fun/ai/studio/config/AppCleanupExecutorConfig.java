@@ -25,6 +25,21 @@ public class AppCleanupExecutorConfig {
         ex.initialize();
         return ex;
     }
-}
-
 
+    /**
+     * 用于应用删除后的子数据分段清理（AppTeardownEngine）。
+     * - 线程少：清理本身按段让出，目的是不与在线读写争抢行锁，而不是尽快删完
+     * - 队列满时拒绝：墓碑已落库，由续做任务稍后接手
+     */
+    @Bean(name = "appTeardownExecutor")
+    public Executor appTeardownExecutor() {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(2);
+        ex.setMaxPoolSize(2);
+        ex.setQueueCapacity(500);
+        ex.setThreadNamePrefix("app-teardown-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+}
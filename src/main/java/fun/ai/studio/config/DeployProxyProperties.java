@@ -35,6 +35,17 @@ public class DeployProxyProperties {
      */
     private long listJobsTimeoutMs = 1500;
 
+    /**
+     * 部署 Job 本地索引（DeployJobIndex）后台轮询间隔（毫秒）：app/list 等热路径只读本地索引，不再同步调用 listJobs。
+     * 本实例创建/查询/取消 Job 时也会即时更新索引；轮询用于同步其他实例与 Runner 推进的状态。
+     */
+    private long jobIndexPollMs = 5000;
+
+    /**
+     * 每次轮询拉取的最新 Job 条数（窗口）；窗口外的 app 保留上一次索引结果
+     */
+    private int jobIndexPollLimit = 200;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -74,6 +85,20 @@ public class DeployProxyProperties {
     public void setListJobsTimeoutMs(long listJobsTimeoutMs) {
         this.listJobsTimeoutMs = listJobsTimeoutMs;
     }
-}
 
+    public long getJobIndexPollMs() {
+        return jobIndexPollMs;
+    }
+
+    public void setJobIndexPollMs(long jobIndexPollMs) {
+        this.jobIndexPollMs = jobIndexPollMs;
+    }
 
+    public int getJobIndexPollLimit() {
+        return jobIndexPollLimit;
+    }
+
+    public void setJobIndexPollLimit(int jobIndexPollLimit) {
+        this.jobIndexPollLimit = jobIndexPollLimit;
+    }
+}
@@ -0,0 +1,45 @@
+package fun.ai.studio.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * JWT 鉴权快路径（JwtAuthenticationFilter + JwtPrincipalCache）配置：
+ * - 请求只解析一次 Token，用 claims（uid/utype）构造 Authentication，不再每次按 user_name 查 fun_ai_user
+ * - 用户状态（是否存在、token_valid_after）按用户名缓存，过期后回源一次
+ *
+ * <pre>
+ * funai.auth.jwt.principal-cache-ttl-ms=60000
+ * funai.auth.jwt.principal-cache-max-size=10000
+ * </pre>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.auth.jwt")
+public class JwtAuthProperties {
+
+    /**
+     * 用户状态缓存时间（毫秒）。也是“另一台 API 实例上吊销 Token”的最大生效延迟；0 表示不缓存（每次回源）
+     */
+    private long principalCacheTtlMs = 60000;
+
+    /**
+     * 缓存用户数上限（已满时本次不缓存；过期条目每个 ttl 周期定时清理）
+     */
+    private int principalCacheMaxSize = 10000;
+
+    public long getPrincipalCacheTtlMs() {
+        return principalCacheTtlMs;
+    }
+
+    public void setPrincipalCacheTtlMs(long principalCacheTtlMs) {
+        this.principalCacheTtlMs = principalCacheTtlMs;
+    }
+
+    public int getPrincipalCacheMaxSize() {
+        return principalCacheMaxSize;
+    }
+
+    public void setPrincipalCacheMaxSize(int principalCacheMaxSize) {
+        this.principalCacheMaxSize = principalCacheMaxSize;
+    }
+}
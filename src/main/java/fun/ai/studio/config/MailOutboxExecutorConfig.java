@@ -0,0 +1,29 @@
+package fun.ai.studio.config;
+
+import fun.ai.studio.alert.MailOutboxProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class MailOutboxExecutorConfig {
+
+    /**
+     * 用于邮件发件箱发送（MailOutbox）。
+     * - 线程数 = 同时占用的 SMTP 连接数
+     * - 有界队列：满了直接拒绝，邮件已落库，由定时轮询补发
+     * - 停机不等待：发送中的邮件租约过期后重新发送
+     */
+    @Bean(name = "mailOutboxExecutor")
+    public ThreadPoolTaskExecutor mailOutboxExecutor(MailOutboxProperties props) {
+        int workers = Math.max(1, props.getWorkers());
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(workers);
+        ex.setMaxPoolSize(workers);
+        ex.setQueueCapacity(Math.max(1, props.getQueueCapacity()));
+        ex.setThreadNamePrefix("mail-outbox-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+}
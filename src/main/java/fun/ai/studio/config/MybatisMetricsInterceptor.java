@@ -0,0 +1,84 @@
+package fun.ai.studio.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MyBatis 语句耗时（按 mapper + 语句 id）：
+ *
+ * <pre>
+ * funai.db.queries{mapper=FunAiAppMapper, statement=selectList, type=select|insert|update|delete, outcome=ok|error}
+ * </pre>
+ *
+ * <p>作为 Interceptor bean 由 mybatis-plus starter 自动注册；分页插件内部会再调用一次 Executor#query，
+ * 这里用线程内重入标记只记录最外层一次。</p>
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class MybatisMetricsInterceptor implements Interceptor {
+
+    private static final ThreadLocal<Boolean> IN_STATEMENT = new ThreadLocal<>();
+
+    private final ObjectProvider<MeterRegistry> registryProvider;
+
+    public MybatisMetricsInterceptor(ObjectProvider<MeterRegistry> registryProvider) {
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (IN_STATEMENT.get() != null) {
+            return invocation.proceed();
+        }
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        IN_STATEMENT.set(Boolean.TRUE);
+        long t0 = System.nanoTime();
+        String outcome = "error";
+        try {
+            Object r = invocation.proceed();
+            outcome = "ok";
+            return r;
+        } finally {
+            IN_STATEMENT.remove();
+            timer(ms, outcome).record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(MappedStatement ms, String outcome) {
+        String id = ms.getId();
+        int dot = id.lastIndexOf('.');
+        String namespace = dot > 0 ? id.substring(0, dot) : "";
+        String mapper = namespace.substring(namespace.lastIndexOf('.') + 1);
+        String statement = dot > 0 ? id.substring(dot + 1) : id;
+        return Timer.builder("funai.db.queries")
+                .description("MyBatis 语句耗时")
+                .tag("mapper", mapper)
+                .tag("statement", statement)
+                .tag("type", ms.getSqlCommandType().name().toLowerCase(Locale.ROOT))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registryProvider.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+}
@@ -0,0 +1,30 @@
+package fun.ai.studio.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class OpenEditorExecutorConfig {
+
+    /**
+     * 用于 /app/open-editor 并行阶段（ensureDir / package.json 探测 / run/status）。
+     * - 有界：避免 workspace-node 变慢时无限堆积
+     * - 队列满时由调用线程执行（退化为串行），不直接拒绝请求
+     */
+    @Bean(name = "openEditorExecutor")
+    public Executor openEditorExecutor() {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(8);
+        ex.setMaxPoolSize(32);
+        ex.setQueueCapacity(100);
+        ex.setThreadNamePrefix("open-editor-");
+        ex.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+}
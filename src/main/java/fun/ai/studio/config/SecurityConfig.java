@@ -3,6 +3,7 @@ package fun.ai.studio.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fun.ai.studio.common.Result;
 import fun.ai.studio.security.JwtAuthenticationFilter;
+import fun.ai.studio.security.JwtPrincipalCache;
 import fun.ai.studio.utils.JwtUtil;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,7 +15,6 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.AuthenticationEntryPoint;
@@ -26,12 +26,12 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 @EnableMethodSecurity(prePostEnabled = true)
 public class SecurityConfig {
 
-    private final UserDetailsService userDetailsService;
     private final JwtUtil jwtUtil;
+    private final JwtPrincipalCache principalCache;
 
-    public SecurityConfig(@Lazy UserDetailsService userDetailsService,  JwtUtil jwtUtil) {
-        this.userDetailsService = userDetailsService;
+    public SecurityConfig(JwtUtil jwtUtil, @Lazy JwtPrincipalCache principalCache) {
         this.jwtUtil = jwtUtil;
+        this.principalCache = principalCache;
     }
 
     @Bean
@@ -59,6 +59,8 @@ public class SecurityConfig {
                         .requestMatchers("/webjars/**").permitAll()
                         // 管理接口：不走 JWT，由 AdminAuthFilter 做 IP + Token 鉴权
                         .requestMatchers("/api/fun-ai/admin/**").permitAll()
+                        // 指标/健康检查：/actuator/prometheus 由 AdminAuthFilter 做 IP + Token 鉴权，health 公开
+                        .requestMatchers("/actuator/**").permitAll()
                         .requestMatchers(URL_WHITELIST).permitAll()
                         .anyRequest().authenticated()
                 )
@@ -97,7 +99,7 @@ public class SecurityConfig {
     
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(userDetailsService, jwtUtil);
+        return new JwtAuthenticationFilter(jwtUtil, principalCache);
     }
     
     //白名单接口，不需要鉴权可以直接调用的
@@ -0,0 +1,28 @@
+package fun.ai.studio.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+public class WorkspaceDrainExecutorConfig {
+
+    /**
+     * 用于 workspace 节点 drain 后台任务（WorkspaceDrainJobManager）。
+     * - 线程数很小：drain 本身按批限速，同时运行的任务不多
+     * - 停机不等待：任务靠检查点续跑
+     */
+    @Bean(name = "workspaceDrainExecutor")
+    public Executor workspaceDrainExecutor() {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(2);
+        ex.setMaxPoolSize(2);
+        ex.setQueueCapacity(50);
+        ex.setThreadNamePrefix("ws-drain-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        ex.initialize();
+        return ex;
+    }
+}
@@ -0,0 +1,54 @@
+package fun.ai.studio.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * workspace 节点 drain 后台任务配置（WorkspaceDrainJobManager）。
+ *
+ * <pre>
+ * funai.workspace-drain.batch-size=200
+ * funai.workspace-drain.rate-per-second=500
+ * funai.workspace-drain.lease-seconds=60
+ * </pre>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.workspace-drain")
+public class WorkspaceDrainProperties {
+    /**
+     * 每批 UPDATE 的 placement 条数（每批独立提交，不做大事务）
+     */
+    private int batchSize = 200;
+    /**
+     * 限速（条/秒）；<=0 不限速，其余最低 10
+     */
+    private int ratePerSecond = 500;
+    /**
+     * 租约（秒）：RUNNING 任务超过该时长没有检查点，视为执行实例已退出，由任一 API 实例接管续跑
+     */
+    private long leaseSeconds = 60;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public void setRatePerSecond(int ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public long getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    public void setLeaseSeconds(long leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+}
@@ -0,0 +1,305 @@
+package fun.ai.studio.config;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步代理模式的响应桥：HttpClient 响应体（Flow 订阅）-> Servlet 非阻塞输出（WriteListener）。
+ *
+ * <p>背压：只有当本地排队字节低于高水位且 servlet 输出 isReady 时才向上游 request(1)，
+ * 慢客户端不会让 API 侧无限缓存；整个传输期间不占用 Tomcat 请求线程。</p>
+ *
+ * <p>结束方式：上游正常结束 -> complete；客户端断开/超时 -> 取消上游并 complete；
+ * 上游中途出错 -> 响应未提交时改为 502，已提交时回到容器线程抛异常，由容器直接断开连接（不写 chunked 结束块），
+ * 避免客户端把截断的下载/日志当成完整响应。</p>
+ */
+final class WorkspaceNodeAsyncProxyResponse implements HttpResponse.BodySubscriber<Void> {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceNodeAsyncProxyResponse.class);
+
+    private static final long HIGH_WATER_BYTES = 256 * 1024;
+
+    /**
+     * 上游出错时写入 request 的属性：filter 在 ASYNC 分派中读取并抛出，使容器中断连接
+     */
+    static final String ATTR_UPSTREAM_FAILURE = WorkspaceNodeAsyncProxyResponse.class.getName() + ".UPSTREAM_FAILURE";
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final WorkspaceNodeProxyMetrics metrics;
+    private final Runnable onFinish;
+    private final String alreadyFilteredAttribute;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    private final Object lock = new Object();
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private long writtenBytes = 0;
+    private Flow.Subscription subscription;
+    private boolean demandPending = false;
+    private boolean upstreamDone = false;
+    private boolean dirty = false;
+    private volatile long lastActivityMs = System.currentTimeMillis();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    WorkspaceNodeAsyncProxyResponse(AsyncContext asyncContext, ServletOutputStream out,
+                                    WorkspaceNodeProxyMetrics metrics, Runnable onFinish,
+                                    String alreadyFilteredAttribute) {
+        this.asyncContext = asyncContext;
+        this.out = out;
+        this.metrics = metrics;
+        this.onFinish = onFinish;
+        this.alreadyFilteredAttribute = alreadyFilteredAttribute;
+    }
+
+    // ---------------- upstream (Flow) ----------------
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        synchronized (lock) {
+            this.subscription = s;
+        }
+        // 注册后容器会回调 onWritePossible，从那里开始拉取上游数据
+        out.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                drain();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                abort(t);
+            }
+        });
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        lastActivityMs = System.currentTimeMillis();
+        synchronized (lock) {
+            demandPending = false;
+            for (ByteBuffer b : items) {
+                int n = b.remaining();
+                if (n == 0) continue;
+                queue.add(b);
+                queuedBytes += n;
+                if (metrics != null) metrics.queued(n);
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (metrics != null) metrics.upstreamError();
+        log.warn("workspace-node async proxy upstream body error: {}", t == null ? null : t.toString());
+        synchronized (lock) {
+            upstreamDone = true;
+        }
+        result.completeExceptionally(t == null ? new IOException("upstream body error") : t);
+        // 不能 complete：那会正常结束 chunked 响应，客户端拿到截断的数据却以为成功
+        reset(t);
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            upstreamDone = true;
+        }
+        result.complete(null);
+        drain();
+    }
+
+    @Override
+    public CompletionStage<Void> getBody() {
+        return result;
+    }
+
+    // ---------------- downstream (servlet) ----------------
+
+    /**
+     * 注册到 AsyncContext：超时/容器错误时取消上游订阅，完成时释放计数。
+     */
+    AsyncListener asyncListener() {
+        return new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                release();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                abort(new IOException("async proxy timeout"));
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                abort(event == null ? null : event.getThrowable());
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        };
+    }
+
+    /**
+     * 客户端断开/超时等：取消上游订阅并结束异步请求。
+     *
+     * <p>同时让 {@link #getBody()} 异常完成：sendAsync 的 future 依赖它结束，否则节点并发配额不会归还。</p>
+     */
+    void abort(Throwable t) {
+        if (metrics != null) metrics.clientAbort();
+        Flow.Subscription s;
+        synchronized (lock) {
+            s = subscription;
+        }
+        if (s != null) s.cancel();
+        result.completeExceptionally(t == null ? new IOException("async proxy aborted") : t);
+        finish();
+    }
+
+    /**
+     * 距上次数据进展（收到上游数据或写出到客户端）的毫秒数，供空闲超时检查。
+     */
+    long idleMs() {
+        return System.currentTimeMillis() - lastActivityMs;
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    private void drain() {
+        boolean requestMore = false;
+        boolean done = false;
+        synchronized (lock) {
+            if (closed.get()) return;
+            try {
+                while (out.isReady()) {
+                    ByteBuffer b = queue.peek();
+                    if (b == null) {
+                        if (dirty) {
+                            // 队列清空后 flush：SSE 等场景需要尽快把已收到的数据推给客户端
+                            dirty = false;
+                            out.flush();
+                            continue;
+                        }
+                        if (upstreamDone) {
+                            done = true;
+                        } else if (!demandPending && subscription != null && queuedBytes < HIGH_WATER_BYTES) {
+                            demandPending = true;
+                            requestMore = true;
+                        }
+                        break;
+                    }
+                    int n = b.remaining();
+                    if (b.hasArray()) {
+                        out.write(b.array(), b.arrayOffset() + b.position(), n);
+                    } else {
+                        byte[] tmp = new byte[n];
+                        b.get(tmp);
+                        out.write(tmp, 0, n);
+                    }
+                    queue.poll();
+                    queuedBytes -= n;
+                    writtenBytes += n;
+                    dirty = true;
+                    lastActivityMs = System.currentTimeMillis();
+                    if (metrics != null) metrics.written(n);
+                }
+            } catch (IOException e) {
+                abort(e);
+                return;
+            }
+        }
+        if (done) {
+            finish();
+        } else if (requestMore) {
+            subscription.request(1);
+        }
+    }
+
+    private void finish() {
+        if (!closed.compareAndSet(false, true)) return;
+        recordBytesOut();
+        try {
+            asyncContext.complete();
+        } catch (Exception ignore) {
+        }
+        release();
+    }
+
+    /**
+     * 上游中途出错：未提交则改为 502；已提交则 ASYNC 分派回 filter 抛异常，容器随即关闭连接。
+     */
+    private void reset(Throwable t) {
+        // 持锁设置 closed：保证此时没有 drain 正在写
+        synchronized (lock) {
+            if (!closed.compareAndSet(false, true)) return;
+        }
+        recordBytesOut();
+        try {
+            HttpServletResponse resp = (HttpServletResponse) asyncContext.getResponse();
+            if (!resp.isCommitted()) {
+                resp.reset();
+                resp.setStatus(502);
+                asyncContext.complete();
+            } else {
+                // OncePerRequestFilter 在异步请求上保留“已过滤”标记，移除后 ASYNC 分派才会再进入 doFilterInternal
+                if (alreadyFilteredAttribute != null) {
+                    asyncContext.getRequest().removeAttribute(alreadyFilteredAttribute);
+                }
+                asyncContext.getRequest().setAttribute(ATTR_UPSTREAM_FAILURE,
+                        t == null ? new IOException("upstream body error") : t);
+                asyncContext.dispatch();
+            }
+        } catch (Exception e) {
+            try {
+                asyncContext.complete();
+            } catch (Exception ignore) {
+            }
+        }
+        release();
+    }
+
+    private void recordBytesOut() {
+        long written;
+        synchronized (lock) {
+            written = writtenBytes;
+        }
+        try {
+            // complete 之前写入，AccessLogFilter 在异步完成回调中读取
+            asyncContext.getRequest().setAttribute(AccessLogFilter.ATTR_BYTES_OUT, written);
+        } catch (Exception ignore) {
+        }
+    }
+
+    private void release() {
+        if (!released.compareAndSet(false, true)) return;
+        long dropped;
+        synchronized (lock) {
+            dropped = queuedBytes;
+            queue.clear();
+            queuedBytes = 0;
+        }
+        if (dropped > 0 && metrics != null) metrics.dropped(dropped);
+        if (onFinish != null) onFinish.run();
+    }
+}
@@ -0,0 +1,84 @@
+package fun.ai.studio.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式签名模式（chunked-hmac-v1）的 body 编码流：从原始输入流按块读取，输出带链式签名的分帧数据。
+ *
+ * <p>内存占用固定为一个块（chunkSize）+ 一个帧头，不落盘；帧格式见 {@link WorkspaceNodeProxySigner}。</p>
+ *
+ * <p>decodedLength 已知时最多读取 decodedLength 字节，保证编码后长度与
+ * {@link WorkspaceNodeProxySigner#chunkedEncodedLength(long, int)} 一致。</p>
+ */
+final class WorkspaceNodeChunkSigningInputStream extends InputStream {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final InputStream source;
+    private final String secret;
+    private final int chunkSize;
+    private long remaining;
+
+    private String prevSig;
+    private byte[] frame = new byte[0];
+    private int framePos = 0;
+    private boolean finished = false;
+
+    WorkspaceNodeChunkSigningInputStream(InputStream source, String secret, String seedSignature, int chunkSize, long decodedLength) {
+        this.source = source;
+        this.secret = secret;
+        this.prevSig = seedSignature;
+        this.chunkSize = chunkSize;
+        this.remaining = decodedLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n <= 0 ? -1 : (one[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (framePos >= frame.length) {
+            if (finished) return -1;
+            nextFrame();
+        }
+        int n = Math.min(len, frame.length - framePos);
+        System.arraycopy(frame, framePos, b, off, n);
+        framePos += n;
+        return n;
+    }
+
+    private void nextFrame() throws IOException {
+        int want = remaining < 0 ? chunkSize : (int) Math.min(chunkSize, remaining);
+        byte[] data = want == 0 ? new byte[0] : source.readNBytes(want);
+        if (remaining >= 0) remaining -= data.length;
+        if (data.length == 0) finished = true;
+
+        String sig;
+        try {
+            sig = WorkspaceNodeProxySigner.chunkSignature(secret, prevSig, WorkspaceNodeProxySigner.sha256Hex(data));
+        } catch (Exception e) {
+            throw new IOException("chunk sign failed: " + e.getMessage(), e);
+        }
+        prevSig = sig;
+
+        byte[] head = (Integer.toHexString(data.length) + ";sig=" + sig).getBytes(StandardCharsets.US_ASCII);
+        byte[] f = new byte[head.length + 2 + data.length + 2];
+        System.arraycopy(head, 0, f, 0, head.length);
+        System.arraycopy(CRLF, 0, f, head.length, 2);
+        System.arraycopy(data, 0, f, head.length + 2, data.length);
+        System.arraycopy(CRLF, 0, f, head.length + 2 + data.length, 2);
+        frame = f;
+        framePos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
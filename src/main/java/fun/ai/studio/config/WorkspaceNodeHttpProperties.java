@@ -0,0 +1,104 @@
+package fun.ai.studio.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * API 服务器 -> workspace-node 共享 HTTP 客户端（WorkspaceNodeHttpClient）配置。
+ *
+ * <pre>
+ * workspace-node-http.max-concurrent-per-node=64
+ * workspace-node-http.max-streams-per-node=32
+ * workspace-node-http.acquire-timeout-ms=3000
+ * workspace-node-http.executor-threads=16
+ * workspace-node-http.executor-queue-capacity=10000
+ * workspace-node-http.h2c-hosts=172.21.138.87:7001
+ * </pre>
+ *
+ * <p>空闲连接回收由 JDK HttpClient 的 jdk.httpclient.keepalive.timeout 控制（进程级，启动时设置，
+ * 见 FunAiStudioApiApplication，可用环境变量 FUNAI_HTTP_KEEPALIVE_SECONDS 覆盖）。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "workspace-node-http")
+public class WorkspaceNodeHttpProperties {
+    /**
+     * 每个节点（host:port）同时在途的普通请求上限，超过则等待 acquire-timeout-ms
+     */
+    private int maxConcurrentPerNode = 64;
+
+    /**
+     * 每个节点同时在途的长连接流（zip 下载、SSE 等）上限：单独计数，长下载不会占满普通请求的配额
+     */
+    private int maxStreamsPerNode = 32;
+
+    /**
+     * 同步请求等待节点并发配额的最长时间（毫秒），超时返回错误而不是无限排队；异步请求不等待
+     */
+    private long acquireTimeoutMs = 3000;
+
+    /**
+     * HttpClient 专用执行器线程数（异步回调/响应体处理）
+     */
+    private int executorThreads = 16;
+
+    /**
+     * 执行器队列容量：剩余不足 1/10 时新请求快速失败（返回节点繁忙），余量留给在途请求；不在提交线程上执行
+     */
+    private int executorQueueCapacity = 10000;
+
+    /**
+     * 使用 HTTP/2 cleartext（h2c）的节点 host:port 列表；其余节点固定 HTTP/1.1
+     */
+    private List<String> h2cHosts = new ArrayList<>();
+
+    public int getMaxConcurrentPerNode() {
+        return maxConcurrentPerNode;
+    }
+
+    public void setMaxConcurrentPerNode(int maxConcurrentPerNode) {
+        this.maxConcurrentPerNode = maxConcurrentPerNode;
+    }
+
+    public int getMaxStreamsPerNode() {
+        return maxStreamsPerNode;
+    }
+
+    public void setMaxStreamsPerNode(int maxStreamsPerNode) {
+        this.maxStreamsPerNode = maxStreamsPerNode;
+    }
+
+    public long getAcquireTimeoutMs() {
+        return acquireTimeoutMs;
+    }
+
+    public void setAcquireTimeoutMs(long acquireTimeoutMs) {
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public void setExecutorThreads(int executorThreads) {
+        this.executorThreads = executorThreads;
+    }
+
+    public int getExecutorQueueCapacity() {
+        return executorQueueCapacity;
+    }
+
+    public void setExecutorQueueCapacity(int executorQueueCapacity) {
+        this.executorQueueCapacity = executorQueueCapacity;
+    }
+
+    public List<String> getH2cHosts() {
+        return h2cHosts;
+    }
+
+    public void setH2cHosts(List<String> h2cHosts) {
+        this.h2cHosts = h2cHosts;
+    }
+}
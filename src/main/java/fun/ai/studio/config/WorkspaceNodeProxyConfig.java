@@ -19,11 +19,17 @@ public class WorkspaceNodeProxyConfig {
             WorkspaceNodeProxyProperties props,
             fun.ai.studio.workspace.WorkspaceNodeResolver resolver,
             fun.ai.studio.service.FunAiAppService funAiAppService,
-            fun.ai.studio.service.WorkspaceNodeRunCapacityService capacityService
+            fun.ai.studio.service.WorkspaceNodeRunCapacityService capacityService,
+            WorkspaceNodeProxyMetrics metrics,
+            fun.ai.studio.workspace.WorkspaceNodeHttpClient nodeHttpClient,
+            fun.ai.studio.workspace.WorkspaceRunStatusAggregator runStatusAggregator
     ) {
         FilterRegistrationBean<WorkspaceNodeProxyFilter> reg = new FilterRegistrationBean<>();
-        reg.setFilter(new WorkspaceNodeProxyFilter(props, resolver, funAiAppService, capacityService));
+        reg.setFilter(new WorkspaceNodeProxyFilter(props, resolver, funAiAppService, capacityService, metrics, nodeHttpClient,
+                runStatusAggregator));
         reg.addUrlPatterns("/api/fun-ai/workspace/*");
+        // 异步代理模式需要 filter 链支持 AsyncContext
+        reg.setAsyncSupported(true);
         // 确保在 Spring Security 之后执行（Security filter chain 通常 order 更小）
         reg.setOrder(Ordered.LOWEST_PRECEDENCE - 100);
         return reg;
@@ -4,6 +4,9 @@ import fun.ai.studio.common.Result;
 import fun.ai.studio.common.WorkspaceNodeCapacityException;
 import fun.ai.studio.service.FunAiAppService;
 import fun.ai.studio.service.WorkspaceNodeRunCapacityService;
+import fun.ai.studio.workspace.HashedTimerWheel;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,19 +15,20 @@ import org.springframework.http.MediaType;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Enumeration;
@@ -32,6 +36,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +48,8 @@ import org.slf4j.LoggerFactory;
  * - API 服务器（小机）仍负责鉴权/授权（Spring Security）
  * - 转发时注入 X-WS-* 头以通过 Workspace 开发服务器（大机）的 InternalAuthFilter（HMAC-SHA256）
  *
+ * 异步模式（workspace-node-proxy.async-enabled=true）：AsyncContext + sendAsync + WriteListener，传输期间不占用请求线程。
+ *
  * 说明：WebSocket 握手不走此 filter（由 API 服务器（小机）Nginx 反代到 Workspace 开发服务器（大机），且 Workspace 开发服务器（大机）对该路径跳过签名）。
  */
 public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
@@ -67,23 +75,49 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
     private final fun.ai.studio.workspace.WorkspaceNodeResolver nodeResolver;
     private final FunAiAppService funAiAppService;
     private final WorkspaceNodeRunCapacityService capacityService;
-    private final HttpClient httpClient;
-    private final SecureRandom random = new SecureRandom();
+    private final WorkspaceNodeProxyMetrics metrics;
+    private final fun.ai.studio.workspace.WorkspaceNodeHttpClient httpClient;
+    private final fun.ai.studio.workspace.WorkspaceRunStatusAggregator runStatusAggregator;
     private static final Logger log = LoggerFactory.getLogger(WorkspaceNodeProxyFilter.class);
 
+    /**
+     * 异步代理空闲超时检查：每个流一个轻量 deadline，共用一个时间轮线程
+     */
+    private final HashedTimerWheel idleWheel = new HashedTimerWheel("ws-proxy-idle", 1000, 512);
+
     public WorkspaceNodeProxyFilter(WorkspaceNodeProxyProperties props,
                                     fun.ai.studio.workspace.WorkspaceNodeResolver nodeResolver,
                                     FunAiAppService funAiAppService,
-                                    WorkspaceNodeRunCapacityService capacityService) {
+                                    WorkspaceNodeRunCapacityService capacityService,
+                                    WorkspaceNodeProxyMetrics metrics,
+                                    fun.ai.studio.workspace.WorkspaceNodeHttpClient httpClient,
+                                    fun.ai.studio.workspace.WorkspaceRunStatusAggregator runStatusAggregator) {
         this.props = props;
         this.nodeResolver = nodeResolver;
         this.funAiAppService = funAiAppService;
         this.capacityService = capacityService;
-        HttpClient.Builder b = HttpClient.newBuilder();
-        if (props != null && props.getConnectTimeoutMs() > 0) {
-            b.connectTimeout(Duration.ofMillis(props.getConnectTimeoutMs()));
-        }
-        this.httpClient = b.build();
+        this.metrics = metrics;
+        // 共享客户端：与 WorkspaceNodeClient 等复用连接池与每节点并发上限
+        this.httpClient = httpClient;
+        this.runStatusAggregator = runStatusAggregator;
+    }
+
+    @Override
+    protected void initFilterBean() throws ServletException {
+        idleWheel.start();
+    }
+
+    @Override
+    public void destroy() {
+        idleWheel.stop();
+    }
+
+    /**
+     * 异步代理上游中途出错时会 ASYNC 分派回本 filter 抛出异常（见 {@link WorkspaceNodeAsyncProxyResponse}）。
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
     }
 
     @Override
@@ -104,6 +138,16 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // 响应已提交后上游出错：抛出后容器直接关闭连接，客户端能感知响应不完整
+            Object failure = request.getAttribute(WorkspaceNodeAsyncProxyResponse.ATTR_UPSTREAM_FAILURE);
+            if (failure instanceof Throwable t) {
+                throw new ServletException("workspace-node upstream body failed", t);
+            }
+            filterChain.doFilter(request, response);
+            return;
+        }
+
         // 兜底：如果未启用，则走原链路
         if (props == null || !props.isEnabled()) {
             filterChain.doFilter(request, response);
@@ -149,8 +193,11 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         }
 
         String baseUrl;
+        String nodeName;
         try {
-            baseUrl = nodeResolver == null ? null : nodeResolver.resolve(userId).getApiBaseUrl();
+            fun.ai.studio.entity.FunAiWorkspaceNode node = nodeResolver == null ? null : nodeResolver.resolve(userId);
+            baseUrl = node == null ? null : node.getApiBaseUrl();
+            nodeName = node == null ? null : node.getName();
         } catch (Exception e) {
             deny(response, 502, "resolve workspace node failed: " + e.getMessage());
             return;
@@ -161,9 +208,12 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         }
 
         // 1) 读取 body：为签名计算 sha256；大体积请求落盘临时文件避免 OOM
+        //    节点支持流式签名时，大体积请求改为边读边分块签名直接转发（不落盘）
         BodyHolder body = null;
         try {
-            body = readBodyMaybeSpoolToDisk(request, props.getBodySpoolThresholdBytes());
+            body = props.streamingBodyAllowedFor(nodeName)
+                    ? readBodyMaybeStream(request, props.getBodySpoolThresholdBytes())
+                    : readBodyMaybeSpoolToDisk(request, props.getBodySpoolThresholdBytes());
 
             // 1.1 multipart 上传兜底校验：避免前端字段名不叫 file 时，workspace-node 抛 500（Required part 'file' is not present）难以定位
             if (isUploadMultipartEndpoint(request) && !multipartContainsFileField(body)) {
@@ -175,7 +225,7 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
             String bodySha = body.sha256Hex;
 
             long ts = Instant.now().getEpochSecond();
-            String nonce = randomNonce();
+            String nonce = WorkspaceNodeProxySigner.randomNonce();
             String canonical = WorkspaceNodeProxySigner.canonical(method, path, query, bodySha, ts, nonce);
             String sig;
             try {
@@ -187,11 +237,14 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
 
             // 2) 发起上游请求
             URI uri = URI.create(joinUrl(baseUrl, path, query));
-            HttpRequest.Builder reqB = HttpRequest.newBuilder().uri(uri);
+            HttpRequest.Builder reqB = httpClient.newRequest(uri);
             if (props.getReadTimeoutMs() > 0) {
                 reqB.timeout(Duration.ofMillis(props.getReadTimeoutMs()));
+            } else if (props.isAsyncEnabled() && props.getAsyncIdleTimeoutMs() > 0) {
+                // 异步模式不占线程，但等待上游 headers 也不能无限：按空闲超时兜底
+                reqB.timeout(Duration.ofMillis(props.getAsyncIdleTimeoutMs()));
             }
-            reqB.method(method, body.publisher());
+            reqB.method(method, body.publisher(secret, sig, props.effectiveStreamingBodyChunkBytes()));
 
             // 2.1 复制请求头（过滤 hop-by-hop）
             copyRequestHeaders(request, reqB);
@@ -199,10 +252,24 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
             reqB.setHeader(HDR_TS, String.valueOf(ts));
             reqB.setHeader(HDR_NONCE, nonce);
             reqB.setHeader(HDR_SIG, sig);
+            if (body.isStreaming()) {
+                reqB.setHeader(WorkspaceNodeProxySigner.BODY_MODE_HEADER, WorkspaceNodeProxySigner.BODY_MODE_CHUNKED);
+                reqB.setHeader(WorkspaceNodeProxySigner.DECODED_LENGTH_HEADER, String.valueOf(body.streamLength));
+            }
+
+            if (props.isAsyncEnabled() && request.isAsyncSupported()) {
+                // 异步模式：body（临时文件等）的释放交给异步完成回调
+                BodyHolder owned = body;
+                body = null;
+                proxyAsync(request, response, reqB.build(), owned, userId, method, baseUrl, path, query);
+                return;
+            }
 
             HttpResponse<InputStream> upstream;
             try {
-                upstream = httpClient.send(reqB.build(), HttpResponse.BodyHandlers.ofInputStream());
+                upstream = isLongStream(request, path)
+                        ? httpClient.sendLongStream(reqB.build())
+                        : httpClient.sendStreaming(reqB.build());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 deny(response, 502, "upstream interrupted");
@@ -221,22 +288,28 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
                 deny(response, 502, "upstream error: " + cls + (em == null ? "" : (": " + em)));
                 return;
             }
+            invalidateRunStatus(userId, path);
 
             // 3) 回写响应
             // 诊断：标记该响应来自应用层代理，避免“到底是 API 服务器还是 workspace-dev 抛错”无法判断
             response.setHeader("X-WS-Proxied", "1");
             response.setHeader("X-WS-Upstream", baseUrl);
             response.setStatus(upstream.statusCode());
-            copyResponseHeaders(upstream, response);
+            copyResponseHeaders(upstream.headers(), response);
 
+            if (metrics != null) metrics.streamStarted(false);
             try (InputStream in = upstream.body()) {
                 if (in != null) {
                     // SSE/下载等场景需要流式输出
                     try (OutputStream out = response.getOutputStream()) {
-                        StreamUtils.copy(in, out);
+                        int copied = StreamUtils.copy(in, out);
                         out.flush();
+                        if (metrics != null) metrics.addBytesOut(copied);
+                        request.setAttribute(AccessLogFilter.ATTR_BYTES_OUT, (long) copied);
                     }
                 }
+            } finally {
+                if (metrics != null) metrics.streamFinished();
             }
         } finally {
             if (body != null) {
@@ -245,6 +318,89 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         }
     }
 
+    /**
+     * 异步模式：请求线程在 startAsync 后立即返回；响应头在上游 headers 到达时写入，响应体由
+     * {@link WorkspaceNodeAsyncProxyResponse} 以非阻塞方式带背压写回。
+     */
+    private void proxyAsync(HttpServletRequest request, HttpServletResponse response, HttpRequest upstreamReq,
+                            BodyHolder body, Long userId, String method, String baseUrl, String path, String query) {
+        AsyncContext ac = request.startAsync(request, response);
+        // 不使用容器默认的 30s 异步超时：下载/SSE 可能持续很久；无进展由空闲检查中断，总时长由 async-max-duration-ms 兜底
+        ac.setTimeout(Math.max(0, props.getAsyncMaxDurationMs()));
+        if (metrics != null) metrics.streamStarted(true);
+
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Runnable onFinish = () -> {
+            if (!finished.compareAndSet(false, true)) return;
+            if (body != null) body.closeQuietly();
+            if (metrics != null) metrics.streamFinished();
+        };
+        AtomicReference<WorkspaceNodeAsyncProxyResponse> bridgeRef = new AtomicReference<>();
+
+        httpClient.sendAsync(upstreamReq, info -> {
+            invalidateRunStatus(userId, path);
+            response.setHeader("X-WS-Proxied", "1");
+            response.setHeader("X-WS-Upstream", baseUrl);
+            response.setStatus(info.statusCode());
+            copyResponseHeaders(info.headers(), response);
+            try {
+                WorkspaceNodeAsyncProxyResponse bridge =
+                        new WorkspaceNodeAsyncProxyResponse(ac, response.getOutputStream(), metrics, onFinish,
+                                getAlreadyFilteredAttributeName());
+                ac.addListener(bridge.asyncListener());
+                bridgeRef.set(bridge);
+                watchIdle(bridge, props.getAsyncIdleTimeoutMs());
+                return bridge;
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }, isLongStream(request, path)).whenComplete((resp, err) -> {
+            if (err == null || bridgeRef.get() != null) return;
+            // 上游 headers 之前失败：与同步模式一致返回 502
+            if (metrics != null) metrics.upstreamError();
+            Throwable cause = (err instanceof java.util.concurrent.CompletionException && err.getCause() != null) ? err.getCause() : err;
+            String em = cause.getMessage();
+            String cls = cause.getClass().getSimpleName();
+            log.warn("workspace-node async proxy upstream error: userId={}, method={}, target={}, errType={}, err={}",
+                    userId, method, joinUrl(baseUrl, path, query), cls, em);
+            try {
+                if (!response.isCommitted()) {
+                    deny(response, 502, "upstream error: " + cls + (em == null ? "" : (": " + em)));
+                }
+            } catch (Exception ignore) {
+            } finally {
+                try {
+                    ac.complete();
+                } catch (Exception ignore) {
+                }
+                onFinish.run();
+            }
+        });
+    }
+
+    /**
+     * 空闲超时：到点时若期间有数据进展则按剩余时间重新登记，否则中断（回调在时间轮线程上，只做取消/complete）。
+     */
+    private void watchIdle(WorkspaceNodeAsyncProxyResponse bridge, long idleTimeoutMs) {
+        if (idleTimeoutMs <= 0 || bridge.isClosed()) return;
+        long idle = bridge.idleMs();
+        if (idle >= idleTimeoutMs) {
+            log.warn("workspace-node async proxy idle timeout: idleMs={}", idle);
+            bridge.abort(new IOException("async proxy idle timeout"));
+            return;
+        }
+        idleWheel.schedule(() -> watchIdle(bridge, idleTimeoutMs), idleTimeoutMs - idle);
+    }
+
+    /**
+     * 长连接流（文件/zip 下载、SSE）：占用共享客户端的单独流配额，不挤占普通请求。
+     */
+    private boolean isLongStream(HttpServletRequest request, String path) {
+        if (path != null && path.startsWith("/api/fun-ai/workspace/files/download-")) return true;
+        String accept = request.getHeader("Accept");
+        return accept != null && accept.toLowerCase(Locale.ROOT).contains("text/event-stream");
+    }
+
     private boolean isUploadMultipartEndpoint(HttpServletRequest request) {
         if (request == null) return false;
         String uri = request.getRequestURI();
@@ -254,6 +410,17 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         return ct != null && ct.toLowerCase(Locale.ROOT).startsWith("multipart/form-data");
     }
 
+    /**
+     * start/stop/build 等改变运行态的请求：上游已响应后失效 /app/list 等使用的 run/status 缓存，
+     * 避免在 TTL 内返回变化之前的状态（放在响应之后，防止并发刷新把旧状态再写回缓存）。
+     */
+    private void invalidateRunStatus(Long userId, String path) {
+        if (runStatusAggregator == null || path == null) return;
+        if (shouldCheckRunCapacity(path) || path.startsWith("/api/fun-ai/workspace/run/stop")) {
+            runStatusAggregator.invalidate(userId);
+        }
+    }
+
     private boolean shouldCheckRunCapacity(String path) {
         if (path == null) return false;
         return path.startsWith("/api/fun-ai/workspace/run/start")
@@ -281,6 +448,10 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
                 String head = new String(body.bytes, 0, n, cs);
                 return head.contains(needle1) || head.contains(needle2);
             }
+            if (body.streamHead != null) {
+                String head = new String(body.streamHead, 0, body.streamHead.length, cs);
+                return head.contains(needle1) || head.contains(needle2);
+            }
             if (body.tempFile != null && Files.exists(body.tempFile)) {
                 int max = 256 * 1024;
                 byte[] buf = new byte[max];
@@ -311,6 +482,8 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
             if ("content-length".equals(lower)) continue;
             if ("expect".equals(lower)) continue;
             if (HDR_SIG.equalsIgnoreCase(name) || HDR_TS.equalsIgnoreCase(name) || HDR_NONCE.equalsIgnoreCase(name)) continue;
+            if (WorkspaceNodeProxySigner.BODY_MODE_HEADER.equalsIgnoreCase(name)
+                    || WorkspaceNodeProxySigner.DECODED_LENGTH_HEADER.equalsIgnoreCase(name)) continue;
 
             for (Enumeration<String> vals = request.getHeaders(name); vals != null && vals.hasMoreElements(); ) {
                 String v = vals.nextElement();
@@ -341,8 +514,8 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         }
     }
 
-    private void copyResponseHeaders(HttpResponse<?> upstream, HttpServletResponse resp) {
-        upstream.headers().map().forEach((k, values) -> {
+    private void copyResponseHeaders(HttpHeaders headers, HttpServletResponse resp) {
+        headers.map().forEach((k, values) -> {
             if (k == null) return;
             String lower = k.toLowerCase(Locale.ROOT);
             if (HOP_BY_HOP.contains(lower)) return;
@@ -362,13 +535,6 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         return b + p + q;
     }
 
-    private String randomNonce() {
-        byte[] b = new byte[16];
-        random.nextBytes(b);
-        StringBuilder sb = new StringBuilder(b.length * 2);
-        for (byte x : b) sb.append(String.format("%02x", x));
-        return sb.toString();
-    }
 
     private void deny(HttpServletResponse resp, int code, String msg) throws IOException {
         resp.setStatus(code);
@@ -450,14 +616,42 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         final byte[] bytes;
         final Path tempFile;
         final String sha256Hex;
+        // 流式签名模式：已读出的开头部分（用于 multipart 字段检测）+ 剩余未读输入流
+        final byte[] streamHead;
+        final InputStream streamRest;
+        final long streamLength;
 
         private BodyHolder(byte[] bytes, Path tempFile, String sha256Hex) {
+            this(bytes, tempFile, sha256Hex, null, null, -1);
+        }
+
+        private BodyHolder(byte[] bytes, Path tempFile, String sha256Hex, byte[] streamHead, InputStream streamRest, long streamLength) {
             this.bytes = bytes;
             this.tempFile = tempFile;
             this.sha256Hex = sha256Hex;
+            this.streamHead = streamHead;
+            this.streamRest = streamRest;
+            this.streamLength = streamLength;
+        }
+
+        static BodyHolder streaming(byte[] head, InputStream rest, long length) {
+            return new BodyHolder(null, null, WorkspaceNodeProxySigner.STREAMING_BODY_SHA, head, rest, length);
+        }
+
+        boolean isStreaming() {
+            return streamRest != null;
         }
 
-        HttpRequest.BodyPublisher publisher() throws IOException {
+        HttpRequest.BodyPublisher publisher(String secret, String seedSig, int chunkSize) throws IOException {
+            if (streamRest != null) {
+                // 确定长度（非 chunked 传输）：编码后长度由原始 Content-Length 与分块大小唯一确定
+                InputStream decoded = new SequenceInputStream(new ByteArrayInputStream(streamHead), streamRest);
+                long encodedLen = WorkspaceNodeProxySigner.chunkedEncodedLength(streamLength, chunkSize);
+                return HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() ->
+                                new WorkspaceNodeChunkSigningInputStream(decoded, secret, seedSig, chunkSize, streamLength)),
+                        encodedLen);
+            }
             if (tempFile != null) {
                 // 重要：multipart 上传如果使用 ofInputStream()，HttpClient 可能采用 chunked 传输，部分服务端对 chunked+multipart 解析不兼容，
                 // 会导致 @RequestPart("file") 绑定不到（Required part 'file' is not present）。
@@ -480,16 +674,26 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
         }
     }
 
+    /**
+     * 流式签名模式：小 body 仍走内存 + 整包 sha256（与旧模式一致）；超过阈值且 Content-Length 已知时不落盘，
+     * 只预读开头最多 256KB（multipart 字段检测用），其余在上游请求发送时从 servlet 输入流直接读取。
+     * Content-Length 未知时回退为落盘模式（流式模式需要确定长度）。
+     */
+    private BodyHolder readBodyMaybeStream(HttpServletRequest request, long thresholdBytes) throws IOException {
+        long len = request.getContentLengthLong();
+        if (len < 0 || len <= Math.max(0, thresholdBytes)) {
+            return readBodyMaybeSpoolToDisk(request, thresholdBytes);
+        }
+        InputStream in = request.getInputStream();
+        byte[] head = in.readNBytes((int) Math.min(len, 256 * 1024));
+        return BodyHolder.streaming(head, in, len);
+    }
+
     private BodyHolder readBodyMaybeSpoolToDisk(HttpServletRequest request, long thresholdBytes) throws IOException {
         long len = request.getContentLengthLong();
         // GET/HEAD 等一般没有 body
         if (len == 0 && ("GET".equalsIgnoreCase(request.getMethod()) || "HEAD".equalsIgnoreCase(request.getMethod()))) {
-            try {
-                String sha = WorkspaceNodeProxySigner.sha256Hex(new byte[0]);
-                return new BodyHolder(new byte[0], null, sha);
-            } catch (Exception e) {
-                throw new IOException(e);
-            }
+            return new BodyHolder(new byte[0], null, WorkspaceNodeProxySigner.EMPTY_BODY_SHA256);
         }
 
         // content-length 未知或很大：落盘
@@ -520,10 +724,7 @@ public class WorkspaceNodeProxyFilter extends OncePerRequestFilter {
                 out.write(buf, 0, n);
             }
             out.flush();
-            byte[] dig = md.digest();
-            StringBuilder sb = new StringBuilder(dig.length * 2);
-            for (byte b : dig) sb.append(String.format("%02x", b));
-            return new BodyHolder(null, tmp, sb.toString());
+            return new BodyHolder(null, tmp, WorkspaceNodeProxySigner.toHex(md.digest()));
         } catch (Exception e) {
             try {
                 Files.deleteIfExists(tmp);
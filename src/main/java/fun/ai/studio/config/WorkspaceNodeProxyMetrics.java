@@ -0,0 +1,118 @@
+package fun.ai.studio.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * workspace-node 应用层代理的运行时计数（进程内，仅当前 API 实例）。
+ *
+ * <p>同时作为 MeterBinder 导出到 /actuator/prometheus：funai.ws_proxy.active_streams、bytes_in_flight（gauge），
+ * bytes_out、requests{mode}、upstream_errors、client_aborts（counter）。</p>
+ */
+@Component
+public class WorkspaceNodeProxyMetrics implements MeterBinder {
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicLong bytesInFlight = new AtomicLong();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder asyncRequests = new LongAdder();
+    private final LongAdder syncRequests = new LongAdder();
+    private final LongAdder upstreamErrors = new LongAdder();
+    private final LongAdder clientAborts = new LongAdder();
+
+    void streamStarted(boolean async) {
+        activeStreams.incrementAndGet();
+        if (async) {
+            asyncRequests.increment();
+        } else {
+            syncRequests.increment();
+        }
+    }
+
+    void streamFinished() {
+        activeStreams.decrementAndGet();
+    }
+
+    void queued(long n) {
+        bytesInFlight.addAndGet(n);
+    }
+
+    void written(long n) {
+        bytesInFlight.addAndGet(-n);
+        bytesOut.add(n);
+    }
+
+    void addBytesOut(long n) {
+        bytesOut.add(n);
+    }
+
+    void dropped(long n) {
+        bytesInFlight.addAndGet(-n);
+    }
+
+    void upstreamError() {
+        upstreamErrors.increment();
+    }
+
+    void clientAbort() {
+        clientAborts.increment();
+    }
+
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    public long getBytesInFlight() {
+        return bytesInFlight.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("funai.ws_proxy.active_streams", activeStreams, AtomicInteger::get)
+                .description("正在回写的代理响应数")
+                .register(registry);
+        Gauge.builder("funai.ws_proxy.bytes_in_flight", bytesInFlight, AtomicLong::get)
+                .description("异步代理已读取未写出的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("funai.ws_proxy.bytes_out", bytesOut, LongAdder::sum)
+                .description("代理回写给客户端的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("funai.ws_proxy.requests", asyncRequests, LongAdder::sum)
+                .tag("mode", "async")
+                .register(registry);
+        FunctionCounter.builder("funai.ws_proxy.requests", syncRequests, LongAdder::sum)
+                .tag("mode", "sync")
+                .register(registry);
+        FunctionCounter.builder("funai.ws_proxy.upstream_errors", upstreamErrors, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("funai.ws_proxy.client_aborts", clientAborts, LongAdder::sum)
+                .register(registry);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("activeStreams", activeStreams.get());
+        out.put("bytesInFlight", bytesInFlight.get());
+        out.put("bytesOut", bytesOut.sum());
+        out.put("asyncRequests", asyncRequests.sum());
+        out.put("syncRequests", syncRequests.sum());
+        out.put("upstreamErrors", upstreamErrors.sum());
+        out.put("clientAborts", clientAborts.sum());
+        return out;
+    }
+}
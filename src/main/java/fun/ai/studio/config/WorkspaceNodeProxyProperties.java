@@ -3,6 +3,8 @@ package fun.ai.studio.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -18,6 +20,14 @@ import java.util.concurrent.TimeUnit;
  * workspace-node-proxy.connect-timeout-ms=2000
  * workspace-node-proxy.read-timeout-ms=0
  * workspace-node-proxy.body-spool-threshold-bytes=2097152
+ * # 流式签名（chunked-hmac-v1）：大 body 不再落盘，需 workspace-node 侧支持
+ * workspace-node-proxy.streaming-body-enabled=false
+ * workspace-node-proxy.streaming-body-nodes=ws-node-1,ws-node-2
+ * workspace-node-proxy.streaming-body-chunk-bytes=65536
+ * # 异步代理：AsyncContext + HttpClient.sendAsync + WriteListener（长下载/SSE 不占用 Tomcat 线程）
+ * workspace-node-proxy.async-enabled=false
+ * workspace-node-proxy.async-idle-timeout-ms=300000
+ * workspace-node-proxy.async-max-duration-ms=3600000
  * </pre>
  */
 @Component
@@ -55,6 +65,28 @@ public class WorkspaceNodeProxyProperties {
      */
     private long runStatusTimeoutMs = 1200;
 
+    /**
+     * list/info 聚合 run/status 的进程内缓存时长（毫秒）：同一用户并发请求合并为一次上游调用，TTL 内直接复用。
+     * - 0：不缓存（仍合并并发请求）
+     */
+    private long runStatusCacheTtlMs = 2000;
+
+    /**
+     * run/status last-known 变更异步批量落库间隔（毫秒）
+     */
+    private long runStatusFlushMs = 1000;
+
+    /**
+     * open-editor 各阶段截止时间（毫秒）：ensureDir 超时则 open-editor 失败；
+     * package.json 探测 / run/status 超时则降级（hasPackageJson=false / runStatus=null，并给出提示）。
+     *
+     * <p>ensureDir 可能需要拉起容器（冷启动较慢），默认 0 表示沿用 read-timeout-ms（为 0 时不限）；
+     * 只有观测性的探测/运行态阶段使用短截止时间。</p>
+     */
+    private long openEditorEnsureDirTimeoutMs = 0;
+    private long openEditorProbeTimeoutMs = 3000;
+    private long openEditorRunStatusTimeoutMs = 5000;
+
     /**
      * 为了生成签名需要计算 body sha256：
      * - 小于阈值：直接读入内存
@@ -62,6 +94,39 @@ public class WorkspaceNodeProxyProperties {
      */
     private long bodySpoolThresholdBytes = 2 * 1024 * 1024;
 
+    /**
+     * 流式签名模式（X-WS-Body-Mode: chunked-hmac-v1）：超过 body-spool-threshold-bytes 且 Content-Length 已知的请求，
+     * 不再落盘计算整包 sha256，而是边读边分块签名直接转发（内存占用固定为一个块）。
+     * - 需要 workspace-node 侧 InternalAuthFilter 支持该模式；未支持的节点请保持关闭或不列入 streaming-body-nodes
+     */
+    private boolean streamingBodyEnabled = false;
+
+    /**
+     * 允许使用流式签名的节点名（fun_ai_workspace_node.name）；为空表示全部节点。
+     */
+    private List<String> streamingBodyNodes = new ArrayList<>();
+
+    /**
+     * 流式签名分块大小（字节），最小 4096
+     */
+    private int streamingBodyChunkBytes = 64 * 1024;
+
+    /**
+     * 异步代理模式：filter 启动 AsyncContext，上游用 HttpClient.sendAsync，响应体通过 servlet 非阻塞 IO（WriteListener）带背压写回。
+     * 长时间的 download-zip / SSE / run-build 不再占用 Tomcat 请求线程。
+     */
+    private boolean asyncEnabled = false;
+
+    /**
+     * 异步代理空闲超时（毫秒）：上游与客户端都没有数据进展超过该时长则中断（含等待上游 headers 阶段）
+     */
+    private long asyncIdleTimeoutMs = 300000;
+
+    /**
+     * 异步代理总时长上限（毫秒）：作为 AsyncContext 超时，兜底防止连接无限挂起
+     */
+    private long asyncMaxDurationMs = 3600000;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -110,6 +175,46 @@ public class WorkspaceNodeProxyProperties {
         this.runStatusTimeoutMs = runStatusTimeoutMs;
     }
 
+    public long getRunStatusCacheTtlMs() {
+        return runStatusCacheTtlMs;
+    }
+
+    public void setRunStatusCacheTtlMs(long runStatusCacheTtlMs) {
+        this.runStatusCacheTtlMs = runStatusCacheTtlMs;
+    }
+
+    public long getOpenEditorEnsureDirTimeoutMs() {
+        return openEditorEnsureDirTimeoutMs;
+    }
+
+    public void setOpenEditorEnsureDirTimeoutMs(long openEditorEnsureDirTimeoutMs) {
+        this.openEditorEnsureDirTimeoutMs = openEditorEnsureDirTimeoutMs;
+    }
+
+    public long getOpenEditorProbeTimeoutMs() {
+        return openEditorProbeTimeoutMs;
+    }
+
+    public void setOpenEditorProbeTimeoutMs(long openEditorProbeTimeoutMs) {
+        this.openEditorProbeTimeoutMs = openEditorProbeTimeoutMs;
+    }
+
+    public long getOpenEditorRunStatusTimeoutMs() {
+        return openEditorRunStatusTimeoutMs;
+    }
+
+    public void setOpenEditorRunStatusTimeoutMs(long openEditorRunStatusTimeoutMs) {
+        this.openEditorRunStatusTimeoutMs = openEditorRunStatusTimeoutMs;
+    }
+
+    public long getRunStatusFlushMs() {
+        return runStatusFlushMs;
+    }
+
+    public void setRunStatusFlushMs(long runStatusFlushMs) {
+        this.runStatusFlushMs = runStatusFlushMs;
+    }
+
     public long getBodySpoolThresholdBytes() {
         return bodySpoolThresholdBytes;
     }
@@ -118,6 +223,71 @@ public class WorkspaceNodeProxyProperties {
         this.bodySpoolThresholdBytes = bodySpoolThresholdBytes;
     }
 
+    public boolean isStreamingBodyEnabled() {
+        return streamingBodyEnabled;
+    }
+
+    public void setStreamingBodyEnabled(boolean streamingBodyEnabled) {
+        this.streamingBodyEnabled = streamingBodyEnabled;
+    }
+
+    public List<String> getStreamingBodyNodes() {
+        return streamingBodyNodes;
+    }
+
+    public void setStreamingBodyNodes(List<String> streamingBodyNodes) {
+        this.streamingBodyNodes = streamingBodyNodes;
+    }
+
+    public int getStreamingBodyChunkBytes() {
+        return streamingBodyChunkBytes;
+    }
+
+    public void setStreamingBodyChunkBytes(int streamingBodyChunkBytes) {
+        this.streamingBodyChunkBytes = streamingBodyChunkBytes;
+    }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public void setAsyncEnabled(boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    public long getAsyncIdleTimeoutMs() {
+        return asyncIdleTimeoutMs;
+    }
+
+    public void setAsyncIdleTimeoutMs(long asyncIdleTimeoutMs) {
+        this.asyncIdleTimeoutMs = asyncIdleTimeoutMs;
+    }
+
+    public long getAsyncMaxDurationMs() {
+        return asyncMaxDurationMs;
+    }
+
+    public void setAsyncMaxDurationMs(long asyncMaxDurationMs) {
+        this.asyncMaxDurationMs = asyncMaxDurationMs;
+    }
+
+    public int effectiveStreamingBodyChunkBytes() {
+        return Math.max(4096, streamingBodyChunkBytes);
+    }
+
+    /**
+     * 该节点是否启用流式签名模式。
+     */
+    public boolean streamingBodyAllowedFor(String nodeName) {
+        if (!streamingBodyEnabled) return false;
+        if (streamingBodyNodes == null || streamingBodyNodes.isEmpty()) return true;
+        if (nodeName == null) return false;
+        for (String n : streamingBodyNodes) {
+            if (n != null && n.trim().equalsIgnoreCase(nodeName.trim())) return true;
+        }
+        return false;
+    }
+
     public long connectTimeoutNanos() {
         return TimeUnit.MILLISECONDS.toNanos(Math.max(0, connectTimeoutMs));
     }
@@ -5,49 +5,149 @@ import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 与 Workspace 开发服务器（大机）workspace-node InternalAuthFilter 对齐的签名生成器。
  *
  * canonical:
  * method \n path \n query \n bodySha256Hex \n ts \n nonce
+ *
+ * <p>流式模式（X-WS-Body-Mode: chunked-hmac-v1）：canonical 中 bodySha256Hex 固定为 {@link #STREAMING_BODY_SHA}，
+ * body 按块分帧，每块携带链式签名（见 {@link #chunkSignature}），workspace-node 边读边校验，无需 API 侧预先计算整包 sha256。</p>
+ *
+ * <pre>
+ * frame := hex(len) ";sig=" base64(HMAC(secret, prevSig \n sha256Hex(chunk))) \r\n chunk \r\n
+ * 首块 prevSig = X-WS-Signature；最后一帧 len=0（chunk 为空）表示结束。
+ * </pre>
+ *
+ * <p>性能：每个代理请求都会签名，因此 Mac / MessageDigest 按线程缓存（Mac 按 secret 预初始化，secret 变化时重建），
+ * hex 编码查表，空 body 的 sha256 预先计算。</p>
  */
 public final class WorkspaceNodeProxySigner {
 
+    public static final String BODY_MODE_HEADER = "X-WS-Body-Mode";
+    public static final String BODY_MODE_CHUNKED = "chunked-hmac-v1";
+    public static final String DECODED_LENGTH_HEADER = "X-WS-Decoded-Content-Length";
+    public static final String STREAMING_BODY_SHA = "STREAMING-HMAC-SHA256-CHUNKED";
+
+    /**
+     * sha256("")：GET/HEAD 等无 body 请求签名时直接使用
+     */
+    public static final String EMPTY_BODY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            // 理论上不会发生：SHA-256 一定存在
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<KeyedMac> HMAC = new ThreadLocal<>();
+
     private WorkspaceNodeProxySigner() {
     }
 
     public static String sha256Hex(byte[] bytes) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] dig = md.digest(bytes == null ? new byte[0] : bytes);
-        StringBuilder sb = new StringBuilder(dig.length * 2);
-        for (byte b : dig) sb.append(String.format("%02x", b));
-        return sb.toString();
+        if (bytes == null || bytes.length == 0) return EMPTY_BODY_SHA256;
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return toHex(md.digest(bytes));
+    }
+
+    /**
+     * 小写 hex（查表，避免 String.format）。
+     */
+    public static String toHex(byte[] bytes) {
+        if (bytes == null) return "";
+        byte[] out = new byte[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            out[i * 2] = HEX[v >>> 4];
+            out[i * 2 + 1] = HEX[v & 0x0f];
+        }
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 签名 nonce：128 bit 随机 hex。
+     *
+     * <p>nonce 只用于 workspace-node 侧在时间窗口内防重放，要求唯一而非保密（签名依赖 secret），
+     * 因此使用 ThreadLocalRandom，避免 SecureRandom 的竞争与熵源开销。</p>
+     */
+    public static String randomNonce() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        byte[] out = new byte[32];
+        writeHex(r.nextLong(), out, 0);
+        writeHex(r.nextLong(), out, 16);
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeHex(long v, byte[] out, int off) {
+        for (int i = 15; i >= 0; i--) {
+            out[off + i] = HEX[(int) (v & 0x0f)];
+            v >>>= 4;
+        }
     }
 
     public static String canonical(String method, String path, String query, String bodySha256Hex, long ts, String nonce) {
         String m = method == null ? "" : method;
         String p = path == null ? "" : path;
         String q = query == null ? "" : query;
-        String b = bodySha256Hex == null ? sha256HexUnchecked(new byte[0]) : bodySha256Hex;
+        String b = bodySha256Hex == null ? EMPTY_BODY_SHA256 : bodySha256Hex;
         String n = nonce == null ? "" : nonce;
         return m + "\n" + p + "\n" + q + "\n" + b + "\n" + ts + "\n" + n;
     }
 
     public static String hmacSha256Base64(String secret, String data) throws Exception {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        Mac mac = mac(secret);
         byte[] out = mac.doFinal((data == null ? "" : data).getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(out);
     }
 
-    private static String sha256HexUnchecked(byte[] bytes) {
-        try {
-            return sha256Hex(bytes);
-        } catch (Exception e) {
-            // 理论上不会发生：SHA-256 一定存在
-            throw new RuntimeException(e);
+    /**
+     * 当前线程已按 secret 初始化的 Mac（doFinal 后自动 reset，可直接复用）。
+     */
+    private static Mac mac(String secret) throws Exception {
+        KeyedMac km = HMAC.get();
+        if (km == null || !km.secret.equals(secret)) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            km = new KeyedMac(secret, mac);
+            HMAC.set(km);
         }
+        return km.mac;
+    }
+
+    /**
+     * 流式模式单块签名：HMAC(secret, prevSig + "\n" + chunkSha256Hex)。
+     */
+    public static String chunkSignature(String secret, String prevSig, String chunkSha256Hex) throws Exception {
+        return hmacSha256Base64(secret, (prevSig == null ? "" : prevSig) + "\n" + (chunkSha256Hex == null ? "" : chunkSha256Hex));
+    }
+
+    /**
+     * 流式模式下，原始 body 长度为 decodedLength 时编码后的总字节数（用于设置确定的 Content-Length）。
+     */
+    public static long chunkedEncodedLength(long decodedLength, int chunkSize) {
+        if (decodedLength < 0 || chunkSize <= 0) return -1;
+        long full = decodedLength / chunkSize;
+        int rest = (int) (decodedLength % chunkSize);
+        long total = full * frameLength(chunkSize);
+        if (rest > 0) total += frameLength(rest);
+        return total + frameLength(0);
+    }
+
+    static int frameLength(int dataLen) {
+        // hex(len) + ";sig=" + base64(32 bytes)=44 + CRLF + data + CRLF
+        return Integer.toHexString(dataLen).length() + 5 + 44 + 2 + dataLen + 2;
+    }
+
+    private record KeyedMac(String secret, Mac mac) {
     }
 }
 
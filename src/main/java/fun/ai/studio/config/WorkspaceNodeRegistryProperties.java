@@ -15,6 +15,18 @@ import java.util.List;
  * funai.workspace-node-registry.shared-secret=4f2b1a9c8d3e7a60b1c9d7e5f3a8b6c4d2e0f9a7c5b3d1e8f6a4c2e9b7d5f0a1c3e8b2d6f9a0c4e7b1d5f8a2c6e9b3d7f0a4c8e1b5d9f2a6c0e3b7d1f4a8c2e5b9d0f3a7c1e4b8d2f5a9c3e6b0d4f7a1c5e8b2d6f9a0c4e7b1d5f8a2c6e9b3d7f0a4c8e1b5d9f2a6c0e3b7d1f4a8c2
  * funai.workspace-node-registry.allowed-ips=172.21.138.87
  * funai.workspace-node-registry.heartbeat-stale-seconds=60
+ * # 健康状态机（WorkspaceNodeHealthTracker）：心跳超过 suspect-seconds 为 SUSPECT，超过 heartbeat-stale-seconds 为 STALE
+ * funai.workspace-node-registry.suspect-seconds=30
+ * # 本地路由表（WorkspaceNodeRoutingTable）
+ * funai.workspace-node-registry.route-cache-max-users=50000
+ * funai.workspace-node-registry.route-cache-ttl-seconds=60
+ * funai.workspace-node-registry.node-snapshot-refresh-ms=10000
+ * funai.workspace-node-registry.heartbeat-flush-ms=5000
+ * # 管理端节点统计（WorkspaceNodeStats）
+ * funai.workspace-node-registry.node-stats-refresh-ms=600000
+ * # 新用户选点（WorkspaceNodeSelector）
+ * funai.workspace-node-registry.hash-vnodes-per100=160
+ * funai.workspace-node-registry.load-bias-threshold=0.8
  * </pre>
  */
 @Component
@@ -24,6 +36,39 @@ public class WorkspaceNodeRegistryProperties {
     private String sharedSecret = "";
     private List<String> allowedIps = new ArrayList<>();
     private long heartbeatStaleSeconds = 60;
+    /**
+     * 心跳超过该秒数节点进入 SUSPECT（不再分配新用户，已有用户照常路由）；应小于 heartbeat-stale-seconds
+     */
+    private long suspectSeconds = 30;
+    /**
+     * 本地路由表 userId -> nodeId 最大条目数
+     */
+    private int routeCacheMaxUsers = 50_000;
+    /**
+     * 本地路由表条目 TTL（秒）：多实例下其它实例做的 reassign/drain 最多延迟该时长生效
+     */
+    private long routeCacheTtlSeconds = 60;
+    /**
+     * 节点快照从 DB 全量刷新的间隔（毫秒）：应明显小于 heartbeat-stale-seconds
+     */
+    private long nodeSnapshotRefreshMs = 10_000;
+    /**
+     * 心跳批量落库间隔（毫秒）：其它 API 实例看到心跳的延迟约为 heartbeat-flush-ms + node-snapshot-refresh-ms，应明显小于 heartbeat-stale-seconds
+     */
+    private long heartbeatFlushMs = 5_000;
+    /**
+     * 节点 placement 计数用 GROUP BY 校准的间隔（毫秒）：本实例的增量在两次校准之间实时生效，其它实例的变更最多延迟该时长；
+     * 校准在读取时惰性触发（只有管理端查看时才聚合）
+     */
+    private long nodeStatsRefreshMs = 600_000;
+    /**
+     * 一致性哈希环：weight=100 的节点对应的虚拟节点数（按 weight 等比例增减）
+     */
+    private int hashVnodesPer100 = 160;
+    /**
+     * 负载偏置阈值（busyCount / max-running-per-node）：新用户跳过负载达到该比例的节点
+     */
+    private double loadBiasThreshold = 0.8;
 
     public boolean isEnabled() {
         return enabled;
@@ -57,6 +102,70 @@ public class WorkspaceNodeRegistryProperties {
         this.heartbeatStaleSeconds = heartbeatStaleSeconds;
     }
 
+    public long getSuspectSeconds() {
+        return suspectSeconds;
+    }
+
+    public void setSuspectSeconds(long suspectSeconds) {
+        this.suspectSeconds = suspectSeconds;
+    }
+
+    public int getRouteCacheMaxUsers() {
+        return routeCacheMaxUsers;
+    }
+
+    public void setRouteCacheMaxUsers(int routeCacheMaxUsers) {
+        this.routeCacheMaxUsers = routeCacheMaxUsers;
+    }
+
+    public long getRouteCacheTtlSeconds() {
+        return routeCacheTtlSeconds;
+    }
+
+    public void setRouteCacheTtlSeconds(long routeCacheTtlSeconds) {
+        this.routeCacheTtlSeconds = routeCacheTtlSeconds;
+    }
+
+    public long getNodeSnapshotRefreshMs() {
+        return nodeSnapshotRefreshMs;
+    }
+
+    public void setNodeSnapshotRefreshMs(long nodeSnapshotRefreshMs) {
+        this.nodeSnapshotRefreshMs = nodeSnapshotRefreshMs;
+    }
+
+    public long getHeartbeatFlushMs() {
+        return heartbeatFlushMs;
+    }
+
+    public void setHeartbeatFlushMs(long heartbeatFlushMs) {
+        this.heartbeatFlushMs = heartbeatFlushMs;
+    }
+
+    public long getNodeStatsRefreshMs() {
+        return nodeStatsRefreshMs;
+    }
+
+    public void setNodeStatsRefreshMs(long nodeStatsRefreshMs) {
+        this.nodeStatsRefreshMs = nodeStatsRefreshMs;
+    }
+
+    public int getHashVnodesPer100() {
+        return hashVnodesPer100;
+    }
+
+    public void setHashVnodesPer100(int hashVnodesPer100) {
+        this.hashVnodesPer100 = hashVnodesPer100;
+    }
+
+    public double getLoadBiasThreshold() {
+        return loadBiasThreshold;
+    }
+
+    public void setLoadBiasThreshold(double loadBiasThreshold) {
+        this.loadBiasThreshold = loadBiasThreshold;
+    }
+
     public Duration heartbeatStaleDuration() {
         long s = Math.max(1, heartbeatStaleSeconds);
         return Duration.ofSeconds(s);
@@ -7,10 +7,12 @@ import fun.ai.studio.entity.FunAiApp;
 import fun.ai.studio.entity.FunAiUser;
 import fun.ai.studio.service.FunAiAppService;
 import fun.ai.studio.service.FunAiUserService;
+import fun.ai.studio.workspace.WorkspaceNodeHttpClient;
 import fun.ai.studio.workspace.WorkspaceNodeResolver;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ContentDisposition;
@@ -25,17 +27,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.InputStream;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Callable;
 
 /**
  * 管理员工作空间文件管理接口
@@ -57,21 +61,18 @@ public class AdminWorkspaceFileController {
     private final FunAiAppService funAiAppService;
     private final WorkspaceNodeResolver nodeResolver;
     private final WorkspaceNodeProxyProperties proxyProps;
-    private final HttpClient httpClient;
+    private final WorkspaceNodeHttpClient httpClient;
 
     public AdminWorkspaceFileController(FunAiUserService funAiUserService,
                                        FunAiAppService funAiAppService,
                                        WorkspaceNodeResolver nodeResolver,
-                                       WorkspaceNodeProxyProperties proxyProps) {
+                                       WorkspaceNodeProxyProperties proxyProps,
+                                       WorkspaceNodeHttpClient httpClient) {
         this.funAiUserService = funAiUserService;
         this.funAiAppService = funAiAppService;
         this.nodeResolver = nodeResolver;
         this.proxyProps = proxyProps;
-        HttpClient.Builder b = HttpClient.newBuilder();
-        if (proxyProps != null && proxyProps.getConnectTimeoutMs() > 0) {
-            b.connectTimeout(Duration.ofMillis(proxyProps.getConnectTimeoutMs()));
-        }
-        this.httpClient = b.build();
+        this.httpClient = httpClient;
     }
 
     /**
@@ -83,7 +84,8 @@ public class AdminWorkspaceFileController {
     public ResponseEntity<StreamingResponseBody> downloadAppZip(
             @Parameter(description = "目标用户ID", required = true) @RequestParam Long userId,
             @Parameter(description = "应用ID", required = true) @RequestParam Long appId,
-            @Parameter(description = "是否包含 node_modules（默认 false）") @RequestParam(defaultValue = "false") boolean includeNodeModules
+            @Parameter(description = "是否包含 node_modules（默认 false）") @RequestParam(defaultValue = "false") boolean includeNodeModules,
+            HttpServletRequest request
     ) {
         // 1. 验证当前登录用户为管理员
         FunAiUser currentUser = getCurrentUser();
@@ -104,6 +106,7 @@ public class AdminWorkspaceFileController {
 
         // 3. 构建转发请求到 workspace-node
         String filename = "app_" + appId + ".zip";
+        HttpResponse<InputStream> upstreamResp = null;
         try {
             String upstreamPath = "/api/fun-ai/workspace/files/download-zip";
             String query = String.format("userId=%d&appId=%d&includeNodeModules=%s",
@@ -120,15 +123,14 @@ public class AdminWorkspaceFileController {
             }
 
             long ts = Instant.now().getEpochSecond();
-            String nonce = randomNonce();
+            String nonce = WorkspaceNodeProxySigner.randomNonce();
             String canonical = WorkspaceNodeProxySigner.canonical("GET", upstreamPath, query, "", ts, nonce);
             String sig = WorkspaceNodeProxySigner.hmacSha256Base64(secret, canonical);
 
             long readTimeout = proxyProps != null ? proxyProps.getReadTimeoutMs() : 30000;
             if (readTimeout <= 0) readTimeout = 30000;
 
-            HttpRequest upstreamReq = HttpRequest.newBuilder()
-                    .uri(URI.create(upstreamUrl))
+            HttpRequest upstreamReq = httpClient.newRequest(URI.create(upstreamUrl))
                     .timeout(Duration.ofMillis(readTimeout))
                     .header(HDR_TS, String.valueOf(ts))
                     .header(HDR_NONCE, nonce)
@@ -136,10 +138,21 @@ public class AdminWorkspaceFileController {
                     .GET()
                     .build();
 
-            HttpResponse<InputStream> upstreamResp = httpClient.send(upstreamReq, HttpResponse.BodyHandlers.ofInputStream());
+            upstreamResp = httpClient.sendLongStream(upstreamReq);
+            HttpResponse<InputStream> opened = upstreamResp;
+
+            // StreamingResponseBody 可能因异步超时/客户端已断开而根本不执行：异步处理结束时兜底关闭上游响应体，归还节点流配额
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(
+                    AdminWorkspaceFileController.class.getName() + ".upstream",
+                    new CallableProcessingInterceptor() {
+                        @Override
+                        public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                            closeQuietly(opened);
+                        }
+                    });
 
             StreamingResponseBody body = outputStream -> {
-                try (InputStream in = upstreamResp.body()) {
+                try (InputStream in = opened.body()) {
                     if (in != null) {
                         in.transferTo(outputStream);
                         outputStream.flush();
@@ -156,14 +169,26 @@ public class AdminWorkspaceFileController {
                     .body(body);
 
         } catch (IllegalArgumentException e) {
+            closeQuietly(upstreamResp);
             log.error("下载应用 zip 参数错误: userId={}, appId={}, error={}", userId, appId, e.getMessage());
             return ResponseEntity.badRequest().build();
         } catch (Exception e) {
+            closeQuietly(upstreamResp);
             log.error("下载应用 zip 失败: userId={}, appId={}, error={}", userId, appId, e.getMessage(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    private static void closeQuietly(HttpResponse<InputStream> resp) {
+        if (resp == null) return;
+        try {
+            // 关闭即释放连接与节点配额（重复关闭无副作用）
+            InputStream in = resp.body();
+            if (in != null) in.close();
+        } catch (Exception ignore) {
+        }
+    }
+
     private FunAiUser getCurrentUser() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null || !auth.isAuthenticated()) {
@@ -189,9 +214,4 @@ public class AdminWorkspaceFileController {
         return b + p + q;
     }
 
-    private final AtomicLong nonceCounter = new AtomicLong(0);
-
-    private String randomNonce() {
-        return String.format("%016x%016x", System.nanoTime(), nonceCounter.incrementAndGet());
-    }
 }
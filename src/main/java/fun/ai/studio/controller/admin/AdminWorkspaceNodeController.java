@@ -2,6 +2,7 @@ package fun.ai.studio.controller.admin;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import fun.ai.studio.common.Result;
+import fun.ai.studio.entity.FunAiWorkspaceDrainJob;
 import fun.ai.studio.entity.FunAiWorkspaceNode;
 import fun.ai.studio.entity.FunAiWorkspacePlacement;
 import fun.ai.studio.entity.request.AdminUpsertWorkspaceNodeRequest;
@@ -12,10 +13,21 @@ import fun.ai.studio.entity.response.AdminWorkspaceNodeListResponse;
 import fun.ai.studio.entity.response.AdminWorkspaceNodePlacementItem;
 import fun.ai.studio.entity.response.AdminWorkspaceNodePlacementsResponse;
 import fun.ai.studio.entity.response.AdminWorkspaceNodeSummary;
+import fun.ai.studio.config.WorkspaceNodeProxyMetrics;
 import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
-import fun.ai.studio.mapper.FunAiUserMapper;
 import fun.ai.studio.mapper.FunAiWorkspaceNodeMapper;
 import fun.ai.studio.mapper.FunAiWorkspacePlacementMapper;
+import fun.ai.studio.service.WorkspaceNodeRunCapacityService;
+import fun.ai.studio.workspace.WorkspaceDrainJobManager;
+import fun.ai.studio.workspace.WorkspaceGatewayRouteIndex;
+import fun.ai.studio.workspace.WorkspaceNodeHealthTracker;
+import fun.ai.studio.workspace.WorkspaceNodeHeartbeatBuffer;
+import fun.ai.studio.workspace.WorkspaceNodeHttpClient;
+import fun.ai.studio.workspace.WorkspaceNodeLoad;
+import fun.ai.studio.workspace.WorkspaceNodeRoutingTable;
+import fun.ai.studio.workspace.WorkspaceNodeSelector;
+import fun.ai.studio.workspace.WorkspaceNodeStats;
+import fun.ai.studio.workspace.WorkspaceRunStatusAggregator;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -28,14 +40,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.time.LocalDateTime;
 import java.util.stream.Collectors;
 import java.time.ZoneId;
-import java.time.Duration;
 
 /**
  * 管理接口：workspace-node 节点管理（IP 白名单 + X-Admin-Token）
@@ -56,33 +67,46 @@ public class AdminWorkspaceNodeController {
 
     private final FunAiWorkspaceNodeMapper nodeMapper;
     private final FunAiWorkspacePlacementMapper placementMapper;
-    private final FunAiUserMapper userMapper;
+    private final WorkspaceNodeStats nodeStats;
     private final WorkspaceNodeRegistryProperties registryProps;
-
-    public AdminWorkspaceNodeController(FunAiWorkspaceNodeMapper nodeMapper, FunAiWorkspacePlacementMapper placementMapper, FunAiUserMapper userMapper, WorkspaceNodeRegistryProperties registryProps) {
+    private final WorkspaceNodeRoutingTable routingTable;
+    private final WorkspaceGatewayRouteIndex gatewayRouteIndex;
+    private final WorkspaceNodeProxyMetrics proxyMetrics;
+    private final WorkspaceNodeHttpClient nodeHttpClient;
+    private final WorkspaceDrainJobManager drainJobs;
+    private final WorkspaceNodeSelector nodeSelector;
+    private final WorkspaceNodeLoad nodeLoad;
+    private final WorkspaceNodeRunCapacityService capacityService;
+    private final WorkspaceNodeHeartbeatBuffer heartbeatBuffer;
+    private final WorkspaceNodeHealthTracker healthTracker;
+    private final WorkspaceRunStatusAggregator runStatusAggregator;
+
+    public AdminWorkspaceNodeController(FunAiWorkspaceNodeMapper nodeMapper, FunAiWorkspacePlacementMapper placementMapper, WorkspaceNodeStats nodeStats, WorkspaceNodeRegistryProperties registryProps, WorkspaceNodeRoutingTable routingTable, WorkspaceGatewayRouteIndex gatewayRouteIndex, WorkspaceNodeProxyMetrics proxyMetrics, WorkspaceNodeHttpClient nodeHttpClient, WorkspaceDrainJobManager drainJobs, WorkspaceNodeSelector nodeSelector, WorkspaceNodeLoad nodeLoad, WorkspaceNodeRunCapacityService capacityService, WorkspaceNodeHeartbeatBuffer heartbeatBuffer, WorkspaceNodeHealthTracker healthTracker, WorkspaceRunStatusAggregator runStatusAggregator) {
         this.nodeMapper = nodeMapper;
         this.placementMapper = placementMapper;
-        this.userMapper = userMapper;
+        this.nodeStats = nodeStats;
         this.registryProps = registryProps;
+        this.routingTable = routingTable;
+        this.gatewayRouteIndex = gatewayRouteIndex;
+        this.proxyMetrics = proxyMetrics;
+        this.nodeHttpClient = nodeHttpClient;
+        this.drainJobs = drainJobs;
+        this.nodeSelector = nodeSelector;
+        this.nodeLoad = nodeLoad;
+        this.capacityService = capacityService;
+        this.heartbeatBuffer = heartbeatBuffer;
+        this.healthTracker = healthTracker;
+        this.runStatusAggregator = runStatusAggregator;
     }
 
     @GetMapping("/list")
     @Operation(summary = "节点列表（含统计）")
     public Result<AdminWorkspaceNodeListResponse> list() {
-        List<FunAiWorkspaceNode> nodes = nodeMapper.selectList(new QueryWrapper<>());
-        nodes = (nodes == null ? List.<FunAiWorkspaceNode>of() : nodes).stream()
-                .sorted(Comparator.comparing(FunAiWorkspaceNode::getId, Comparator.nullsLast(Long::compareTo)))
-                .toList();
-
-        // 简单统计：count placements per nodeId（数据量不大时可接受；后续可做 group by SQL 优化）
-        List<FunAiWorkspacePlacement> ps = placementMapper.selectList(new QueryWrapper<>());
-        Map<Long, Long> cnt = new HashMap<>();
-        if (ps != null) {
-            for (FunAiWorkspacePlacement p : ps) {
-                if (p == null || p.getNodeId() == null) continue;
-                cnt.put(p.getNodeId(), cnt.getOrDefault(p.getNodeId(), 0L) + 1L);
-            }
-        }
+        // 节点与心跳来自内存快照（含本实例尚未落库的心跳），按 id 升序
+        List<FunAiWorkspaceNode> nodes = routingTable.listNodes();
+
+        // placement 计数来自 WorkspaceNodeStats（GROUP BY 基线 + 增量），不加载 placement 行
+        Map<Long, Long> cnt = nodeStats.placementsByNode();
 
         List<AdminWorkspaceNodeSummary> out = new ArrayList<>();
         for (FunAiWorkspaceNode n : nodes) {
@@ -106,18 +130,26 @@ public class AdminWorkspaceNodeController {
             }
             // health
             s.setHealth(computeHealth(n));
+            // load（最近一次心跳上报；过期或未上报为空）
+            WorkspaceNodeLoad.Sample load = nodeLoad.latest(n.getId());
+            if (load != null) {
+                s.setCpuUsage(load.cpuUsage());
+                s.setMemUsage(load.memUsage());
+                s.setDiskUsage(load.diskUsage());
+                s.setBusyRunCount(load.busyRunCount());
+                s.setContainerCount(load.containerCount());
+            }
             out.add(s);
         }
 
-        Long totalUsers = 0L;
-        try {
-            totalUsers = userMapper == null ? 0L : userMapper.selectCount(new QueryWrapper<>());
-        } catch (Exception ignore) {
+        long totalPlacements = 0;
+        for (Long c : cnt.values()) {
+            totalPlacements += c == null ? 0 : c;
         }
 
         AdminWorkspaceNodeListResponse resp = new AdminWorkspaceNodeListResponse();
-        resp.setTotalUsers(totalUsers);
-        resp.setTotalPlacements(ps == null ? 0L : (long) ps.size());
+        resp.setTotalUsers(nodeStats.totalUsers());
+        resp.setTotalPlacements(totalPlacements);
         resp.setNodes(out);
         return Result.success(resp);
     }
@@ -125,14 +157,7 @@ public class AdminWorkspaceNodeController {
     private String computeHealth(FunAiWorkspaceNode n) {
         if (n == null) return "UNKNOWN";
         if (registryProps == null || !registryProps.isEnabled()) return "UNKNOWN";
-        if (n.getLastHeartbeatAt() == null) return "STALE";
-        Duration stale = registryProps.heartbeatStaleDuration();
-        try {
-            LocalDateTime now = LocalDateTime.now();
-            return n.getLastHeartbeatAt().isAfter(now.minusSeconds(stale.toSeconds())) ? "HEALTHY" : "STALE";
-        } catch (Exception ignore) {
-            return "UNKNOWN";
-        }
+        return healthTracker.health(n).name();
     }
 
     @PostMapping("/upsert")
@@ -156,7 +181,9 @@ public class AdminWorkspaceNodeController {
         } else {
             nodeMapper.updateById(n);
         }
-        return Result.success(nodeMapper.selectById(n.getId()));
+        FunAiWorkspaceNode saved = nodeMapper.selectById(n.getId());
+        routingTable.onNodeChanged(saved);
+        return Result.success(saved);
     }
 
     @PostMapping("/set-enabled")
@@ -167,26 +194,57 @@ public class AdminWorkspaceNodeController {
         if (n == null) return Result.error("node 不存在");
         n.setEnabled(enabled == null ? 0 : enabled);
         nodeMapper.updateById(n);
+        routingTable.onNodeChanged(n);
         return Result.success("ok");
     }
 
     @PostMapping("/heartbeat")
-    @Operation(summary = "workspace-node 心跳上报（内部）", description = "由 workspace-node 定时上报。鉴权：X-WS-Node-Token（独立于 X-Admin-Token）。")
+    @Operation(summary = "workspace-node 心跳上报（内部）", description = "由 workspace-node 定时上报。鉴权：X-WS-Node-Token（独立于 X-Admin-Token）。"
+            + "已注册且地址未变的节点只更新内存存活表，last_heartbeat_at 由后台批量落库。")
     public Result<FunAiWorkspaceNode> heartbeat(@Valid @RequestBody WorkspaceNodeHeartbeatRequest req) {
         if (req == null) return Result.error("body 不能为空");
 
         String name = req.getNodeName().trim();
+        String nginxBaseUrl = req.getNginxBaseUrl().trim();
+        String apiBaseUrl = req.getApiBaseUrl().trim();
+
+        // 快路径：节点已在快照中且地址未变 -> 只更新内存（路由/告警/管理端读内存），DB 由 heartbeatBuffer 合并批量写入
+        FunAiWorkspaceNode known = routingTable.findByName(name);
+        if (known != null && known.getId() != null
+                && nginxBaseUrl.equals(known.getNginxBaseUrl()) && apiBaseUrl.equals(known.getApiBaseUrl())) {
+            FunAiWorkspaceNode hb = new FunAiWorkspaceNode();
+            hb.setId(known.getId());
+            hb.setLastHeartbeatAt(LocalDateTime.now());
+            hb.setCpuUsage(req.getCpuUsage());
+            hb.setMemUsage(req.getMemUsage());
+            hb.setDiskUsage(req.getDiskUsage());
+            hb.setBusyRunCount(req.getBusyRunCount());
+            hb.setContainerCount(req.getContainerCount());
+            FunAiWorkspaceNode updated = routingTable.onHeartbeat(hb);
+            if (updated != null) {
+                heartbeatBuffer.offer(hb);
+                return Result.success(updated);
+            }
+        }
+
+        // 慢路径：首次注册 / 地址变更，直接写 DB
         QueryWrapper<FunAiWorkspaceNode> qw = new QueryWrapper<>();
         qw.eq("name", name).last("limit 1");
         FunAiWorkspaceNode existing = nodeMapper.selectOne(qw);
 
         FunAiWorkspaceNode n = (existing != null) ? existing : new FunAiWorkspaceNode();
         n.setName(name);
-        n.setNginxBaseUrl(req.getNginxBaseUrl().trim());
-        n.setApiBaseUrl(req.getApiBaseUrl().trim());
+        n.setNginxBaseUrl(nginxBaseUrl);
+        n.setApiBaseUrl(apiBaseUrl);
         if (n.getEnabled() == null) n.setEnabled(1);
         if (n.getWeight() == null) n.setWeight(100);
         n.setLastHeartbeatAt(LocalDateTime.now());
+        // 负载（旧版节点不上报时保持为空，避免沿用过期值）
+        n.setCpuUsage(req.getCpuUsage());
+        n.setMemUsage(req.getMemUsage());
+        n.setDiskUsage(req.getDiskUsage());
+        n.setBusyRunCount(req.getBusyRunCount());
+        n.setContainerCount(req.getContainerCount());
 
         if (n.getId() == null) {
             nodeMapper.insert(n);
@@ -194,13 +252,17 @@ public class AdminWorkspaceNodeController {
             nodeMapper.updateById(n);
         }
 
-        return Result.success(nodeMapper.selectById(n.getId()));
+        FunAiWorkspaceNode saved = nodeMapper.selectById(n.getId());
+        routingTable.onNodeChanged(saved);
+        return Result.success(saved);
     }
 
     @GetMapping("/placements")
-    @Operation(summary = "查询某节点的 placements（userId -> nodeId）", description = "用于人工迁移/drain 前查看绑定用户列表。")
+    @Operation(summary = "查询某节点的 placements（userId -> nodeId）", description = "用于人工迁移/drain 前查看绑定用户列表。"
+            + "推荐 keyset 翻页：首页不传 afterId，下一页传上一页返回的 nextAfterId（offset 仅兼容保留，深翻页会扫描跳过的行）。")
     public Result<AdminWorkspaceNodePlacementsResponse> placements(
             @RequestParam Long nodeId,
+            @RequestParam(required = false) Long afterId,
             @RequestParam(defaultValue = "0") long offset,
             @RequestParam(defaultValue = "200") long limit
     ) {
@@ -209,9 +271,15 @@ public class AdminWorkspaceNodeController {
         long safeOffset = Math.max(offset, 0);
 
         QueryWrapper<FunAiWorkspacePlacement> qw = new QueryWrapper<>();
-        qw.eq("node_id", nodeId)
-                .orderByAsc("id")
-                .last("limit " + safeOffset + "," + safeLimit);
+        qw.eq("node_id", nodeId);
+        if (afterId != null) {
+            qw.gt("id", afterId)
+                    .orderByAsc("id")
+                    .last("limit " + safeLimit);
+        } else {
+            qw.orderByAsc("id")
+                    .last("limit " + safeOffset + "," + safeLimit);
+        }
         List<FunAiWorkspacePlacement> ps = placementMapper.selectList(qw);
 
         List<AdminWorkspaceNodePlacementItem> items = (ps == null ? List.<FunAiWorkspacePlacement>of() : ps).stream()
@@ -237,6 +305,10 @@ public class AdminWorkspaceNodeController {
         resp.setNodeId(nodeId);
         resp.setTotal(total);
         resp.setItems(items);
+        if (ps != null && ps.size() >= safeLimit) {
+            FunAiWorkspacePlacement last = ps.get(ps.size() - 1);
+            resp.setNextAfterId(last == null ? null : last.getId());
+        }
         return Result.success(resp);
     }
 
@@ -259,43 +331,27 @@ public class AdminWorkspaceNodeController {
             p.setUserId(req.getUserId());
             p.setNodeId(req.getTargetNodeId());
             placementMapper.insert(p);
+            nodeStats.onPlacementCreated(req.getTargetNodeId());
+            routingTable.putRoute(req.getUserId(), req.getTargetNodeId());
             return Result.success("created");
         }
+        Long fromNodeId = p.getNodeId();
         p.setNodeId(req.getTargetNodeId());
         placementMapper.updateById(p);
+        nodeStats.onPlacementsMoved(fromNodeId, req.getTargetNodeId(), 1);
+        routingTable.putRoute(req.getUserId(), req.getTargetNodeId());
         return Result.success("ok");
     }
 
     @PostMapping("/drain")
-    @Operation(summary = "批量 drain：将 sourceNodeId 下的 placements 迁移到 targetNodeId", description = "默认最多迁移 100 条；可重复调用分批完成。")
+    @Operation(summary = "批量 drain：将 sourceNodeId 下的 placements 迁移到 targetNodeId", description = "同步迁移一批（默认最多 100 条，单条 UPDATE）；可重复调用分批完成。大节点请使用 /drain-jobs/start 后台任务。")
     public Result<Map<String, Object>> drain(@RequestBody AdminWorkspaceDrainNodeRequest req) {
-        if (req == null) return Result.error("body 不能为空");
-        if (req.getSourceNodeId() == null) return Result.error("sourceNodeId 不能为空");
-        if (req.getTargetNodeId() == null) return Result.error("targetNodeId 不能为空");
-        if (req.getSourceNodeId().equals(req.getTargetNodeId())) return Result.error("source/target 不能相同");
-
-        FunAiWorkspaceNode target = nodeMapper.selectById(req.getTargetNodeId());
-        if (target == null) return Result.error("target node 不存在");
-        if (target.getEnabled() == null || target.getEnabled() != 1) return Result.error("target node 未启用");
+        String err = validateDrain(req);
+        if (err != null) return Result.error(err);
 
         int limit = req.getLimit() == null ? 100 : req.getLimit();
         int safeLimit = Math.min(Math.max(limit, 1), 2000);
-
-        QueryWrapper<FunAiWorkspacePlacement> qw = new QueryWrapper<>();
-        qw.eq("node_id", req.getSourceNodeId())
-                .orderByAsc("id")
-                .last("limit " + safeLimit);
-        List<FunAiWorkspacePlacement> ps = placementMapper.selectList(qw);
-
-        int moved = 0;
-        if (ps != null) {
-            for (FunAiWorkspacePlacement p : ps) {
-                if (p == null || p.getId() == null) continue;
-                p.setNodeId(req.getTargetNodeId());
-                placementMapper.updateById(p);
-                moved++;
-            }
-        }
+        int moved = drainJobs.drainOnce(req.getSourceNodeId(), req.getTargetNodeId(), safeLimit);
 
         Map<String, Object> out = new HashMap<>();
         out.put("moved", moved);
@@ -304,6 +360,101 @@ public class AdminWorkspaceNodeController {
         out.put("limit", safeLimit);
         return Result.success(out);
     }
-}
 
+    @PostMapping("/drain-jobs/start")
+    @Operation(summary = "创建 drain 后台任务", description = "按 placement id 游标分批 UPDATE（batchSize）、限速（ratePerSecond），每批写检查点；"
+            + "同一源节点同时只允许一个未结束任务。返回任务（含 id），进度用 /drain-jobs/get 查询。")
+    public Result<FunAiWorkspaceDrainJob> startDrainJob(@RequestBody AdminWorkspaceDrainNodeRequest req) {
+        String err = validateDrain(req);
+        if (err != null) return Result.error(err);
+        try {
+            return Result.success(drainJobs.start(req.getSourceNodeId(), req.getTargetNodeId(), req.getBatchSize(), req.getRatePerSecond()));
+        } catch (IllegalStateException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    @GetMapping("/drain-jobs/get")
+    @Operation(summary = "查询 drain 任务进度", description = "moved/total、检查点 lastPlacementId、状态、执行实例与最近检查点时间。")
+    public Result<FunAiWorkspaceDrainJob> getDrainJob(@RequestParam Long jobId) {
+        FunAiWorkspaceDrainJob job = drainJobs.get(jobId);
+        if (job == null) return Result.error("job 不存在");
+        return Result.success(job);
+    }
+
+    @GetMapping("/drain-jobs/list")
+    @Operation(summary = "最近的 drain 任务")
+    public Result<List<FunAiWorkspaceDrainJob>> listDrainJobs(@RequestParam(defaultValue = "20") int limit) {
+        return Result.success(drainJobs.list(limit));
+    }
+
+    @PostMapping("/drain-jobs/pause")
+    @Operation(summary = "暂停 drain 任务", description = "执行实例在下一个检查点停止；可 resume 从检查点继续。")
+    public Result<String> pauseDrainJob(@RequestParam Long jobId) {
+        return drainJobs.pause(jobId) ? Result.success("ok") : Result.error("job 不存在或不在运行中");
+    }
+
+    @PostMapping("/drain-jobs/resume")
+    @Operation(summary = "续跑 drain 任务", description = "PAUSED/FAILED，或执行实例已退出（租约过期）的 RUNNING 任务，从检查点继续。")
+    public Result<String> resumeDrainJob(@RequestParam Long jobId) {
+        return drainJobs.resume(jobId) ? Result.success("ok") : Result.error("job 不存在或不可续跑");
+    }
+
+    @PostMapping("/drain-jobs/cancel")
+    @Operation(summary = "取消 drain 任务", description = "已迁移的 placements 不回滚。")
+    public Result<String> cancelDrainJob(@RequestParam Long jobId) {
+        return drainJobs.cancel(jobId) ? Result.success("ok") : Result.error("job 不存在或已结束");
+    }
+
+    private String validateDrain(AdminWorkspaceDrainNodeRequest req) {
+        if (req == null) return "body 不能为空";
+        if (req.getSourceNodeId() == null) return "sourceNodeId 不能为空";
+        if (req.getTargetNodeId() == null) return "targetNodeId 不能为空";
+        if (req.getSourceNodeId().equals(req.getTargetNodeId())) return "source/target 不能相同";
 
+        FunAiWorkspaceNode target = nodeMapper.selectById(req.getTargetNodeId());
+        if (target == null) return "target node 不存在";
+        if (target.getEnabled() == null || target.getEnabled() != 1) return "target node 未启用";
+        return null;
+    }
+
+    @GetMapping("/load")
+    @Operation(summary = "节点负载历史", description = "心跳上报的 CPU/内存/磁盘使用率、运行态占用数、容器数（按时间升序，本实例内存保留最近若干个样本）；"
+            + "不传 nodeId 返回全部节点。admission 为容量准入统计（本地放行/远程查询次数）。")
+    public Result<Map<String, Object>> load(
+            @RequestParam(required = false) Long nodeId,
+            @RequestParam(defaultValue = "60") int limit
+    ) {
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        for (FunAiWorkspaceNode n : routingTable.listNodes()) {
+            if (n == null || n.getId() == null) continue;
+            if (nodeId != null && !nodeId.equals(n.getId())) continue;
+            nodes.put(String.valueOf(n.getId()), nodeLoad.history(n.getId(), limit));
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("nodes", nodes);
+        out.put("admission", capacityService.stats());
+        return Result.success(out);
+    }
+
+    @GetMapping("/routing-stats")
+    @Operation(summary = "本地路由表统计", description = "userId -> nodeId 路由缓存命中/未命中/淘汰次数、节点快照信息、网关 appId 索引、新用户选点（哈希环/负载偏置）统计（仅当前 API 实例）。")
+    public Result<Map<String, Object>> routingStats() {
+        Map<String, Object> out = new java.util.LinkedHashMap<>(routingTable.stats());
+        out.put("gatewayIndex", gatewayRouteIndex.stats());
+        out.put("nodeStats", nodeStats.stats());
+        out.put("nodeSelector", nodeSelector.stats());
+        out.put("heartbeatBuffer", heartbeatBuffer.stats());
+        out.put("health", healthTracker.stats());
+        return Result.success(out);
+    }
+
+    @GetMapping("/proxy-stats")
+    @Operation(summary = "应用层代理统计", description = "workspace 代理活跃流数、排队中字节数（bytesInFlight）、累计回写字节、同步/异步请求数，共享 HTTP 客户端按节点的在途/排队统计，以及 run/status 汇聚缓存命中/合并/落库统计（仅当前 API 实例）。")
+    public Result<Map<String, Object>> proxyStats() {
+        Map<String, Object> out = new LinkedHashMap<>(proxyMetrics.snapshot());
+        out.put("nodeHttp", nodeHttpClient.stats());
+        out.put("runStatus", runStatusAggregator.stats());
+        return Result.success(out);
+    }
+}
@@ -3,6 +3,7 @@ package fun.ai.studio.controller.apps;
 
 import fun.ai.studio.common.Result;
 import fun.ai.studio.config.FunAiAppDeleteProperties;
+import fun.ai.studio.config.WorkspaceNodeProxyProperties;
 import fun.ai.studio.entity.FunAiApp;
 import fun.ai.studio.entity.FunAiWorkspaceRun;
 import fun.ai.studio.entity.request.UpdateFunAiAppBasicInfoRequest;
@@ -10,6 +11,7 @@ import fun.ai.studio.entity.response.FunAiOpenEditorResponse;
 import fun.ai.studio.entity.response.FunAiWorkspaceProjectDirResponse;
 import fun.ai.studio.entity.response.FunAiWorkspaceRunStatusResponse;
 import fun.ai.studio.deploy.DeployClient;
+import fun.ai.studio.deploy.DeployJobIndex;
 import fun.ai.studio.enums.FunAiAppStatus;
 import fun.ai.studio.gitea.GiteaRepoAutomationService;
 import fun.ai.studio.service.FunAiAppService;
@@ -17,6 +19,8 @@ import fun.ai.studio.service.FunAiWorkspaceService;
 import fun.ai.studio.service.FunAiWorkspaceRunService;
 import fun.ai.studio.workspace.WorkspaceProperties;
 import fun.ai.studio.workspace.WorkspaceNodeClient;
+import fun.ai.studio.workspace.OpenEditorMetrics;
+import fun.ai.studio.workspace.WorkspaceRunStatusAggregator;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -30,14 +34,18 @@ import org.springframework.web.bind.annotation.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Stream;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * AI应用控制器
@@ -70,6 +78,22 @@ public class FunAiAppController {
     @Autowired(required = false)
     private DeployClient deployClient;
 
+    @Autowired(required = false)
+    private DeployJobIndex deployJobIndex;
+
+    @Autowired
+    private WorkspaceRunStatusAggregator runStatusAggregator;
+
+    @Autowired
+    private OpenEditorMetrics openEditorMetrics;
+
+    @Autowired(required = false)
+    private WorkspaceNodeProxyProperties workspaceNodeProxyProperties;
+
+    @Autowired
+    @Qualifier("openEditorExecutor")
+    private Executor openEditorExecutor;
+
     @Autowired
     @Qualifier("appCleanupExecutor")
     private Executor appCleanupExecutor;
@@ -89,41 +113,27 @@ public class FunAiAppController {
         }
     }
 
+    private static long stageTimeoutMs(long configured, long def) {
+        return configured > 0 ? configured : def;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable t = e;
+        while ((t instanceof ExecutionException || t instanceof CompletionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t instanceof TimeoutException ? "timeout" : t.getMessage();
+    }
+
     private void fillRuntimeFields(Long userId, List<FunAiApp> apps) {
         if (apps == null || apps.isEmpty()) return;
         try {
             // 双机模式：运行态/文件系统在 Workspace 开发服务器（大机）；API 服务器（小机）只聚合展示
-            FunAiWorkspaceRunStatusResponse remoteStatus = null;
-            if (workspaceNodeClient != null && workspaceNodeClient.isEnabled()) {
-                try {
-                    remoteStatus = workspaceNodeClient.getRunStatus(userId);
-                } catch (Exception ignore) {
-                }
-            }
-
+            // 汇聚器负责：同用户并发合并 + 短 TTL 缓存 + last-known 变化时异步批量落库（不再每次页面访问写 DB）
+            WorkspaceRunStatusAggregator.View view = runStatusAggregator.get(userId);
+            FunAiWorkspaceRunStatusResponse remoteStatus = view.remote();
             // 单机/兼容：保留 DB last-known（若存在）
-            FunAiWorkspaceRun run = (funAiWorkspaceRunService == null) ? null : funAiWorkspaceRunService.getByUserId(userId);
-
-            // 双机模式：workspace-dev（大机）不连 MySQL；因此由 API 服务器（小机）在“观测到运行态”时做 last-known 落库
-            // 这样既不需要让大机访问 MySQL，又能保留 fun_ai_workspace_run 用于展示/审计/重启后的最后状态。
-            if (remoteStatus != null && funAiWorkspaceRunService != null && userId != null) {
-                try {
-                    FunAiWorkspaceRun record = (run != null) ? run : new FunAiWorkspaceRun();
-                    record.setUserId(userId);
-                    record.setAppId(remoteStatus.getAppId());
-                    record.setHostPort(remoteStatus.getHostPort());
-                    record.setContainerPort(remoteStatus.getContainerPort());
-                    record.setRunPid(remoteStatus.getPid());
-                    record.setRunState(remoteStatus.getState());
-                    record.setPreviewUrl(remoteStatus.getPreviewUrl());
-                    record.setLogPath(remoteStatus.getLogPath());
-                    record.setLastError(remoteStatus.getMessage());
-                    record.setLastActiveAt(System.currentTimeMillis());
-                    funAiWorkspaceRunService.upsertByUserId(record);
-                    run = record;
-                } catch (Exception ignore) {
-                }
-            }
+            FunAiWorkspaceRun run = view.lastKnown();
 
             for (FunAiApp app : apps) {
                 if (app == null) continue;
@@ -171,41 +181,14 @@ public class FunAiAppController {
 
         // deploy url（只填 deployAccessUrl；同时兼容填充 accessUrl=deployAccessUrl）
         try {
-            if (deployClient == null || !deployClient.isEnabled()) return;
-            // 你们当前每用户 app 上限 20，这里拿 200 条足够覆盖活跃 job
-            List<Map<String, Object>> jobs = deployClient.listJobs(200);
-            if (jobs == null || jobs.isEmpty()) return;
-
-            // appId -> latestJob（通常 list 已按更新时间倒序；因此“首次出现”视为最新）
-            Map<Long, Map<String, Object>> latestJobByApp = new HashMap<>();
-            // appId -> deployUrl（取最后出现的一个，通常 list 已按更新时间倒序）
-            Map<Long, String> appPreview = new HashMap<>();
-            for (Map<String, Object> j : jobs) {
-                if (j == null) continue;
-                Object payloadObj = j.get("payload");
-                if (!(payloadObj instanceof Map)) continue;
-                Map<?, ?> payload = (Map<?, ?>) payloadObj;
-                Object appIdObj = payload.get("appId");
-                if (appIdObj == null) continue;
-                Long appId;
-                try {
-                    appId = Long.valueOf(String.valueOf(appIdObj));
-                } catch (Exception ignore) {
-                    continue;
-                }
-
-                // latest job (first one wins)
-                if (!latestJobByApp.containsKey(appId)) {
-                    latestJobByApp.put(appId, j);
-                }
-
-                Object status = j.get("status");
-                if (status == null || !"SUCCEEDED".equals(String.valueOf(status))) continue;
-                Object deployObj = j.get("deployUrl");
-                String deployUrl = deployObj == null ? null : String.valueOf(deployObj);
-                if (deployUrl == null || deployUrl.isBlank()) continue;
-                appPreview.put(appId, deployUrl);
+            if (deployClient == null || !deployClient.isEnabled() || deployJobIndex == null) return;
+            // 只读本地部署索引（后台轮询 + 事件更新），热路径不再调用 listJobs
+            List<Long> appIds = new ArrayList<>(apps.size());
+            for (FunAiApp a : apps) {
+                if (a != null && a.getId() != null) appIds.add(a.getId());
             }
+            Map<Long, DeployJobIndex.AppDeployState> states = deployJobIndex.getAll(appIds);
+            if (states.isEmpty()) return;
 
             for (FunAiApp a : apps) {
                 if (a == null) continue;
@@ -217,9 +200,9 @@ public class FunAiAppController {
                             && a.getId() != null
                             && a.getAppStatus() != null
                             && a.getAppStatus() == FunAiAppStatus.DEPLOYING.code()
-                            && latestJobByApp.containsKey(a.getId())) {
-                        Map<String, Object> latest = latestJobByApp.get(a.getId());
-                        String st = latest == null || latest.get("status") == null ? null : String.valueOf(latest.get("status"));
+                            && states.containsKey(a.getId())) {
+                        DeployJobIndex.AppDeployState latest = states.get(a.getId());
+                        String st = latest.latestStatus();
                         if ("SUCCEEDED".equals(st)) {
                             boolean ok = funAiAppService.markReady(userId, a.getId());
                             if (ok) {
@@ -227,7 +210,7 @@ public class FunAiAppController {
                                 a.setLastDeployError(null);
                             }
                         } else if ("FAILED".equals(st)) {
-                            String err = latest == null || latest.get("errorMessage") == null ? null : String.valueOf(latest.get("errorMessage"));
+                            String err = latest.latestErrorMessage();
                             boolean ok = funAiAppService.markFailed(userId, a.getId(), err);
                             if (ok) {
                                 a.setAppStatus(FunAiAppStatus.FAILED.code());
@@ -244,7 +227,8 @@ public class FunAiAppController {
                 } catch (Exception ignore) {
                 }
 
-                String preview = appPreview.get(a.getId());
+                DeployJobIndex.AppDeployState state = states.get(a.getId());
+                String preview = state == null ? null : state.deployUrl();
                 // 约定：只有 READY 才给出“部署态访问地址”。下线（UPLOADED=1）后，不应继续展示旧的 deployUrl，避免前端误以为仍可访问。
                 if (preview != null
                         && !preview.isBlank()
@@ -314,7 +298,7 @@ public class FunAiAppController {
     @PostMapping("/open-editor")
     @Operation(
             summary = "打开在线编辑器（聚合接口）",
-            description = "对齐点：代码在容器内可见（通过 hostRoot bind-mount 到 /workspace）。流程：校验 app 归属 → ensure app dir（会确保容器运行）→ 检测 package.json（maxDepth=2）→ 返回 run/status（不自动启动；由前端按钮触发 build/preview）。"
+            description = "对齐点：代码在容器内可见（通过 hostRoot bind-mount 到 /workspace）。流程：校验 app 归属 → ensure app dir（会确保容器运行）→ 检测 package.json（maxDepth=2）；run/status 与之并行获取（不自动启动；由前端按钮触发 build/preview）。各阶段独立超时，探测/运行态超时降级返回提示。"
     )
     public Result<FunAiOpenEditorResponse> openEditor(
             @Parameter(description = "用户ID", required = true) @RequestParam Long userId,
@@ -343,47 +327,66 @@ public class FunAiAppController {
 
             // 双机模式：open-editor 需要的“目录/是否有 package.json/运行态”都从 Workspace 开发服务器（大机）获取
             if (remoteEnabled) {
-                long tEnsure0 = System.nanoTime();
-                dir = workspaceNodeClient.ensureDir(userId, appId);
-                long ensureMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - tEnsure0);
-                // 观测性信息（best-effort）：失败/超时不应导致 open-editor 整体失败
-                hasPkg = false;
+                // 并行流水线：ensureDir 与 run/status 互不依赖并行执行；package.json 探测依赖目录已存在，接在 ensureDir 之后。
+                // 每个阶段有独立截止时间；探测/运行态属于观测性信息，失败/超时只降级不影响进入编辑器。
+                // ensureDir 可能要拉起容器：未单独配置时沿用客户端 read-timeout-ms（0 表示不限），不使用短截止时间
+                long ensureTimeoutMs = workspaceNodeProxyProperties == null ? 0 : Math.max(0, workspaceNodeProxyProperties.getOpenEditorEnsureDirTimeoutMs());
+                long ensureWaitMs = ensureTimeoutMs > 0 ? ensureTimeoutMs
+                        : (workspaceNodeProxyProperties == null ? 0 : Math.max(0, workspaceNodeProxyProperties.getReadTimeoutMs()));
+                long probeTimeoutMs = stageTimeoutMs(workspaceNodeProxyProperties == null ? 0 : workspaceNodeProxyProperties.getOpenEditorProbeTimeoutMs(), 3000);
+                long runTimeoutMs = stageTimeoutMs(workspaceNodeProxyProperties == null ? 0 : workspaceNodeProxyProperties.getOpenEditorRunStatusTimeoutMs(), 5000);
+
+                CompletableFuture<FunAiWorkspaceProjectDirResponse> dirF = CompletableFuture.supplyAsync(
+                        () -> openEditorMetrics.time(OpenEditorMetrics.STAGE_ENSURE_DIR,
+                                () -> workspaceNodeClient.ensureDir(userId, appId, ensureTimeoutMs)),
+                        openEditorExecutor);
+                CompletableFuture<Boolean> pkgF = dirF.thenApplyAsync(
+                        d -> openEditorMetrics.time(OpenEditorMetrics.STAGE_PACKAGE_PROBE,
+                                () -> workspaceNodeClient.hasPackageJson(userId, appId, probeTimeoutMs)),
+                        openEditorExecutor);
+                // open-editor 允许更宽松的超时：避免 workspace-node 偶发抖动导致用户无法进入编辑器
+                CompletableFuture<FunAiWorkspaceRunStatusResponse> runF = CompletableFuture.supplyAsync(
+                        () -> openEditorMetrics.time(OpenEditorMetrics.STAGE_RUN_STATUS,
+                                () -> workspaceNodeClient.getRunStatus(userId, runTimeoutMs)),
+                        openEditorExecutor);
+
+                try {
+                    dir = ensureWaitMs > 0 ? dirF.get(ensureWaitMs + 500, TimeUnit.MILLISECONDS) : dirF.get();
+                } catch (ExecutionException e) {
+                    runF.cancel(false);
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    if (cause instanceof RuntimeException re) throw re;
+                    throw new IllegalStateException(cause.getMessage(), cause);
+                } catch (TimeoutException e) {
+                    runF.cancel(false);
+                    throw new IllegalStateException("workspace 目录准备超时，请稍后重试");
+                }
+
                 String warnMsg = null;
+                hasPkg = false;
                 try {
-                    long tPkg0 = System.nanoTime();
-                    hasPkg = workspaceNodeClient.hasPackageJson(userId, appId);
-                    long pkgMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - tPkg0);
-                    if (pkgMs > 500) {
-                        logger.info("[{}] open editor slow: hasPackageJson ms={}, userId={}, appId={}", trace, pkgMs, userId, appId);
-                    }
+                    hasPkg = Boolean.TRUE.equals(pkgF.get(probeTimeoutMs + 500, TimeUnit.MILLISECONDS));
                 } catch (Exception e) {
                     warnMsg = "workspace 文件探测超时/失败（package.json 未能检测）：请稍后重试";
-                    logger.warn("open editor: workspace-node hasPackageJson failed: userId={}, appId={}, err={}",
-                            userId, appId, e.getMessage());
+                    logger.warn("[{}] open editor: package.json probe degraded: userId={}, appId={}, err={}",
+                            trace, userId, appId, rootMessage(e));
                 }
 
                 runStatus = null;
                 try {
-                    // open-editor 允许更宽松的超时：避免 workspace-node 偶发抖动导致用户无法进入编辑器
-                    long tRun0 = System.nanoTime();
-                    runStatus = workspaceNodeClient.getRunStatus(userId, 5000);
-                    long runMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - tRun0);
-                    if (runMs > 800) {
-                        logger.info("[{}] open editor slow: runStatus ms={}, userId={}, appId={}", trace, runMs, userId, appId);
-                    }
+                    runStatus = runF.get(runTimeoutMs + 500, TimeUnit.MILLISECONDS);
+                    // 交给汇聚器：后面的 fillRuntimeFields 直接复用，不再二次请求 workspace-node
+                    runStatusAggregator.offer(userId, runStatus);
                 } catch (Exception e) {
                     if (warnMsg == null) warnMsg = "workspace 运行态获取超时/失败：请稍后重试";
-                    logger.warn("open editor: workspace-node getRunStatus failed: userId={}, appId={}, err={}",
-                            userId, appId, e.getMessage());
+                    logger.warn("[{}] open editor: run/status degraded: userId={}, appId={}, err={}",
+                            trace, userId, appId, rootMessage(e));
                 }
 
                 // 把告警提示带给前端（不阻塞进入编辑器）
                 if (warnMsg != null && !warnMsg.isBlank()) {
                     app.setWorkspaceLastError(warnMsg);
                 }
-                if (ensureMs > 500) {
-                    logger.info("[{}] open editor slow: ensureDir ms={}, userId={}, appId={}", trace, ensureMs, userId, appId);
-                }
             } else {
                 // 单机 fallback：本机 ensure + 本机磁盘探测
                 dir = funAiWorkspaceService.ensureAppDir(userId, appId);
@@ -416,10 +419,7 @@ public class FunAiAppController {
             resp.setMessage(hasPkg
                     ? "已检测到 package.json：请点击“构建/预览”按钮触发 npm run build / npm run start；当前不会自动启动"
                     : "未检测到 package.json：请先上传 zip 或在编辑器中新建项目文件");
-            long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
-            if (totalMs > 1500) {
-                logger.info("[{}] open editor total ms={}, userId={}, appId={}, remoteEnabled={}", trace, totalMs, userId, appId, remoteEnabled);
-            }
+            openEditorMetrics.recordTotal(remoteEnabled, System.nanoTime() - t0);
             return Result.success(resp);
         } catch (IllegalArgumentException e) {
             logger.warn("open editor failed: userId={}, appId={}, error={}", userId, appId, e.getMessage());
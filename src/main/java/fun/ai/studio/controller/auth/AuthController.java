@@ -67,7 +67,7 @@ public class AuthController {
             }
 
             // 生成JWT Token（统一使用数据库中的user_name，而非登录输入值）
-            String token = jwtUtil.generateToken(user.getUserName());
+            String token = jwtUtil.generateToken(user);
             logger.info("Generated JWT Token for fun ai user {}: length={}", user.getUserName(), token.length());
 
             // 设置Authorization响应头
@@ -107,7 +107,7 @@ public class AuthController {
             FunAiUser user = verificationCodeService.verifyLoginCode(request.getEmail(), request.getCode());
 
             // 生成JWT Token
-            String token = jwtUtil.generateToken(user.getUserName());
+            String token = jwtUtil.generateToken(user);
             logger.info("Email login success for userId={}, emailMasked={}", user.getId(), EmailUtils.maskEmail(request.getEmail()));
 
             // 设置Authorization响应头
@@ -1,21 +1,32 @@
 package fun.ai.studio.controller.conversation;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import fun.ai.studio.common.Result;
 import fun.ai.studio.entity.FunAiConversation;
 import fun.ai.studio.entity.FunAiConversationMessage;
 import fun.ai.studio.entity.request.ConversationMessageAddRequest;
 import fun.ai.studio.entity.response.ConversationDetailResponse;
 import fun.ai.studio.entity.response.ConversationListResponse;
+import fun.ai.studio.entity.response.ConversationMessagePageResponse;
 import fun.ai.studio.service.FunAiConversationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * AI 对话会话管理
  */
@@ -25,10 +36,14 @@ import jakarta.validation.Valid;
 public class FunAiConversationController {
     private static final Logger log = LoggerFactory.getLogger(FunAiConversationController.class);
     
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    
     private final FunAiConversationService conversationService;
+    private final ObjectMapper objectMapper;
     
-    public FunAiConversationController(FunAiConversationService conversationService) {
+    public FunAiConversationController(FunAiConversationService conversationService, ObjectMapper objectMapper) {
         this.conversationService = conversationService;
+        this.objectMapper = objectMapper;
     }
     
     @PostMapping("/create")
@@ -80,6 +95,108 @@ public class FunAiConversationController {
         }
     }
     
+    @GetMapping("/message/page")
+    @Operation(summary = "分页获取消息", description = "按 sequence 游标向前翻页：不传 beforeSequence 返回最新的 limit 条，"
+            + "之后传上一页的 nextBeforeSequence 加载更早的消息；headersOnly=true 时不返回 content")
+    public Result<ConversationMessagePageResponse> listMessages(
+            @Parameter(description = "用户ID", required = true) @RequestParam Long userId,
+            @Parameter(description = "会话ID", required = true) @RequestParam Long conversationId,
+            @Parameter(description = "只返回 sequence 小于该值的消息（可选）") @RequestParam(required = false) Integer beforeSequence,
+            @Parameter(description = "每页条数（可选，默认/上限见 funai.conversation.message-page-*）") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "只返回消息头（不含 content）") @RequestParam(defaultValue = "false") boolean headersOnly) {
+        try {
+            ConversationMessagePageResponse response = conversationService.listMessages(
+                userId, conversationId, beforeSequence, limit, headersOnly
+            );
+            return Result.success(response);
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("list conversation messages failed: conversationId={}, beforeSequence={}, error={}",
+                conversationId, beforeSequence, e.getMessage(), e);
+            return Result.error("获取消息失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * NDJSON 流式返回会话消息（每行一个 JSON）：
+     * <pre>
+     * {"type":"conversation","conversation":{...},"maxMessages":30}
+     * {"type":"message","message":{...}}      // 从最新到最旧，每页写完即 flush
+     * {"type":"end","count":20,"hasMore":true,"nextBeforeSequence":11}
+     * </pre>
+     * 编辑器读到第一页即可渲染；更早的消息用 /message/page?beforeSequence=nextBeforeSequence 按需加载。
+     * 第一页在请求线程上查询（参数/权限错误直接返回 400 + 一行 error），后续页在流中逐页查询。
+     */
+    @GetMapping(value = "/message/stream", produces = "application/x-ndjson")
+    @Operation(summary = "流式获取消息（NDJSON）", description = "按从新到旧逐页输出消息，最多输出 limit 条；headersOnly=true 时不返回 content")
+    public ResponseEntity<StreamingResponseBody> streamMessages(
+            @Parameter(description = "用户ID", required = true) @RequestParam Long userId,
+            @Parameter(description = "会话ID", required = true) @RequestParam Long conversationId,
+            @Parameter(description = "只返回 sequence 小于该值的消息（可选）") @RequestParam(required = false) Integer beforeSequence,
+            @Parameter(description = "最多输出条数（可选，默认输出到最早一条）") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "每页条数（可选）") @RequestParam(required = false) Integer pageSize,
+            @Parameter(description = "只返回消息头（不含 content）") @RequestParam(defaultValue = "false") boolean headersOnly) {
+        ConversationMessagePageResponse first;
+        try {
+            first = conversationService.listMessages(userId, conversationId, beforeSequence, pageSize, headersOnly);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(APPLICATION_NDJSON).body(os -> writeLine(os, errorLine(e.getMessage())));
+        } catch (Exception e) {
+            log.error("stream conversation messages failed: conversationId={}, error={}", conversationId, e.getMessage(), e);
+            return ResponseEntity.internalServerError().contentType(APPLICATION_NDJSON)
+                .body(os -> writeLine(os, errorLine("获取消息失败: " + e.getMessage())));
+        }
+        int max = limit == null || limit <= 0 ? Integer.MAX_VALUE : limit;
+        StreamingResponseBody body = os -> {
+            Map<String, Object> head = new LinkedHashMap<>();
+            head.put("type", "conversation");
+            head.put("conversation", first.getConversation());
+            head.put("maxMessages", first.getMaxMessages());
+            writeLine(os, head);
+
+            ConversationMessagePageResponse page = first;
+            int count = 0;
+            Integer oldestSequence = null;
+            boolean truncated = false;
+            while (true) {
+                List<FunAiConversationMessage> messages = page.getMessages();
+                // 页内为升序，流中从新到旧输出
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    if (count >= max) {
+                        truncated = true;
+                        break;
+                    }
+                    Map<String, Object> line = new LinkedHashMap<>();
+                    line.put("type", "message");
+                    line.put("message", messages.get(i));
+                    writeLine(os, line);
+                    oldestSequence = messages.get(i).getSequence();
+                    count++;
+                }
+                os.flush();
+                if (truncated || count >= max || !Boolean.TRUE.equals(page.getHasMore())) break;
+                try {
+                    page = conversationService.listMessages(userId, conversationId, page.getNextBeforeSequence(), pageSize, headersOnly);
+                } catch (Exception e) {
+                    log.warn("stream conversation messages interrupted: conversationId={}, error={}", conversationId, e.getMessage());
+                    writeLine(os, errorLine("获取消息失败: " + e.getMessage()));
+                    return;
+                }
+            }
+            // 继续加载时从已输出的最早一条往前翻
+            boolean hasMore = truncated || Boolean.TRUE.equals(page.getHasMore());
+            Map<String, Object> end = new LinkedHashMap<>();
+            end.put("type", "end");
+            end.put("count", count);
+            end.put("hasMore", hasMore);
+            end.put("nextBeforeSequence", hasMore ? oldestSequence : null);
+            writeLine(os, end);
+            os.flush();
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+    
     @PostMapping("/message/add")
     @Operation(summary = "添加消息", description = "向会话中添加新消息")
     public Result<FunAiConversationMessage> addMessage(
@@ -135,20 +252,39 @@ public class FunAiConversationController {
     }
     
     @PostMapping("/rollback")
-    @Operation(summary = "回退到指定消息", description = "删除指定消息之后的所有消息，保留该消息及之前的消息")
+    @Operation(summary = "回退到指定消息", description = "删除指定消息之后的所有消息，保留该消息及之前的消息；messageId 与 sequence 二选一")
     public Result<Void> rollbackToMessage(
             @Parameter(description = "用户ID", required = true) @RequestParam Long userId,
             @Parameter(description = "会话ID", required = true) @RequestParam Long conversationId,
-            @Parameter(description = "消息ID（回退到此消息，删除之后的消息）", required = true) @RequestParam Long messageId) {
+            @Parameter(description = "消息ID（回退到此消息，删除之后的消息）") @RequestParam(required = false) Long messageId,
+            @Parameter(description = "消息序号（消息 id 为空时使用，例如写缓冲模式下尚未落库的消息）") @RequestParam(required = false) Integer sequence) {
         try {
-            conversationService.rollbackToMessage(userId, conversationId, messageId);
+            if (messageId != null) {
+                conversationService.rollbackToMessage(userId, conversationId, messageId);
+            } else if (sequence != null) {
+                conversationService.rollbackToSequence(userId, conversationId, sequence);
+            } else {
+                return Result.error("messageId 与 sequence 不能同时为空");
+            }
             return Result.success(null);
         } catch (IllegalArgumentException e) {
             return Result.error(e.getMessage());
         } catch (Exception e) {
-            log.error("rollback to message failed: conversationId={}, messageId={}, error={}", 
-                conversationId, messageId, e.getMessage(), e);
+            log.error("rollback to message failed: conversationId={}, messageId={}, sequence={}, error={}", 
+                conversationId, messageId, sequence, e.getMessage(), e);
             return Result.error("回退消息失败: " + e.getMessage());
         }
     }
+    
+    private void writeLine(OutputStream os, Object line) throws IOException {
+        os.write(objectMapper.writeValueAsBytes(line));
+        os.write('\n');
+    }
+    
+    private static Map<String, Object> errorLine(String message) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "error");
+        line.put("message", message);
+        return line;
+    }
 }
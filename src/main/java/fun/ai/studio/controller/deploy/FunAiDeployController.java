@@ -4,6 +4,7 @@ import fun.ai.studio.common.Result;
 import fun.ai.studio.config.DeployAcrProperties;
 import fun.ai.studio.config.DeployGitProperties;
 import fun.ai.studio.deploy.DeployClient;
+import fun.ai.studio.deploy.DeployJobIndex;
 import fun.ai.studio.entity.FunAiApp;
 import fun.ai.studio.entity.request.DeployJobCreateRequest;
 import fun.ai.studio.entity.response.deploy.DeployJobListResult;
@@ -35,51 +36,30 @@ public class FunAiDeployController {
     private final FunAiAppService funAiAppService;
     private final DeployGitProperties deployGitProperties;
     private final DeployAcrProperties deployAcrProperties;
+    private final DeployJobIndex deployJobIndex;
     private static final int MAX_RUNNING_APPS_PER_USER = 3;
 
     public FunAiDeployController(DeployClient deployClient,
                                  FunAiAppService funAiAppService,
                                  DeployGitProperties deployGitProperties,
-                                 DeployAcrProperties deployAcrProperties) {
+                                 DeployAcrProperties deployAcrProperties,
+                                 DeployJobIndex deployJobIndex) {
         this.deployClient = deployClient;
         this.funAiAppService = funAiAppService;
         this.deployGitProperties = deployGitProperties;
         this.deployAcrProperties = deployAcrProperties;
+        this.deployJobIndex = deployJobIndex;
     }
 
     private void bestEffortFillDeployAccessUrl(List<FunAiApp> apps) {
         if (apps == null || apps.isEmpty()) return;
         try {
             if (deployClient == null || !deployClient.isEnabled()) return;
-            // 每用户 app 上限 20，这里拿 200 条足够覆盖活跃 job
-            List<Map<String, Object>> jobs = deployClient.listJobs(200);
-            if (jobs == null || jobs.isEmpty()) return;
-
-            Map<Long, String> appPreview = new HashMap<>();
-            for (Map<String, Object> j : jobs) {
-                if (j == null) continue;
-                Object payloadObj = j.get("payload");
-                if (!(payloadObj instanceof Map)) continue;
-                Map<?, ?> payload = (Map<?, ?>) payloadObj;
-                Object appIdObj = payload.get("appId");
-                if (appIdObj == null) continue;
-                Long appId;
-                try {
-                    appId = Long.valueOf(String.valueOf(appIdObj));
-                } catch (Exception ignore) {
-                    continue;
-                }
-                Object status = j.get("status");
-                if (status == null || !"SUCCEEDED".equals(String.valueOf(status))) continue;
-                Object deployObj = j.get("deployUrl");
-                String deployUrl = deployObj == null ? null : String.valueOf(deployObj);
-                if (deployUrl == null || deployUrl.isBlank()) continue;
-                appPreview.put(appId, deployUrl);
-            }
-
             for (FunAiApp a : apps) {
                 if (a == null || a.getId() == null) continue;
-                String preview = appPreview.get(a.getId());
+                // 只读本地部署索引（后台轮询 + 事件更新），不再调用 listJobs
+                DeployJobIndex.AppDeployState state = deployJobIndex.get(a.getId());
+                String preview = state == null ? null : state.deployUrl();
                 // 约定：只有 READY 才给出“部署态访问地址”。下线（UPLOADED=1）后，不应继续展示旧的 deployUrl。
                 if (StringUtils.hasText(preview)
                         && a.getAppStatus() != null
@@ -164,6 +144,7 @@ public class FunAiDeployController {
         body.put("payload", payload);
 
         Map<String, Object> created = deployClient.createJob(body);
+        deployJobIndex.onJobCreated(created);
         try {
             // 成功创建 Job 后，将 app 标记为部署中（用于前端展示 & 运行中槽位统计）
             funAiAppService.markDeploying(userId, appId);
@@ -234,6 +215,7 @@ public class FunAiDeployController {
     })
     public Result<Map<String, Object>> getJob(@RequestParam String jobId) {
         Map<String, Object> job = deployClient.getJob(jobId);
+        deployJobIndex.onJobUpdated(job);
         if (job != null) {
             Object deployObj = job.get("deployUrl");
             String deployUrl = deployObj == null ? null : String.valueOf(deployObj);
@@ -265,7 +247,9 @@ public class FunAiDeployController {
         if (jobId == null || jobId.trim().isEmpty()) {
             return Result.error("jobId 不能为空");
         }
-        return Result.success(deployClient.cancelJob(jobId.trim()));
+        Map<String, Object> cancelled = deployClient.cancelJob(jobId.trim());
+        deployJobIndex.onJobUpdated(cancelled);
+        return Result.success(cancelled);
     }
 
     @PostMapping("/app/stop")
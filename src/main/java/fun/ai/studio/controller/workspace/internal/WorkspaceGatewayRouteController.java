@@ -1,12 +1,12 @@
 package fun.ai.studio.controller.workspace.internal;
 
-import fun.ai.studio.entity.FunAiApp;
 import fun.ai.studio.entity.FunAiWorkspaceNode;
-import fun.ai.studio.service.FunAiAppService;
+import fun.ai.studio.workspace.WorkspaceGatewayRouteIndex;
 import fun.ai.studio.workspace.WorkspaceNodeResolver;
 import io.swagger.v3.oas.annotations.Hidden;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,6 +19,8 @@ import org.springframework.web.bind.annotation.RestController;
  * 设计要点：
  * - 返回 204 + Header，避免 body
  * - 落点为粘性：首次访问会分配节点
+ * - 热路径全内存：appId -> userId（WorkspaceGatewayRouteIndex）+ userId -> node（WorkspaceNodeRoutingTable）
+ * - 返回 Cache-Control / X-Accel-Expires，入口 Nginx 可对 auth 子请求结果做 proxy_cache
  */
 @RestController
 @RequestMapping("/api/fun-ai/workspace/internal/gateway")
@@ -26,12 +28,19 @@ import org.springframework.web.bind.annotation.RestController;
 public class WorkspaceGatewayRouteController {
 
     private final WorkspaceNodeResolver nodeResolver;
-    private final FunAiAppService funAiAppService;
+    private final WorkspaceGatewayRouteIndex routeIndex;
+    /**
+     * 入口 Nginx 缓存 auth 子请求结果的秒数（0 表示不缓存）。
+     * 落点变更（reassign/drain）最多延迟该时长在入口侧生效。
+     */
+    private final long routeCacheSeconds;
 
     public WorkspaceGatewayRouteController(WorkspaceNodeResolver nodeResolver,
-                                           FunAiAppService funAiAppService) {
+                                           WorkspaceGatewayRouteIndex routeIndex,
+                                           @Value("${funai.workspace-gateway.route-cache-seconds:30}") long routeCacheSeconds) {
         this.nodeResolver = nodeResolver;
-        this.funAiAppService = funAiAppService;
+        this.routeIndex = routeIndex;
+        this.routeCacheSeconds = Math.max(0, routeCacheSeconds);
     }
 
     @GetMapping("/node")
@@ -42,20 +51,25 @@ public class WorkspaceGatewayRouteController {
     ) {
         Long targetUserId = userId;
         if (targetUserId == null && appId != null) {
-            FunAiApp app = funAiAppService == null ? null : funAiAppService.getById(appId);
-            if (app == null || app.getUserId() == null) {
+            targetUserId = routeIndex.resolveUserId(appId);
+            if (targetUserId == null) {
                 return ResponseEntity.notFound().build();
             }
-            targetUserId = app.getUserId();
         }
         if (targetUserId == null) {
             return ResponseEntity.badRequest().build();
         }
         FunAiWorkspaceNode node = nodeResolver.resolve(targetUserId);
-        return ResponseEntity.noContent()
+        ResponseEntity.HeadersBuilder<?> resp = ResponseEntity.noContent()
                 .header("X-WS-Node", node.getNginxBaseUrl())
-                .header("X-WS-NodeId", String.valueOf(node.getId()))
-                .build();
+                .header("X-WS-NodeId", String.valueOf(node.getId()));
+        if (routeCacheSeconds > 0) {
+            resp.header("Cache-Control", "public, max-age=" + routeCacheSeconds)
+                    .header("X-Accel-Expires", String.valueOf(routeCacheSeconds));
+        } else {
+            resp.header("Cache-Control", "no-store");
+        }
+        return resp.build();
     }
 }
 
@@ -4,6 +4,7 @@ import fun.ai.studio.config.WorkspaceNodeProxyProperties;
 import fun.ai.studio.config.WorkspaceNodeProxySigner;
 import fun.ai.studio.entity.FunAiApp;
 import fun.ai.studio.service.FunAiAppService;
+import fun.ai.studio.workspace.WorkspaceNodeHttpClient;
 import fun.ai.studio.workspace.WorkspaceNodeResolver;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -24,11 +25,9 @@ import org.springframework.web.bind.annotation.RestController;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.LinkedHashMap;
@@ -45,22 +44,18 @@ public class FunAiWorkspaceRealtimeLogController {
     private final FunAiAppService funAiAppService;
     private final WorkspaceNodeProxyProperties proxyProperties;
     private final WorkspaceNodeResolver nodeResolver;
-    private final HttpClient httpClient;
-    private final SecureRandom random = new SecureRandom();
+    private final WorkspaceNodeHttpClient httpClient;
 
     public FunAiWorkspaceRealtimeLogController(
             FunAiAppService funAiAppService,
             WorkspaceNodeProxyProperties proxyProperties,
-            WorkspaceNodeResolver nodeResolver
+            WorkspaceNodeResolver nodeResolver,
+            WorkspaceNodeHttpClient httpClient
     ) {
         this.funAiAppService = funAiAppService;
         this.proxyProperties = proxyProperties;
         this.nodeResolver = nodeResolver;
-        HttpClient.Builder b = HttpClient.newBuilder();
-        if (proxyProperties != null && proxyProperties.getConnectTimeoutMs() > 0) {
-            b.connectTimeout(Duration.ofMillis(proxyProperties.getConnectTimeoutMs()));
-        }
-        this.httpClient = b.build();
+        this.httpClient = httpClient;
     }
 
     @GetMapping(path = "/log", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -141,7 +136,7 @@ public class FunAiWorkspaceRealtimeLogController {
     private HttpResponse<InputStream> requestStream(String method, String baseUrl, String path, String query) {
         byte[] body = new byte[0];
         long ts = Instant.now().getEpochSecond();
-        String nonce = randomNonce();
+        String nonce = WorkspaceNodeProxySigner.randomNonce();
         String bodySha;
         try {
             bodySha = WorkspaceNodeProxySigner.sha256Hex(body);
@@ -157,7 +152,7 @@ public class FunAiWorkspaceRealtimeLogController {
         }
 
         URI uri = URI.create(joinUrl(baseUrl, path, query));
-        HttpRequest.Builder reqB = HttpRequest.newBuilder().uri(uri).GET();
+        HttpRequest.Builder reqB = httpClient.newRequest(uri).GET();
         if (proxyProperties.getReadTimeoutMs() > 0) {
             reqB.timeout(Duration.ofMillis(proxyProperties.getReadTimeoutMs()));
         }
@@ -166,7 +161,7 @@ public class FunAiWorkspaceRealtimeLogController {
         reqB.header(HDR_SIG, sig);
 
         try {
-            return httpClient.send(reqB.build(), HttpResponse.BodyHandlers.ofInputStream());
+            return httpClient.sendStreaming(reqB.build());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("workspace-node request interrupted");
@@ -196,13 +191,6 @@ public class FunAiWorkspaceRealtimeLogController {
         return URLEncoder.encode(s == null ? "" : s, StandardCharsets.UTF_8);
     }
 
-    private String randomNonce() {
-        byte[] b = new byte[16];
-        random.nextBytes(b);
-        StringBuilder sb = new StringBuilder(b.length * 2);
-        for (byte x : b) sb.append(String.format("%02x", x));
-        return sb.toString();
-    }
 
     @Schema(name = "RealtimeLogResponse", description = "realtime/log 返回 JSON")
     public static class LogResponse {
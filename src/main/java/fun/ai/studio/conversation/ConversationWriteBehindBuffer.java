@@ -0,0 +1,533 @@
+package fun.ai.studio.conversation;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import fun.ai.studio.app.AppTombstoneIndex;
+import fun.ai.studio.entity.FunAiConversation;
+import fun.ai.studio.entity.FunAiConversationMessage;
+import fun.ai.studio.mapper.FunAiConversationMapper;
+import fun.ai.studio.mapper.FunAiConversationMessageMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 会话消息写缓冲（write-behind，可选）：AI 生成过程中前端高频调用 /message/add，
+ * 每次追加只用一条条件 UPDATE 分配序号，消息行进入本实例的会话内存日志即返回，由后台按批 INSERT。
+ *
+ * <ul>
+ *     <li>序号：与同步追加相同由 allocateSequence 分配（同时推进 message_count/last_message_time），
+ *     落库不再改写会话行，返回给前端的序号之后不会变化</li>
+ *     <li>落库：每个会话一批一个事务 = 一条多行 INSERT + 窗口裁剪 DELETE；
+ *     按 flush-interval-ms 定时或攒够 max-batch 条立即触发，提交次数按批而不是按条</li>
+ *     <li>读己之写：本实例的详情/分页读取把未落库的消息合并进结果（{@link #snapshot(Long)}）；
+ *     未落库的消息 id 为空，前端以 conversationId + sequence 定位（回退接口支持按 sequence 回退）</li>
+ *     <li>路由：未落库的消息只在本实例可见，须由网关把同一用户的会话请求固定到同一实例；
+ *     未确认（sticky-routing=false）时不启用，退回同步写</li>
+ *     <li>坏行：追加时按 max-content-bytes 校验正文长度；整批连续失败 max-flush-attempts 次（或停机时）改为逐行写入，
+ *     仍因数据本身失败（约束/超长/编码等）的行写入死信日志（logger fun.ai.studio.conversation.deadletter，含正文）后丢弃并计数，
+ *     不再卡住该会话后续消息；DB 不可用等基础设施故障不丢行，留待下一轮</li>
+ *     <li>关闭：@PreDestroy 先停止接收新追加（退回同步写），再把所有会话日志落库；仍未写入的消息写入死信日志</li>
+ *     <li>代价：进程崩溃会丢失最近一个落库间隔内的消息（序号已分配，留下空号）</li>
+ * </ul>
+ */
+@Component
+public class ConversationWriteBehindBuffer implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(ConversationWriteBehindBuffer.class);
+    private static final Logger deadLetterLog = LoggerFactory.getLogger("fun.ai.studio.conversation.deadletter");
+
+    /**
+     * git commit SHA 最长 64 个字符（SHA-256）
+     */
+    private static final int MAX_GIT_COMMIT_SHA_LENGTH = 64;
+
+    /**
+     * 只读快照：尚未落库的消息（按序号升序，均为副本）。
+     */
+    public record Snapshot(List<FunAiConversationMessage> messages) {
+    }
+
+    private static final class ConversationLog {
+        private final Long conversationId;
+        private final Long userId;
+        private final Long appId;
+        private final int maxMessages;
+        /**
+         * 按序号升序（序号在持有本对象锁时分配）
+         */
+        private final ArrayDeque<FunAiConversationMessage> pending = new ArrayDeque<>();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private long touchedMs;
+        /**
+         * 当前队首批次连续落库失败次数（队首出队后清零）
+         */
+        private int headAttempts;
+        /**
+         * 已移出 logs：追加方需重新获取
+         */
+        private boolean closed;
+
+        ConversationLog(Long conversationId, Long userId, Long appId, int maxMessages) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+            this.appId = appId;
+            this.maxMessages = maxMessages;
+            this.touchedMs = System.currentTimeMillis();
+        }
+    }
+
+    private final ConversationWriteBehindProperties props;
+    private final FunAiConversationMapper conversationMapper;
+    private final FunAiConversationMessageMapper messageMapper;
+    private final MessageContentCodec contentCodec;
+    private final AppTombstoneIndex tombstoneIndex;
+    private final TransactionTemplate txTemplate;
+
+    private final ConcurrentHashMap<Long, ConversationLog> logs = new ConcurrentHashMap<>();
+    private volatile boolean closing;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder flushedMessages = new LongAdder();
+    private final LongAdder flushedBatches = new LongAdder();
+    private final LongAdder flushFailed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    public ConversationWriteBehindBuffer(ConversationWriteBehindProperties props,
+                                         FunAiConversationMapper conversationMapper,
+                                         FunAiConversationMessageMapper messageMapper,
+                                         MessageContentCodec contentCodec,
+                                         AppTombstoneIndex tombstoneIndex,
+                                         PlatformTransactionManager transactionManager) {
+        this.props = props;
+        this.conversationMapper = conversationMapper;
+        this.messageMapper = messageMapper;
+        this.contentCodec = contentCodec;
+        this.tombstoneIndex = tombstoneIndex;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        // 独立事务：在外层事务（例如回退）中调用时先行提交，外层随后的读取能看到
+        this.txTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void checkRouting() {
+        if (props != null && props.isEnabled() && !props.isStickyRouting()) {
+            log.error("conversation write-behind requires sticky routing (funai.conversation.write-behind.sticky-routing=true), "
+                    + "falling back to synchronous appends");
+        }
+    }
+
+    public boolean isEnabled() {
+        return props != null && props.isEnabled() && props.isStickyRouting() && !closing;
+    }
+
+    /**
+     * 分配序号（一条条件 UPDATE）后把消息加入会话内存日志（首次追加该会话时查库校验归属）。
+     *
+     * @return 已分配序号的消息副本（id 为空）
+     */
+    public FunAiConversationMessage append(Long userId, Long conversationId, String role, String content,
+                                           String gitCommitSha, int maxMessages) {
+        // 落库时才失败的行调用方已经收不到错误：能在这里判断的先拒绝
+        int maxBytes = Math.max(1, props.getMaxContentBytes());
+        if (content != null && (long) content.length() * 3 > maxBytes
+                && content.getBytes(StandardCharsets.UTF_8).length > maxBytes) {
+            throw new IllegalArgumentException("消息内容过长（最多 " + maxBytes + " 字节）");
+        }
+        if (gitCommitSha != null && gitCommitSha.length() > MAX_GIT_COMMIT_SHA_LENGTH) {
+            throw new IllegalArgumentException("gitCommitSha 过长");
+        }
+        while (true) {
+            ConversationLog cl = logFor(userId, conversationId, maxMessages);
+            FunAiConversationMessage m = new FunAiConversationMessage();
+            boolean full;
+            synchronized (cl) {
+                if (cl.closed) continue;
+                if (cl.pending.size() >= Math.max(1, props.getMaxPendingPerConversation())) {
+                    throw new IllegalStateException("会话消息写入繁忙，请稍后重试");
+                }
+                // 持有会话日志锁分配序号：pending 按序号升序
+                FunAiConversationMapper.AppendSlot slot = new FunAiConversationMapper.AppendSlot();
+                slot.setConversationId(conversationId);
+                slot.setUserId(userId);
+                slot.setMaxMessages(Math.max(1, maxMessages));
+                if (conversationMapper.allocateSequence(slot) == 0) {
+                    // 归属已在 logFor 校验：会话已被删除，或所属应用已写入墓碑
+                    dropped.add(cl.pending.size());
+                    cl.pending.clear();
+                    close(cl);
+                    throw new IllegalArgumentException("会话不存在");
+                }
+                m.setConversationId(conversationId);
+                m.setRole(role);
+                m.setContent(content);
+                m.setSequence(slot.getSequence());
+                m.setGitCommitSha(gitCommitSha);
+                m.setCreateTime(LocalDateTime.now());
+                cl.pending.addLast(m);
+                cl.touchedMs = System.currentTimeMillis();
+                full = cl.pending.size() >= Math.max(1, props.getMaxBatch());
+                m = copyOf(m);
+            }
+            appended.increment();
+            if (full) {
+                // 攒满一批：由本次追加的调用线程落库（其它线程正在落库该会话时跳过，由其顺带写完）
+                flush(cl, false);
+            }
+            return m;
+        }
+    }
+
+    /**
+     * 本实例中该会话尚未落库的消息；没有时返回 null。
+     */
+    public Snapshot snapshot(Long conversationId) {
+        ConversationLog cl = conversationId == null ? null : logs.get(conversationId);
+        if (cl == null) return null;
+        synchronized (cl) {
+            if (cl.closed || cl.pending.isEmpty()) return null;
+            List<FunAiConversationMessage> copies = new ArrayList<>(cl.pending.size());
+            for (FunAiConversationMessage m : cl.pending) {
+                copies.add(copyOf(m));
+            }
+            return new Snapshot(copies);
+        }
+    }
+
+    /**
+     * 立即落库该会话并移出内存（回退等直接改写 last_sequence 的操作之前调用）。
+     */
+    public void flushAndEvict(Long conversationId) {
+        ConversationLog cl = conversationId == null ? null : logs.get(conversationId);
+        if (cl == null) return;
+        flush(cl, true);
+        synchronized (cl) {
+            if (!cl.pending.isEmpty()) {
+                throw new IllegalStateException("会话消息尚未写入完成，请稍后重试");
+            }
+            close(cl);
+        }
+    }
+
+    /**
+     * 丢弃该会话未落库的消息并移出内存（删除会话时调用）。
+     */
+    public void discard(Long conversationId) {
+        ConversationLog cl = conversationId == null ? null : logs.get(conversationId);
+        if (cl == null) return;
+        cl.flushLock.lock();
+        try {
+            synchronized (cl) {
+                dropped.add(cl.pending.size());
+                cl.pending.clear();
+                close(cl);
+            }
+        } finally {
+            cl.flushLock.unlock();
+        }
+    }
+
+    /**
+     * 定时落库所有有待写消息的会话；空闲且已全部落库的会话日志移出内存。
+     */
+    @Scheduled(
+            initialDelayString = "${funai.conversation.write-behind.flush-interval-ms:200}",
+            fixedDelayString = "${funai.conversation.write-behind.flush-interval-ms:200}"
+    )
+    public void flushAll() {
+        if (logs.isEmpty()) return;
+        long idleBefore = System.currentTimeMillis() - Math.max(1, props.getIdleEvictSeconds()) * 1000L;
+        for (ConversationLog cl : logs.values()) {
+            boolean hasPending;
+            synchronized (cl) {
+                hasPending = !cl.pending.isEmpty();
+                if (!hasPending && cl.touchedMs < idleBefore && !cl.flushLock.isLocked()) {
+                    close(cl);
+                    continue;
+                }
+            }
+            if (hasPending) flush(cl, false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closing = true;
+        int remaining = 0;
+        for (ConversationLog cl : logs.values()) {
+            // closing=true 时整批失败直接逐行写入
+            flush(cl, true);
+            synchronized (cl) {
+                for (FunAiConversationMessage m : cl.pending) {
+                    deadLetter(m, "unflushed on shutdown");
+                }
+                remaining += cl.pending.size();
+                cl.pending.clear();
+            }
+        }
+        if (remaining > 0) {
+            log.error("conversation write-behind shutdown with unflushed messages, written to dead letter log: count={}", remaining);
+        } else {
+            log.info("conversation write-behind flushed on shutdown: conversations={}", logs.size());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", isEnabled());
+        out.put("conversations", logs.size());
+        out.put("pending", pendingCount());
+        out.put("appended", appended.sum());
+        out.put("flushedMessages", flushedMessages.sum());
+        out.put("flushedBatches", flushedBatches.sum());
+        out.put("flushFailed", flushFailed.sum());
+        out.put("dropped", dropped.sum());
+        out.put("deadLettered", deadLettered.sum());
+        return out;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("funai.conversation_write_behind.appended", appended, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.conversation_write_behind.flushed_messages", flushedMessages, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("funai.conversation_write_behind.flushed_batches", flushedBatches, LongAdder::sum)
+                .description("落库事务数（每批一次提交）")
+                .register(registry);
+        FunctionCounter.builder("funai.conversation_write_behind.flush_failed", flushFailed, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.conversation_write_behind.dropped", dropped, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.conversation_write_behind.dead_lettered", deadLettered, LongAdder::sum)
+                .description("无法落库、写入死信日志后丢弃的消息数")
+                .register(registry);
+        Gauge.builder("funai.conversation_write_behind.pending", this, ConversationWriteBehindBuffer::pendingCount)
+                .register(registry);
+    }
+
+    private ConversationLog logFor(Long userId, Long conversationId, int maxMessages) {
+        ConversationLog cl = logs.get(conversationId);
+        if (cl == null) {
+            FunAiConversation conversation = conversationMapper.selectById(conversationId);
+            if (conversation == null || tombstoneIndex.isDeleted(conversation.getAppId())) {
+                throw new IllegalArgumentException("会话不存在");
+            }
+            if (!conversation.getUserId().equals(userId)) {
+                throw new IllegalArgumentException("无权访问该会话");
+            }
+            ConversationLog fresh = new ConversationLog(conversationId, conversation.getUserId(),
+                    conversation.getAppId(), maxMessages);
+            cl = logs.putIfAbsent(conversationId, fresh);
+            if (cl == null) cl = fresh;
+        }
+        if (!cl.userId.equals(userId)) {
+            throw new IllegalArgumentException("无权访问该会话");
+        }
+        // 日志常驻：应用在日志创建之后才删除时也要拦截（分配序号的 UPDATE 还会再按 DB 墓碑校验一次）
+        if (tombstoneIndex.isDeleted(cl.appId)) {
+            throw new IllegalArgumentException("会话不存在");
+        }
+        return cl;
+    }
+
+    /**
+     * 落库该会话的待写消息（每批一个事务，直到写完）。
+     *
+     * @param wait false：其它线程正在落库该会话时直接返回
+     */
+    private void flush(ConversationLog cl, boolean wait) {
+        if (wait) {
+            cl.flushLock.lock();
+        } else if (!cl.flushLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                List<FunAiConversationMessage> batch = new ArrayList<>();
+                synchronized (cl) {
+                    if (cl.closed || cl.pending.isEmpty()) return;
+                    Iterator<FunAiConversationMessage> it = cl.pending.iterator();
+                    int max = Math.max(1, props.getMaxBatch());
+                    while (it.hasNext() && batch.size() < max) {
+                        batch.add(copyOf(it.next()));
+                    }
+                }
+                try {
+                    // 压缩在锁外做，不阻塞同一会话的追加；batch 保留原文，逐行重试时重新编码
+                    List<FunAiConversationMessage> rows = new ArrayList<>(batch.size());
+                    for (FunAiConversationMessage m : batch) {
+                        FunAiConversationMessage row = copyOf(m);
+                        contentCodec.encode(row);
+                        rows.add(row);
+                    }
+                    txTemplate.executeWithoutResult(status -> {
+                        messageMapper.insertBatch(rows);
+                        trimWindow(cl, rows.get(rows.size() - 1).getSequence());
+                    });
+                } catch (Exception e) {
+                    flushFailed.increment();
+                    if (conversationGone(cl)) {
+                        // 会话已删除（外键失败）：待写消息无处可写
+                        synchronized (cl) {
+                            log.warn("conversation write-behind drop pending, conversation gone: conversationId={}, count={}",
+                                    cl.conversationId, cl.pending.size());
+                            dropped.add(cl.pending.size());
+                            cl.pending.clear();
+                            close(cl);
+                        }
+                        return;
+                    }
+                    int attempts;
+                    synchronized (cl) {
+                        attempts = ++cl.headAttempts;
+                    }
+                    log.warn("conversation write-behind flush failed: conversationId={}, attempts={}, error={}",
+                            cl.conversationId, attempts, e.getMessage(), e);
+                    if (attempts < Math.max(1, props.getMaxFlushAttempts()) && !closing) {
+                        // 留待下一轮定时落库
+                        return;
+                    }
+                    // 同一批反复失败：逐行写入，剔除坏行；基础设施故障时停止，留待下一轮
+                    if (!persistOneByOne(cl, batch)) return;
+                    continue;
+                }
+                removeHead(cl, batch.size());
+                flushedBatches.increment();
+                flushedMessages.add(batch.size());
+            }
+        } finally {
+            cl.flushLock.unlock();
+        }
+    }
+
+    /**
+     * 逐行写入（每行一个事务）：因数据本身失败的行写死信后跳过。
+     *
+     * @return false 表示遇到基础设施故障，未写完（已写入/已死信的行已出队）
+     */
+    private boolean persistOneByOne(ConversationLog cl, List<FunAiConversationMessage> batch) {
+        int done = 0;
+        try {
+            for (FunAiConversationMessage m : batch) {
+                try {
+                    FunAiConversationMessage row = copyOf(m);
+                    contentCodec.encode(row);
+                    txTemplate.executeWithoutResult(status -> messageMapper.insertBatch(List.of(row)));
+                    flushedMessages.increment();
+                } catch (Exception e) {
+                    if (!isBadRow(e)) {
+                        log.warn("conversation write-behind row insert failed, retry later: conversationId={}, sequence={}, error={}",
+                                cl.conversationId, m.getSequence(), e.getMessage());
+                        return false;
+                    }
+                    deadLetter(m, e.getMessage());
+                }
+                done++;
+            }
+        } finally {
+            removeHead(cl, done);
+        }
+        try {
+            txTemplate.executeWithoutResult(status -> trimWindow(cl, batch.get(batch.size() - 1).getSequence()));
+        } catch (Exception e) {
+            // 下一批落库时会再裁剪
+            log.warn("conversation write-behind trim failed: conversationId={}, error={}", cl.conversationId, e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * 数据本身导致的失败（约束/超长/非法值、编码异常等），重试不会成功；事务/连接等故障返回 false。
+     */
+    private static boolean isBadRow(Exception e) {
+        if (e instanceof DataIntegrityViolationException) return true;
+        return !(e instanceof DataAccessException) && !(e instanceof TransactionException);
+    }
+
+    private void deadLetter(FunAiConversationMessage m, String reason) {
+        deadLettered.increment();
+        deadLetterLog.error("conversationId={}, sequence={}, role={}, gitCommitSha={}, createTime={}, reason={}, content={}",
+                m.getConversationId(), m.getSequence(), m.getRole(), m.getGitCommitSha(), m.getCreateTime(), reason, m.getContent());
+    }
+
+    private void removeHead(ConversationLog cl, int n) {
+        if (n <= 0) return;
+        synchronized (cl) {
+            for (int i = 0; i < n; i++) cl.pending.pollFirst();
+            cl.headAttempts = 0;
+        }
+    }
+
+    private boolean conversationGone(ConversationLog cl) {
+        try {
+            return conversationMapper.selectById(cl.conversationId) == null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * FIFO 窗口：与同步追加相同，按序号范围裁剪
+     */
+    private void trimWindow(ConversationLog cl, int newest) {
+        int max = Math.max(1, cl.maxMessages);
+        if (newest > max) {
+            messageMapper.delete(
+                new LambdaQueryWrapper<FunAiConversationMessage>()
+                    .eq(FunAiConversationMessage::getConversationId, cl.conversationId)
+                    .le(FunAiConversationMessage::getSequence, newest - max)
+            );
+        }
+    }
+
+    /**
+     * 须持有 cl 锁。
+     */
+    private void close(ConversationLog cl) {
+        cl.closed = true;
+        logs.remove(cl.conversationId, cl);
+    }
+
+    private static FunAiConversationMessage copyOf(FunAiConversationMessage m) {
+        FunAiConversationMessage c = new FunAiConversationMessage();
+        c.setConversationId(m.getConversationId());
+        c.setRole(m.getRole());
+        c.setContent(m.getContent());
+        c.setSequence(m.getSequence());
+        c.setGitCommitSha(m.getGitCommitSha());
+        c.setCreateTime(m.getCreateTime());
+        return c;
+    }
+
+    private long pendingCount() {
+        long n = 0;
+        for (ConversationLog cl : logs.values()) {
+            synchronized (cl) {
+                n += cl.pending.size();
+            }
+        }
+        return n;
+    }
+}
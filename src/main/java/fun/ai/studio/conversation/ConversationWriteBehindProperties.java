@@ -0,0 +1,120 @@
+package fun.ai.studio.conversation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话消息写缓冲配置（{@link ConversationWriteBehindBuffer}）。
+ *
+ * <pre>
+ * funai.conversation.write-behind.enabled=false
+ * funai.conversation.write-behind.sticky-routing=false
+ * funai.conversation.write-behind.flush-interval-ms=200
+ * funai.conversation.write-behind.max-batch=50
+ * funai.conversation.write-behind.max-pending-per-conversation=500
+ * funai.conversation.write-behind.idle-evict-seconds=120
+ * funai.conversation.write-behind.max-flush-attempts=3
+ * funai.conversation.write-behind.max-content-bytes=65535
+ * </pre>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.conversation.write-behind")
+public class ConversationWriteBehindProperties {
+    /**
+     * true：追加消息分配序号后先进入内存日志即返回（返回的消息 id 为空，落库后才有 id），由后台按批写库
+     */
+    private boolean enabled = false;
+    /**
+     * 网关已把同一用户的会话请求固定到同一实例（例如 nginx 对 /api/fun-ai/conversation/ 使用 hash $arg_userId consistent）：
+     * 未落库的消息只在本实例可见，为 false 时即使 enabled=true 也不启用写缓冲
+     */
+    private boolean stickyRouting = false;
+    /**
+     * 定时落库间隔（毫秒）：也是进程崩溃时最多丢失的时间窗口
+     */
+    private long flushIntervalMs = 200;
+    /**
+     * 单个会话攒够该条数立即落库（一条多行 INSERT + 一条会话 UPDATE，一次提交）
+     */
+    private int maxBatch = 50;
+    /**
+     * 单个会话未落库消息上限（DB 不可用时的保护）：超过后拒绝追加
+     */
+    private int maxPendingPerConversation = 500;
+    /**
+     * 会话日志空闲超过该时长（秒）且无未落库消息时移出内存
+     */
+    private long idleEvictSeconds = 120;
+    /**
+     * 同一批连续落库失败该次数后改为逐行写入，因数据本身失败的行写入死信日志后丢弃
+     */
+    private int maxFlushAttempts = 3;
+    /**
+     * 单条消息正文上限（UTF-8 字节，content 列为 TEXT）：追加时校验，超过直接拒绝
+     */
+    private int maxContentBytes = 65535;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isStickyRouting() {
+        return stickyRouting;
+    }
+
+    public void setStickyRouting(boolean stickyRouting) {
+        this.stickyRouting = stickyRouting;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public void setMaxBatch(int maxBatch) {
+        this.maxBatch = maxBatch;
+    }
+
+    public int getMaxPendingPerConversation() {
+        return maxPendingPerConversation;
+    }
+
+    public void setMaxPendingPerConversation(int maxPendingPerConversation) {
+        this.maxPendingPerConversation = maxPendingPerConversation;
+    }
+
+    public long getIdleEvictSeconds() {
+        return idleEvictSeconds;
+    }
+
+    public void setIdleEvictSeconds(long idleEvictSeconds) {
+        this.idleEvictSeconds = idleEvictSeconds;
+    }
+
+    public int getMaxFlushAttempts() {
+        return maxFlushAttempts;
+    }
+
+    public void setMaxFlushAttempts(int maxFlushAttempts) {
+        this.maxFlushAttempts = maxFlushAttempts;
+    }
+
+    public int getMaxContentBytes() {
+        return maxContentBytes;
+    }
+
+    public void setMaxContentBytes(int maxContentBytes) {
+        this.maxContentBytes = maxContentBytes;
+    }
+}
@@ -0,0 +1,292 @@
+package fun.ai.studio.conversation;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import fun.ai.studio.entity.FunAiConversationMessage;
+import fun.ai.studio.entity.FunAiMessageDict;
+import fun.ai.studio.mapper.FunAiConversationMessageMapper;
+import fun.ai.studio.mapper.FunAiMessageDictMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话消息 content 透明编解码：大消息以 zstd 压缩存入 content_zip，读取时按需解码。
+ *
+ * <ul>
+ *     <li>写：UTF-8 字节数达到 min-bytes 且压缩后不超过 max-ratio 时压缩（content 置空串），否则明文</li>
+ *     <li>读：只有需要 content 的查询才取 content_zip 并解码；只取消息头（headersOnly）时两列都不查询</li>
+ *     <li>字典（可选）：定时用近期消息训练，留出样本上收益达到 dict-min-gain 才入库并启用；
+ *     字典只增不删，历史消息按帧头中的字典 ID 找回对应字典，另一台实例在 dict-refresh-ms 内切到新字典</li>
+ * </ul>
+ */
+@Component
+public class MessageContentCodec implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(MessageContentCodec.class);
+
+    public static final int ENCODING_PLAIN = 0;
+    public static final int ENCODING_ZSTD = 1;
+
+    private static final String DECODE_FAILED_CONTENT = "[消息内容解码失败]";
+    private static final int HOLDOUT_EVERY = 10;
+
+    private final MessageContentCodecProperties props;
+    private final FunAiConversationMessageMapper messageMapper;
+    private final FunAiMessageDictMapper dictMapper;
+
+    /**
+     * dictId -> codec（0 为无字典）；字典不可变，加载后常驻
+     */
+    private final ConcurrentHashMap<Long, ZstdTextCodec> codecs = new ConcurrentHashMap<>();
+    private volatile ZstdTextCodec active;
+
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder notWorth = new LongAdder();
+    private final LongAdder encodeFailed = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder decodeFailed = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder dictsTrained = new LongAdder();
+
+    public MessageContentCodec(MessageContentCodecProperties props,
+                               FunAiConversationMessageMapper messageMapper,
+                               FunAiMessageDictMapper dictMapper) {
+        this.props = props;
+        this.messageMapper = messageMapper;
+        this.dictMapper = dictMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        ZstdTextCodec plain = new ZstdTextCodec(level(), null);
+        codecs.put(0L, plain);
+        active = plain;
+        refreshDictionary();
+    }
+
+    public boolean isEnabled() {
+        return props != null && props.isEnabled();
+    }
+
+    /**
+     * 写入前调用：按阈值把 content 转为压缩存储（原地修改，设置 contentEncoding）。
+     * 调用方插入后如需返回原文，自行回填 content。
+     */
+    public void encode(FunAiConversationMessage m) {
+        if (m == null) return;
+        m.setContentEncoding(ENCODING_PLAIN);
+        String content = m.getContent();
+        if (!isEnabled() || content == null) return;
+        // UTF-8 最多 3 字节/字符（BMP），字符数已足够小时不必编码成字节再判断
+        if ((long) content.length() * 3 < props.getMinBytes()) return;
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < Math.max(1, props.getMinBytes())) return;
+        byte[] zip;
+        try {
+            zip = active.encode(raw);
+        } catch (Exception e) {
+            encodeFailed.increment();
+            log.warn("message content encode failed, store plain: bytes={}, error={}", raw.length, e.getMessage());
+            return;
+        }
+        if (zip.length > raw.length * props.getMaxRatio()) {
+            notWorth.increment();
+            return;
+        }
+        m.setContent("");
+        m.setContentZip(zip);
+        m.setContentEncoding(ENCODING_ZSTD);
+        encoded.increment();
+        rawBytes.add(raw.length);
+        storedBytes.add(zip.length);
+    }
+
+    /**
+     * 读取后调用：压缩存储的消息解码回 content（释放 contentZip）；明文消息不处理。
+     */
+    public void decode(FunAiConversationMessage m) {
+        if (m == null || m.getContentEncoding() == null || m.getContentEncoding() != ENCODING_ZSTD) return;
+        byte[] zip = m.getContentZip();
+        m.setContentZip(null);
+        if (zip == null) return;
+        long t0 = System.nanoTime();
+        try {
+            m.setContent(codecFor(ZstdTextCodec.dictIdOf(zip)).decode(zip));
+            decoded.increment();
+        } catch (Exception e) {
+            decodeFailed.increment();
+            log.error("message content decode failed: messageId={}, error={}", m.getId(), e.getMessage(), e);
+            m.setContent(DECODE_FAILED_CONTENT);
+        } finally {
+            decodeNanos.add(System.nanoTime() - t0);
+        }
+    }
+
+    public void decode(List<FunAiConversationMessage> messages) {
+        if (messages == null) return;
+        for (FunAiConversationMessage m : messages) {
+            decode(m);
+        }
+    }
+
+    /**
+     * 切到库中最新的字典（dict-enabled=false 时编码不用字典；已用字典压缩的消息仍可解码）。
+     */
+    @Scheduled(
+            initialDelayString = "${funai.conversation.content-codec.dict-refresh-ms:600000}",
+            fixedDelayString = "${funai.conversation.content-codec.dict-refresh-ms:600000}"
+    )
+    public void refreshDictionary() {
+        if (!props.isDictEnabled()) {
+            active = codecs.get(0L);
+            return;
+        }
+        try {
+            FunAiMessageDict latest = dictMapper.selectOne(
+                new LambdaQueryWrapper<FunAiMessageDict>()
+                    .select(FunAiMessageDict::getId, FunAiMessageDict::getDictId)
+                    .orderByDesc(FunAiMessageDict::getId)
+                    .last("LIMIT 1")
+            );
+            if (latest == null || latest.getDictId() == null || latest.getDictId() == active.dictId()) return;
+            active = codecFor(latest.getDictId());
+            log.info("message content codec switched dictionary: dictId={}", latest.getDictId());
+        } catch (Exception e) {
+            log.warn("refresh message dictionary failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 用最近的大消息训练新字典：每 HOLDOUT_EVERY 条留出 1 条做评估，收益不足则不启用。
+     */
+    @Scheduled(cron = "${funai.conversation.content-codec.dict-train-cron:0 40 3 * * ?}")
+    @SchedulerLock(name = "messageDictTrain", lockAtLeastFor = "PT1M", lockAtMostFor = "PT30M")
+    public void trainDictionary() {
+        if (!isEnabled() || !props.isDictEnabled()) return;
+        try {
+            int minBytes = Math.max(1, props.getMinBytes());
+            List<FunAiConversationMessage> rows = messageMapper.selectList(
+                new LambdaQueryWrapper<FunAiConversationMessage>()
+                    .select(FunAiConversationMessage::getId, FunAiConversationMessage::getContent,
+                            FunAiConversationMessage::getContentEncoding, FunAiConversationMessage::getContentZip)
+                    .and(w -> w.eq(FunAiConversationMessage::getContentEncoding, ENCODING_ZSTD)
+                            .or().apply("LENGTH(content) >= {0}", minBytes))
+                    .orderByDesc(FunAiConversationMessage::getId)
+                    .last("LIMIT " + Math.max(1, props.getDictSampleMessages()))
+            );
+            List<byte[]> train = new ArrayList<>();
+            List<byte[]> holdout = new ArrayList<>();
+            for (FunAiConversationMessage m : rows) {
+                decode(m);
+                if (m.getContent() == null || DECODE_FAILED_CONTENT.equals(m.getContent())) continue;
+                byte[] raw = m.getContent().getBytes(StandardCharsets.UTF_8);
+                ((train.size() + holdout.size()) % HOLDOUT_EVERY == 0 ? holdout : train).add(raw);
+            }
+            if (train.size() < Math.max(1, props.getDictMinSamples()) || holdout.isEmpty()) {
+                log.info("message dictionary training skipped: samples={}", train.size());
+                return;
+            }
+
+            byte[] dict = ZstdTextCodec.trainDictionary(train, Math.max(1024, props.getDictSizeBytes()));
+            ZstdTextCodec candidate = new ZstdTextCodec(level(), dict);
+            if (candidate.dictId() == 0 || codecs.containsKey(candidate.dictId())) return;
+
+            ZstdTextCodec plain = codecs.get(0L);
+            long raw = 0, plainBytes = 0, dictBytes = 0;
+            for (byte[] s : holdout) {
+                raw += s.length;
+                plainBytes += plain.encode(s).length;
+                dictBytes += candidate.encode(s).length;
+            }
+            if (dictBytes > plainBytes * (1 - props.getDictMinGain())) {
+                log.info("message dictionary not adopted: holdout raw={}, plain={}, dict={}", raw, plainBytes, dictBytes);
+                return;
+            }
+
+            FunAiMessageDict row = new FunAiMessageDict();
+            row.setDictId(candidate.dictId());
+            row.setDictData(dict);
+            row.setSampleCount(train.size());
+            row.setEvalRawBytes(raw);
+            row.setEvalPlainBytes(plainBytes);
+            row.setEvalDictBytes(dictBytes);
+            dictMapper.insert(row);
+            codecs.put(candidate.dictId(), candidate);
+            active = candidate;
+            dictsTrained.increment();
+            log.info("message dictionary trained: dictId={}, samples={}, holdout raw={}, plain={}, dict={}",
+                    candidate.dictId(), train.size(), raw, plainBytes, dictBytes);
+        } catch (Exception e) {
+            log.warn("message dictionary training failed: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", isEnabled());
+        out.put("activeDictId", active == null ? 0 : active.dictId());
+        out.put("loadedDicts", codecs.size() - 1);
+        out.put("encoded", encoded.sum());
+        out.put("notWorth", notWorth.sum());
+        out.put("encodeFailed", encodeFailed.sum());
+        long raw = rawBytes.sum();
+        out.put("rawBytes", raw);
+        out.put("storedBytes", storedBytes.sum());
+        out.put("ratio", raw == 0 ? 0 : (double) storedBytes.sum() / raw);
+        out.put("decoded", decoded.sum());
+        out.put("decodeFailed", decodeFailed.sum());
+        long n = decoded.sum();
+        out.put("avgDecodeMicros", n == 0 ? 0 : decodeNanos.sum() / n / 1000);
+        out.put("dictsTrained", dictsTrained.sum());
+        return out;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("funai.message_codec.encoded", encoded, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.message_codec.not_worth", notWorth, LongAdder::sum)
+                .description("达到阈值但压缩收益不足、按明文存储的消息数")
+                .register(registry);
+        FunctionCounter.builder("funai.message_codec.raw_bytes", rawBytes, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.message_codec.stored_bytes", storedBytes, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.message_codec.decoded", decoded, LongAdder::sum).register(registry);
+        FunctionCounter.builder("funai.message_codec.decode_failed", decodeFailed, LongAdder::sum).register(registry);
+        Gauge.builder("funai.message_codec.active_dict_id", this, c -> c.active == null ? 0 : c.active.dictId())
+                .register(registry);
+    }
+
+    private ZstdTextCodec codecFor(long dictId) {
+        ZstdTextCodec c = codecs.get(dictId);
+        if (c != null) return c;
+        FunAiMessageDict row = dictMapper.selectOne(
+            new LambdaQueryWrapper<FunAiMessageDict>().eq(FunAiMessageDict::getDictId, dictId)
+        );
+        if (row == null || row.getDictData() == null) {
+            throw new IllegalStateException("message dictionary not found: dictId=" + dictId);
+        }
+        ZstdTextCodec loaded = new ZstdTextCodec(level(), row.getDictData());
+        ZstdTextCodec prev = codecs.putIfAbsent(dictId, loaded);
+        return prev != null ? prev : loaded;
+    }
+
+    private int level() {
+        int v = props == null ? 3 : props.getLevel();
+        return v <= 0 ? 3 : Math.min(v, 19);
+    }
+}
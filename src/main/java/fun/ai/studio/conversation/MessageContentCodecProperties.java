@@ -0,0 +1,158 @@
+package fun.ai.studio.conversation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话消息 content 压缩存储配置（{@link MessageContentCodec}）。
+ *
+ * <pre>
+ * funai.conversation.content-codec.enabled=true
+ * funai.conversation.content-codec.min-bytes=1024
+ * funai.conversation.content-codec.level=3
+ * funai.conversation.content-codec.max-ratio=0.9
+ * funai.conversation.content-codec.dict-enabled=false
+ * funai.conversation.content-codec.dict-size-bytes=65536
+ * funai.conversation.content-codec.dict-sample-messages=2000
+ * funai.conversation.content-codec.dict-min-samples=200
+ * funai.conversation.content-codec.dict-min-gain=0.05
+ * funai.conversation.content-codec.dict-train-cron=0 40 3 * * ?
+ * funai.conversation.content-codec.dict-refresh-ms=600000
+ * </pre>
+ */
+@Component
+@ConfigurationProperties(prefix = "funai.conversation.content-codec")
+public class MessageContentCodecProperties {
+    /**
+     * false：新消息一律明文写入（已压缩的历史消息仍可正常读取）
+     */
+    private boolean enabled = true;
+    /**
+     * content 的 UTF-8 字节数达到该值才压缩（短消息压缩收益小，且多一次解码）
+     */
+    private int minBytes = 1024;
+    /**
+     * zstd 压缩级别（1~19，越高越慢；3 为 zstd 默认）
+     */
+    private int level = 3;
+    /**
+     * 压缩后/原始 大于该比例时放弃压缩，按明文存储
+     */
+    private double maxRatio = 0.9;
+    /**
+     * 是否定时用近期消息训练字典（多数消息是代码/markdown，字典对 1~8KB 的消息收益明显）
+     */
+    private boolean dictEnabled = false;
+    /**
+     * 字典大小上限（字节）
+     */
+    private int dictSizeBytes = 64 * 1024;
+    /**
+     * 每次训练抽取的最近消息数（只取达到 min-bytes 的消息）
+     */
+    private int dictSampleMessages = 2000;
+    /**
+     * 样本少于该值不训练
+     */
+    private int dictMinSamples = 200;
+    /**
+     * 新字典在留出样本上比无字典至少再小这么多（比例）才启用
+     */
+    private double dictMinGain = 0.05;
+    /**
+     * 字典训练 cron（ShedLock 保证多实例只跑一次）
+     */
+    private String dictTrainCron = "0 40 3 * * ?";
+    /**
+     * 从 DB 刷新当前字典的间隔（毫秒）：另一台实例训练出的新字典在此间隔内生效
+     */
+    private long dictRefreshMs = 600_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMinBytes() {
+        return minBytes;
+    }
+
+    public void setMinBytes(int minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public double getMaxRatio() {
+        return maxRatio;
+    }
+
+    public void setMaxRatio(double maxRatio) {
+        this.maxRatio = maxRatio;
+    }
+
+    public boolean isDictEnabled() {
+        return dictEnabled;
+    }
+
+    public void setDictEnabled(boolean dictEnabled) {
+        this.dictEnabled = dictEnabled;
+    }
+
+    public int getDictSizeBytes() {
+        return dictSizeBytes;
+    }
+
+    public void setDictSizeBytes(int dictSizeBytes) {
+        this.dictSizeBytes = dictSizeBytes;
+    }
+
+    public int getDictSampleMessages() {
+        return dictSampleMessages;
+    }
+
+    public void setDictSampleMessages(int dictSampleMessages) {
+        this.dictSampleMessages = dictSampleMessages;
+    }
+
+    public int getDictMinSamples() {
+        return dictMinSamples;
+    }
+
+    public void setDictMinSamples(int dictMinSamples) {
+        this.dictMinSamples = dictMinSamples;
+    }
+
+    public double getDictMinGain() {
+        return dictMinGain;
+    }
+
+    public void setDictMinGain(double dictMinGain) {
+        this.dictMinGain = dictMinGain;
+    }
+
+    public String getDictTrainCron() {
+        return dictTrainCron;
+    }
+
+    public void setDictTrainCron(String dictTrainCron) {
+        this.dictTrainCron = dictTrainCron;
+    }
+
+    public long getDictRefreshMs() {
+        return dictRefreshMs;
+    }
+
+    public void setDictRefreshMs(long dictRefreshMs) {
+        this.dictRefreshMs = dictRefreshMs;
+    }
+}
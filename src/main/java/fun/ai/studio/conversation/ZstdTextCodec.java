@@ -0,0 +1,97 @@
+package fun.ai.studio.conversation;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 文本 zstd 编解码（可选预训练字典）。不依赖 Spring，基准测试直接使用。
+ *
+ * <ul>
+ *     <li>输出为标准 zstd frame：帧头自带原文长度和字典 ID（无字典为 0），解码时据此选字典</li>
+ *     <li>字典在构造时预处理一次（ZstdDictCompress/ZstdDictDecompress），实例线程安全，可全局共享</li>
+ * </ul>
+ */
+public final class ZstdTextCodec {
+
+    private final int level;
+    private final long dictId;
+    private final ZstdDictCompress dictCompress;
+    private final ZstdDictDecompress dictDecompress;
+
+    /**
+     * @param dict 训练得到的字典；null 表示不使用字典
+     */
+    public ZstdTextCodec(int level, byte[] dict) {
+        this.level = level;
+        if (dict == null || dict.length == 0) {
+            this.dictId = 0;
+            this.dictCompress = null;
+            this.dictDecompress = null;
+        } else {
+            this.dictId = Zstd.getDictIdFromDict(dict);
+            this.dictCompress = new ZstdDictCompress(dict, level);
+            this.dictDecompress = new ZstdDictDecompress(dict);
+        }
+    }
+
+    /**
+     * 字典 ID；无字典为 0。
+     */
+    public long dictId() {
+        return dictId;
+    }
+
+    public byte[] encode(byte[] raw) {
+        return dictCompress == null ? Zstd.compress(raw, level) : Zstd.compress(raw, dictCompress);
+    }
+
+    public byte[] encode(String text) {
+        return encode(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码 frame；frame 的字典 ID 必须与本实例一致（见 {@link #dictIdOf(byte[])}）。
+     */
+    public String decode(byte[] frame) {
+        long size = Zstd.getFrameContentSize(frame);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("invalid zstd frame content size: " + size);
+        }
+        long frameDict = dictIdOf(frame);
+        if (frameDict != dictId) {
+            throw new IllegalStateException("zstd dict mismatch: frame=" + frameDict + ", codec=" + dictId);
+        }
+        byte[] raw = dictDecompress == null
+                ? Zstd.decompress(frame, (int) size)
+                : Zstd.decompress(frame, dictDecompress, (int) size);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * frame 使用的字典 ID（无字典为 0）。
+     */
+    public static long dictIdOf(byte[] frame) {
+        return Zstd.getDictIdFromFrame(frame);
+    }
+
+    /**
+     * 用样本训练字典（zstd COVER 算法）。
+     *
+     * @param dictSize 字典大小上限（字节），一般 16KB~112KB
+     * @return 字典；样本过少/训练失败时抛出异常
+     */
+    public static byte[] trainDictionary(List<byte[]> samples, int dictSize) {
+        long total = 0;
+        for (byte[] s : samples) total += s.length;
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(Integer.MAX_VALUE, total), dictSize);
+        for (byte[] s : samples) {
+            trainer.addSample(s);
+        }
+        return trainer.trainSamples();
+    }
+}
@@ -3,6 +3,7 @@ package fun.ai.studio.deploy;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fun.ai.studio.common.Result;
+import fun.ai.studio.common.UpstreamMetrics;
 import fun.ai.studio.config.DeployProxyProperties;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
@@ -15,6 +16,8 @@ import org.springframework.web.reactive.function.client.ClientResponse;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 public class DeployAdminProxyClient {
@@ -85,25 +88,49 @@ public class DeployAdminProxyClient {
 
     public <T> Result<T> get(String path, MultiValueMap<String, String> params, String adminToken, ParameterizedTypeReference<Result<T>> type) {
         MultiValueMap<String, String> p = params == null ? new LinkedMultiValueMap<>() : params;
-        return webClient.get()
+        AtomicInteger httpStatus = new AtomicInteger(-1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        long t0 = System.nanoTime();
+        Result<T> r = webClient.get()
                 .uri(uriBuilder -> uriBuilder.path(path).queryParams(p).build())
                 .headers(h -> h.addAll(buildHeaders(adminToken)))
-                .exchangeToMono(resp -> exchangeToResult(resp, type))
+                .exchangeToMono(resp -> {
+                    httpStatus.set(resp.statusCode().value());
+                    return exchangeToResult(resp, type);
+                })
                 .timeout(Duration.ofSeconds(8))
-                .onErrorResume(e -> Mono.just(Result.error("deploy-proxy 请求失败: " + e.getClass().getSimpleName() + ": " + e.getMessage())))
+                .onErrorResume(e -> {
+                    error.set(e);
+                    return Mono.just(Result.error("deploy-proxy 请求失败: " + e.getClass().getSimpleName() + ": " + e.getMessage()));
+                })
                 .block();
+        UpstreamMetrics.record(UpstreamMetrics.CLIENT_DEPLOY_ADMIN, "GET", path,
+                error.get() == null ? httpStatus.get() : -1, error.get(), System.nanoTime() - t0);
+        return r;
     }
 
     public <T> Result<T> post(String path, MultiValueMap<String, String> params, Object body, String adminToken, ParameterizedTypeReference<Result<T>> type) {
         MultiValueMap<String, String> p = params == null ? new LinkedMultiValueMap<>() : params;
-        return webClient.post()
+        AtomicInteger httpStatus = new AtomicInteger(-1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        long t0 = System.nanoTime();
+        Result<T> r = webClient.post()
                 .uri(uriBuilder -> uriBuilder.path(path).queryParams(p).build())
                 .headers(h -> h.addAll(buildHeaders(adminToken)))
                 .bodyValue(body == null ? new Object() : body)
-                .exchangeToMono(resp -> exchangeToResult(resp, type))
+                .exchangeToMono(resp -> {
+                    httpStatus.set(resp.statusCode().value());
+                    return exchangeToResult(resp, type);
+                })
                 .timeout(Duration.ofSeconds(15))
-                .onErrorResume(e -> Mono.just(Result.error("deploy-proxy 请求失败: " + e.getClass().getSimpleName() + ": " + e.getMessage())))
+                .onErrorResume(e -> {
+                    error.set(e);
+                    return Mono.just(Result.error("deploy-proxy 请求失败: " + e.getClass().getSimpleName() + ": " + e.getMessage()));
+                })
                 .block();
+        UpstreamMetrics.record(UpstreamMetrics.CLIENT_DEPLOY_ADMIN, "POST", path,
+                error.get() == null ? httpStatus.get() : -1, error.get(), System.nanoTime() - t0);
+        return r;
     }
 }
 
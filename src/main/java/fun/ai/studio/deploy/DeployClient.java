@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fun.ai.studio.common.DeployProxyException;
 import fun.ai.studio.common.Result;
+import fun.ai.studio.common.UpstreamMetrics;
 import fun.ai.studio.config.DeployProxyProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -138,12 +139,16 @@ public class DeployClient {
         }
 
         HttpResponse<byte[]> resp;
+        long t0 = System.nanoTime();
         try {
             resp = httpClient.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_DEPLOY, m, pathAndQuery, resp.statusCode(), null, System.nanoTime() - t0);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_DEPLOY, m, pathAndQuery, -1, e, System.nanoTime() - t0);
             throw new DeployProxyException("deploy request interrupted");
         } catch (Exception e) {
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_DEPLOY, m, pathAndQuery, -1, e, System.nanoTime() - t0);
             throw new DeployProxyException("deploy request failed: " + e.getMessage());
         }
 
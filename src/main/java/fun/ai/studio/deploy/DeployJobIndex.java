@@ -0,0 +1,180 @@
+package fun.ai.studio.deploy;
+
+import fun.ai.studio.config.DeployProxyProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 部署 Job 本地索引：appId -> 最新 Job 状态 + 最近一次成功部署的 deployUrl（进程内，仅当前 API 实例）。
+ *
+ * <p>app/list、app/info、deploy/app/list 的热路径只读本索引（O(apps)），不再每次调用 listJobs(200) 并线性解析。</p>
+ *
+ * <ul>
+ *     <li>后台轮询（deploy-proxy.job-index-poll-ms）：拉取最新 N 条 Job 合并进索引；窗口外的 app 保留上一次结果</li>
+ *     <li>事件：本实例创建 Job 时调用 {@link #onJobCreated(Map)}，查询/取消时调用 {@link #onJobUpdated(Map)} 即时更新</li>
+ * </ul>
+ *
+ * <p>说明：Deploy 控制面暂无增量（since）查询接口，这里用“最新窗口轮询 + 合并”近似增量同步。</p>
+ */
+@Component
+public class DeployJobIndex {
+    private static final Logger log = LoggerFactory.getLogger(DeployJobIndex.class);
+
+    private final DeployClient deployClient;
+    private final DeployProxyProperties props;
+
+    private final ConcurrentHashMap<Long, AppDeployState> byApp = new ConcurrentHashMap<>();
+    private final AtomicLong lastPollAtMs = new AtomicLong(0);
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder pollErrors = new LongAdder();
+    private final LongAdder events = new LongAdder();
+
+    public DeployJobIndex(DeployClient deployClient, DeployProxyProperties props) {
+        this.deployClient = deployClient;
+        this.props = props;
+    }
+
+    /**
+     * 单个 app 的部署态快照。
+     *
+     * @param latestJobId        最新 Job id
+     * @param latestStatus       最新 Job 状态（QUEUED/RUNNING/SUCCEEDED/FAILED/CANCELLED）
+     * @param latestErrorMessage 最新 Job 错误信息（FAILED 时）
+     * @param deployUrl          最近一次 SUCCEEDED Job 的 deployUrl（可能为 null）
+     */
+    public record AppDeployState(String latestJobId, String latestStatus, String latestErrorMessage, String deployUrl) {
+    }
+
+    public AppDeployState get(Long appId) {
+        return appId == null ? null : byApp.get(appId);
+    }
+
+    /**
+     * 批量读取（O(apps)，无远程调用）。
+     */
+    public Map<Long, AppDeployState> getAll(List<Long> appIds) {
+        Map<Long, AppDeployState> out = new HashMap<>();
+        if (appIds == null) return out;
+        for (Long id : appIds) {
+            AppDeployState st = get(id);
+            if (st != null) out.put(id, st);
+        }
+        return out;
+    }
+
+    /**
+     * 本实例新建的 Job：直接成为所属 app 的最新 Job。
+     */
+    public void onJobCreated(Map<String, Object> job) {
+        Long appId = appIdOf(job);
+        if (appId == null) return;
+        events.increment();
+        byApp.compute(appId, (k, prev) -> merge(prev, job, true));
+    }
+
+    /**
+     * 本实例查询/取消得到的 Job：只有它仍是该 app 的最新 Job（或索引中还没有该 app）时才更新状态，
+     * 避免查询历史 Job 覆盖最新状态；成功部署的 deployUrl 总是采纳。
+     */
+    public void onJobUpdated(Map<String, Object> job) {
+        Long appId = appIdOf(job);
+        if (appId == null) return;
+        events.increment();
+        byApp.compute(appId, (k, prev) -> merge(prev, job,
+                prev == null || prev.latestJobId() == null || prev.latestJobId().equals(str(job.get("id")))));
+    }
+
+    public void onAppDeleted(Long appId) {
+        if (appId == null) return;
+        byApp.remove(appId);
+    }
+
+    @Scheduled(fixedDelayString = "${deploy-proxy.job-index-poll-ms:5000}")
+    public void poll() {
+        if (deployClient == null || !deployClient.isEnabled()) return;
+        int limit = props == null || props.getJobIndexPollLimit() <= 0 ? 200 : props.getJobIndexPollLimit();
+        List<Map<String, Object>> jobs;
+        try {
+            jobs = deployClient.listJobs(limit);
+        } catch (Exception e) {
+            pollErrors.increment();
+            log.debug("deploy job index poll failed: {}", e.getMessage());
+            return;
+        }
+        polls.increment();
+        lastPollAtMs.set(System.currentTimeMillis());
+        if (jobs == null || jobs.isEmpty()) return;
+
+        // list 按更新时间倒序：同一 app 首次出现为最新 Job，首个带 deployUrl 的 SUCCEEDED 为最近一次成功部署
+        Map<Long, Map<String, Object>> latest = new HashMap<>();
+        Map<Long, String> latestUrl = new HashMap<>();
+        for (Map<String, Object> j : jobs) {
+            Long appId = appIdOf(j);
+            if (appId == null) continue;
+            latest.putIfAbsent(appId, j);
+            if (!latestUrl.containsKey(appId) && "SUCCEEDED".equals(str(j.get("status")))) {
+                String url = str(j.get("deployUrl"));
+                if (StringUtils.hasText(url)) latestUrl.put(appId, url);
+            }
+        }
+        for (Map.Entry<Long, Map<String, Object>> e : latest.entrySet()) {
+            Map<String, Object> j = e.getValue();
+            String url = latestUrl.get(e.getKey());
+            byApp.compute(e.getKey(), (k, prev) -> new AppDeployState(
+                    str(j.get("id")),
+                    str(j.get("status")),
+                    str(j.get("errorMessage")),
+                    url != null ? url : (prev == null ? null : prev.deployUrl())));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("apps", byApp.size());
+        out.put("polls", polls.sum());
+        out.put("pollErrors", pollErrors.sum());
+        out.put("events", events.sum());
+        out.put("lastPollAtMs", lastPollAtMs.get());
+        return out;
+    }
+
+    private static AppDeployState merge(AppDeployState prev, Map<String, Object> job, boolean isLatest) {
+        String status = str(job.get("status"));
+        String url = str(job.get("deployUrl"));
+        String deployUrl = ("SUCCEEDED".equals(status) && StringUtils.hasText(url))
+                ? url
+                : (prev == null ? null : prev.deployUrl());
+        if (!isLatest) {
+            return new AppDeployState(prev.latestJobId(), prev.latestStatus(), prev.latestErrorMessage(), deployUrl);
+        }
+        return new AppDeployState(str(job.get("id")), status, str(job.get("errorMessage")), deployUrl);
+    }
+
+    private static Long appIdOf(Map<String, Object> job) {
+        if (job == null) return null;
+        Object payloadObj = job.get("payload");
+        if (!(payloadObj instanceof Map<?, ?> payload)) return null;
+        Object appIdObj = payload.get("appId");
+        if (appIdObj == null) return null;
+        try {
+            return Long.valueOf(String.valueOf(appIdObj));
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
+    private static String str(Object o) {
+        return o == null ? null : String.valueOf(o);
+    }
+}
@@ -0,0 +1,72 @@
+package fun.ai.studio.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 应用删除墓碑：应用行删除时写入，子数据由 AppTeardownEngine 分段清理完成后置为 DONE。
+ */
+@Data
+@TableName("fun_ai_app_tombstone")
+public class FunAiAppTombstone {
+
+    @TableId(value = "app_id", type = IdType.INPUT)
+    private Long appId;
+
+    @TableField("user_id")
+    private Long userId;
+
+    /**
+     * PENDING（子数据清理中）/DONE
+     */
+    @TableField("status")
+    private String status;
+
+    @TableField("conversations_deleted")
+    private Integer conversationsDeleted;
+
+    @TableField("messages_deleted")
+    private Long messagesDeleted;
+
+    @TableField("runs_cleared")
+    private Integer runsCleared;
+
+    /**
+     * 分段语句数（每段一次自动提交）
+     */
+    @TableField("chunks")
+    private Integer chunks;
+
+    @TableField("elapsed_ms")
+    private Long elapsedMs;
+
+    @TableField("attempts")
+    private Integer attempts;
+
+    @TableField("last_error")
+    private String lastError;
+
+    /**
+     * 执行中心跳：超过租约未更新时由其它实例续做
+     */
+    @TableField("heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    /**
+     * 当前执行令牌：run 开始时写入，心跳/进度累加以此为条件；NULL 表示已提交、尚未开始执行
+     */
+    @TableField("run_token")
+    private String runToken;
+
+    @TableField(value = "create_time", fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField("finish_time")
+    private LocalDateTime finishTime;
+}
@@ -48,6 +48,14 @@ public class FunAiConversation {
     @Schema(description = "消息数量")
     private Integer messageCount;
 
+    /**
+     * 已分配的最大消息序号（追加消息时原子递增，不再 MAX(sequence) 扫描）
+     */
+    @TableField("last_sequence")
+    @Schema(description = "已分配的最大消息序号")
+    @JsonIgnore
+    private Integer lastSequence;
+
     /**
      * 最后一条消息时间
      */
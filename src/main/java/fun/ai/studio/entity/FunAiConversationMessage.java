@@ -35,12 +35,26 @@ public class FunAiConversationMessage {
     private String role;
 
     /**
-     * 消息内容
+     * 消息内容（压缩存储时库中为空串，读取时由 MessageContentCodec 解码回填）
      */
     @TableField("content")
     @Schema(description = "消息内容")
     private String content;
 
+    /**
+     * content 存储编码：0 明文（content 列）；1 zstd（content_zip 列，帧头带字典 ID）
+     */
+    @TableField("content_encoding")
+    @JsonIgnore
+    private Integer contentEncoding;
+
+    /**
+     * 压缩后的 content（content_encoding=1 时有值）
+     */
+    @TableField("content_zip")
+    @JsonIgnore
+    private byte[] contentZip;
+
     /**
      * 消息序号（在会话中的顺序，从1开始）
      */
@@ -0,0 +1,87 @@
+package fun.ai.studio.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 邮件发件箱：一条待发送（或已发送/失败）的邮件。
+ */
+@Data
+@TableName("fun_ai_mail_outbox")
+public class FunAiMailOutbox {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * ALERT（同收件人可合并为摘要）/CODE（验证码）
+     */
+    @TableField("kind")
+    private String kind;
+
+    /**
+     * 收件人（逗号分隔）
+     */
+    @TableField("to_addr")
+    private String toAddr;
+
+    @TableField("cc_addr")
+    private String ccAddr;
+
+    /**
+     * 标题（已含 subject-prefix）
+     */
+    @TableField("subject")
+    private String subject;
+
+    @TableField("body")
+    private String body;
+
+    /**
+     * PENDING/SENDING/SENT/FAILED
+     */
+    @TableField("status")
+    private String status;
+
+    @TableField("attempts")
+    private Integer attempts;
+
+    /**
+     * 最早发送时间（退避重试 / 告警摘要窗口）
+     */
+    @TableField("next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * 过期时间：超过后不再发送（验证码）；null 表示不过期
+     */
+    @TableField("expire_time")
+    private LocalDateTime expireTime;
+
+    /**
+     * 发送中批次标识
+     */
+    @TableField("claim_token")
+    private String claimToken;
+
+    @TableField("claimed_at")
+    private LocalDateTime claimedAt;
+
+    @TableField("last_error")
+    private String lastError;
+
+    @TableField("sent_time")
+    private LocalDateTime sentTime;
+
+    @TableField(value = "create_time", fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField(value = "update_time", fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,51 @@
+package fun.ai.studio.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话消息 zstd 压缩字典（只增不删：历史消息按帧头中的字典 ID 找回对应字典）。
+ */
+@Data
+@TableName("fun_ai_message_dict")
+public class FunAiMessageDict {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * zstd 字典 ID（写在字典头和每个压缩帧头中）
+     */
+    @TableField("dict_id")
+    private Long dictId;
+
+    @TableField("dict_data")
+    private byte[] dictData;
+
+    /**
+     * 训练样本数
+     */
+    @TableField("sample_count")
+    private Integer sampleCount;
+
+    /**
+     * 留出样本评估：原始字节 / 无字典压缩后字节 / 用该字典压缩后字节
+     */
+    @TableField("eval_raw_bytes")
+    private Long evalRawBytes;
+
+    @TableField("eval_plain_bytes")
+    private Long evalPlainBytes;
+
+    @TableField("eval_dict_bytes")
+    private Long evalDictBytes;
+
+    @TableField(value = "create_time", fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,44 @@
+package fun.ai.studio.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 孤儿数据对账水位（每个清理目标一行）。
+ */
+@Data
+@TableName("fun_ai_orphan_reconcile_state")
+public class FunAiOrphanReconcileState {
+
+    /**
+     * workspace-node:{nodeId} / workspace-url / runtime
+     */
+    @TableId(value = "target", type = IdType.INPUT)
+    private String target;
+
+    /**
+     * 已送达的删除水位（墓碑 create_time）：下次只发送其后的删除
+     */
+    @TableField("deleted_watermark")
+    private LocalDateTime deletedWatermark;
+
+    @TableField("last_full_at")
+    private LocalDateTime lastFullAt;
+
+    /**
+     * delta/full/legacy
+     */
+    @TableField("last_mode")
+    private String lastMode;
+
+    @TableField("last_result")
+    private String lastResult;
+
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+}
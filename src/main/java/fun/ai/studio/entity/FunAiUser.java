@@ -98,4 +98,12 @@ public class FunAiUser {
     @TableField("api_key")
     @Schema(description = "API密钥")
     private String apiKey;
+
+    /**
+     * 早于该时间（毫秒）签发的 JWT 失效（改密/禁用时写入，见 FunAiUserService#revokeTokens）
+     */
+    @JsonIgnore
+    @TableField("token_valid_after")
+    @Schema(description = "Token 生效起点（毫秒）")
+    private Long tokenValidAfter;
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package fun.ai.studio.entity;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * workspace 节点 drain 后台任务：把 sourceNodeId 的 placements 分批迁到 targetNodeId。
+ */
+@Data
+@TableName("fun_ai_workspace_drain_job")
+public class FunAiWorkspaceDrainJob {
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    @TableField("source_node_id")
+    private Long sourceNodeId;
+
+    @TableField("target_node_id")
+    private Long targetNodeId;
+
+    /**
+     * RUNNING/PAUSED/DONE/FAILED/CANCELLED
+     */
+    @TableField("status")
+    private String status;
+
+    /**
+     * 检查点：已处理到的 placement id（续跑从 id > lastPlacementId 开始）
+     */
+    @TableField("last_placement_id")
+    private Long lastPlacementId;
+
+    @TableField("moved")
+    private Long moved;
+
+    /**
+     * 创建时源节点 placement 数（进度参考）
+     */
+    @TableField("total")
+    private Long total;
+
+    @TableField("batch_size")
+    private Integer batchSize;
+
+    @TableField("rate_per_second")
+    private Integer ratePerSecond;
+
+    /**
+     * 执行中的 API 实例
+     */
+    @TableField("owner")
+    private String owner;
+
+    /**
+     * 执行实例最近一次检查点时间：超过租约未更新视为实例已退出，可被接管
+     */
+    @TableField("heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @TableField("error_message")
+    private String errorMessage;
+
+    @TableField(value = "create_time", fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField(value = "update_time", fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
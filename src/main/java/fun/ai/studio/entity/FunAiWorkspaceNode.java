@@ -34,6 +34,24 @@ public class FunAiWorkspaceNode {
     @TableField("last_heartbeat_at")
     private LocalDateTime lastHeartbeatAt;
 
+    /**
+     * 最近一次心跳上报的负载（旧版 workspace-node 不上报时为 null）
+     */
+    @TableField("cpu_usage")
+    private Double cpuUsage;
+
+    @TableField("mem_usage")
+    private Double memUsage;
+
+    @TableField("disk_usage")
+    private Double diskUsage;
+
+    @TableField("busy_run_count")
+    private Integer busyRunCount;
+
+    @TableField("container_count")
+    private Integer containerCount;
+
     @TableField(value = "create_time", fill = FieldFill.INSERT)
     private LocalDateTime createTime;
 
@@ -13,6 +13,14 @@ public class AdminWorkspaceDrainNodeRequest {
      * 限制本次最多迁移多少个（避免一次性更新过多）。默认 100。
      */
     private Integer limit;
+    /**
+     * 后台任务（/drain-jobs/start）：每批 UPDATE 条数；为空取 funai.workspace-drain.batch-size
+     */
+    private Integer batchSize;
+    /**
+     * 后台任务（/drain-jobs/start）：限速（条/秒，0=不限速）；为空取 funai.workspace-drain.rate-per-second
+     */
+    private Integer ratePerSecond;
 }
 
 
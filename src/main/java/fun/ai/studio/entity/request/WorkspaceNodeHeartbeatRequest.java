@@ -20,6 +20,19 @@ public class WorkspaceNodeHeartbeatRequest {
      */
     private String version;
 
+    /**
+     * 可选：节点负载（旧版 workspace-node 不上报时为空，API 侧容量准入回退为远程查询 busy-count）。
+     * 使用率单位为百分比（0~100）。
+     */
+    private Double cpuUsage;
+    private Double memUsage;
+    private Double diskUsage;
+    /**
+     * 运行态占用数（RUNNING/STARTING/BUILDING/INSTALLING），与 /internal/run/busy-count 口径一致
+     */
+    private Integer busyRunCount;
+    private Integer containerCount;
+
     public String getNodeName() {
         return nodeName;
     }
@@ -51,6 +64,46 @@ public class WorkspaceNodeHeartbeatRequest {
     public void setVersion(String version) {
         this.version = version;
     }
+
+    public Double getCpuUsage() {
+        return cpuUsage;
+    }
+
+    public void setCpuUsage(Double cpuUsage) {
+        this.cpuUsage = cpuUsage;
+    }
+
+    public Double getMemUsage() {
+        return memUsage;
+    }
+
+    public void setMemUsage(Double memUsage) {
+        this.memUsage = memUsage;
+    }
+
+    public Double getDiskUsage() {
+        return diskUsage;
+    }
+
+    public void setDiskUsage(Double diskUsage) {
+        this.diskUsage = diskUsage;
+    }
+
+    public Integer getBusyRunCount() {
+        return busyRunCount;
+    }
+
+    public void setBusyRunCount(Integer busyRunCount) {
+        this.busyRunCount = busyRunCount;
+    }
+
+    public Integer getContainerCount() {
+        return containerCount;
+    }
+
+    public void setContainerCount(Integer containerCount) {
+        this.containerCount = containerCount;
+    }
 }
 
 
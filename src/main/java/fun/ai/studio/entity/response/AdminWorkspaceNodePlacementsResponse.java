@@ -9,6 +9,10 @@ public class AdminWorkspaceNodePlacementsResponse {
     private Long nodeId;
     private Long total;
     private List<AdminWorkspaceNodePlacementItem> items;
+    /**
+     * keyset 游标：下一页请求传 afterId=nextAfterId；没有更多数据时为 null
+     */
+    private Long nextAfterId;
 }
 
 
@@ -19,6 +19,14 @@ public class AdminWorkspaceNodeSummary {
      * 健康状态：HEALTHY / STALE / UNKNOWN
      */
     private String health;
+    /**
+     * 最近一次心跳上报的负载（使用率为百分比；未上报或已过期为空）
+     */
+    private Double cpuUsage;
+    private Double memUsage;
+    private Double diskUsage;
+    private Integer busyRunCount;
+    private Integer containerCount;
 }
 
 
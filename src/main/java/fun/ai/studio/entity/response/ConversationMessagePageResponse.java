@@ -0,0 +1,28 @@
+package fun.ai.studio.entity.response;
+
+import fun.ai.studio.entity.FunAiConversation;
+import fun.ai.studio.entity.FunAiConversationMessage;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Schema(description = "会话消息游标分页响应（按 sequence 向前翻页）")
+public class ConversationMessagePageResponse {
+
+    @Schema(description = "会话信息")
+    private FunAiConversation conversation;
+
+    @Schema(description = "本页消息（按 sequence 升序）；headersOnly=true 时 content 为空")
+    private List<FunAiConversationMessage> messages;
+
+    @Schema(description = "是否还有更早的消息")
+    private Boolean hasMore;
+
+    @Schema(description = "加载更早消息时传入的 beforeSequence（本页最小 sequence）；没有更早消息时为空")
+    private Integer nextBeforeSequence;
+
+    @Schema(description = "当前会话允许的最大消息数")
+    private Integer maxMessages;
+}
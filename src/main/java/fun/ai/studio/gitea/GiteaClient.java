@@ -2,6 +2,7 @@ package fun.ai.studio.gitea;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fun.ai.studio.common.UpstreamMetrics;
 import fun.ai.studio.config.GiteaProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -204,17 +205,52 @@ public class GiteaClient {
         }
         b.header("Authorization", "token " + props.getAdminToken().trim());
 
+        long t0 = System.nanoTime();
         try {
-            return httpClient.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+            HttpResponse<byte[]> resp = httpClient.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_GITEA, m, metricUri(pathAndQuery), resp.statusCode(), null, System.nanoTime() - t0);
+            return resp;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_GITEA, m, metricUri(pathAndQuery), -1, e, System.nanoTime() - t0);
             return null;
         } catch (Exception e) {
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_GITEA, m, metricUri(pathAndQuery), -1, e, System.nanoTime() - t0);
             log.warn("gitea request failed: {} {} err={}", m, url, e.getMessage());
             return null;
         }
     }
 
+    /**
+     * 指标用路由模板：owner/repo/org/用户名/文件路径等段替换为占位符，控制 uri tag 基数。
+     */
+    static String metricUri(String pathAndQuery) {
+        if (pathAndQuery == null) return "/";
+        int q = pathAndQuery.indexOf('?');
+        String[] segs = (q >= 0 ? pathAndQuery.substring(0, q) : pathAndQuery).split("/");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < segs.length; i++) {
+            String seg = segs[i];
+            String prev = segs[i - 1];
+            if ("repos".equals(prev) && i + 1 < segs.length) {
+                sb.append("/{owner}/{repo}");
+                i++;
+            } else if ("orgs".equals(prev)) {
+                sb.append("/{org}");
+            } else if ("teams".equals(prev)) {
+                sb.append("/{id}");
+            } else if ("collaborators".equals(prev)) {
+                sb.append("/{username}");
+            } else if ("contents".equals(prev)) {
+                sb.append("/{path}");
+                break;
+            } else {
+                sb.append('/').append(seg);
+            }
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
     private String joinUrl(String baseUrl, String pathAndQuery) {
         String b = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
         String p = (pathAndQuery == null) ? "" : pathAndQuery;
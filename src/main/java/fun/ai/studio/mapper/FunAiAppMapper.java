@@ -4,6 +4,8 @@ package fun.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.ai.studio.entity.FunAiApp;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 /**
  * AI应用Mapper接口
@@ -11,4 +13,13 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper
 public interface FunAiAppMapper extends BaseMapper<FunAiApp> {
     // 可以添加自定义的查询方法
+
+    /**
+     * 校验应用存在且属于该用户，并对应用行加共享锁（须在事务内调用，锁持有到提交）：
+     * 与删除应用的 DELETE 互斥，事务内随后创建的子数据要么先于删除提交（清理时可见），要么因应用已删除被拒绝。
+     *
+     * @return 1 表示存在，0 表示不存在或不属于该用户
+     */
+    @Select("SELECT COUNT(1) FROM fun_ai_app WHERE id = #{appId} AND user_id = #{userId} LOCK IN SHARE MODE")
+    int lockOwnedForShare(@Param("appId") Long appId, @Param("userId") Long userId);
 }
@@ -0,0 +1,72 @@
+package fun.ai.studio.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import fun.ai.studio.entity.FunAiAppTombstone;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+
+@Mapper
+public interface FunAiAppTombstoneMapper extends BaseMapper<FunAiAppTombstone> {
+
+    /**
+     * 写入（或重新打开）墓碑：status=PENDING，心跳为当前时间（排队期间不被续做任务接手），执行令牌清空。
+     */
+    @Insert("INSERT INTO fun_ai_app_tombstone (app_id, user_id, status, attempts, heartbeat_at, create_time) " +
+            "VALUES (#{appId}, #{userId}, 'PENDING', 1, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE status = 'PENDING', attempts = attempts + 1, heartbeat_at = NOW(), " +
+            "run_token = NULL, finish_time = NULL, last_error = NULL")
+    int upsertPending(@Param("appId") Long appId, @Param("userId") Long userId);
+
+    /**
+     * 接手心跳过期的墓碑（条件 UPDATE，多实例只有一个成功）；原执行令牌作废，原执行者的心跳/进度随之失效。
+     */
+    @Update("UPDATE fun_ai_app_tombstone SET heartbeat_at = NOW(), run_token = NULL, attempts = attempts + 1 " +
+            "WHERE app_id = #{appId} AND status = 'PENDING' " +
+            "AND (heartbeat_at IS NULL OR heartbeat_at < #{staleBefore})")
+    int claimStale(@Param("appId") Long appId, @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * 开始执行前占用执行权：尚未有执行者（run_token 为空）或原执行者心跳过期时写入本次令牌。
+     * 同一墓碑被重复提交时只有一个任务成功，其余跳过。
+     */
+    @Update("UPDATE fun_ai_app_tombstone SET run_token = #{runToken}, heartbeat_at = NOW() " +
+            "WHERE app_id = #{appId} AND status = 'PENDING' " +
+            "AND (run_token IS NULL OR heartbeat_at IS NULL OR heartbeat_at < #{staleBefore})")
+    int claimForRun(@Param("appId") Long appId,
+                    @Param("runToken") String runToken,
+                    @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * 累加本次执行的清理量；done=true 时置为 DONE。仅当前执行令牌的持有者可写入。
+     */
+    @Update("UPDATE fun_ai_app_tombstone SET " +
+            "conversations_deleted = conversations_deleted + #{conversations}, " +
+            "messages_deleted = messages_deleted + #{messages}, " +
+            "runs_cleared = runs_cleared + #{runs}, " +
+            "chunks = chunks + #{chunks}, " +
+            "elapsed_ms = elapsed_ms + #{elapsedMs}, " +
+            "last_error = #{lastError}, " +
+            "status = IF(#{done}, 'DONE', status), " +
+            "finish_time = IF(#{done}, NOW(), finish_time) " +
+            "WHERE app_id = #{appId} AND run_token = #{runToken}")
+    int addProgress(@Param("appId") Long appId,
+                    @Param("runToken") String runToken,
+                    @Param("conversations") long conversations,
+                    @Param("messages") long messages,
+                    @Param("runs") long runs,
+                    @Param("chunks") long chunks,
+                    @Param("elapsedMs") long elapsedMs,
+                    @Param("lastError") String lastError,
+                    @Param("done") boolean done);
+
+    /**
+     * 返回 0 表示执行权已被接手（或墓碑已完成），调用方应停止执行。
+     */
+    @Update("UPDATE fun_ai_app_tombstone SET heartbeat_at = NOW() " +
+            "WHERE app_id = #{appId} AND status = 'PENDING' AND run_token = #{runToken}")
+    int heartbeat(@Param("appId") Long appId, @Param("runToken") String runToken);
+}
@@ -2,8 +2,39 @@ package fun.ai.studio.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.ai.studio.entity.FunAiConversation;
+import lombok.Data;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.SelectKey;
+import org.apache.ibatis.annotations.Update;
 
 @Mapper
 public interface FunAiConversationMapper extends BaseMapper<FunAiConversation> {
+
+    /**
+     * 追加消息的序号分配参数；sequence 为输出（分配到的序号）。
+     */
+    @Data
+    class AppendSlot {
+        private Long conversationId;
+        private Long userId;
+        private Integer maxMessages;
+        private Integer sequence;
+    }
+
+    /**
+     * 追加消息：一条条件 UPDATE 分配序号（last_sequence + 1，行锁保证并发追加不重号），
+     * 同时更新 message_count（不超过 maxMessages）与 last_message_time。
+     * 序号经 LAST_INSERT_ID(expr) 取回（连接级函数，不查表）。
+     * 所属应用已写入删除墓碑时不分配（子数据清理期间不再接收新消息）。
+     *
+     * @return 影响行数：0 表示会话不存在、不属于该用户或所属应用已删除（此时 sequence 无意义）
+     */
+    @Update("UPDATE fun_ai_conversation " +
+            "SET last_sequence = LAST_INSERT_ID(last_sequence + 1), " +
+            "message_count = LEAST(message_count + 1, #{maxMessages}), " +
+            "last_message_time = NOW() " +
+            "WHERE id = #{conversationId} AND user_id = #{userId} " +
+            "AND NOT EXISTS (SELECT 1 FROM fun_ai_app_tombstone t WHERE t.app_id = fun_ai_conversation.app_id)")
+    @SelectKey(statement = "SELECT LAST_INSERT_ID()", keyProperty = "sequence", before = false, resultType = Integer.class)
+    int allocateSequence(AppendSlot slot);
 }
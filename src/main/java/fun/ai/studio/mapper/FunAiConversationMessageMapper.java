@@ -2,8 +2,36 @@ package fun.ai.studio.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.ai.studio.entity.FunAiConversationMessage;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface FunAiConversationMessageMapper extends BaseMapper<FunAiConversationMessage> {
+
+    /**
+     * 多行 INSERT（写缓冲批量落库）：一条语句写入一批消息，create_time 由调用方给出（追加时刻）。
+     */
+    @Insert("<script>" +
+            "INSERT INTO fun_ai_conversation_message " +
+            "(conversation_id, role, content, content_encoding, content_zip, sequence, git_commit_sha, create_time) VALUES " +
+            "<foreach collection='list' item='m' separator=','>" +
+            "(#{m.conversationId}, #{m.role}, #{m.content}, #{m.contentEncoding}, #{m.contentZip}, " +
+            "#{m.sequence}, #{m.gitCommitSha}, #{m.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<FunAiConversationMessage> messages);
+
+    /**
+     * 分段删除一批会话的消息（应用删除清理）：走 conversation_id + sequence 索引，单条语句最多删 limit 行。
+     */
+    @Delete("<script>" +
+            "DELETE FROM fun_ai_conversation_message WHERE conversation_id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            " LIMIT #{limit}" +
+            "</script>")
+    int deleteByConversationIds(@Param("ids") List<Long> conversationIds, @Param("limit") int limit);
 }
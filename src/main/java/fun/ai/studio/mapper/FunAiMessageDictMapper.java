@@ -0,0 +1,9 @@
+package fun.ai.studio.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import fun.ai.studio.entity.FunAiMessageDict;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface FunAiMessageDictMapper extends BaseMapper<FunAiMessageDict> {
+}
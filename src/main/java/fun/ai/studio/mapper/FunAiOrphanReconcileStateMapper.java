@@ -0,0 +1,34 @@
+package fun.ai.studio.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import fun.ai.studio.entity.FunAiOrphanReconcileState;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+
+@Mapper
+public interface FunAiOrphanReconcileStateMapper extends BaseMapper<FunAiOrphanReconcileState> {
+
+    /**
+     * 对账成功：推进删除水位；全量对账时同时记录 last_full_at。
+     */
+    @Insert("INSERT INTO fun_ai_orphan_reconcile_state (target, deleted_watermark, last_full_at, last_mode, last_result) " +
+            "VALUES (#{target}, #{watermark}, IF(#{full}, NOW(), NULL), #{mode}, #{result}) " +
+            "ON DUPLICATE KEY UPDATE deleted_watermark = VALUES(deleted_watermark), " +
+            "last_full_at = IF(#{full}, NOW(), last_full_at), last_mode = VALUES(last_mode), last_result = VALUES(last_result)")
+    int markSucceeded(@Param("target") String target,
+                      @Param("watermark") LocalDateTime watermark,
+                      @Param("full") boolean full,
+                      @Param("mode") String mode,
+                      @Param("result") String result);
+
+    /**
+     * 对账失败：水位不动（下次重发同一段删除），只记录原因。
+     */
+    @Insert("INSERT INTO fun_ai_orphan_reconcile_state (target, last_mode, last_result) " +
+            "VALUES (#{target}, #{mode}, #{result}) " +
+            "ON DUPLICATE KEY UPDATE last_mode = VALUES(last_mode), last_result = VALUES(last_result)")
+    int markFailed(@Param("target") String target, @Param("mode") String mode, @Param("result") String result);
+}
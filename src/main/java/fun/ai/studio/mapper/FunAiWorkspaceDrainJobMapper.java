@@ -0,0 +1,9 @@
+package fun.ai.studio.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import fun.ai.studio.entity.FunAiWorkspaceDrainJob;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface FunAiWorkspaceDrainJobMapper extends BaseMapper<FunAiWorkspaceDrainJob> {
+}
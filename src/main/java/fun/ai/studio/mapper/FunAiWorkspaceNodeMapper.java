@@ -3,9 +3,42 @@ package fun.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.ai.studio.entity.FunAiWorkspaceNode;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 @Mapper
 public interface FunAiWorkspaceNodeMapper extends BaseMapper<FunAiWorkspaceNode> {
-}
-
 
+    /**
+     * 批量落库心跳（一条语句）：每行只写 id、lastHeartbeatAt 与负载字段。
+     *
+     * <p>两台 API 实例各自 flush：仅当库中心跳时间不晚于本次写入时才覆盖负载，心跳时间取较大值，避免旧心跳回退。
+     * 负载列必须在 last_heartbeat_at 之前 SET（MySQL 按顺序使用已更新的列值）。</p>
+     */
+    @Update({"<script>",
+            "UPDATE fun_ai_workspace_node SET",
+            "<foreach collection='list' item='n' open='cpu_usage = CASE id ' close=' ELSE cpu_usage END,'>",
+            "WHEN #{n.id} THEN IF(last_heartbeat_at IS NULL OR last_heartbeat_at &lt;= #{n.lastHeartbeatAt}, #{n.cpuUsage}, cpu_usage) ",
+            "</foreach>",
+            "<foreach collection='list' item='n' open='mem_usage = CASE id ' close=' ELSE mem_usage END,'>",
+            "WHEN #{n.id} THEN IF(last_heartbeat_at IS NULL OR last_heartbeat_at &lt;= #{n.lastHeartbeatAt}, #{n.memUsage}, mem_usage) ",
+            "</foreach>",
+            "<foreach collection='list' item='n' open='disk_usage = CASE id ' close=' ELSE disk_usage END,'>",
+            "WHEN #{n.id} THEN IF(last_heartbeat_at IS NULL OR last_heartbeat_at &lt;= #{n.lastHeartbeatAt}, #{n.diskUsage}, disk_usage) ",
+            "</foreach>",
+            "<foreach collection='list' item='n' open='busy_run_count = CASE id ' close=' ELSE busy_run_count END,'>",
+            "WHEN #{n.id} THEN IF(last_heartbeat_at IS NULL OR last_heartbeat_at &lt;= #{n.lastHeartbeatAt}, #{n.busyRunCount}, busy_run_count) ",
+            "</foreach>",
+            "<foreach collection='list' item='n' open='container_count = CASE id ' close=' ELSE container_count END,'>",
+            "WHEN #{n.id} THEN IF(last_heartbeat_at IS NULL OR last_heartbeat_at &lt;= #{n.lastHeartbeatAt}, #{n.containerCount}, container_count) ",
+            "</foreach>",
+            "<foreach collection='list' item='n' open='last_heartbeat_at = CASE id ' close=' ELSE last_heartbeat_at END'>",
+            "WHEN #{n.id} THEN GREATEST(COALESCE(last_heartbeat_at, #{n.lastHeartbeatAt}), #{n.lastHeartbeatAt}) ",
+            "</foreach>",
+            "WHERE id IN",
+            "<foreach collection='list' item='n' open='(' separator=',' close=')'>#{n.id}</foreach>",
+            "</script>"})
+    int batchUpdateHeartbeat(@Param("list") List<FunAiWorkspaceNode> nodes);
+}
@@ -3,9 +3,19 @@ package fun.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.ai.studio.entity.FunAiWorkspacePlacement;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface FunAiWorkspacePlacementMapper extends BaseMapper<FunAiWorkspacePlacement> {
-}
-
 
+    /**
+     * 按节点聚合 placement 数（走 idx_node_id，结果行数 = 节点数）。
+     *
+     * @return 每行 {nodeId, placements}
+     */
+    @Select("SELECT node_id AS nodeId, COUNT(*) AS placements FROM fun_ai_workspace_placement GROUP BY node_id")
+    List<Map<String, Object>> countGroupByNode();
+}
@@ -3,9 +3,15 @@ package fun.ai.studio.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import fun.ai.studio.entity.FunAiWorkspaceRun;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 
 @Mapper
 public interface FunAiWorkspaceRunMapper extends BaseMapper<FunAiWorkspaceRun> {
-}
-
 
+    /**
+     * 分段解除运行记录与已删除应用的关联（走 idx_app_id），单条语句最多 limit 行。
+     */
+    @Update("UPDATE fun_ai_workspace_run SET app_id = NULL, update_time = NOW() WHERE app_id = #{appId} LIMIT #{limit}")
+    int clearAppId(@Param("appId") Long appId, @Param("limit") int limit);
+}
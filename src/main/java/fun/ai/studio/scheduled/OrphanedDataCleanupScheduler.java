@@ -1,9 +1,18 @@
 package fun.ai.studio.scheduled;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fun.ai.studio.app.AppIdSetCodec;
+import fun.ai.studio.app.AppTeardownProperties;
 import fun.ai.studio.entity.FunAiApp;
+import fun.ai.studio.entity.FunAiAppTombstone;
+import fun.ai.studio.entity.FunAiOrphanReconcileState;
+import fun.ai.studio.entity.FunAiWorkspaceNode;
 import fun.ai.studio.mapper.FunAiAppMapper;
+import fun.ai.studio.mapper.FunAiAppTombstoneMapper;
+import fun.ai.studio.mapper.FunAiOrphanReconcileStateMapper;
+import fun.ai.studio.workspace.WorkspaceNodeClient;
+import fun.ai.studio.workspace.WorkspaceNodeRoutingTable;
 import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,18 +25,26 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 孤立数据定时清理调度器（主控）
- * 
+ *
  * 运行在主项目（91 服务器），负责：
- * 1. 查询数据库获取所有应用 ID
- * 2. 调用 workspace（87）清理接口，清理开发态数据
- * 3. 调用 runtime（102）清理接口，清理部署态数据
- * 
+ * 1. 按主键游标分页只读取应用 ID（不加载整行），编码为紧凑 ID 集合（{@link AppIdSetCodec}）
+ * 2. 调用每个 workspace 节点（节点注册表中启用的节点；未启用 workspace-node 时退回 funai.cleanup.workspace-url）清理开发态数据
+ * 3. 调用 runtime（102）清理部署态数据
+ *
+ * 对账方式（每个目标各自的删除水位记录在 fun_ai_orphan_reconcile_state）：
+ * - delta：只发送水位之后新增的应用删除（fun_ai_app_tombstone），接收方删除这些应用的数据；没有新删除则不发请求
+ * - full：发送全部存活应用 ID 集合，接收方删除集合之外、且 ID 不大于 maxId 的数据（maxId 之后的是读取后新建的应用）；
+ *   首次、水位早于墓碑保留期、或距上次全量超过 full-interval-days 时执行，兜底不经墓碑的删除
+ * - legacy：protocol=2 请求发往新路径（原路径 + /v2）；接收方尚未提供该路径（HTTP 404/405/501）时，
+ *   退回原路径与旧请求体 {"existingAppIds": [...]}（不会把新请求体发给旧接口，避免旧接口把缺失的列表当成空集合）
+ *
  * 执行时间：每天凌晨 2:00
  */
 @Component
@@ -35,9 +52,19 @@ public class OrphanedDataCleanupScheduler {
     private static final Logger log = LoggerFactory.getLogger(OrphanedDataCleanupScheduler.class);
 
     private final FunAiAppMapper appMapper;
+    private final FunAiAppTombstoneMapper tombstoneMapper;
+    private final FunAiOrphanReconcileStateMapper stateMapper;
+    private final WorkspaceNodeRoutingTable routingTable;
+    private final WorkspaceNodeClient workspaceNodeClient;
+    private final AppTeardownProperties teardownProps;
     private final ObjectMapper objectMapper;
     private final HttpClient httpClient;
     private static final String HDR_RUNTIME_TOKEN = "X-Runtime-Token";
+    private static final String WORKSPACE_PATH = "/api/fun-ai/workspace/internal/cleanup-orphaned";
+    private static final String RUNTIME_PATH = "/agent/cleanup-orphaned";
+    private static final String V2_SUFFIX = "/v2";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+    private static final int PROTOCOL = 2;
 
     @Value("${funai.cleanup.workspace-url:http://172.21.138.87:7001}")
     private String workspaceUrl;
@@ -54,8 +81,58 @@ public class OrphanedDataCleanupScheduler {
     @Value("${funai.cleanup.enabled:true}")
     private boolean enabled;
 
-    public OrphanedDataCleanupScheduler(FunAiAppMapper appMapper, ObjectMapper objectMapper) {
+    /**
+     * 距上次全量对账超过该天数时做一次全量（0：每次都全量）
+     */
+    @Value("${funai.cleanup.full-interval-days:7}")
+    private int fullIntervalDays;
+
+    /**
+     * 读取应用 ID 的分页大小（主键游标）
+     */
+    @Value("${funai.cleanup.id-page-size:5000}")
+    private int idPageSize;
+
+    /**
+     * 增量起点向前重叠的秒数：覆盖墓碑写入时间与提交顺序不一致的情况（重复发送同一删除无副作用）
+     */
+    @Value("${funai.cleanup.delta-overlap-seconds:600}")
+    private long deltaOverlapSeconds;
+
+    /**
+     * 一次调度内的共享数据：截止时间与（按需加载一次的）全量 ID 集合
+     */
+    final class Run {
+        private final LocalDateTime until = LocalDateTime.now();
+        private AppIdSetCodec.Encoder existing;
+
+        AppIdSetCodec.Encoder existing() {
+            if (existing == null) {
+                existing = loadExistingAppIds();
+                log.info("数据库中存在的应用数量: {}, 编码后 {} 字节", existing.count(), existing.toBytes().length);
+            }
+            return existing;
+        }
+    }
+
+    @FunctionalInterface
+    interface Transport {
+        HttpResponse<byte[]> post(String path, byte[] body) throws Exception;
+    }
+
+    public OrphanedDataCleanupScheduler(FunAiAppMapper appMapper,
+                                        FunAiAppTombstoneMapper tombstoneMapper,
+                                        FunAiOrphanReconcileStateMapper stateMapper,
+                                        WorkspaceNodeRoutingTable routingTable,
+                                        WorkspaceNodeClient workspaceNodeClient,
+                                        AppTeardownProperties teardownProps,
+                                        ObjectMapper objectMapper) {
         this.appMapper = appMapper;
+        this.tombstoneMapper = tombstoneMapper;
+        this.stateMapper = stateMapper;
+        this.routingTable = routingTable;
+        this.workspaceNodeClient = workspaceNodeClient;
+        this.teardownProps = teardownProps;
         this.objectMapper = objectMapper;
         this.httpClient = HttpClient.newBuilder()
                 // runtime-agent（FastAPI/uvicorn）对 HTTP/2 prior-knowledge/h2c 兼容性不一致；强制 HTTP/1.1 避免 "Invalid HTTP request received."
@@ -80,15 +157,13 @@ public class OrphanedDataCleanupScheduler {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 1. 从数据库查询所有存在的应用 ID
-            Set<Long> existingAppIds = loadExistingAppIds();
-            log.info("数据库中存在的应用数量: {}", existingAppIds.size());
+            Run run = new Run();
 
-            // 2. 调用 workspace（87）清理开发态数据
-            cleanWorkspaceData(existingAppIds);
+            // 1. 调用 workspace 节点清理开发态数据
+            cleanWorkspaceData(run);
 
-            // 3. 调用 runtime（102）清理部署态数据
-            cleanRuntimeData(existingAppIds);
+            // 2. 调用 runtime（102）清理部署态数据
+            cleanRuntimeData(run);
 
             long duration = System.currentTimeMillis() - startTime;
             log.info("=== 孤立数据清理调度完成，耗时: {}ms ===", duration);
@@ -98,62 +173,70 @@ public class OrphanedDataCleanupScheduler {
     }
 
     /**
-     * 从数据库加载所有存在的应用 ID
+     * 按主键游标分页读取应用 ID（只查 id 列），升序写入编码器
      */
-    private Set<Long> loadExistingAppIds() {
-        try {
-            List<FunAiApp> apps = appMapper.selectList(new QueryWrapper<>());
-            return apps.stream()
-                    .map(FunAiApp::getId)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet());
-        } catch (Exception e) {
-            log.error("加载应用列表失败", e);
-            return new HashSet<>();
+    private AppIdSetCodec.Encoder loadExistingAppIds() {
+        AppIdSetCodec.Encoder enc = new AppIdSetCodec.Encoder();
+        int pageSize = Math.max(100, idPageSize);
+        long lastId = 0L;
+        while (true) {
+            List<FunAiApp> page = appMapper.selectList(
+                new LambdaQueryWrapper<FunAiApp>()
+                    .select(FunAiApp::getId)
+                    .gt(FunAiApp::getId, lastId)
+                    .orderByAsc(FunAiApp::getId)
+                    .last("LIMIT " + pageSize)
+            );
+            for (FunAiApp app : page) {
+                enc.add(app.getId());
+                lastId = app.getId();
+            }
+            if (page.size() < pageSize) {
+                return enc;
+            }
         }
     }
 
     /**
-     * 调用 workspace（87）清理开发态数据
+     * 调用 workspace 清理开发态数据：节点注册表中每个启用的节点各自对账
      */
-    private void cleanWorkspaceData(Set<Long> existingAppIds) {
-        if (!StringUtils.hasText(workspaceUrl)) {
-            log.warn("workspace URL 未配置，跳过开发态清理");
-            return;
+    private void cleanWorkspaceData(Run run) {
+        List<FunAiWorkspaceNode> nodes = new ArrayList<>();
+        if (workspaceNodeClient.isEnabled()) {
+            for (FunAiWorkspaceNode n : routingTable.listNodes()) {
+                if (n.getEnabled() != null && n.getEnabled() == 1 && StringUtils.hasText(n.getApiBaseUrl())) {
+                    nodes.add(n);
+                }
+            }
         }
 
-        try {
-            String url = workspaceUrl.replaceAll("/$", "") + "/api/fun-ai/workspace/internal/cleanup-orphaned";
-            
-            Map<String, Object> request = new HashMap<>();
-            request.put("existingAppIds", new ArrayList<>(existingAppIds));
-            
-            String requestBody = objectMapper.writeValueAsString(request);
-
-            HttpRequest httpRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofMinutes(5))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-            
-            log.info("调用 workspace 清理接口: {}", url);
-            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                log.info("workspace 清理完成: {}", response.body());
-            } else {
-                log.error("workspace 清理失败: HTTP {}, body: {}", response.statusCode(), response.body());
+        if (!nodes.isEmpty()) {
+            for (FunAiWorkspaceNode node : nodes) {
+                reconcile(run, "workspace-node:" + node.getId(), node.getName(), WORKSPACE_PATH,
+                        (path, body) -> workspaceNodeClient.postToNode(node, path, body, REQUEST_TIMEOUT.toMillis()));
             }
-        } catch (Exception e) {
-            log.error("调用 workspace 清理接口失败", e);
+            return;
         }
+
+        if (!StringUtils.hasText(workspaceUrl)) {
+            log.warn("workspace 节点与 URL 均未配置，跳过开发态清理");
+            return;
+        }
+        String baseUrl = workspaceUrl.replaceAll("/$", "");
+        reconcile(run, "workspace-url", baseUrl, WORKSPACE_PATH, (path, body) -> httpClient.send(
+                HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + path))
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray()));
     }
 
     /**
      * 调用 runtime（102）清理部署态数据
      */
-    private void cleanRuntimeData(Set<Long> existingAppIds) {
+    private void cleanRuntimeData(Run run) {
         if (!StringUtils.hasText(runtimeUrl)) {
             log.warn("runtime URL 未配置，跳过部署态清理");
             return;
@@ -163,32 +246,122 @@ public class OrphanedDataCleanupScheduler {
             return;
         }
 
+        String baseUrl = runtimeUrl.replaceAll("/$", "");
+        reconcile(run, "runtime", baseUrl, RUNTIME_PATH, (path, body) -> httpClient.send(
+                HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + path))
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Content-Type", "application/json")
+                        .header(HDR_RUNTIME_TOKEN, runtimeToken)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray()));
+    }
+
+    /**
+     * 对单个目标执行一次对账：按水位决定 delta/full，接收方不支持时退回 legacy；成功才推进水位
+     */
+    void reconcile(Run run, String target, String display, String path, Transport transport) {
+        String mode = "delta";
         try {
-            String url = runtimeUrl.replaceAll("/$", "") + "/agent/cleanup-orphaned";
-            
-            Map<String, Object> request = new HashMap<>();
-            request.put("existingAppIds", new ArrayList<>(existingAppIds));
-            
-            String requestBody = objectMapper.writeValueAsString(request);
-            
-            HttpRequest httpRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofMinutes(5))
-                    .header("Content-Type", "application/json")
-                    .header(HDR_RUNTIME_TOKEN, runtimeToken)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-            
-            log.info("调用 runtime 清理接口: {}", url);
-            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            
+            FunAiOrphanReconcileState state = stateMapper.selectById(target);
+            boolean full = needsFull(state, run.until);
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("protocol", PROTOCOL);
+            if (full) {
+                mode = "full";
+                request.put("mode", mode);
+                request.put("existingAppIdSet", run.existing().toPayload());
+            } else {
+                AppIdSetCodec.Encoder deleted = loadDeletedAppIds(state.getDeletedWatermark().minusSeconds(Math.max(0L, deltaOverlapSeconds)), run.until);
+                if (deleted.count() == 0) {
+                    stateMapper.markSucceeded(target, run.until, false, mode, "no deletions");
+                    log.info("{} 清理跳过: 水位之后没有新的应用删除, target={}", display, target);
+                    return;
+                }
+                request.put("mode", mode);
+                request.put("deletedAppIdSet", deleted.toPayload());
+            }
+            request.put("deletedUntil", run.until.toString());
+
+            log.info("调用 {} 清理接口: target={}, mode={}", display, target, mode);
+            HttpResponse<byte[]> response = transport.post(path + V2_SUFFIX, objectMapper.writeValueAsBytes(request));
+            if (isUnsupported(response.statusCode())) {
+                // 旧版接收方：原路径发送完整 ID 列表
+                mode = "legacy";
+                full = true;
+                log.info("{} 未提供 {}（HTTP {}），退回 existingAppIds 全量列表: target={}",
+                        display, path + V2_SUFFIX, response.statusCode(), target);
+                response = transport.post(path, legacyBody(run.existing()));
+            }
+
+            String body = abbreviate(new String(response.body() == null ? new byte[0] : response.body(), StandardCharsets.UTF_8));
             if (response.statusCode() == 200) {
-                log.info("runtime 清理完成: {}", response.body());
+                stateMapper.markSucceeded(target, run.until, full, mode, body);
+                log.info("{} 清理完成: target={}, mode={}, response={}", display, target, mode, body);
             } else {
-                log.error("runtime 清理失败: HTTP {}, body: {}", response.statusCode(), response.body());
+                stateMapper.markFailed(target, mode, "HTTP " + response.statusCode() + ": " + body);
+                log.error("{} 清理失败: target={}, mode={}, HTTP {}, body: {}", display, target, mode, response.statusCode(), body);
             }
         } catch (Exception e) {
-            log.error("调用 runtime 清理接口失败", e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("调用 {} 清理接口失败: target={}, mode={}", display, target, mode, e);
+            try {
+                stateMapper.markFailed(target, mode, abbreviate(String.valueOf(e.getMessage())));
+            } catch (Exception ignore) {
+            }
         }
     }
+
+    /**
+     * 无水位、水位早于墓碑保留期（中间的删除可能已随墓碑清除）、或距上次全量超过 full-interval-days 时做全量
+     */
+    boolean needsFull(FunAiOrphanReconcileState state, LocalDateTime now) {
+        if (state == null || state.getDeletedWatermark() == null || state.getLastFullAt() == null) {
+            return true;
+        }
+        if (fullIntervalDays <= 0 || state.getLastFullAt().isBefore(now.minusDays(fullIntervalDays))) {
+            return true;
+        }
+        return teardownProps.getRetentionDays() > 0
+                && state.getDeletedWatermark().isBefore(now.minusDays(teardownProps.getRetentionDays()));
+    }
+
+    /**
+     * (since, until] 内写入的墓碑（走 create_time 索引，只查 app_id），升序编码
+     */
+    private AppIdSetCodec.Encoder loadDeletedAppIds(LocalDateTime since, LocalDateTime until) {
+        long[] ids = tombstoneMapper.selectList(
+            new LambdaQueryWrapper<FunAiAppTombstone>()
+                .select(FunAiAppTombstone::getAppId)
+                .gt(FunAiAppTombstone::getCreateTime, since)
+                .le(FunAiAppTombstone::getCreateTime, until)
+        ).stream().mapToLong(FunAiAppTombstone::getAppId).sorted().distinct().toArray();
+        AppIdSetCodec.Encoder enc = new AppIdSetCodec.Encoder();
+        for (long id : ids) {
+            enc.add(id);
+        }
+        return enc;
+    }
+
+    private byte[] legacyBody(AppIdSetCodec.Encoder existing) {
+        long[] ids = AppIdSetCodec.decode(existing.toBytes());
+        StringBuilder sb = new StringBuilder(ids.length * 8 + 32).append("{\"existingAppIds\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(ids[i]);
+        }
+        return sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isUnsupported(int status) {
+        return status == 404 || status == 405 || status == 501;
+    }
+
+    private static String abbreviate(String s) {
+        if (s == null) return null;
+        return s.length() <= 500 ? s : s.substring(0, 500);
+    }
 }
@@ -0,0 +1,78 @@
+package fun.ai.studio.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JWT 鉴权后的当前用户（由 Token claims 构造，不含密码）。
+ *
+ * <p>实现 UserDetails：现有 controller 里 {@code principal instanceof UserDetails ud -> ud.getUsername()} 的写法不受影响；
+ * 新代码可直接取 {@link #getUserId()}，免去按用户名再查一次 fun_ai_user。</p>
+ */
+public class FunAiUserPrincipal implements UserDetails {
+
+    private final Long userId;
+    private final String username;
+    private final Integer userType;
+
+    public FunAiUserPrincipal(Long userId, String username, Integer userType) {
+        this.userId = userId;
+        this.username = username;
+        this.userType = userType;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Integer getUserType() {
+        return userType;
+    }
+
+    public boolean isAdmin() {
+        return userType != null && userType == 1;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of();
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "FunAiUserPrincipal{userId=" + userId + ", username=" + username + ", userType=" + userType + "}";
+    }
+}
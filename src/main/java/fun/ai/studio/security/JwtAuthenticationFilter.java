@@ -2,11 +2,15 @@ package fun.ai.studio.security;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fun.ai.studio.common.Result;
+import fun.ai.studio.config.AccessLogFilter;
+import fun.ai.studio.utils.JwtClaims;
 import fun.ai.studio.utils.JwtUtil;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureException;
 import io.jsonwebtoken.UnsupportedJwtException;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,157 +20,143 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Locale;
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
-    private static final Set<String> SENSITIVE_PARAM_KEYS = Set.of(
-            "password", "passwd", "pass",
-            "token", "access_token", "refresh_token", "jwt",
-            "authorization", "cookie",
-            "secret", "appsecret", "client_secret"
-    );
-    private static final int MAX_PARAM_KEYS_TO_LOG = 24;
-    private static final int MAX_PARAM_VALUE_LEN = 128;
-
-    private final UserDetailsService userDetailsService;
+    private static final String JWT_OK = "ok";
+    private static final String JWT_ANONYMOUS = "anonymous";
+    private static final String JWT_EXPIRED = "expired";
+    private static final String JWT_INVALID = "invalid";
+    private static final String JWT_REVOKED = "revoked";
+    private static final String JWT_DB_DOWN = "db_down";
+    private static final String JWT_USER_ERROR = "user_error";
 
     private final JwtUtil jwtUtil;
 
-    public JwtAuthenticationFilter(UserDetailsService userDetailsService, JwtUtil jwtUtil) {
-        this.userDetailsService = userDetailsService;
-        this.jwtUtil = jwtUtil;
-    }
+    private final JwtPrincipalCache principalCache;
 
-    private String getOrCreateRequestId(HttpServletRequest request) {
-        Object existing = request.getAttribute("REQ_ID");
-        if (existing instanceof String s && !s.isBlank()) {
-            return s;
-        }
-        String id = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
-        request.setAttribute("REQ_ID", id);
-        return id;
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, JwtPrincipalCache principalCache) {
+        this.jwtUtil = jwtUtil;
+        this.principalCache = principalCache;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
 
-        String requestId = getOrCreateRequestId(request);
-        String method = request.getMethod();
+        // 访问日志（requestId/耗时/状态码/字节数）由 AccessLogFilter 在请求完成时异步记录，这里不再逐请求打印
+        String requestId = AccessLogFilter.requestId(request);
         String uri = request.getRequestURI();
-        String query = request.getQueryString();
-        String contentType = request.getContentType();
-        long contentLen = -1;
-        try {
-            contentLen = request.getContentLengthLong();
-        } catch (Exception ignore) {
-        }
-        // 重要：multipart/form-data 上传场景下读取 request.getParameterMap()/getParameter 可能触发容器解析并消费输入流，
-        // 导致后续 controller 绑定不到 MultipartFile（Required part 'file' is not present）。
-        // 因此这里对 multipart 请求跳过参数 map 打印。
-        String params = formatParamMapSafe(request);
-
-        logger.info("[{}] {} method={} uri={}{} params={} contentType={} contentLength={} thread={}",
-                requestId,
-                this.getClass().getSimpleName(),
-                method,
-                uri,
-                (query == null ? "" : ("?" + query)),
-                params,
-                (contentType == null ? "-" : contentType),
-                contentLen,
-                Thread.currentThread().getName());
         String url = request.getServletPath();
 
-        // 跳过 Swagger UI 相关路径
-        if (url.startsWith("/swagger-ui") || url.startsWith("/v3/api-docs") || url.startsWith("/webjars")) {
+        // 跳过 Swagger UI 相关路径；/actuator/** 由 AdminAuthFilter 鉴权（Prometheus 用 Bearer 携带的是 admin token）
+        if (url.startsWith("/swagger-ui") || url.startsWith("/v3/api-docs") || url.startsWith("/webjars")
+                || url.startsWith("/actuator/")) {
             chain.doFilter(request, response);
             return;
         }
         
+        long authStart = System.nanoTime();
+        String outcome = authenticate(request, response, requestId, uri);
+        jwtTimer(outcome).record(System.nanoTime() - authStart, TimeUnit.NANOSECONDS);
+        if (!JWT_OK.equals(outcome) && !JWT_ANONYMOUS.equals(outcome)) {
+            return;
+        }
+        // 如果没有Authorization头或者不是Bearer Token格式，则直接放行
+        // 让Spring Security的其他配置来决定是否需要认证
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * 解析 Bearer Token 并写入 SecurityContext；失败时已写出错误响应。
+     *
+     * @return 鉴权结果（funai.auth.jwt 的 outcome tag）；仅 ok/anonymous 继续执行过滤链
+     */
+    private String authenticate(HttpServletRequest request, HttpServletResponse response, String requestId, String uri)
+            throws IOException {
         String requestTokenHeader = request.getHeader("Authorization");
         if (requestTokenHeader != null) {
             requestTokenHeader = requestTokenHeader.trim();
         }
 
-        String username = null;
         String jwtToken = null;
+        JwtClaims claims;
 
         // JWT Token的格式为 "Bearer token"（兼容大小写与前后空格）
         if (requestTokenHeader != null && requestTokenHeader.length() >= 7
                 && requestTokenHeader.regionMatches(true, 0, "Bearer ", 0, 7)) {
             jwtToken = requestTokenHeader.substring(7).trim();
             try {
-                username = jwtUtil.getUsernameFromToken(jwtToken);
+                // 只验签一次（含过期校验；同一 Token 命中验签缓存），后续全部使用 claims
+                claims = jwtUtil.verify(jwtToken);
             } catch (IllegalArgumentException e) {
                 logger.warn("Unable to get JWT Token: {}", e.getMessage());
                 sendErrorResponse(response, "请求中没有JWT Token");
-                return;
+                return JWT_INVALID;
             } catch (ExpiredJwtException e) {
                 logger.warn("JWT Token已过期: {}", e.getMessage());
                 sendErrorResponse(response, "JWT Token已过期");
-                return;
+                return JWT_EXPIRED;
             } catch (SignatureException e) {
                 logger.warn("JWT签名不匹配: {}", e.getMessage());
                 sendErrorResponse(response, "JWT签名无效");
-                return;
+                return JWT_INVALID;
             } catch (MalformedJwtException e) {
                 logger.warn("JWT格式错误: {}", e.getMessage());
                 sendErrorResponse(response, "JWT格式无效");
-                return;
+                return JWT_INVALID;
             } catch (UnsupportedJwtException e) {
                 logger.warn("不支持的JWT Token: {}", e.getMessage());
                 sendErrorResponse(response, "不支持的JWT Token");
-                return;
+                return JWT_INVALID;
             } catch (Exception e) {
                 logger.warn("JWT Token处理异常: {}", e.getMessage());
                 sendErrorResponse(response, "JWT Token无效");
-                return;
+                return JWT_INVALID;
             }
 
-            // 验证token
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // 由 claims 构造当前用户（用户状态走 JwtPrincipalCache，命中时不查库）
+            if (claims.subject() == null || claims.subject().isBlank()) {
+                logger.warn("JWT Token验证失败: subject 为空");
+                sendErrorResponse(response, "JWT Token无效");
+                return JWT_INVALID;
+            }
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
                 try {
-                    UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-                    if (jwtUtil.validateToken(jwtToken, userDetails.getUsername())) {
-                        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities());
-                        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                        SecurityContextHolder.getContext().setAuthentication(authToken);
-                    } else {
-                        logger.warn("JWT Token验证失败");
-                        sendErrorResponse(response, "JWT Token无效");
-                        return;
+                    FunAiUserPrincipal principal = principalCache.resolve(claims);
+                    if (principal == null) {
+                        logger.warn("JWT Token已吊销: user={}", claims.subject());
+                        sendErrorResponse(response, "JWT Token已失效，请重新登录");
+                        return JWT_REVOKED;
                     }
+                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                            principal, null, principal.getAuthorities());
+                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authToken);
                 } catch (Exception e) {
                     // MySQL 挂掉/连接拒绝时，这里会抛异常（selectOne 无法执行）。
                     // 不应误报为 401（无权限），而应返回 503 提示“认证后端不可用”。
                     if (isLikelyDbDown(e)) {
                         logger.warn("用户认证失败（疑似数据库不可用）: {}", e.getMessage());
                         sendErrorResponse(response, HttpStatus.SERVICE_UNAVAILABLE, 503, "认证服务不可用（数据库连接失败），请稍后重试");
-                    } else {
-                        logger.warn("用户认证失败: {}", e.getMessage());
-                        sendErrorResponse(response, HttpStatus.UNAUTHORIZED, 401, "用户认证失败");
+                        return JWT_DB_DOWN;
                     }
-                    return;
+                    logger.warn("用户认证失败: {}", e.getMessage());
+                    sendErrorResponse(response, HttpStatus.UNAUTHORIZED, 401, "用户认证失败");
+                    return JWT_USER_ERROR;
                 }
             }
+            return JWT_OK;
         }
         // 若请求携带了 Authorization 头但不是 Bearer 格式，给出提示日志（便于排查 Postman/代理层）
         else if (requestTokenHeader != null && !requestTokenHeader.isBlank()) {
@@ -175,58 +165,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     uri,
                     requestTokenHeader.length() > 16 ? requestTokenHeader.substring(0, 16) : requestTokenHeader);
         }
-        // 如果没有Authorization头或者不是Bearer Token格式，则直接放行
-        // 让Spring Security的其他配置来决定是否需要认证
-        chain.doFilter(request, response);
-    }
-
-    private String formatParamMapSafe(HttpServletRequest request) {
-        try {
-            if (request != null) {
-                String ct = request.getContentType();
-                if (ct != null && ct.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
-                    return "{_skipped=multipart}";
-                }
-            }
-            Map<String, String[]> raw = request == null ? null : request.getParameterMap();
-            if (raw == null || raw.isEmpty()) return "{}";
-
-            Map<String, Object> out = new LinkedHashMap<>();
-            int n = 0;
-            for (Map.Entry<String, String[]> e : raw.entrySet()) {
-                if (e == null) continue;
-                String k = e.getKey();
-                if (k == null) continue;
-                if (n++ >= MAX_PARAM_KEYS_TO_LOG) {
-                    out.put("_truncated", true);
-                    break;
-                }
-                String keyLower = k.toLowerCase(Locale.ROOT);
-                boolean sensitive = SENSITIVE_PARAM_KEYS.contains(keyLower);
-                String[] vs = e.getValue();
-                if (sensitive) {
-                    out.put(k, "***");
-                } else if (vs == null) {
-                    out.put(k, null);
-                } else if (vs.length == 1) {
-                    out.put(k, clamp(vs[0]));
-                } else {
-                    out.put(k, Arrays.stream(vs).map(this::clamp).toArray(String[]::new));
-                }
-            }
-            return out.toString();
-        } catch (Exception ignore) {
-            return "{_err=true}";
-        }
+        return JWT_ANONYMOUS;
     }
 
-    private String clamp(String v) {
-        if (v == null) return null;
-        String s = v;
-        if (s.length() > MAX_PARAM_VALUE_LEN) {
-            s = s.substring(0, MAX_PARAM_VALUE_LEN) + "...";
-        }
-        return s;
+    /**
+     * funai.auth.jwt{outcome=ok|anonymous|expired|invalid|revoked|db_down|user_error}：Token 解析 + 加载用户耗时。
+     */
+    private static Timer jwtTimer(String outcome) {
+        return Timer.builder("funai.auth.jwt")
+                .description("JWT 鉴权耗时")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(5))
+                .register(Metrics.globalRegistry);
     }
 
     private void sendErrorResponse(HttpServletResponse response, String message) throws IOException {
@@ -0,0 +1,139 @@
+package fun.ai.studio.security;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import fun.ai.studio.config.JwtAuthProperties;
+import fun.ai.studio.entity.FunAiUser;
+import fun.ai.studio.mapper.FunAiUserMapper;
+import fun.ai.studio.utils.JwtClaims;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JWT 鉴权用的用户状态缓存（进程内，按用户名）。
+ *
+ * <ul>
+ *     <li>命中：用 Token claims（uid）+ 缓存的 user_type/token_valid_after 构造 principal，不访问 MySQL；
+ *     缓存的 user_type 为空时才用 Token 的 utype</li>
+ *     <li>未命中/过期（funai.auth.jwt.principal-cache-ttl-ms）：按 id（Token 带 uid）或 user_name 回源一次</li>
+ *     <li>吊销：改密/禁用等调用 FunAiUserService#revokeTokens，写 token_valid_after 并 {@link #evict(String)}；
+ *     签发时间早于 token_valid_after 的 Token 一律拒绝。其他 API 实例在缓存过期后生效</li>
+ * </ul>
+ */
+@Component
+public class JwtPrincipalCache {
+
+    private final FunAiUserMapper userMapper;
+    private final JwtAuthProperties props;
+
+    private final ConcurrentHashMap<String, UserState> byUsername = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public JwtPrincipalCache(FunAiUserMapper userMapper, JwtAuthProperties props) {
+        this.userMapper = userMapper;
+        this.props = props;
+    }
+
+    /**
+     * 回源得到的用户状态；userId 为 null 表示用户不存在。
+     */
+    private record UserState(Long userId, Integer userType, Long tokenValidAfter, long loadedAtMs) {
+    }
+
+    /**
+     * 由已验签的 Token 内容构造当前用户。
+     *
+     * @return principal；Token 已被吊销（签发早于 token_valid_after，或 uid 与同名用户不一致）时返回 null
+     * @throws UsernameNotFoundException 用户不存在
+     */
+    public FunAiUserPrincipal resolve(JwtClaims claims) {
+        String username = claims.subject();
+        Long claimUserId = claims.userId();
+        UserState st = state(username, claimUserId);
+        if (st.userId() == null) {
+            throw new UsernameNotFoundException("用户不存在");
+        }
+        if (claimUserId != null && !claimUserId.equals(st.userId())) {
+            // 同名用户被删除后重建：旧 Token 不可沿用
+            rejected.increment();
+            return null;
+        }
+        if (st.tokenValidAfter() != null && claims.issuedAtMs() < st.tokenValidAfter()) {
+            rejected.increment();
+            return null;
+        }
+        // 以 DB 为准（管理员调整类型后在缓存过期时生效，无需重新登录）；DB 为空时才用 Token 携带的值
+        Integer userType = st.userType() != null ? st.userType() : claims.userType();
+        return new FunAiUserPrincipal(st.userId(), username, userType);
+    }
+
+    /**
+     * 丢弃本实例缓存（吊销/改密/用户删除后调用），下次请求重新回源。
+     */
+    public void evict(String username) {
+        if (username != null) byUsername.remove(username);
+    }
+
+    /**
+     * 按 ttl 周期清理过期条目（缓存满时不在请求路径上扫描）。
+     */
+    @Scheduled(fixedDelayString = "${funai.auth.jwt.principal-cache-ttl-ms:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        long ttl = props == null ? 60000 : props.getPrincipalCacheTtlMs();
+        byUsername.values().removeIf(st -> now - st.loadedAtMs() >= ttl);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("cachedUsers", byUsername.size());
+        out.put("hits", hits.sum());
+        out.put("loads", loads.sum());
+        out.put("rejected", rejected.sum());
+        return out;
+    }
+
+    private UserState state(String username, Long claimUserId) {
+        long now = System.currentTimeMillis();
+        long ttl = props == null ? 60000 : props.getPrincipalCacheTtlMs();
+        UserState st = byUsername.get(username);
+        if (st != null && now - st.loadedAtMs() < ttl) {
+            hits.increment();
+            return st;
+        }
+        loads.increment();
+        FunAiUser u = load(username, claimUserId);
+        st = u == null
+                ? new UserState(null, null, null, now)
+                : new UserState(u.getId(), u.getUserType(), u.getTokenValidAfter(), now);
+        if (ttl > 0) put(username, st);
+        return st;
+    }
+
+    private FunAiUser load(String username, Long claimUserId) {
+        if (claimUserId != null) {
+            FunAiUser u = userMapper.selectById(claimUserId);
+            // 主键命中且用户名一致；否则按用户名再查（改名/重建场景交给 resolve 判定）
+            if (u != null && username.equals(u.getUserName())) return u;
+        }
+        QueryWrapper<FunAiUser> qw = new QueryWrapper<>();
+        qw.select("id", "user_name", "user_type", "token_valid_after")
+                .eq("user_name", username)
+                .last("limit 1");
+        return userMapper.selectOne(qw);
+    }
+
+    private void put(String username, UserState st) {
+        int max = props == null || props.getPrincipalCacheMaxSize() <= 0 ? 10000 : props.getPrincipalCacheMaxSize();
+        // 已满：本次不缓存，过期条目由 sweep 定时清理
+        if (byUsername.size() >= max && !byUsername.containsKey(username)) return;
+        byUsername.put(username, st);
+    }
+}
@@ -4,6 +4,7 @@ import fun.ai.studio.entity.FunAiConversation;
 import fun.ai.studio.entity.FunAiConversationMessage;
 import fun.ai.studio.entity.response.ConversationDetailResponse;
 import fun.ai.studio.entity.response.ConversationListResponse;
+import fun.ai.studio.entity.response.ConversationMessagePageResponse;
 
 import java.util.List;
 
@@ -24,6 +25,12 @@ public interface FunAiConversationService {
      */
     ConversationDetailResponse getConversationDetail(Long userId, Long conversationId);
     
+    /**
+     * 按 sequence 游标分页获取消息：返回 sequence 小于 beforeSequence 的最新 limit 条（beforeSequence 为空表示从最新开始），
+     * headersOnly=true 时不查询 content
+     */
+    ConversationMessagePageResponse listMessages(Long userId, Long conversationId, Integer beforeSequence, Integer limit, boolean headersOnly);
+    
     /**
      * 添加消息到会话
      */
@@ -44,6 +51,11 @@ public interface FunAiConversationService {
      */
     void rollbackToMessage(Long userId, Long conversationId, Long messageId);
     
+    /**
+     * 按序号回退（写缓冲模式下未落库的消息 id 为空，以 conversationId + sequence 定位）
+     */
+    void rollbackToSequence(Long userId, Long conversationId, Integer sequence);
+    
     /**
      * 删除应用时清理所有会话
      */
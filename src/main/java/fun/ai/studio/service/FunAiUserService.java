@@ -67,4 +67,10 @@ public interface FunAiUserService extends IService<FunAiUser> {
      */
     void setApiKey(Long userId, String apiKey);
 
+    /**
+     * 吊销用户此前签发的全部 JWT（改密/禁用后调用）
+     * @param userId 用户ID
+     */
+    void revokeTokens(Long userId);
+
 }
\ No newline at end of file
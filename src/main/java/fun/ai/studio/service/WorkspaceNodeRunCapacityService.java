@@ -2,10 +2,14 @@ package fun.ai.studio.service;
 
 import fun.ai.studio.common.WorkspaceNodeCapacityException;
 import fun.ai.studio.workspace.WorkspaceNodeClient;
+import fun.ai.studio.workspace.WorkspaceNodeLoad;
+import fun.ai.studio.workspace.WorkspaceNodeRoutingTable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * workspace-node 节点运行态容量限制（按 RUNNING/STARTING/BUILDING/INSTALLING 统计）。
@@ -13,8 +17,16 @@ import java.util.Map;
 @Service
 public class WorkspaceNodeRunCapacityService {
     private static final String CAPACITY_REJECT_MESSAGE = "服务器资源紧张请稍后进入";
+    /**
+     * 本地准入余量：本地放行最多到 上限 - 余量（远程检查与心跳间隔内的估算误差由余量吸收）
+     */
+    private static final int LOCAL_ADMIT_HEADROOM = 2;
 
     private final WorkspaceNodeClient workspaceNodeClient;
+    private final WorkspaceNodeRoutingTable routingTable;
+    private final WorkspaceNodeLoad nodeLoad;
+    private final LongAdder localAdmits = new LongAdder();
+    private final LongAdder remoteChecks = new LongAdder();
 
     @Value("${funai.workspace-node.limits.enabled:false}")
     private boolean limitEnabled;
@@ -22,8 +34,17 @@ public class WorkspaceNodeRunCapacityService {
     @Value("${funai.workspace-node.limits.max-running-per-node:0}")
     private int maxRunningPerNode;
 
-    public WorkspaceNodeRunCapacityService(WorkspaceNodeClient workspaceNodeClient) {
+    /**
+     * 同时做本地准入的 API 实例数：本地放行额度按实例数均分
+     */
+    @Value("${funai.workspace-node.limits.api-instances:2}")
+    private int apiInstances;
+
+    public WorkspaceNodeRunCapacityService(WorkspaceNodeClient workspaceNodeClient, WorkspaceNodeRoutingTable routingTable,
+                                           WorkspaceNodeLoad nodeLoad) {
         this.workspaceNodeClient = workspaceNodeClient;
+        this.routingTable = routingTable;
+        this.nodeLoad = nodeLoad;
     }
 
     public void assertCanStart(Long userId) {
@@ -31,6 +52,15 @@ public class WorkspaceNodeRunCapacityService {
         if (userId == null) return;
         if (workspaceNodeClient == null || !workspaceNodeClient.isEnabled()) return;
 
+        // 本地准入：节点心跳上报的 busyRunCount 明显低于上限时，在本实例分得的额度内原子占用一个名额直接放行，不做远程查询；
+        // 额度用完或没有新鲜负载（旧版节点）时，回退到远程查询（需要 userBusy 精确判断）
+        Long nodeId = routingTable.getNodeId(userId);
+        if (nodeLoad.tryAdmit(nodeId, maxRunningPerNode, LOCAL_ADMIT_HEADROOM, apiInstances)) {
+            localAdmits.increment();
+            return;
+        }
+        remoteChecks.increment();
+
         Map<String, Object> snapshot;
         try {
             snapshot = workspaceNodeClient.getRunBusyCount(userId);
@@ -41,15 +71,28 @@ public class WorkspaceNodeRunCapacityService {
         }
         if (snapshot == null || snapshot.isEmpty()) return;
 
+        long busyCount = asLong(snapshot.get("busyCount"));
+        // 顺带记录节点负载（旧版节点不上报心跳负载时的唯一来源）
+        nodeLoad.recordBusyCount(nodeId, busyCount);
+
         boolean userBusy = asBool(snapshot.get("userBusy"));
         if (userBusy) return;
 
-        long busyCount = asLong(snapshot.get("busyCount"));
         if (busyCount >= maxRunningPerNode) {
             throw new WorkspaceNodeCapacityException(CAPACITY_REJECT_MESSAGE);
         }
     }
 
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("limitEnabled", limitEnabled);
+        out.put("maxRunningPerNode", maxRunningPerNode);
+        out.put("apiInstances", apiInstances);
+        out.put("localAdmits", localAdmits.sum());
+        out.put("remoteChecks", remoteChecks.sum());
+        return out;
+    }
+
     private long asLong(Object v) {
         if (v == null) return 0L;
         if (v instanceof Number n) return n.longValue();
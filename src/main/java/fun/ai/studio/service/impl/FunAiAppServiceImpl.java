@@ -3,7 +3,9 @@ package fun.ai.studio.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 
+import fun.ai.studio.app.AppTeardownEngine;
 import fun.ai.studio.common.Result;
+import fun.ai.studio.deploy.DeployJobIndex;
 import fun.ai.studio.entity.FunAiApp;
 import fun.ai.studio.entity.FunAiUser;
 import fun.ai.studio.enums.FunAiAppStatus;
@@ -12,6 +14,7 @@ import fun.ai.studio.mapper.FunAiAppMapper;
 import fun.ai.studio.service.FunAiAppService;
 import fun.ai.studio.service.FunAiConversationService;
 import fun.ai.studio.service.FunAiUserService;
+import fun.ai.studio.workspace.WorkspaceGatewayRouteIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +41,15 @@ public class FunAiAppServiceImpl extends ServiceImpl<FunAiAppMapper, FunAiApp> i
     @Autowired(required = false)
     private FunAiConversationService conversationService;
 
+    @Autowired(required = false)
+    private AppTeardownEngine appTeardownEngine;
+
+    @Autowired(required = false)
+    private WorkspaceGatewayRouteIndex gatewayRouteIndex;
+
+    @Autowired(required = false)
+    private DeployJobIndex deployJobIndex;
+
     /**
      * 单用户最多可创建应用数量（默认 20）。
      * 使用 @Value 避免部署时漏同步“新增 Java 文件”导致编译失败。
@@ -85,6 +97,9 @@ public class FunAiAppServiceImpl extends ServiceImpl<FunAiAppMapper, FunAiApp> i
         }
         // 保存应用
         save(app);
+        if (gatewayRouteIndex != null) {
+            gatewayRouteIndex.onAppCreated(app.getId(), app.getUserId());
+        }
         return app;
     }
 
@@ -244,6 +259,12 @@ public class FunAiAppServiceImpl extends ServiceImpl<FunAiAppMapper, FunAiApp> i
         
         // 如果删除成功，更新用户的 app_count 并清理会话
         if (deleted) {
+            if (gatewayRouteIndex != null) {
+                gatewayRouteIndex.onAppDeleted(appId);
+            }
+            if (deployJobIndex != null) {
+                deployJobIndex.onAppDeleted(appId);
+            }
             try {
                 updateUserAppCountAfterDelete(userId);
             } catch (Exception e) {
@@ -251,8 +272,16 @@ public class FunAiAppServiceImpl extends ServiceImpl<FunAiAppMapper, FunAiApp> i
                 // 更新失败不影响删除结果，记录日志即可
             }
             
-            // 清理该应用的所有会话
-            if (conversationService != null) {
+            // 清理该应用的会话/消息/运行记录：写墓碑后后台分段删除（读取方按墓碑立即视应用为已删除）
+            if (appTeardownEngine != null) {
+                try {
+                    appTeardownEngine.teardown(userId, appId);
+                } catch (Exception e) {
+                    logger.error("提交应用子数据清理失败: userId={}, appId={}, error={}",
+                        userId, appId, e.getMessage(), e);
+                    // 清理失败不影响删除结果，由孤儿数据清理兜底
+                }
+            } else if (conversationService != null) {
                 try {
                     conversationService.deleteConversationsByApp(userId, appId);
                     logger.info("已清理应用会话: userId={}, appId={}", userId, appId);
@@ -2,36 +2,73 @@ package fun.ai.studio.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import fun.ai.studio.app.AppTeardownEngine;
+import fun.ai.studio.app.AppTombstoneIndex;
+import fun.ai.studio.conversation.ConversationWriteBehindBuffer;
+import fun.ai.studio.conversation.MessageContentCodec;
 import fun.ai.studio.entity.FunAiConversation;
 import fun.ai.studio.entity.FunAiConversationMessage;
 import fun.ai.studio.entity.response.ConversationDetailResponse;
 import fun.ai.studio.entity.response.ConversationListResponse;
+import fun.ai.studio.entity.response.ConversationMessagePageResponse;
+import fun.ai.studio.mapper.FunAiAppMapper;
 import fun.ai.studio.mapper.FunAiConversationMapper;
 import fun.ai.studio.mapper.FunAiConversationMessageMapper;
 import fun.ai.studio.service.FunAiConversationService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class FunAiConversationServiceImpl implements FunAiConversationService {
     
     private final FunAiConversationMapper conversationMapper;
     private final FunAiConversationMessageMapper messageMapper;
+    private final FunAiAppMapper appMapper;
+    private final MessageContentCodec contentCodec;
+    private final ConversationWriteBehindBuffer writeBehind;
+    private final TransactionTemplate txTemplate;
+    private final AppTombstoneIndex tombstoneIndex;
+    private final AppTeardownEngine teardownEngine;
     
     @Value("${funai.conversation.max-conversations-per-app:5}")
     private int maxConversationsPerApp;
     
     @Value("${funai.conversation.max-messages-per-conversation:30}")
     private int maxMessagesPerConversation;
+
+    @Value("${funai.conversation.message-page-default-size:20}")
+    private int messagePageDefaultSize;
+
+    @Value("${funai.conversation.message-page-max-size:100}")
+    private int messagePageMaxSize;
     
     public FunAiConversationServiceImpl(FunAiConversationMapper conversationMapper,
-                                       FunAiConversationMessageMapper messageMapper) {
+                                       FunAiConversationMessageMapper messageMapper,
+                                       FunAiAppMapper appMapper,
+                                       MessageContentCodec contentCodec,
+                                       ConversationWriteBehindBuffer writeBehind,
+                                       PlatformTransactionManager transactionManager,
+                                       AppTombstoneIndex tombstoneIndex,
+                                       AppTeardownEngine teardownEngine) {
         this.conversationMapper = conversationMapper;
         this.messageMapper = messageMapper;
+        this.appMapper = appMapper;
+        this.contentCodec = contentCodec;
+        this.writeBehind = writeBehind;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.tombstoneIndex = tombstoneIndex;
+        this.teardownEngine = teardownEngine;
     }
     
     @Override
@@ -43,6 +80,13 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
         if (appId == null) {
             throw new IllegalArgumentException("appId 不能为空");
         }
+        if (tombstoneIndex.isDeleted(appId)) {
+            throw new IllegalArgumentException("应用不存在或已删除");
+        }
+        // 墓碑索引有刷新间隔：以应用行为准并加共享锁到提交，避免在其它实例删除应用后（清理游标已扫过）再建出会话
+        if (appMapper.lockOwnedForShare(appId, userId) == 0) {
+            throw new IllegalArgumentException("应用不存在或已删除");
+        }
         
         // 检查会话数量限制（不再区分归档状态，所有会话都计入）
         long count = conversationMapper.selectCount(
@@ -62,6 +106,7 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
         conversation.setAppId(appId);
         conversation.setTitle(title != null && !title.isBlank() ? title : "新会话");
         conversation.setMessageCount(0);
+        conversation.setLastSequence(0);
         conversation.setLastMessageTime(LocalDateTime.now());
         conversation.setArchived(false);
         
@@ -78,8 +123,8 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
             throw new IllegalArgumentException("appId 不能为空");
         }
         
-        // 查询所有会话，按最后消息时间倒序
-        List<FunAiConversation> conversations = conversationMapper.selectList(
+        // 应用已删除、会话清理中：直接视为空
+        List<FunAiConversation> conversations = tombstoneIndex.isDeleted(appId) ? List.of() : conversationMapper.selectList(
             new LambdaQueryWrapper<FunAiConversation>()
                 .eq(FunAiConversation::getUserId, userId)
                 .eq(FunAiConversation::getAppId, appId)
@@ -104,18 +149,22 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
         }
         
         FunAiConversation conversation = conversationMapper.selectById(conversationId);
-        if (conversation == null) {
+        if (conversation == null || tombstoneIndex.isDeleted(conversation.getAppId())) {
             throw new IllegalArgumentException("会话不存在");
         }
         if (!conversation.getUserId().equals(userId)) {
             throw new IllegalArgumentException("无权访问该会话");
         }
         
+        // 先取写缓冲快照再查库：两者之间落库的消息会出现在查询结果中，不会漏
+        ConversationWriteBehindBuffer.Snapshot buffered = writeBehind.snapshot(conversationId);
         List<FunAiConversationMessage> messages = messageMapper.selectList(
             new LambdaQueryWrapper<FunAiConversationMessage>()
                 .eq(FunAiConversationMessage::getConversationId, conversationId)
                 .orderByAsc(FunAiConversationMessage::getSequence)
         );
+        contentCodec.decode(messages);
+        messages = mergeBuffered(conversation, messages, buffered, null, false);
         
         ConversationDetailResponse response = new ConversationDetailResponse();
         response.setConversation(conversation);
@@ -126,88 +175,134 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
     }
     
     @Override
-    @Transactional
-    public FunAiConversationMessage addMessage(Long userId, Long conversationId, String role, String content, String gitCommitSha) {
+    public ConversationMessagePageResponse listMessages(Long userId, Long conversationId, Integer beforeSequence,
+                                                        Integer limit, boolean headersOnly) {
         if (userId == null) {
             throw new IllegalArgumentException("userId 不能为空");
         }
         if (conversationId == null) {
             throw new IllegalArgumentException("conversationId 不能为空");
         }
-        if (role == null || role.isBlank()) {
-            throw new IllegalArgumentException("role 不能为空");
+        if (beforeSequence != null && beforeSequence <= 0) {
+            throw new IllegalArgumentException("beforeSequence 必须大于 0");
         }
-        if (content == null || content.isBlank()) {
-            throw new IllegalArgumentException("content 不能为空");
-        }
-        
-        // 验证会话归属
+        int max = Math.max(1, messagePageMaxSize);
+        int size = limit == null || limit <= 0 ? Math.min(Math.max(1, messagePageDefaultSize), max) : Math.min(limit, max);
+
         FunAiConversation conversation = conversationMapper.selectById(conversationId);
-        if (conversation == null) {
+        if (conversation == null || tombstoneIndex.isDeleted(conversation.getAppId())) {
             throw new IllegalArgumentException("会话不存在");
         }
         if (!conversation.getUserId().equals(userId)) {
             throw new IllegalArgumentException("无权访问该会话");
         }
-        
-        // 检查消息数量限制
-        long messageCount = messageMapper.selectCount(
-            new LambdaQueryWrapper<FunAiConversationMessage>()
-                .eq(FunAiConversationMessage::getConversationId, conversationId)
-        );
 
-        // 超过上限：按 FIFO 删除最早的消息，为新消息腾位置（保持最多 maxMessagesPerConversation 条）
+        // 走 (conversation_id, sequence) 索引倒序取 size+1 条：多出的一条只用来判断是否还有更早的消息；
+        // headersOnly 不查 content/content_zip，压缩消息也不解码
+        LambdaQueryWrapper<FunAiConversationMessage> query = new LambdaQueryWrapper<FunAiConversationMessage>()
+            .eq(FunAiConversationMessage::getConversationId, conversationId)
+            .lt(beforeSequence != null, FunAiConversationMessage::getSequence, beforeSequence)
+            .orderByDesc(FunAiConversationMessage::getSequence)
+            .last("LIMIT " + (size + 1));
+        if (headersOnly) {
+            query.select(
+                FunAiConversationMessage::getId,
+                FunAiConversationMessage::getConversationId,
+                FunAiConversationMessage::getRole,
+                FunAiConversationMessage::getSequence,
+                FunAiConversationMessage::getGitCommitSha,
+                FunAiConversationMessage::getCreateTime
+            );
+        }
+        ConversationWriteBehindBuffer.Snapshot buffered = writeBehind.snapshot(conversationId);
+        List<FunAiConversationMessage> messages = messageMapper.selectList(query);
+        if (!headersOnly) {
+            contentCodec.decode(messages);
+        }
+        Collections.reverse(messages);
+        messages = mergeBuffered(conversation, messages, buffered, beforeSequence, headersOnly);
+
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            messages = new ArrayList<>(messages.subList(messages.size() - size, messages.size()));
+        }
+
+        ConversationMessagePageResponse response = new ConversationMessagePageResponse();
+        response.setConversation(conversation);
+        response.setMessages(messages);
+        response.setHasMore(hasMore);
+        response.setNextBeforeSequence(hasMore && !messages.isEmpty() ? messages.get(0).getSequence() : null);
+        response.setMaxMessages(maxMessagesPerConversation);
+        return response;
+    }
+    
+    @Override
+    public FunAiConversationMessage addMessage(Long userId, Long conversationId, String role, String content, String gitCommitSha) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId 不能为空");
+        }
+        if (conversationId == null) {
+            throw new IllegalArgumentException("conversationId 不能为空");
+        }
+        if (role == null || role.isBlank()) {
+            throw new IllegalArgumentException("role 不能为空");
+        }
+        if (content == null || content.isBlank()) {
+            throw new IllegalArgumentException("content 不能为空");
+        }
+        
         int max = Math.max(1, maxMessagesPerConversation);
-        if (messageCount >= max) {
-            long toRemove = (messageCount - max) + 1;
-            int removeN = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, toRemove));
-            if (removeN > 0) {
-                List<FunAiConversationMessage> oldest = messageMapper.selectList(
-                        new LambdaQueryWrapper<FunAiConversationMessage>()
-                                .eq(FunAiConversationMessage::getConversationId, conversationId)
-                                .orderByAsc(FunAiConversationMessage::getSequence)
-                                .last("LIMIT " + removeN)
-                );
-                if (oldest != null && !oldest.isEmpty()) {
-                    List<Long> ids = oldest.stream()
-                            .filter(m -> m != null && m.getId() != null)
-                            .map(FunAiConversationMessage::getId)
-                            .toList();
-                    if (!ids.isEmpty()) {
-                        messageMapper.deleteBatchIds(ids);
-                        messageCount = Math.max(0, messageCount - ids.size());
-                    }
-                }
+        // 写缓冲模式：分配序号后进入会话内存日志即返回，由后台按批落库（不开事务）
+        if (writeBehind.isEnabled()) {
+            return writeBehind.append(userId, conversationId, role, content, gitCommitSha, max);
+        }
+        return txTemplate.execute(status -> appendNow(userId, conversationId, role, content, gitCommitSha, max));
+    }
+    
+    /**
+     * 同步追加（一个事务）。
+     */
+    private FunAiConversationMessage appendNow(Long userId, Long conversationId, String role, String content,
+                                               String gitCommitSha, int max) {
+        // 1) 分配序号：一条条件 UPDATE（归属校验 + 应用墓碑校验 + last_sequence 递增 + message_count/last_message_time），
+        //    会话行锁使同一会话的并发追加串行化
+        FunAiConversationMapper.AppendSlot slot = new FunAiConversationMapper.AppendSlot();
+        slot.setConversationId(conversationId);
+        slot.setUserId(userId);
+        slot.setMaxMessages(max);
+        if (conversationMapper.allocateSequence(slot) == 0) {
+            // 仅失败路径回查，区分错误原因
+            FunAiConversation conversation = conversationMapper.selectById(conversationId);
+            if (conversation != null && !conversation.getUserId().equals(userId)) {
+                throw new IllegalArgumentException("无权访问该会话");
             }
+            // 会话不存在，或所属应用已删除（墓碑）
+            throw new IllegalArgumentException("会话不存在");
         }
+        int sequence = slot.getSequence();
         
-        // 获取下一个序号
-        Integer maxSequence = messageMapper.selectList(
-            new LambdaQueryWrapper<FunAiConversationMessage>()
-                .eq(FunAiConversationMessage::getConversationId, conversationId)
-                .orderByDesc(FunAiConversationMessage::getSequence)
-                .last("LIMIT 1")
-        ).stream()
-            .map(FunAiConversationMessage::getSequence)
-            .findFirst()
-            .orElse(0);
-        
+        // 2) 插入消息
         FunAiConversationMessage message = new FunAiConversationMessage();
         message.setConversationId(conversationId);
         message.setRole(role);
         message.setContent(content);
-        message.setSequence(maxSequence + 1);
+        message.setSequence(sequence);
         message.setGitCommitSha(gitCommitSha);  // 设置 Git commit SHA
+        contentCodec.encode(message);
         
         messageMapper.insert(message);
+        // 返回给调用方的仍是原文
+        message.setContent(content);
+        message.setContentZip(null);
         
-        // 更新会话的消息数量和最后消息时间
-        conversationMapper.update(null,
-            new LambdaUpdateWrapper<FunAiConversation>()
-                .eq(FunAiConversation::getId, conversationId)
-                .set(FunAiConversation::getMessageCount, Math.min(max, messageCount + 1))
-                .set(FunAiConversation::getLastMessageTime, LocalDateTime.now())
-        );
+        // 3) FIFO 窗口：序号连续，只保留 (sequence - max, sequence]，一次范围 DELETE（走 conversation_id + sequence 索引）
+        if (sequence > max) {
+            messageMapper.delete(
+                new LambdaQueryWrapper<FunAiConversationMessage>()
+                    .eq(FunAiConversationMessage::getConversationId, conversationId)
+                    .le(FunAiConversationMessage::getSequence, sequence - max)
+            );
+        }
         
         return message;
     }
@@ -226,7 +321,7 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
         }
         
         FunAiConversation conversation = conversationMapper.selectById(conversationId);
-        if (conversation == null) {
+        if (conversation == null || tombstoneIndex.isDeleted(conversation.getAppId())) {
             throw new IllegalArgumentException("会话不存在");
         }
         if (!conversation.getUserId().equals(userId)) {
@@ -251,13 +346,16 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
         }
         
         FunAiConversation conversation = conversationMapper.selectById(conversationId);
-        if (conversation == null) {
+        if (conversation == null || tombstoneIndex.isDeleted(conversation.getAppId())) {
             throw new IllegalArgumentException("会话不存在");
         }
         if (!conversation.getUserId().equals(userId)) {
             throw new IllegalArgumentException("无权访问该会话");
         }
         
+        // 未落库的消息直接丢弃
+        writeBehind.discard(conversationId);
+        
         // 删除所有消息
         messageMapper.delete(
             new LambdaQueryWrapper<FunAiConversationMessage>()
@@ -281,17 +379,19 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
             throw new IllegalArgumentException("messageId 不能为空");
         }
         
+        // 先把本实例写缓冲中的消息落库（独立事务）并移出内存：须在本事务第一次读之前，读快照才包含它们
+        writeBehind.flushAndEvict(conversationId);
+        
         // 验证会话归属
-        FunAiConversation conversation = conversationMapper.selectById(conversationId);
-        if (conversation == null) {
-            throw new IllegalArgumentException("会话不存在");
-        }
-        if (!conversation.getUserId().equals(userId)) {
-            throw new IllegalArgumentException("无权访问该会话");
-        }
+        checkOwned(userId, conversationId);
         
         // 验证消息存在且属于该会话
-        FunAiConversationMessage targetMessage = messageMapper.selectById(messageId);
+        FunAiConversationMessage targetMessage = messageMapper.selectOne(
+            new LambdaQueryWrapper<FunAiConversationMessage>()
+                .select(FunAiConversationMessage::getId, FunAiConversationMessage::getConversationId,
+                        FunAiConversationMessage::getSequence)
+                .eq(FunAiConversationMessage::getId, messageId)
+        );
         if (targetMessage == null) {
             throw new IllegalArgumentException("消息不存在");
         }
@@ -299,11 +399,56 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
             throw new IllegalArgumentException("消息不属于该会话");
         }
         
-        // 删除该消息之后的所有消息（sequence > targetMessage.sequence）
+        rollbackTo(conversationId, targetMessage.getSequence());
+    }
+    
+    @Override
+    @Transactional
+    public void rollbackToSequence(Long userId, Long conversationId, Integer sequence) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId 不能为空");
+        }
+        if (conversationId == null) {
+            throw new IllegalArgumentException("conversationId 不能为空");
+        }
+        if (sequence == null || sequence <= 0) {
+            throw new IllegalArgumentException("sequence 必须大于 0");
+        }
+        
+        writeBehind.flushAndEvict(conversationId);
+        checkOwned(userId, conversationId);
+        
+        Long exists = messageMapper.selectCount(
+            new LambdaQueryWrapper<FunAiConversationMessage>()
+                .eq(FunAiConversationMessage::getConversationId, conversationId)
+                .eq(FunAiConversationMessage::getSequence, sequence)
+        );
+        if (exists == null || exists == 0) {
+            throw new IllegalArgumentException("消息不存在");
+        }
+        
+        rollbackTo(conversationId, sequence);
+    }
+    
+    private void checkOwned(Long userId, Long conversationId) {
+        FunAiConversation conversation = conversationMapper.selectById(conversationId);
+        if (conversation == null || tombstoneIndex.isDeleted(conversation.getAppId())) {
+            throw new IllegalArgumentException("会话不存在");
+        }
+        if (!conversation.getUserId().equals(userId)) {
+            throw new IllegalArgumentException("无权访问该会话");
+        }
+    }
+    
+    /**
+     * 删除序号大于 targetSequence 的消息，并把会话计数/序号回到目标消息。
+     */
+    private void rollbackTo(Long conversationId, int targetSequence) {
+        // 删除该消息之后的所有消息（sequence > targetSequence）
         messageMapper.delete(
             new LambdaQueryWrapper<FunAiConversationMessage>()
                 .eq(FunAiConversationMessage::getConversationId, conversationId)
-                .gt(FunAiConversationMessage::getSequence, targetMessage.getSequence())
+                .gt(FunAiConversationMessage::getSequence, targetSequence)
         );
         
         // 重新计算消息数量
@@ -315,6 +460,7 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
         // 获取最后一条消息的时间
         LocalDateTime lastMessageTime = messageMapper.selectList(
             new LambdaQueryWrapper<FunAiConversationMessage>()
+                .select(FunAiConversationMessage::getId, FunAiConversationMessage::getCreateTime)
                 .eq(FunAiConversationMessage::getConversationId, conversationId)
                 .orderByDesc(FunAiConversationMessage::getSequence)
                 .last("LIMIT 1")
@@ -328,12 +474,13 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
             new LambdaUpdateWrapper<FunAiConversation>()
                 .eq(FunAiConversation::getId, conversationId)
                 .set(FunAiConversation::getMessageCount, newMessageCount)
+                // 序号回到目标消息，保持窗口内序号连续（追加时按序号范围裁剪）
+                .set(FunAiConversation::getLastSequence, targetSequence)
                 .set(FunAiConversation::getLastMessageTime, lastMessageTime)
         );
     }
     
     @Override
-    @Transactional
     public void deleteConversationsByApp(Long userId, Long appId) {
         if (userId == null) {
             throw new IllegalArgumentException("userId 不能为空");
@@ -342,36 +489,45 @@ public class FunAiConversationServiceImpl implements FunAiConversationService {
             throw new IllegalArgumentException("appId 不能为空");
         }
         
-        // 查询该应用的所有会话
-        List<FunAiConversation> conversations = conversationMapper.selectList(
-            new LambdaQueryWrapper<FunAiConversation>()
-                .eq(FunAiConversation::getUserId, userId)
-                .eq(FunAiConversation::getAppId, appId)
-        );
-
-        // 批量删除消息（避免 N+1：每个会话一次 delete）
-        if (conversations != null && !conversations.isEmpty()) {
-            List<Long> ids = conversations.stream()
-                    .filter(c -> c != null && c.getId() != null)
-                    .map(FunAiConversation::getId)
-                    .toList();
-            // MySQL 对 IN 参数有上限，做简单分片更稳（应用内会话数量通常不大）
-            final int batchSize = 500;
-            for (int i = 0; i < ids.size(); i += batchSize) {
-                List<Long> batch = ids.subList(i, Math.min(i + batchSize, ids.size()));
-                if (batch.isEmpty()) continue;
-                messageMapper.delete(
-                        new LambdaQueryWrapper<FunAiConversationMessage>()
-                                .in(FunAiConversationMessage::getConversationId, batch)
-                );
-            }
+        // 不开大事务：按会话主键分页、消息按 LIMIT 分段删除，每段单独提交（丢弃写缓冲中未落库的消息）
+        teardownEngine.deleteConversations(userId, appId);
+    }
+    
+    /**
+     * 合并本实例写缓冲中尚未落库的消息（读己之写）：按序号去重、去掉已滑出窗口的旧消息，返回升序列表。
+     * 序号与 messageCount/lastMessageTime 在追加时已写入会话行，只在会话行先于追加读出时把 lastSequence 补齐。
+     *
+     * @param persisted      库中读到的消息（升序）
+     * @param beforeSequence 非空时只合并序号小于它的缓冲消息
+     */
+    private List<FunAiConversationMessage> mergeBuffered(FunAiConversation conversation,
+                                                         List<FunAiConversationMessage> persisted,
+                                                         ConversationWriteBehindBuffer.Snapshot buffered,
+                                                         Integer beforeSequence,
+                                                         boolean headersOnly) {
+        if (buffered == null) {
+            return persisted;
         }
+        int max = Math.max(1, maxMessagesPerConversation);
+        List<FunAiConversationMessage> pending = buffered.messages();
+        int last = Math.max(conversation.getLastSequence() == null ? 0 : conversation.getLastSequence(),
+                pending.get(pending.size() - 1).getSequence());
+        conversation.setLastSequence(last);
         
-        // 删除所有会话
-        conversationMapper.delete(
-            new LambdaQueryWrapper<FunAiConversation>()
-                .eq(FunAiConversation::getUserId, userId)
-                .eq(FunAiConversation::getAppId, appId)
-        );
+        Set<Integer> seen = new HashSet<>();
+        List<FunAiConversationMessage> merged = new ArrayList<>(persisted.size() + pending.size());
+        for (FunAiConversationMessage m : persisted) {
+            if (seen.add(m.getSequence())) merged.add(m);
+        }
+        for (FunAiConversationMessage m : pending) {
+            if (beforeSequence != null && m.getSequence() >= beforeSequence) continue;
+            if (!seen.add(m.getSequence())) continue;
+            if (headersOnly) m.setContent(null);
+            merged.add(m);
+        }
+        int floor = last - max;
+        merged.removeIf(m -> m.getSequence() <= floor);
+        merged.sort(Comparator.comparing(FunAiConversationMessage::getSequence));
+        return merged;
     }
 }
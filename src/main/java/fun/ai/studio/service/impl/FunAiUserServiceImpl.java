@@ -6,6 +6,7 @@ import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import fun.ai.studio.entity.FunAiUser;
 import fun.ai.studio.mapper.FunAiUserMapper;
+import fun.ai.studio.security.JwtPrincipalCache;
 import fun.ai.studio.service.FunAiInviteCodeService;
 import fun.ai.studio.service.FunAiUserService;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -20,11 +21,14 @@ public class FunAiUserServiceImpl extends ServiceImpl<FunAiUserMapper, FunAiUser
 
     private final PasswordEncoder passwordEncoder;
     private final FunAiInviteCodeService inviteCodeService;
+    private final JwtPrincipalCache principalCache;
 
     public FunAiUserServiceImpl(PasswordEncoder passwordEncoder,
-                                FunAiInviteCodeService inviteCodeService) {
+                                FunAiInviteCodeService inviteCodeService,
+                                JwtPrincipalCache principalCache) {
         this.passwordEncoder = passwordEncoder;
         this.inviteCodeService = inviteCodeService;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -137,4 +141,22 @@ public class FunAiUserServiceImpl extends ServiceImpl<FunAiUserMapper, FunAiUser
         update(updateWrapper);
     }
 
+    @Override
+    public void revokeTokens(Long userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("用户ID不能为空");
+        }
+        FunAiUser user = getById(userId);
+        if (user == null) {
+            return;
+        }
+        // 与 Token 的毫秒签发时间（iatms claim）比较：+1 使吊销时刻及之前签发的 Token 全部失效，之后重新登录即可用
+        long validAfter = System.currentTimeMillis() + 1;
+        UpdateWrapper<FunAiUser> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.eq("id", userId);
+        updateWrapper.set("token_valid_after", validAfter);
+        update(updateWrapper);
+        principalCache.evict(user.getUserName());
+    }
+
 }
\ No newline at end of file
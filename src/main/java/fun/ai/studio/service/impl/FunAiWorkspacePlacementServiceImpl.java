@@ -4,39 +4,45 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import fun.ai.studio.common.WorkspaceNodeProxyException;
 import fun.ai.studio.config.WorkspaceNodeFailoverProperties;
-import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
 import fun.ai.studio.entity.FunAiWorkspaceNode;
 import fun.ai.studio.entity.FunAiWorkspacePlacement;
 import fun.ai.studio.mapper.FunAiWorkspaceNodeMapper;
 import fun.ai.studio.mapper.FunAiWorkspacePlacementMapper;
 import fun.ai.studio.service.FunAiWorkspacePlacementService;
+import fun.ai.studio.workspace.WorkspaceNodeHealthTracker;
+import fun.ai.studio.workspace.WorkspaceNodeRoutingTable;
+import fun.ai.studio.workspace.WorkspaceNodeSelector;
+import fun.ai.studio.workspace.WorkspaceNodeStats;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Objects;
-
 @Service
 public class FunAiWorkspacePlacementServiceImpl
         extends ServiceImpl<FunAiWorkspacePlacementMapper, FunAiWorkspacePlacement>
         implements FunAiWorkspacePlacementService {
 
     private final FunAiWorkspaceNodeMapper nodeMapper;
-    private final WorkspaceNodeRegistryProperties registryProps;
+    private final WorkspaceNodeHealthTracker healthTracker;
     private final WorkspaceNodeFailoverProperties failoverProps;
+    private final WorkspaceNodeRoutingTable routingTable;
+    private final WorkspaceNodeStats nodeStats;
+    private final WorkspaceNodeSelector nodeSelector;
 
     public FunAiWorkspacePlacementServiceImpl(
             FunAiWorkspaceNodeMapper nodeMapper,
-            WorkspaceNodeRegistryProperties registryProps,
-            WorkspaceNodeFailoverProperties failoverProps
+            WorkspaceNodeHealthTracker healthTracker,
+            WorkspaceNodeFailoverProperties failoverProps,
+            WorkspaceNodeRoutingTable routingTable,
+            WorkspaceNodeStats nodeStats,
+            WorkspaceNodeSelector nodeSelector
     ) {
         this.nodeMapper = nodeMapper;
-        this.registryProps = registryProps;
+        this.healthTracker = healthTracker;
         this.failoverProps = failoverProps;
+        this.routingTable = routingTable;
+        this.nodeStats = nodeStats;
+        this.nodeSelector = nodeSelector;
     }
 
     @Override
@@ -57,6 +63,7 @@ public class FunAiWorkspacePlacementServiceImpl
         p.setNodeId(chosen.getId());
         try {
             save(p);
+            nodeStats.onPlacementCreated(p.getNodeId());
             return p;
         } catch (Exception ignore) {
             FunAiWorkspacePlacement again = getByUserId(userId);
@@ -67,20 +74,33 @@ public class FunAiWorkspacePlacementServiceImpl
 
     @Override
     public FunAiWorkspaceNode resolveNode(Long userId) {
-        FunAiWorkspacePlacement placement = ensurePlacement(userId);
-        Long nodeId = placement == null ? null : placement.getNodeId();
-        if (nodeId == null) throw new WorkspaceNodeProxyException("placement nodeId is null: userId=" + userId);
-        FunAiWorkspaceNode node = nodeMapper.selectById(nodeId);
+        // 热路径：本地路由表命中时不查 DB（placement + node 都来自内存）
+        FunAiWorkspacePlacement placement = null;
+        Long nodeId = routingTable.getNodeId(userId);
+        if (nodeId == null) {
+            placement = ensurePlacement(userId);
+            nodeId = placement == null ? null : placement.getNodeId();
+            if (nodeId == null) throw new WorkspaceNodeProxyException("placement nodeId is null: userId=" + userId);
+            routingTable.putRoute(userId, nodeId);
+        }
+        FunAiWorkspaceNode node = routingTable.getNode(nodeId);
+        if (node == null) {
+            // 新节点可能尚未进入快照：回源一次
+            node = nodeMapper.selectById(nodeId);
+            if (node != null) routingTable.onNodeChanged(node);
+        }
         if (node == null || node.getEnabled() == null || node.getEnabled() != 1) {
+            routingTable.invalidateUser(userId);
             throw new WorkspaceNodeProxyException("workspace node disabled/not found: nodeId=" + nodeId);
         }
         if (!StringUtils.hasText(node.getApiBaseUrl()) || !StringUtils.hasText(node.getNginxBaseUrl())) {
             throw new WorkspaceNodeProxyException("workspace node baseUrl empty: nodeId=" + nodeId);
         }
 
-        // 健康判断：心跳过期视为不健康
-        if (!isHeartbeatFresh(node)) {
+        // 健康判断：STALE 视为不健康（SUSPECT 仍照常路由已有用户）
+        if (!healthTracker.isServing(node)) {
             // guarded auto-reassign（默认关闭）：仅在判定安全时自动迁移
+            if (placement == null) placement = getByUserId(userId);
             if (shouldAutoReassign(placement)) {
                 // 记录一次迁移事件（最小实现：落日志；后续可落库）
                 try {
@@ -92,6 +112,8 @@ public class FunAiWorkspacePlacementServiceImpl
                 if (chosen != null && chosen.getId() != null && !chosen.getId().equals(nodeId)) {
                     placement.setNodeId(chosen.getId());
                     updateById(placement);
+                    nodeStats.onPlacementsMoved(nodeId, chosen.getId(), 1);
+                    routingTable.putRoute(userId, chosen.getId());
                     return chosen;
                 }
             }
@@ -109,36 +131,8 @@ public class FunAiWorkspacePlacementServiceImpl
     }
 
     private FunAiWorkspaceNode chooseNodeForUser(Long userId) {
-        // 策略：一致性哈希（稳定分配）+ 只选择 enabled 节点
-        QueryWrapper<FunAiWorkspaceNode> qw = new QueryWrapper<>();
-        qw.eq("enabled", 1);
-        List<FunAiWorkspaceNode> nodes = nodeMapper.selectList(qw);
-        if (nodes == null || nodes.isEmpty()) {
-            throw new WorkspaceNodeProxyException("no enabled workspace nodes");
-        }
-        nodes = nodes.stream()
-                .filter(Objects::nonNull)
-                .filter(n -> n.getId() != null)
-                .filter(n -> StringUtils.hasText(n.getApiBaseUrl()))
-                .filter(n -> StringUtils.hasText(n.getNginxBaseUrl()))
-                .filter(this::isHeartbeatFresh)
-                .sorted(Comparator.comparing(FunAiWorkspaceNode::getId))
-                .toList();
-        if (nodes.isEmpty()) throw new WorkspaceNodeProxyException("no valid workspace nodes");
-
-        int idx = Math.floorMod(Long.hashCode(userId), nodes.size());
-        return nodes.get(idx);
-    }
-
-    private boolean isHeartbeatFresh(FunAiWorkspaceNode node) {
-        if (node == null) return false;
-        // registry 未启用时，不做心跳过滤（兼容单机/未上线心跳阶段）
-        if (registryProps == null || !registryProps.isEnabled()) return true;
-        LocalDateTime at = node.getLastHeartbeatAt();
-        if (at == null) return false;
-        Duration stale = registryProps.heartbeatStaleDuration();
-        LocalDateTime now = LocalDateTime.now();
-        return at.isAfter(now.minusSeconds(stale.toSeconds()));
+        // 策略：带权一致性哈希环（节点快照，不查 DB）+ 避开接近 max-running-per-node 的节点
+        return nodeSelector.choose(userId);
     }
 
     private boolean shouldAutoReassign(FunAiWorkspacePlacement placement) {
@@ -13,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Random;
 
@@ -70,7 +71,7 @@ public class VerificationCodeServiceImpl implements VerificationCodeService {
         // 6. 发送邮件
         String subject = "密码重置验证码";
         String body = buildEmailBody(user.getUserName(), code, VALID_MINUTES);
-        mailAlertService.sendTo(email, subject, body);
+        mailAlertService.sendTo(email, subject, body, Duration.ofMinutes(VALID_MINUTES));
 
         logger.info("sendCombinedCode: userId={}, emailMasked={}", user.getId(), EmailUtils.maskEmail(email));
 
@@ -115,6 +116,9 @@ public class VerificationCodeServiceImpl implements VerificationCodeService {
         user.setPassword(passwordEncoder.encode(newPassword));
         funAiUserService.updateById(user);
 
+        // 7. 吊销改密前签发的 Token
+        funAiUserService.revokeTokens(user.getId());
+
         logger.info("combinedResetPassword: success for userId={}", user.getId());
     }
 
@@ -152,7 +156,7 @@ public class VerificationCodeServiceImpl implements VerificationCodeService {
         // 6. 发送邮件
         String subject = "注册验证码";
         String body = buildRegisterEmailBody(username, code, VALID_MINUTES);
-        mailAlertService.sendTo(email, subject, body);
+        mailAlertService.sendTo(email, subject, body, Duration.ofMinutes(VALID_MINUTES));
 
         logger.info("sendRegisterCode: username={}, emailMasked={}", username, EmailUtils.maskEmail(email));
 
@@ -205,7 +209,7 @@ public class VerificationCodeServiceImpl implements VerificationCodeService {
         // 5. 发送邮件
         String subject = "登录验证码";
         String body = buildLoginEmailBody(user.getUserName(), code, VALID_MINUTES);
-        mailAlertService.sendTo(email, subject, body);
+        mailAlertService.sendTo(email, subject, body, Duration.ofMinutes(VALID_MINUTES));
 
         logger.info("sendLoginCode: userId={}, emailMasked={}", user.getId(), EmailUtils.maskEmail(email));
 
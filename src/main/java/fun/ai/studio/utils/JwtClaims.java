@@ -0,0 +1,17 @@
+package fun.ai.studio.utils;
+
+/**
+ * 已验签的 JWT 内容（不可变，可在线程间共享/缓存）。
+ *
+ * @param subject     用户名（sub）
+ * @param userId      用户 id（uid claim；旧 Token 无此字段时为 null）
+ * @param userType    用户类型（utype claim；旧 Token 无此字段时为 null）
+ * @param issuedAtMs  签发时间（毫秒：iatms claim，旧 Token 取秒级 iat；缺失时为 0）
+ * @param expiresAtMs 过期时间（exp，毫秒）
+ */
+public record JwtClaims(String subject, Long userId, Integer userType, long issuedAtMs, long expiresAtMs) {
+
+    public boolean isExpired(long nowMs) {
+        return expiresAtMs <= nowMs;
+    }
+}
@@ -1,26 +1,63 @@
 package fun.ai.studio.utils;
 
+import fun.ai.studio.entity.FunAiUser;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
 
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_USER_TYPE = "utype";
+    /**
+     * 毫秒精度的签发时间（标准 iat 只到秒，吊销按毫秒比较）
+     */
+    public static final String CLAIM_ISSUED_AT_MS = "iatms";
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private Long expiration;
 
+    /**
+     * 已验签 Token 缓存上限（按 Token 摘要；0 表示不缓存）
+     */
+    @Value("${jwt.verify-cache-max-size:10000}")
+    private int verifyCacheMaxSize = 10000;
+
+    /**
+     * sha256(token) -> 已验签内容；条目在 exp 之后失效，不缓存验签失败的 Token
+     */
+    private final ConcurrentHashMap<String, JwtClaims> verified = new ConcurrentHashMap<>();
+    private final LongAdder verifyHits = new LongAdder();
+    private final LongAdder verifyMisses = new LongAdder();
+
     /**
      * 生成JWT token
      *
@@ -32,6 +69,70 @@ public class JwtUtil {
         return createToken(claims, username);
     }
 
+    /**
+     * 生成JWT token，并携带 userId/userType claims（鉴权时无需再按用户名查库）
+     *
+     * @param user 用户（需包含 id、userName）
+     * @return token
+     */
+    public String generateToken(FunAiUser user) {
+        Map<String, Object> claims = new HashMap<>();
+        if (user.getId() != null) {
+            claims.put(CLAIM_USER_ID, user.getId());
+        }
+        claims.put(CLAIM_USER_TYPE, user.getUserType() == null ? 0 : user.getUserType());
+        return createToken(claims, user.getUserName());
+    }
+
+    /**
+     * 验签并返回不可变的 Token 内容（过期抛 ExpiredJwtException，签名/格式错误抛对应 JwtException）。
+     * 同一 Token 验签成功后按摘要缓存到 exp，重复请求不再做 HS512 验签与 JSON 解析。
+     *
+     * @param token token
+     * @return 已验签内容
+     */
+    public JwtClaims verify(String token) {
+        if (!StringUtils.hasText(token)) {
+            throw new IllegalArgumentException("JWT String argument cannot be null or empty.");
+        }
+        long now = System.currentTimeMillis();
+        String key = verifyCacheMaxSize > 0 ? digest(token) : null;
+        if (key != null) {
+            JwtClaims hit = verified.get(key);
+            if (hit != null) {
+                if (!hit.isExpired(now)) {
+                    verifyHits.increment();
+                    return hit;
+                }
+                // 过期：走完整解析，由 jjwt 抛出 ExpiredJwtException
+                verified.remove(key, hit);
+            }
+        }
+        verifyMisses.increment();
+        JwtClaims c = toJwtClaims(getAllClaimsFromToken(token));
+        if (key != null && c.expiresAtMs() != Long.MAX_VALUE) {
+            cacheVerified(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * 定时清理已过期的验签缓存条目（缓存满时不在请求路径上扫描）。
+     */
+    @Scheduled(fixedDelayString = "${jwt.verify-cache-sweep-ms:60000}")
+    public void sweepVerified() {
+        long now = System.currentTimeMillis();
+        verified.values().removeIf(v -> v.isExpired(now));
+    }
+
+    public Map<String, Object> verifyCacheStats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("size", verified.size());
+        out.put("hits", verifyHits.sum());
+        out.put("misses", verifyMisses.sum());
+        return out;
+    }
+
     /**
      * 从token中获取用户名
      *
@@ -39,7 +140,7 @@ public class JwtUtil {
      * @return 用户名
      */
     public String getUsernameFromToken(String token) {
-        return getClaimFromToken(token, Claims::getSubject);
+        return verify(token).subject();
     }
 
     /**
@@ -49,7 +150,7 @@ public class JwtUtil {
      * @return 过期时间
      */
     public Date getExpirationDateFromToken(String token) {
-        return getClaimFromToken(token, Claims::getExpiration);
+        return new Date(verify(token).expiresAtMs());
     }
 
     public <T> T getClaimFromToken(String token, Function<Claims, T> claimsResolver) {
@@ -65,8 +166,8 @@ public class JwtUtil {
      * @return 是否有效
      */
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = getUsernameFromToken(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        final JwtClaims claims = verify(token);
+        return (claims.subject().equals(username) && !claims.isExpired(System.currentTimeMillis()));
     }
 
     private Claims getAllClaimsFromToken(String token) {
@@ -74,9 +175,38 @@ public class JwtUtil {
         return Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody();
     }
 
-    private Boolean isTokenExpired(String token) {
-        final Date expiration = getExpirationDateFromToken(token);
-        return expiration.before(new Date());
+    private void cacheVerified(String key, JwtClaims c) {
+        // 已满：本次不缓存（过期条目由 sweepVerified 定时清理；有效 Token 数超过上限时退化为每次验签）
+        if (verified.size() >= verifyCacheMaxSize) return;
+        verified.put(key, c);
+    }
+
+    private static JwtClaims toJwtClaims(Claims claims) {
+        Date iat = claims.getIssuedAt();
+        Date exp = claims.getExpiration();
+        Long uid = longClaim(claims.get(CLAIM_USER_ID));
+        Long utype = longClaim(claims.get(CLAIM_USER_TYPE));
+        // 旧 Token 没有 iatms：退回秒级 iat（截断到秒，吊销比较偏保守）
+        Long iatMs = longClaim(claims.get(CLAIM_ISSUED_AT_MS));
+        return new JwtClaims(claims.getSubject(), uid, utype == null ? null : utype.intValue(),
+                iatMs != null ? iatMs : iat == null ? 0L : iat.getTime(),
+                exp == null ? Long.MAX_VALUE : exp.getTime());
+    }
+
+    private static Long longClaim(Object v) {
+        if (v instanceof Number n) return n.longValue();
+        if (v instanceof String s && !s.isBlank()) {
+            try {
+                return Long.valueOf(s.trim());
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return null;
+    }
+
+    private static String digest(String token) {
+        byte[] d = SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().withoutPadding().encodeToString(d);
     }
 
     private String createToken(Map<String, Object> claims, String subject) {
@@ -84,11 +214,13 @@ public class JwtUtil {
         if (!StringUtils.hasText(subject)) {
             throw new IllegalArgumentException("jwt subject 不能为空");
         }
+        long now = System.currentTimeMillis();
+        claims.put(CLAIM_ISSUED_AT_MS, now);
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expiration * 1000))
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + expiration * 1000))
                 .signWith(SignatureAlgorithm.HS512, secret)
                 .compact();
     }
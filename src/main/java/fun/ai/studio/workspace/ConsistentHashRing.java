@@ -0,0 +1,123 @@
+package fun.ai.studio.workspace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 带权一致性哈希环（不可变）：每个节点按 weight 生成虚拟节点，key 顺时针落到第一个虚拟节点。
+ *
+ * <ul>
+ *     <li>虚拟节点数 = vnodesPer100 * weight / 100（至少 1；weight<=0 的节点不上环）</li>
+ *     <li>增删一个节点只影响落在它虚拟节点区间内的 key（约 1/N），其余 key 落点不变</li>
+ *     <li>哈希为确定性的 64 位混合（不依赖 JVM/实例），多个 API 实例对同一 key 给出相同结果</li>
+ * </ul>
+ */
+public final class ConsistentHashRing {
+
+    private static final long VNODE_STRIDE = 1_000_003L;
+
+    private final long[] points;
+    private final long[] owners;
+    private final int nodeCount;
+
+    private ConsistentHashRing(long[] points, long[] owners, int nodeCount) {
+        this.points = points;
+        this.owners = owners;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @param weights      nodeId -> weight
+     * @param vnodesPer100 weight=100 时的虚拟节点数
+     */
+    public static ConsistentHashRing build(Map<Long, Integer> weights, int vnodesPer100) {
+        int per100 = Math.max(1, vnodesPer100);
+        List<long[]> entries = new ArrayList<>();
+        int nodes = 0;
+        if (weights != null) {
+            for (Map.Entry<Long, Integer> e : weights.entrySet()) {
+                Long nodeId = e.getKey();
+                int w = e.getValue() == null ? 0 : e.getValue();
+                if (nodeId == null || w <= 0) continue;
+                int vnodes = (int) Math.max(1, Math.min(VNODE_STRIDE - 1, (long) per100 * w / 100));
+                for (int i = 0; i < vnodes; i++) {
+                    entries.add(new long[]{mix(nodeId * VNODE_STRIDE + i), nodeId});
+                }
+                nodes++;
+            }
+        }
+        // 按环上位置排序；位置相同（概率极低）时按 nodeId，保证结果确定
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(a[1], b[1]));
+        long[] points = new long[entries.size()];
+        long[] owners = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            points[i] = entries.get(i)[0];
+            owners[i] = entries.get(i)[1];
+        }
+        return new ConsistentHashRing(points, owners, nodes);
+    }
+
+    public boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * key 的首选节点；空环返回 null。
+     */
+    public Long primary(long key) {
+        if (points.length == 0) return null;
+        return owners[indexOf(mix(key))];
+    }
+
+    /**
+     * 从 key 的位置顺时针遍历，依次返回不同的节点（首个即 {@link #primary}），最多 limit 个。
+     */
+    public List<Long> candidates(long key, int limit) {
+        if (points.length == 0 || limit <= 0) return List.of();
+        int want = Math.min(limit, nodeCount);
+        Set<Long> out = new LinkedHashSet<>(want * 2);
+        int idx = indexOf(mix(key));
+        for (int step = 0; step < points.length && out.size() < want; step++) {
+            out.add(owners[(idx + step) % points.length]);
+        }
+        return new ArrayList<>(out);
+    }
+
+    private int indexOf(long h) {
+        // 第一个 >= h 的虚拟节点（无符号比较）；超过末尾则回到 0
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(points[mid], h) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == points.length ? 0 : lo;
+    }
+
+    /**
+     * 64 位混合（MurmurHash3 fmix64），双射：不同输入不会碰撞。
+     */
+    static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,177 @@
+package fun.ai.studio.workspace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮：大量“到点检查一下”的短任务（节点心跳 deadline）共用一个后台线程，
+ * 添加/取消 O(1)，每个 tick 只处理当前槽位。
+ *
+ * <ul>
+ *     <li>精度为 tickMs（任务最多晚一个 tick 执行），适合秒级 deadline，不适合精确定时</li>
+ *     <li>任务在时间轮线程上执行：必须很快返回（耗时操作请交给其它线程）</li>
+ *     <li>任意线程可 schedule/cancel；新任务先进入无锁队列，由时间轮线程在下一个 tick 放入槽位</li>
+ * </ul>
+ */
+public final class HashedTimerWheel {
+    private static final Logger log = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    private final String name;
+    private final long tickMs;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+    private volatile long tick = 0;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * @param tickMs    每格时长（毫秒）
+     * @param wheelSize 槽位数（向上取 2 的幂）；一圈覆盖 tickMs * wheelSize，超出的任务按圈数轮转
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(String name, long tickMs, int wheelSize) {
+        this.name = name;
+        this.tickMs = Math.max(1, tickMs);
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) wheel[i] = new ArrayDeque<>();
+        this.mask = size - 1;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        Thread t = worker;
+        if (t == null) return;
+        LockSupport.unpark(t);
+        try {
+            t.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * delayMs 后执行 task（delayMs<=0 时在下一个 tick 执行）。
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long deadlineTick = (elapsedMs() + Math.max(0, delayMs) + tickMs - 1) / tickMs;
+        Timeout t = new Timeout(task, deadlineTick);
+        incoming.add(t);
+        scheduled.increment();
+        return t;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tickMs", tickMs);
+        out.put("wheelSize", wheel.length);
+        out.put("scheduled", scheduled.sum());
+        out.put("expired", expired.sum());
+        out.put("cancelled", cancelled.sum());
+        return out;
+    }
+
+    private long elapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private void run() {
+        while (running) {
+            long nextTickAtMs = (tick + 1) * tickMs;
+            long sleepMs = nextTickAtMs - elapsedMs();
+            if (sleepMs > 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(sleepMs));
+                continue;
+            }
+            long current = ++tick;
+            transferIncoming(current);
+            expire(wheel[(int) (current & mask)], current);
+        }
+    }
+
+    private void transferIncoming(long current) {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled) {
+                cancelled.increment();
+                continue;
+            }
+            // 已过期的任务放到当前槽位，本 tick 立即执行
+            long target = Math.max(t.deadlineTick, current);
+            wheel[(int) (target & mask)].add(t);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket, long current) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout t = it.next();
+            if (t.cancelled) {
+                it.remove();
+                cancelled.increment();
+                continue;
+            }
+            if (t.deadlineTick > current) continue;
+            it.remove();
+            expired.increment();
+            try {
+                t.task.run();
+            } catch (Exception e) {
+                log.warn("timer wheel task failed: wheel={}, error={}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 已添加的任务句柄。
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * 取消（惰性：在所在槽位下次被扫描时移除）。
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
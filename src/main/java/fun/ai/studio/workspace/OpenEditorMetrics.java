@@ -0,0 +1,70 @@
+package fun.ai.studio.workspace;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * open-editor 各阶段耗时直方图（Micrometer Timer，带 percentile histogram）。
+ *
+ * <pre>
+ * funai.open_editor.stage{stage=ensure_dir|package_probe|run_status, outcome=ok|error}
+ * funai.open_editor.total{mode=remote|local}
+ * </pre>
+ *
+ * <p>未注册 MeterRegistry 时写入 Metrics.globalRegistry（无导出目标时为空操作）。</p>
+ */
+@Component
+public class OpenEditorMetrics {
+
+    public static final String STAGE_ENSURE_DIR = "ensure_dir";
+    public static final String STAGE_PACKAGE_PROBE = "package_probe";
+    public static final String STAGE_RUN_STATUS = "run_status";
+
+    private final MeterRegistry registry;
+
+    public OpenEditorMetrics(ObjectProvider<MeterRegistry> registryProvider) {
+        this.registry = registryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    /**
+     * 执行并记录一个阶段的耗时；异常原样抛出（outcome=error）。
+     */
+    public <T> T time(String stage, Supplier<T> body) {
+        long t0 = System.nanoTime();
+        String outcome = "error";
+        try {
+            T v = body.get();
+            outcome = "ok";
+            return v;
+        } finally {
+            stageTimer(stage, outcome).record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordTotal(boolean remote, long nanos) {
+        Timer.builder("funai.open_editor.total")
+                .description("open-editor 接口总耗时")
+                .tag("mode", remote ? "remote" : "local")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer stageTimer(String stage, String outcome) {
+        return Timer.builder("funai.open_editor.stage")
+                .description("open-editor 单阶段耗时")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry);
+    }
+}
@@ -0,0 +1,393 @@
+package fun.ai.studio.workspace;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import fun.ai.studio.config.WorkspaceDrainProperties;
+import fun.ai.studio.entity.FunAiWorkspaceDrainJob;
+import fun.ai.studio.entity.FunAiWorkspacePlacement;
+import fun.ai.studio.mapper.FunAiWorkspaceDrainJobMapper;
+import fun.ai.studio.mapper.FunAiWorkspacePlacementMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * workspace 节点 drain 后台任务：把 sourceNodeId 的 placements 分批迁到 targetNodeId。
+ *
+ * <ul>
+ *     <li>分页：按 placement id 做 keyset 游标（id > lastPlacementId order by id limit batchSize），不用 offset</li>
+ *     <li>写入：每批一条 UPDATE ... WHERE id IN (...) AND node_id = source，独立提交，不做大事务</li>
+ *     <li>限速：funai.workspace-drain.rate-per-second（条/秒，最低 10）；等待按租约 1/3 分片并续心跳</li>
+ *     <li>检查点：每批后写 lastPlacementId/moved/heartbeatAt；写检查点带 status=RUNNING AND owner=本实例 条件，
+ *     条件不满足（被暂停/取消/接管）即停止</li>
+ *     <li>续跑：PAUSED/FAILED 可手动 resume；RUNNING 但超过租约没有检查点的任务由任一实例定时接管</li>
+ *     <li>互斥：同一源节点最多一个 RUNNING/PAUSED 任务，由生成列 active_source_node_id 上的唯一键保证（V6），
+ *     先查后插只是为了给出友好提示</li>
+ * </ul>
+ */
+@Component
+public class WorkspaceDrainJobManager {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceDrainJobManager.class);
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_PAUSED = "PAUSED";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private static final int MAX_BATCH_SIZE = 2000;
+    /**
+     * 限速下限（条/秒）：过低时单批要等很久，限速等待期间按租约分片续心跳
+     */
+    private static final int MIN_RATE_PER_SECOND = 10;
+    private static final int MAX_ERROR_LEN = 500;
+
+    private final FunAiWorkspaceDrainJobMapper jobMapper;
+    private final FunAiWorkspacePlacementMapper placementMapper;
+    private final WorkspaceNodeRoutingTable routingTable;
+    private final WorkspaceNodeStats nodeStats;
+    private final WorkspaceDrainProperties props;
+    private final Executor executor;
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName()
+            + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+    /**
+     * 本实例正在执行的任务（防止同一任务被重复提交）
+     */
+    private final Set<Long> localRunning = ConcurrentHashMap.newKeySet();
+
+    public WorkspaceDrainJobManager(FunAiWorkspaceDrainJobMapper jobMapper,
+                                    FunAiWorkspacePlacementMapper placementMapper,
+                                    WorkspaceNodeRoutingTable routingTable,
+                                    WorkspaceNodeStats nodeStats,
+                                    WorkspaceDrainProperties props,
+                                    @Qualifier("workspaceDrainExecutor") Executor executor) {
+        this.jobMapper = jobMapper;
+        this.placementMapper = placementMapper;
+        this.routingTable = routingTable;
+        this.nodeStats = nodeStats;
+        this.props = props;
+        this.executor = executor;
+    }
+
+    /**
+     * 创建并启动任务（调用方已校验 target 节点可用）。
+     *
+     * @throws IllegalStateException 源节点已有 RUNNING/PAUSED 任务
+     */
+    public FunAiWorkspaceDrainJob start(Long sourceNodeId, Long targetNodeId, Integer batchSize, Integer ratePerSecond) {
+        QueryWrapper<FunAiWorkspaceDrainJob> active = new QueryWrapper<>();
+        active.eq("source_node_id", sourceNodeId)
+                .in("status", STATUS_RUNNING, STATUS_PAUSED)
+                .last("limit 1");
+        FunAiWorkspaceDrainJob existing = jobMapper.selectOne(active);
+        if (existing != null) {
+            throw new IllegalStateException("source node 已有未结束的 drain 任务: jobId=" + existing.getId());
+        }
+
+        QueryWrapper<FunAiWorkspacePlacement> cqw = new QueryWrapper<>();
+        cqw.eq("node_id", sourceNodeId);
+        Long total = placementMapper.selectCount(cqw);
+
+        FunAiWorkspaceDrainJob job = new FunAiWorkspaceDrainJob();
+        job.setSourceNodeId(sourceNodeId);
+        job.setTargetNodeId(targetNodeId);
+        job.setStatus(STATUS_RUNNING);
+        job.setLastPlacementId(0L);
+        job.setMoved(0L);
+        job.setTotal(total == null ? 0L : total);
+        job.setBatchSize(clampBatch(batchSize == null ? props.getBatchSize() : batchSize));
+        job.setRatePerSecond(clampRate(ratePerSecond == null ? props.getRatePerSecond() : ratePerSecond));
+        job.setOwner(instanceId);
+        job.setHeartbeatAt(LocalDateTime.now());
+        try {
+            jobMapper.insert(job);
+        } catch (DuplicateKeyException e) {
+            // 其它实例在检查之后抢先创建了任务
+            throw new IllegalStateException("source node 已有未结束的 drain 任务: sourceNodeId=" + sourceNodeId);
+        }
+        submit(job.getId());
+        return job;
+    }
+
+    public FunAiWorkspaceDrainJob get(Long jobId) {
+        return jobId == null ? null : jobMapper.selectById(jobId);
+    }
+
+    public List<FunAiWorkspaceDrainJob> list(int limit) {
+        QueryWrapper<FunAiWorkspaceDrainJob> qw = new QueryWrapper<>();
+        qw.orderByDesc("id").last("limit " + Math.min(Math.max(limit, 1), 200));
+        List<FunAiWorkspaceDrainJob> jobs = jobMapper.selectList(qw);
+        return jobs == null ? List.of() : jobs;
+    }
+
+    /**
+     * 暂停：执行实例在下一个检查点停止（检查点保留，可 resume）。
+     */
+    public boolean pause(Long jobId) {
+        return transition(jobId, STATUS_PAUSED, STATUS_RUNNING);
+    }
+
+    /**
+     * 取消：RUNNING/PAUSED/FAILED -> CANCELLED（已迁移的 placement 不回滚）。
+     */
+    public boolean cancel(Long jobId) {
+        return transition(jobId, STATUS_CANCELLED, STATUS_RUNNING, STATUS_PAUSED, STATUS_FAILED);
+    }
+
+    /**
+     * 从检查点续跑：PAUSED/FAILED，或 RUNNING 但租约已过期（原执行实例已退出）。
+     */
+    public boolean resume(Long jobId) {
+        if (jobId == null || !claim(jobId, true)) return false;
+        submit(jobId);
+        return true;
+    }
+
+    /**
+     * 接管租约过期的 RUNNING 任务（API 实例重启/宕机后自动续跑；条件 UPDATE 保证只有一个实例接管成功）。
+     */
+    @Scheduled(initialDelay = 30_000, fixedDelay = 30_000)
+    public void takeOverStaleJobs() {
+        try {
+            QueryWrapper<FunAiWorkspaceDrainJob> qw = new QueryWrapper<>();
+            qw.select("id")
+                    .eq("status", STATUS_RUNNING)
+                    .lt("heartbeat_at", leaseDeadline())
+                    .last("limit 10");
+            List<FunAiWorkspaceDrainJob> stale = jobMapper.selectList(qw);
+            if (stale == null) return;
+            for (FunAiWorkspaceDrainJob j : stale) {
+                if (j == null || j.getId() == null || localRunning.contains(j.getId())) continue;
+                if (claim(j.getId(), false)) {
+                    log.warn("take over stale workspace drain job: jobId={}, owner={}", j.getId(), instanceId);
+                    submit(j.getId());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("take over workspace drain jobs failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 同步迁移一批（兼容旧 /drain 接口：最多 limit 条，单条 UPDATE）。
+     *
+     * @return 实际迁移条数
+     */
+    public int drainOnce(Long sourceNodeId, Long targetNodeId, int limit) {
+        List<FunAiWorkspacePlacement> batch = nextBatch(sourceNodeId, 0L, clampBatch(limit));
+        return moveBatch(sourceNodeId, targetNodeId, batch);
+    }
+
+    private void submit(Long jobId) {
+        if (!localRunning.add(jobId)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    run(jobId);
+                } finally {
+                    localRunning.remove(jobId);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 线程池拒绝：保持 RUNNING，租约过期后被接管
+            localRunning.remove(jobId);
+            log.warn("submit workspace drain job rejected: jobId={}, err={}", jobId, e.getMessage());
+        }
+    }
+
+    private void run(Long jobId) {
+        FunAiWorkspaceDrainJob job = jobMapper.selectById(jobId);
+        if (job == null || !STATUS_RUNNING.equals(job.getStatus()) || !instanceId.equals(job.getOwner())) return;
+
+        Long source = job.getSourceNodeId();
+        Long target = job.getTargetNodeId();
+        int batchSize = clampBatch(job.getBatchSize() == null ? props.getBatchSize() : job.getBatchSize());
+        int rate = clampRate(job.getRatePerSecond() == null ? props.getRatePerSecond() : job.getRatePerSecond());
+        long lastId = job.getLastPlacementId() == null ? 0L : job.getLastPlacementId();
+        long moved = job.getMoved() == null ? 0L : job.getMoved();
+        log.info("workspace drain job start: jobId={}, {} -> {}, fromId={}, moved={}", jobId, source, target, lastId, moved);
+
+        try {
+            while (true) {
+                long t0 = System.currentTimeMillis();
+                List<FunAiWorkspacePlacement> batch = nextBatch(source, lastId, batchSize);
+                if (batch.isEmpty()) {
+                    finish(jobId, STATUS_DONE, null);
+                    routingTable.invalidateNodeRoutes(source);
+                    log.info("workspace drain job done: jobId={}, moved={}", jobId, moved);
+                    return;
+                }
+                moved += moveBatch(source, target, batch);
+                lastId = batch.get(batch.size() - 1).getId();
+                if (!checkpoint(jobId, lastId, moved)) {
+                    log.info("workspace drain job stopped at checkpoint: jobId={}, lastId={}, moved={}", jobId, lastId, moved);
+                    return;
+                }
+                if (!throttle(jobId, batch.size(), rate, System.currentTimeMillis() - t0)) {
+                    log.info("workspace drain job stopped while throttling: jobId={}, lastId={}, moved={}", jobId, lastId, moved);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("workspace drain job failed: jobId={}, lastId={}, err={}", jobId, lastId, e.getMessage());
+            finish(jobId, STATUS_FAILED, e.getMessage());
+        }
+    }
+
+    private List<FunAiWorkspacePlacement> nextBatch(Long sourceNodeId, long afterId, int limit) {
+        QueryWrapper<FunAiWorkspacePlacement> qw = new QueryWrapper<>();
+        qw.select("id", "user_id")
+                .eq("node_id", sourceNodeId)
+                .gt("id", afterId)
+                .orderByAsc("id")
+                .last("limit " + limit);
+        List<FunAiWorkspacePlacement> ps = placementMapper.selectList(qw);
+        return ps == null ? List.of() : ps;
+    }
+
+    private int moveBatch(Long source, Long target, List<FunAiWorkspacePlacement> batch) {
+        if (batch == null || batch.isEmpty()) return 0;
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (FunAiWorkspacePlacement p : batch) {
+            if (p != null && p.getId() != null) ids.add(p.getId());
+        }
+        if (ids.isEmpty()) return 0;
+        // node_id = source 条件：select 之后被其它操作迁走的行不会被覆盖
+        UpdateWrapper<FunAiWorkspacePlacement> uw = new UpdateWrapper<>();
+        uw.set("node_id", target)
+                .in("id", ids)
+                .eq("node_id", source);
+        int n = placementMapper.update(null, uw);
+        for (FunAiWorkspacePlacement p : batch) {
+            if (p != null && p.getUserId() != null) routingTable.invalidateUser(p.getUserId());
+        }
+        nodeStats.onPlacementsMoved(source, target, n);
+        return n;
+    }
+
+    private boolean checkpoint(Long jobId, long lastId, long moved) {
+        UpdateWrapper<FunAiWorkspaceDrainJob> uw = new UpdateWrapper<>();
+        uw.set("last_placement_id", lastId)
+                .set("moved", moved)
+                .set("heartbeat_at", LocalDateTime.now())
+                .eq("id", jobId)
+                .eq("status", STATUS_RUNNING)
+                .eq("owner", instanceId);
+        return jobMapper.update(null, uw) > 0;
+    }
+
+    private void finish(Long jobId, String status, String error) {
+        try {
+            UpdateWrapper<FunAiWorkspaceDrainJob> uw = new UpdateWrapper<>();
+            uw.set("status", status)
+                    .set("heartbeat_at", LocalDateTime.now())
+                    .set("error_message", truncate(error))
+                    .eq("id", jobId)
+                    .eq("status", STATUS_RUNNING)
+                    .eq("owner", instanceId);
+            jobMapper.update(null, uw);
+        } catch (Exception e) {
+            log.warn("update workspace drain job status failed: jobId={}, status={}, err={}", jobId, status, e.getMessage());
+        }
+    }
+
+    private boolean transition(Long jobId, String to, String... from) {
+        if (jobId == null) return false;
+        UpdateWrapper<FunAiWorkspaceDrainJob> uw = new UpdateWrapper<>();
+        uw.set("status", to)
+                .eq("id", jobId)
+                .in("status", (Object[]) from);
+        return jobMapper.update(null, uw) > 0;
+    }
+
+    /**
+     * 条件 UPDATE 抢占任务（owner=本实例）。
+     *
+     * @param includePaused true：PAUSED/FAILED 也可抢占（手动 resume）；false：仅租约过期的 RUNNING
+     */
+    private boolean claim(Long jobId, boolean includePaused) {
+        LocalDateTime deadline = leaseDeadline();
+        UpdateWrapper<FunAiWorkspaceDrainJob> uw = new UpdateWrapper<>();
+        uw.set("status", STATUS_RUNNING)
+                .set("owner", instanceId)
+                .set("heartbeat_at", LocalDateTime.now())
+                .set("error_message", null)
+                .eq("id", jobId);
+        if (includePaused) {
+            uw.and(w -> w.in("status", STATUS_PAUSED, STATUS_FAILED)
+                    .or(x -> x.eq("status", STATUS_RUNNING).lt("heartbeat_at", deadline)));
+        } else {
+            uw.eq("status", STATUS_RUNNING).lt("heartbeat_at", deadline);
+        }
+        try {
+            return jobMapper.update(null, uw) > 0;
+        } catch (DuplicateKeyException e) {
+            // FAILED 任务续跑时，同一源节点已有其它未结束任务
+            log.warn("claim workspace drain job rejected, source node has another active job: jobId={}", jobId);
+            return false;
+        }
+    }
+
+    private LocalDateTime leaseDeadline() {
+        return LocalDateTime.now().minusSeconds(Math.max(10, props.getLeaseSeconds()));
+    }
+
+    /**
+     * 限速等待：按不超过租约 1/3 的分片睡眠，分片之间续心跳，避免等待超过租约被其它实例接管。
+     *
+     * @return false 表示任务已不再由本实例执行（暂停/取消/被接管），应停止
+     */
+    private boolean throttle(Long jobId, int rows, int ratePerSecond, long elapsedMs) throws InterruptedException {
+        if (ratePerSecond <= 0 || rows <= 0) return true;
+        long budgetMs = rows * 1000L / ratePerSecond;
+        long sleep = budgetMs - elapsedMs;
+        long sliceMs = Math.max(10, props.getLeaseSeconds()) * 1000L / 3;
+        while (sleep > 0) {
+            long ms = Math.min(sleep, sliceMs);
+            Thread.sleep(ms);
+            sleep -= ms;
+            if (sleep > 0 && !heartbeat(jobId)) return false;
+        }
+        return true;
+    }
+
+    private boolean heartbeat(Long jobId) {
+        UpdateWrapper<FunAiWorkspaceDrainJob> uw = new UpdateWrapper<>();
+        uw.set("heartbeat_at", LocalDateTime.now())
+                .eq("id", jobId)
+                .eq("status", STATUS_RUNNING)
+                .eq("owner", instanceId);
+        return jobMapper.update(null, uw) > 0;
+    }
+
+    private static int clampBatch(int batchSize) {
+        return Math.min(Math.max(batchSize, 1), MAX_BATCH_SIZE);
+    }
+
+    /**
+     * <=0 表示不限速；其余不低于 MIN_RATE_PER_SECOND
+     */
+    private static int clampRate(int ratePerSecond) {
+        return ratePerSecond <= 0 ? 0 : Math.max(ratePerSecond, MIN_RATE_PER_SECOND);
+    }
+
+    private static String truncate(String s) {
+        if (s == null) return null;
+        return s.length() <= MAX_ERROR_LEN ? s : s.substring(0, MAX_ERROR_LEN);
+    }
+}
@@ -0,0 +1,165 @@
+package fun.ai.studio.workspace;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import fun.ai.studio.entity.FunAiApp;
+import fun.ai.studio.mapper.FunAiAppMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 入口 Nginx auth_request（/internal/gateway/node）专用索引：appId -> userId 常驻内存。
+ *
+ * <p>userId -> nginxBaseUrl 由 {@link WorkspaceNodeRoutingTable} 负责，两段都命中时整条链路不查 DB。</p>
+ *
+ * <ul>
+ *     <li>启动时预加载（仅 id,user_id 两列）</li>
+ *     <li>创建/删除应用时由 FunAiAppServiceImpl 增量维护</li>
+ *     <li>未命中回源一次 DB；不存在的 appId 做短时负缓存，避免扫描类请求打穿 DB</li>
+ *     <li>定时全量重建：兜底同步其它 API 实例上的创建/删除；重建期间发生的删除在替换后重放，避免被旧快照加回</li>
+ * </ul>
+ */
+@Component
+public class WorkspaceGatewayRouteIndex {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceGatewayRouteIndex.class);
+
+    private static final long NEGATIVE_TTL_MS = 10_000L;
+    private static final int MAX_NEGATIVE_ENTRIES = 10_000;
+
+    private final FunAiAppMapper appMapper;
+
+    private volatile ConcurrentHashMap<Long, Long> appOwner = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> negativeUntilMs = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+    /**
+     * 重建进行中：期间的删除记入 removedDuringRebuild，整体替换后重放
+     */
+    private volatile boolean rebuilding = false;
+    private final Set<Long> removedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    public WorkspaceGatewayRouteIndex(FunAiAppMapper appMapper) {
+        this.appMapper = appMapper;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("preload gateway route index failed (will fallback to DB lookups): {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${funai.workspace-gateway.index-rebuild-ms:300000}",
+            fixedDelayString = "${funai.workspace-gateway.index-rebuild-ms:300000}"
+    )
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("rebuild gateway route index failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 全量重建（只查 id,user_id），构建完成后整体替换。
+     */
+    public synchronized void rebuild() {
+        removedDuringRebuild.clear();
+        // 先置标记再查库：标记之前的删除已提交，不会出现在快照里
+        rebuilding = true;
+        try {
+            QueryWrapper<FunAiApp> qw = new QueryWrapper<>();
+            qw.select("id", "user_id");
+            List<FunAiApp> apps = appMapper.selectList(qw);
+            Map<Long, Long> m = new HashMap<>();
+            if (apps != null) {
+                for (FunAiApp a : apps) {
+                    if (a == null || a.getId() == null || a.getUserId() == null) continue;
+                    m.put(a.getId(), a.getUserId());
+                }
+            }
+            ConcurrentHashMap<Long, Long> next = new ConcurrentHashMap<>(m);
+            appOwner = next;
+            // 查询之后、替换之前删除的应用可能仍在快照中：重放
+            for (Long appId : removedDuringRebuild) {
+                next.remove(appId);
+            }
+            negativeUntilMs.clear();
+            loaded = true;
+        } finally {
+            rebuilding = false;
+            removedDuringRebuild.clear();
+        }
+    }
+
+    /**
+     * appId -> userId；不存在返回 null。
+     */
+    public Long resolveUserId(Long appId) {
+        if (appId == null) return null;
+        Long userId = appOwner.get(appId);
+        if (userId != null) {
+            hits.increment();
+            return userId;
+        }
+        Long until = negativeUntilMs.get(appId);
+        if (until != null) {
+            if (until > System.currentTimeMillis()) {
+                negativeHits.increment();
+                return null;
+            }
+            negativeUntilMs.remove(appId, until);
+        }
+        misses.increment();
+        FunAiApp app = appMapper.selectById(appId);
+        if (app == null || app.getUserId() == null) {
+            if (negativeUntilMs.size() >= MAX_NEGATIVE_ENTRIES) negativeUntilMs.clear();
+            negativeUntilMs.put(appId, System.currentTimeMillis() + NEGATIVE_TTL_MS);
+            return null;
+        }
+        appOwner.put(appId, app.getUserId());
+        return app.getUserId();
+    }
+
+    public void onAppCreated(Long appId, Long userId) {
+        if (appId == null || userId == null) return;
+        appOwner.put(appId, userId);
+        negativeUntilMs.remove(appId);
+    }
+
+    public void onAppDeleted(Long appId) {
+        if (appId == null) return;
+        if (rebuilding) {
+            removedDuringRebuild.add(appId);
+        }
+        appOwner.remove(appId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("loaded", loaded);
+        out.put("apps", appOwner.size());
+        out.put("hits", hits.sum());
+        out.put("misses", misses.sum());
+        out.put("negativeHits", negativeHits.sum());
+        out.put("negativeEntries", negativeUntilMs.size());
+        return out;
+    }
+}
@@ -3,8 +3,10 @@ package fun.ai.studio.workspace;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fun.ai.studio.common.Result;
+import fun.ai.studio.common.UpstreamMetrics;
 import fun.ai.studio.config.WorkspaceNodeProxyProperties;
 import fun.ai.studio.config.WorkspaceNodeProxySigner;
+import fun.ai.studio.entity.FunAiWorkspaceNode;
 import fun.ai.studio.entity.response.FunAiWorkspaceFileNode;
 import fun.ai.studio.entity.response.FunAiWorkspaceFileTreeResponse;
 import fun.ai.studio.entity.response.FunAiWorkspaceProjectDirResponse;
@@ -31,16 +33,16 @@ import fun.ai.studio.entity.response.WorkspaceMongoDeleteOneResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpTimeoutException;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -56,21 +58,23 @@ public class WorkspaceNodeClient {
     private static final String HDR_TS = "X-WS-Timestamp";
     private static final String HDR_NONCE = "X-WS-Nonce";
 
+    /**
+     * package.json 探测：单次列目录的最大条目数 / 逐个探测的根目录子目录上限
+     */
+    private static final int PROBE_MAX_ENTRIES = 200;
+    private static final int PROBE_MAX_SUBDIRS = 3;
+
     private final WorkspaceNodeProxyProperties props;
     private final WorkspaceNodeResolver nodeResolver;
     private final ObjectMapper objectMapper;
-    private final HttpClient httpClient;
-    private final SecureRandom random = new SecureRandom();
+    private final WorkspaceNodeHttpClient httpClient;
 
-    public WorkspaceNodeClient(WorkspaceNodeProxyProperties props, ObjectMapper objectMapper, WorkspaceNodeResolver nodeResolver) {
+    public WorkspaceNodeClient(WorkspaceNodeProxyProperties props, ObjectMapper objectMapper, WorkspaceNodeResolver nodeResolver,
+                               WorkspaceNodeHttpClient httpClient) {
         this.props = props;
         this.objectMapper = objectMapper;
         this.nodeResolver = nodeResolver;
-        HttpClient.Builder b = HttpClient.newBuilder();
-        if (props != null && props.getConnectTimeoutMs() > 0) {
-            b.connectTimeout(Duration.ofMillis(props.getConnectTimeoutMs()));
-        }
-        this.httpClient = b.build();
+        this.httpClient = httpClient;
     }
 
     public boolean isEnabled() {
@@ -80,9 +84,16 @@ public class WorkspaceNodeClient {
     }
 
     public FunAiWorkspaceProjectDirResponse ensureDir(Long userId, Long appId) {
+        return ensureDir(userId, appId, 0);
+    }
+
+    /**
+     * ensure app 目录（允许调用方指定超时；0 表示使用 read-timeout-ms）。
+     */
+    public FunAiWorkspaceProjectDirResponse ensureDir(Long userId, Long appId, long timeoutMs) {
         String path = "/api/fun-ai/workspace/files/ensure-dir";
         String query = query(Map.of("userId", String.valueOf(userId), "appId", String.valueOf(appId)));
-        return requestJson("POST", path, query, new byte[0], new TypeReference<Result<FunAiWorkspaceProjectDirResponse>>() {});
+        return requestJson("POST", path, query, new byte[0], new TypeReference<Result<FunAiWorkspaceProjectDirResponse>>() {}, timeoutMs);
     }
 
     public FunAiWorkspaceRunStatusResponse getRunStatus(Long userId) {
@@ -107,12 +118,43 @@ public class WorkspaceNodeClient {
     }
 
     public boolean hasPackageJson(Long userId, Long appId) {
-        FunAiWorkspaceFileTreeResponse tree = getFileTree(userId, appId, ".", 2, 2000);
-        if (tree == null || tree.getNodes() == null) return false;
-        return containsPackageJson(tree.getNodes());
+        return hasPackageJson(userId, appId, 0);
+    }
+
+    /**
+     * package.json 存在性探测（maxDepth=2 语义不变），只做浅层列目录而不是拉取整棵文件树：
+     * 1) 只列根目录（maxDepth=1）：绝大多数项目在这里命中
+     * 2) 未命中时，仅对根目录下的少量子目录（兼容 zip 顶层多一层目录）各列一层
+     */
+    public boolean hasPackageJson(Long userId, Long appId, long timeoutMs) {
+        FunAiWorkspaceFileTreeResponse root = getFileTree(userId, appId, ".", 1, PROBE_MAX_ENTRIES, timeoutMs);
+        if (root == null || root.getNodes() == null) return false;
+        List<String> dirs = new ArrayList<>();
+        for (FunAiWorkspaceFileNode n : root.getNodes()) {
+            if (n == null) continue;
+            if ("package.json".equals(n.getName()) && !"DIR".equalsIgnoreCase(n.getType())) return true;
+            if ("DIR".equalsIgnoreCase(n.getType()) && StringUtils.hasText(n.getName())) dirs.add(n.getName());
+        }
+        if (dirs.size() > PROBE_MAX_SUBDIRS) {
+            // 根目录下子目录很多（不像“zip 多一层目录”）：退回一次 maxDepth=2 的列表
+            FunAiWorkspaceFileTreeResponse tree = getFileTree(userId, appId, ".", 2, 2000, timeoutMs);
+            return tree != null && tree.getNodes() != null && containsPackageJson(tree.getNodes());
+        }
+        for (String d : dirs) {
+            FunAiWorkspaceFileTreeResponse sub = getFileTree(userId, appId, d, 1, PROBE_MAX_ENTRIES, timeoutMs);
+            if (sub == null || sub.getNodes() == null) continue;
+            for (FunAiWorkspaceFileNode n : sub.getNodes()) {
+                if (n != null && "package.json".equals(n.getName()) && !"DIR".equalsIgnoreCase(n.getType())) return true;
+            }
+        }
+        return false;
     }
 
     public FunAiWorkspaceFileTreeResponse getFileTree(Long userId, Long appId, String path, Integer maxDepth, Integer maxEntries) {
+        return getFileTree(userId, appId, path, maxDepth, maxEntries, 0);
+    }
+
+    private FunAiWorkspaceFileTreeResponse getFileTree(Long userId, Long appId, String path, Integer maxDepth, Integer maxEntries, long timeoutMs) {
         String p = "/api/fun-ai/workspace/files/tree";
         String query = query(Map.of(
                 "userId", String.valueOf(userId),
@@ -121,7 +163,7 @@ public class WorkspaceNodeClient {
                 "maxDepth", String.valueOf(maxDepth == null ? 2 : maxDepth),
                 "maxEntries", String.valueOf(maxEntries == null ? 2000 : maxEntries)
         ));
-        return requestJson("GET", p, query, null, new TypeReference<Result<FunAiWorkspaceFileTreeResponse>>() {});
+        return requestJson("GET", p, query, null, new TypeReference<Result<FunAiWorkspaceFileTreeResponse>>() {}, timeoutMs);
     }
 
     /**
@@ -311,29 +353,13 @@ public class WorkspaceNodeClient {
         byte[] b = body;
         if (b == null) b = new byte[0];
 
-        long ts = Instant.now().getEpochSecond();
-        String nonce = randomNonce();
-        String bodySha;
-        try {
-            bodySha = WorkspaceNodeProxySigner.sha256Hex(b);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        String canonical = WorkspaceNodeProxySigner.canonical(m, p, q, bodySha, ts, nonce);
-        String sig;
-        try {
-            sig = WorkspaceNodeProxySigner.hmacSha256Base64(props.getSharedSecret(), canonical);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-
         Long userId = extractUserIdFromQuery(q);
         if (userId == null) {
             throw new IllegalArgumentException("userId is required");
         }
         String baseUrl = nodeResolver.resolve(userId).getApiBaseUrl();
         URI uri = URI.create(joinUrl(baseUrl, p, q));
-        HttpRequest.Builder reqB = HttpRequest.newBuilder().uri(uri);
+        HttpRequest.Builder reqB = httpClient.newRequest(uri);
         // timeout 优先级：
         // 1) 每次调用传入 timeoutMs（用于 run/status 等聚合接口，避免卡住 list/info）
         // 2) 全局 readTimeoutMs（可能为 0，用于 SSE/下载等长连接）
@@ -351,9 +377,7 @@ public class WorkspaceNodeClient {
             reqB.method(m, HttpRequest.BodyPublishers.ofByteArray(b));
         }
 
-        reqB.header(HDR_TS, String.valueOf(ts));
-        reqB.header(HDR_NONCE, nonce);
-        reqB.header(HDR_SIG, sig);
+        sign(reqB, m, p, q, b);
 
         // 内容类型：仅在有 body 时设置 JSON
         if (b.length > 0) {
@@ -361,17 +385,22 @@ public class WorkspaceNodeClient {
         }
 
         HttpResponse<byte[]> resp;
+        long t0 = System.nanoTime();
         try {
             resp = httpClient.send(reqB.build(), HttpResponse.BodyHandlers.ofByteArray());
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_WORKSPACE_NODE, m, p, resp.statusCode(), null, System.nanoTime() - t0);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_WORKSPACE_NODE, m, p, -1, e, System.nanoTime() - t0);
             throw new RuntimeException("workspace-node request interrupted");
         } catch (HttpTimeoutException e) {
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_WORKSPACE_NODE, m, p, -1, e, System.nanoTime() - t0);
             // 补充关键信息，便于排查“为什么 2s 内就超时”：open-editor 可能串行调多个接口，总耗时会累加。
             throw new RuntimeException("workspace-node request timed out: method=" + m
                     + ", url=" + uri
                     + ", timeoutMs=" + timeoutMs, e);
         } catch (Exception e) {
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_WORKSPACE_NODE, m, p, -1, e, System.nanoTime() - t0);
             throw new RuntimeException("workspace-node request failed: method=" + m
                     + ", url=" + uri
                     + ", timeoutMs=" + timeoutMs
@@ -399,6 +428,55 @@ public class WorkspaceNodeClient {
         return r.getData();
     }
 
+    /**
+     * 向指定节点发送签名的 POST（不按 userId 路由，用于孤儿数据对账等面向全部节点的维护调用）；返回原始响应，由调用方判断状态码。
+     */
+    public HttpResponse<byte[]> postToNode(FunAiWorkspaceNode node, String path, byte[] body, long timeoutMs)
+            throws IOException, InterruptedException {
+        if (!isEnabled()) {
+            throw new IllegalStateException("workspace-node client disabled");
+        }
+        if (node == null || !StringUtils.hasText(node.getApiBaseUrl())) {
+            throw new IllegalArgumentException("workspace node apiBaseUrl is empty");
+        }
+        byte[] b = body == null ? new byte[0] : body;
+        HttpRequest.Builder reqB = httpClient.newRequest(URI.create(joinUrl(node.getApiBaseUrl(), path, "")));
+        if (timeoutMs > 0) {
+            reqB.timeout(Duration.ofMillis(timeoutMs));
+        }
+        reqB.method("POST", HttpRequest.BodyPublishers.ofByteArray(b));
+        reqB.header("Content-Type", "application/json");
+        sign(reqB, "POST", path, "", b);
+        long t0 = System.nanoTime();
+        try {
+            HttpResponse<byte[]> resp = httpClient.send(reqB.build(), HttpResponse.BodyHandlers.ofByteArray());
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_WORKSPACE_NODE, "POST", path, resp.statusCode(), null, System.nanoTime() - t0);
+            return resp;
+        } catch (IOException | InterruptedException e) {
+            UpstreamMetrics.record(UpstreamMetrics.CLIENT_WORKSPACE_NODE, "POST", path, -1, e, System.nanoTime() - t0);
+            throw e;
+        }
+    }
+
+    /**
+     * HMAC 签名头（workspace-node 按同样的 canonical 校验）。
+     */
+    private void sign(HttpRequest.Builder reqB, String method, String path, String query, byte[] body) {
+        long ts = Instant.now().getEpochSecond();
+        String nonce = WorkspaceNodeProxySigner.randomNonce();
+        String sig;
+        try {
+            String bodySha = WorkspaceNodeProxySigner.sha256Hex(body);
+            String canonical = WorkspaceNodeProxySigner.canonical(method, path, query, bodySha, ts, nonce);
+            sig = WorkspaceNodeProxySigner.hmacSha256Base64(props.getSharedSecret(), canonical);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        reqB.header(HDR_TS, String.valueOf(ts));
+        reqB.header(HDR_NONCE, nonce);
+        reqB.header(HDR_SIG, sig);
+    }
+
     private String joinUrl(String baseUrl, String path, String query) {
         String b = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
         String p = (path == null || path.isBlank()) ? "" : path;
@@ -406,13 +484,6 @@ public class WorkspaceNodeClient {
         return b + p + q;
     }
 
-    private String randomNonce() {
-        byte[] b = new byte[16];
-        random.nextBytes(b);
-        StringBuilder sb = new StringBuilder(b.length * 2);
-        for (byte x : b) sb.append(String.format("%02x", x));
-        return sb.toString();
-    }
 
     private String query(Map<String, String> params) {
         // 固定顺序无强约束（只要 canonical 用的与最终 URL 一致）；这里按插入顺序构建（Map.of 是固定顺序实现不保证，但影响不大）。
@@ -0,0 +1,311 @@
+package fun.ai.studio.workspace;
+
+import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
+import fun.ai.studio.entity.FunAiWorkspaceNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * workspace-node 健康状态机：HEALTHY -> SUSPECT -> STALE，由心跳到达事件 + 时间轮上的每节点 deadline 驱动。
+ *
+ * <ul>
+ *     <li>输入：{@link WorkspaceNodeRoutingTable} 节点快照的每次更新（本实例心跳 / upsert / 定时从 DB 同步的其它实例心跳）</li>
+ *     <li>心跳距今超过 suspect-seconds 为 SUSPECT（不再接新用户），超过 heartbeat-stale-seconds 为 STALE（不再路由）</li>
+ *     <li>每个节点最多挂一个 deadline：心跳只会把 deadline 往后推，到点时按最新心跳重新判定并挂下一个 deadline，心跳本身不操作时间轮</li>
+ *     <li>状态变化发布 {@link Transition}（Spring 事件，在发生变化的线程上同步分发）：路由表、告警各自订阅</li>
+ * </ul>
+ *
+ * <p>状态只在内存中：两台 API 实例各自判定（输入相同，结果一致，时间差不超过一个快照刷新周期）。</p>
+ */
+@Component
+public class WorkspaceNodeHealthTracker {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceNodeHealthTracker.class);
+
+    private static final long TICK_MS = 500;
+    private static final int WHEEL_SIZE = 512;
+
+    public enum Health {
+        HEALTHY, SUSPECT, STALE
+    }
+
+    /**
+     * 节点健康状态变化事件。
+     *
+     * @param from            变化前状态；首次观察到该节点时为 null
+     * @param lastHeartbeatMs 最近心跳时间（epoch ms）；从未心跳为 0
+     */
+    public record Transition(Long nodeId, String nodeName, String apiBaseUrl, Health from, Health to,
+                             long lastHeartbeatMs, long atMs) {
+    }
+
+    private static final class NodeState {
+        private final Long nodeId;
+        private String name;
+        private String apiBaseUrl;
+        private long lastHeartbeatMs;
+        private Health health;
+        private long sinceMs;
+        /**
+         * 当前挂在时间轮上的 deadline（0 表示没有）
+         */
+        private long deadlineMs;
+        private HashedTimerWheel.Timeout timeout;
+
+        NodeState(Long nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+
+    private final WorkspaceNodeRegistryProperties registryProps;
+    private final ApplicationEventPublisher publisher;
+    private final HashedTimerWheel wheel = new HashedTimerWheel("ws-node-health", TICK_MS, WHEEL_SIZE);
+    private final ConcurrentHashMap<Long, NodeState> states = new ConcurrentHashMap<>();
+
+    private final Map<Health, LongAdder> transitionsTo = new EnumMap<>(Health.class);
+    private final LongAdder deadlinesFired = new LongAdder();
+
+    public WorkspaceNodeHealthTracker(WorkspaceNodeRegistryProperties registryProps, ApplicationEventPublisher publisher) {
+        this.registryProps = registryProps;
+        this.publisher = publisher;
+        for (Health h : Health.values()) transitionsTo.put(h, new LongAdder());
+    }
+
+    @PostConstruct
+    public void start() {
+        wheel.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        wheel.stop();
+    }
+
+    /**
+     * 节点快照中的节点有更新（心跳/变更/刷新）时调用。禁用或删除的节点不再跟踪（不发事件）。
+     */
+    public void onNode(FunAiWorkspaceNode n) {
+        if (n == null || n.getId() == null || !isEnabled()) return;
+        if (n.getEnabled() == null || n.getEnabled() != 1) {
+            forget(n.getId());
+            return;
+        }
+        long hb = toEpochMs(n.getLastHeartbeatAt());
+        NodeState st = states.computeIfAbsent(n.getId(), NodeState::new);
+        Transition t;
+        synchronized (st) {
+            st.name = n.getName();
+            st.apiBaseUrl = n.getApiBaseUrl();
+            // 没有更新的心跳（例如 DB 刷新带回的旧值）且已判定过：无需处理
+            if (st.health != null && hb <= st.lastHeartbeatMs) return;
+            st.lastHeartbeatMs = Math.max(st.lastHeartbeatMs, hb);
+            t = evaluate(st, System.currentTimeMillis());
+        }
+        publish(t);
+    }
+
+    /**
+     * 从快照中消失（删除）的节点：停止跟踪。
+     */
+    public void retainOnly(List<FunAiWorkspaceNode> nodes) {
+        if (states.isEmpty()) return;
+        Set<Long> alive = new HashSet<>();
+        for (FunAiWorkspaceNode n : nodes) {
+            if (n != null && n.getId() != null && n.getEnabled() != null && n.getEnabled() == 1) alive.add(n.getId());
+        }
+        for (Long id : new ArrayList<>(states.keySet())) {
+            if (!alive.contains(id)) forget(id);
+        }
+    }
+
+    public void forget(Long nodeId) {
+        if (nodeId == null) return;
+        NodeState st = states.remove(nodeId);
+        if (st == null) return;
+        synchronized (st) {
+            if (st.timeout != null) st.timeout.cancel();
+            st.timeout = null;
+            st.deadlineMs = 0;
+        }
+    }
+
+    /**
+     * 节点当前健康状态。registry 未启用时视为 HEALTHY（兼容单机/未上线心跳阶段）；
+     * 尚未被跟踪的节点按其 lastHeartbeatAt 直接计算。
+     */
+    public Health health(FunAiWorkspaceNode n) {
+        if (!isEnabled()) return Health.HEALTHY;
+        if (n == null || n.getId() == null) return Health.STALE;
+        NodeState st = states.get(n.getId());
+        if (st != null) {
+            synchronized (st) {
+                if (st.health != null) return st.health;
+            }
+        }
+        return healthAt(toEpochMs(n.getLastHeartbeatAt()), System.currentTimeMillis());
+    }
+
+    /**
+     * 可接新用户（选点）：仅 HEALTHY。
+     */
+    public boolean isHealthy(FunAiWorkspaceNode n) {
+        return health(n) == Health.HEALTHY;
+    }
+
+    /**
+     * 可继续路由已有用户：HEALTHY / SUSPECT。
+     */
+    public boolean isServing(FunAiWorkspaceNode n) {
+        return health(n) != Health.STALE;
+    }
+
+    /**
+     * 当前处于 STALE 的节点（告警重复提醒用）：atMs 为进入 STALE 的时间。
+     */
+    public List<Transition> staleNodes() {
+        List<Transition> out = new ArrayList<>();
+        for (NodeState st : states.values()) {
+            synchronized (st) {
+                if (st.health == Health.STALE) {
+                    out.add(new Transition(st.nodeId, st.name, st.apiBaseUrl, Health.STALE, Health.STALE,
+                            st.lastHeartbeatMs, st.sinceMs));
+                }
+            }
+        }
+        return out;
+    }
+
+    public Map<String, Object> stats() {
+        Map<Health, Integer> counts = new EnumMap<>(Health.class);
+        for (NodeState st : states.values()) {
+            Health h;
+            synchronized (st) {
+                h = st.health;
+            }
+            if (h != null) counts.merge(h, 1, Integer::sum);
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tracked", states.size());
+        out.put("suspectSeconds", suspectMs() / 1000);
+        out.put("staleSeconds", staleMs() / 1000);
+        for (Health h : Health.values()) {
+            out.put(h.name().toLowerCase() + "Nodes", counts.getOrDefault(h, 0));
+            out.put("to" + h.name().charAt(0) + h.name().substring(1).toLowerCase(), transitionsTo.get(h).sum());
+        }
+        out.put("deadlinesFired", deadlinesFired.sum());
+        out.put("wheel", wheel.stats());
+        return out;
+    }
+
+    private void onDeadline(Long nodeId, long deadlineMs) {
+        deadlinesFired.increment();
+        NodeState st = states.get(nodeId);
+        if (st == null) return;
+        Transition t;
+        synchronized (st) {
+            // 已被更早的 deadline 替换（或已取消）：按到期时间识别，不依赖 schedule 返回后才赋值的句柄
+            if (st.deadlineMs != deadlineMs) return;
+            st.timeout = null;
+            st.deadlineMs = 0;
+            t = evaluate(st, System.currentTimeMillis());
+        }
+        publish(t);
+    }
+
+    /**
+     * 按最新心跳判定状态、确保挂有下一个 deadline（须持有 st 锁）。
+     *
+     * @return 状态变化时返回事件（由调用方在锁外发布），否则 null
+     */
+    private Transition evaluate(NodeState st, long now) {
+        Health target = healthAt(st.lastHeartbeatMs, now);
+        Transition t = null;
+        if (target != st.health) {
+            t = new Transition(st.nodeId, st.name, st.apiBaseUrl, st.health, target, st.lastHeartbeatMs, now);
+            st.health = target;
+            st.sinceMs = now;
+        }
+        long next = nextDeadline(st.lastHeartbeatMs, target);
+        if (next <= 0) {
+            if (st.timeout != null) st.timeout.cancel();
+            st.timeout = null;
+            st.deadlineMs = 0;
+        } else if (st.deadlineMs == 0 || next < st.deadlineMs) {
+            // 已挂的 deadline 更早时保留：到点后会按新的心跳重新判定
+            if (st.timeout != null) st.timeout.cancel();
+            Long nodeId = st.nodeId;
+            // 先记下到期时间再挂任务（均在 st 锁内，任务触发后等锁，读到的一定是这里的值）
+            st.deadlineMs = next;
+            st.timeout = wheel.schedule(() -> onDeadline(nodeId, next), next - now);
+        }
+        return t;
+    }
+
+    private Health healthAt(long lastHeartbeatMs, long now) {
+        if (lastHeartbeatMs <= 0) return Health.STALE;
+        long age = now - lastHeartbeatMs;
+        if (age >= staleMs()) return Health.STALE;
+        if (age >= suspectMs()) return Health.SUSPECT;
+        return Health.HEALTHY;
+    }
+
+    private long nextDeadline(long lastHeartbeatMs, Health h) {
+        if (lastHeartbeatMs <= 0) return 0;
+        return switch (h) {
+            case HEALTHY -> lastHeartbeatMs + suspectMs();
+            case SUSPECT -> lastHeartbeatMs + staleMs();
+            case STALE -> 0;
+        };
+    }
+
+    private void publish(Transition t) {
+        if (t == null) return;
+        transitionsTo.get(t.to()).increment();
+        if (t.to() == Health.HEALTHY) {
+            log.info("workspace node health: nodeId={}, name={}, {} -> {}", t.nodeId(), t.nodeName(), t.from(), t.to());
+        } else {
+            log.warn("workspace node health: nodeId={}, name={}, {} -> {}, lastHeartbeatMs={}",
+                    t.nodeId(), t.nodeName(), t.from(), t.to(), t.lastHeartbeatMs());
+        }
+        try {
+            publisher.publishEvent(t);
+        } catch (Exception e) {
+            log.warn("publish workspace node health transition failed: nodeId={}, error={}", t.nodeId(), e.getMessage(), e);
+        }
+    }
+
+    private boolean isEnabled() {
+        return registryProps != null && registryProps.isEnabled();
+    }
+
+    private long staleMs() {
+        return registryProps == null ? 60_000L : registryProps.heartbeatStaleDuration().toMillis();
+    }
+
+    private long suspectMs() {
+        long v = registryProps == null ? 0 : registryProps.getSuspectSeconds();
+        long ms = (v <= 0 ? 30 : v) * 1000L;
+        // suspect 必须早于 stale，否则 SUSPECT 阶段不存在
+        return Math.min(ms, Math.max(1, staleMs() - TICK_MS));
+    }
+
+    private static long toEpochMs(LocalDateTime t) {
+        if (t == null) return 0;
+        return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
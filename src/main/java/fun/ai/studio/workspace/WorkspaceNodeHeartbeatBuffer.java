@@ -0,0 +1,97 @@
+package fun.ai.studio.workspace;
+
+import fun.ai.studio.entity.FunAiWorkspaceNode;
+import fun.ai.studio.mapper.FunAiWorkspaceNodeMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 心跳落库合并：心跳先写入内存（WorkspaceNodeRoutingTable 节点快照），last_heartbeat_at/负载按
+ * funai.workspace-node-registry.heartbeat-flush-ms 间隔用一条批量 UPDATE 落库。
+ *
+ * <p>同一节点在一个间隔内的多次心跳只保留最新一次；DB 写入次数与节点数无关（每个间隔至多 1 条语句）。
+ * 落库失败时未被更新心跳覆盖的条目放回，下个间隔重试。</p>
+ */
+@Component
+public class WorkspaceNodeHeartbeatBuffer {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceNodeHeartbeatBuffer.class);
+
+    private final FunAiWorkspaceNodeMapper nodeMapper;
+
+    private final ConcurrentHashMap<Long, FunAiWorkspaceNode> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder offered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushErrors = new LongAdder();
+
+    public WorkspaceNodeHeartbeatBuffer(FunAiWorkspaceNodeMapper nodeMapper) {
+        this.nodeMapper = nodeMapper;
+    }
+
+    /**
+     * 记录一次心跳（只含 id、lastHeartbeatAt、负载字段）。
+     */
+    public void offer(FunAiWorkspaceNode heartbeat) {
+        if (heartbeat == null || heartbeat.getId() == null || heartbeat.getLastHeartbeatAt() == null) return;
+        offered.increment();
+        if (pending.put(heartbeat.getId(), heartbeat) != null) {
+            coalesced.increment();
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${funai.workspace-node-registry.heartbeat-flush-ms:5000}",
+            fixedDelayString = "${funai.workspace-node-registry.heartbeat-flush-ms:5000}"
+    )
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public void flush() {
+        if (pending.isEmpty()) return;
+        List<FunAiWorkspaceNode> batch = new ArrayList<>(pending.size());
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            FunAiWorkspaceNode n = pending.remove(id);
+            if (n != null) batch.add(n);
+        }
+        if (batch.isEmpty()) return;
+        try {
+            nodeMapper.batchUpdateHeartbeat(batch);
+            flushes.increment();
+            flushedRows.add(batch.size());
+        } catch (Exception e) {
+            flushErrors.increment();
+            log.warn("flush workspace node heartbeats failed: rows={}, err={}", batch.size(), e.getMessage());
+            // 放回（期间已有更新的心跳则以新的为准）
+            for (FunAiWorkspaceNode n : batch) pending.putIfAbsent(n.getId(), n);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("pending", pending.size());
+        out.put("offered", offered.sum());
+        out.put("coalesced", coalesced.sum());
+        out.put("flushes", flushes.sum());
+        out.put("flushedRows", flushedRows.sum());
+        out.put("flushErrors", flushErrors.sum());
+        return out;
+    }
+}
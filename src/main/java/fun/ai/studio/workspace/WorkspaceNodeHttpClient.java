@@ -0,0 +1,345 @@
+package fun.ai.studio.workspace;
+
+import fun.ai.studio.common.WorkspaceNodeProxyException;
+import fun.ai.studio.config.WorkspaceNodeHttpProperties;
+import fun.ai.studio.config.WorkspaceNodeProxyProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * API 服务器 -> workspace-node 的共享 HTTP 客户端（proxy filter / WorkspaceNodeClient / 日志 / 管理下载共用）。
+ *
+ * <ul>
+ *     <li>单个 JDK HttpClient + 固定线程数专用执行器：各调用方复用同一连接池（keep-alive 复用，减少 TCP 建连）</li>
+ *     <li>按节点（host:port）限制同时在途请求数，防止单个慢节点拖垮 API；
+ *     zip 下载/SSE 等长连接流单独计数（max-streams-per-node），不挤占普通请求配额</li>
+ *     <li>按节点选择 HTTP/1.1 或 h2c（请求级 version）</li>
+ * </ul>
+ *
+ * <p>说明：JDK HttpClient 不暴露连接池内部状态，这里统计的是请求/在途/排队维度；
+ * 空闲连接回收由 jdk.httpclient.keepalive.timeout 控制。</p>
+ *
+ * <p>指标：funai.ws_node_http.in_flight{node}、funai.ws_node_http.streams_in_flight{node}（gauge）、
+ * funai.ws_node_http.acquire_timeouts{node}（counter）；
+ * 绑定 registry 之后新出现的节点在首次请求时注册。</p>
+ */
+@Component
+public class WorkspaceNodeHttpClient implements MeterBinder {
+
+    private final WorkspaceNodeHttpProperties httpProps;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final ConcurrentHashMap<String, NodeLimiter> limiters = new ConcurrentHashMap<>();
+    private final LongAdder executorRejected = new LongAdder();
+    private final LongAdder executorBusy = new LongAdder();
+    /**
+     * 执行器队列剩余容量低于该值时拒绝新请求（快速失败），余量留给在途请求的 HttpClient 内部任务
+     */
+    private final int queueReserve;
+    private volatile MeterRegistry meterRegistry;
+
+    public WorkspaceNodeHttpClient(WorkspaceNodeHttpProperties httpProps, WorkspaceNodeProxyProperties proxyProps) {
+        this.httpProps = httpProps;
+        int threads = Math.max(2, httpProps == null ? 16 : httpProps.getExecutorThreads());
+        int queueCapacity = Math.max(100, httpProps == null ? 10000 : httpProps.getExecutorQueueCapacity());
+        this.queueReserve = Math.max(10, queueCapacity / 10);
+        // 线程数固定、队列有界；不用 CallerRuns：提交方可能是 HttpClient 的 selector 线程，在其上执行回调会卡住所有连接的 IO。
+        // 队列接近满时新请求在 acquire 处快速失败；仍被拒绝的内部任务由 HttpClient 捕获后转交其内部线程池执行
+        ThreadPoolExecutor.AbortPolicy abort = new ThreadPoolExecutor.AbortPolicy();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("ws-node-http-"),
+                (r, e) -> {
+                    executorRejected.increment();
+                    abort.rejectedExecution(r, e);
+                });
+        HttpClient.Builder b = HttpClient.newBuilder()
+                .executor(executor)
+                .version(HttpClient.Version.HTTP_1_1);
+        if (proxyProps != null && proxyProps.getConnectTimeoutMs() > 0) {
+            b.connectTimeout(Duration.ofMillis(proxyProps.getConnectTimeoutMs()));
+        }
+        this.httpClient = b.build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 创建请求 builder，并按节点设置 HTTP 版本。
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        HttpRequest.Builder b = HttpRequest.newBuilder().uri(uri);
+        if (isH2c(uri)) {
+            b.version(HttpClient.Version.HTTP_2);
+        }
+        return b;
+    }
+
+    /**
+     * 同步请求：响应体在返回前已完整读取（byte[]/String 等），返回即释放节点配额。
+     */
+    public <T> HttpResponse<T> send(HttpRequest req, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        Lease lease = acquire(req.uri(), false, true);
+        try {
+            return httpClient.send(req, handler);
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * 同步流式请求：节点配额在响应 InputStream 关闭时释放（调用方必须关闭）。
+     */
+    public HttpResponse<InputStream> sendStreaming(HttpRequest req) throws IOException, InterruptedException {
+        return sendStreaming(req, false);
+    }
+
+    /**
+     * 长连接流（zip 下载、SSE 等）：与 {@link #sendStreaming(HttpRequest)} 相同，但占用单独的流配额。
+     */
+    public HttpResponse<InputStream> sendLongStream(HttpRequest req) throws IOException, InterruptedException {
+        return sendStreaming(req, true);
+    }
+
+    private HttpResponse<InputStream> sendStreaming(HttpRequest req, boolean longStream) throws IOException, InterruptedException {
+        Lease lease = acquire(req.uri(), longStream, true);
+        try {
+            HttpResponse.BodyHandler<InputStream> handler = info -> HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofInputStream(), in -> new LeasedInputStream(in, lease));
+            return httpClient.send(req, handler);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 异步请求：future 完成（含响应体结束）时释放节点配额。不等待配额（调用方多为 Tomcat 请求线程）：
+     * 节点配额已满时立即以失败的 future 返回。
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest req, HttpResponse.BodyHandler<T> handler) {
+        return sendAsync(req, handler, false);
+    }
+
+    /**
+     * @param longStream 是否为长连接流（占用流配额而非普通请求配额）
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest req, HttpResponse.BodyHandler<T> handler,
+                                                            boolean longStream) {
+        Lease lease;
+        try {
+            lease = acquire(req.uri(), longStream, false);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            return httpClient.sendAsync(req, handler).whenComplete((r, err) -> lease.close());
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        limiters.forEach((k, v) -> bindNode(registry, k, v));
+    }
+
+    private static void bindNode(MeterRegistry registry, String node, NodeLimiter l) {
+        Gauge.builder("funai.ws_node_http.in_flight", l.inFlight, AtomicInteger::get)
+                .description("共享 HTTP 客户端按节点在途请求数")
+                .tag("node", node)
+                .register(registry);
+        Gauge.builder("funai.ws_node_http.streams_in_flight", l.streamsInFlight, AtomicInteger::get)
+                .description("共享 HTTP 客户端按节点在途长连接流数")
+                .tag("node", node)
+                .register(registry);
+        FunctionCounter.builder("funai.ws_node_http.acquire_timeouts", l.acquireTimeouts, LongAdder::sum)
+                .description("节点并发配额获取超时次数")
+                .tag("node", node)
+                .register(registry);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("maxConcurrentPerNode", maxConcurrent());
+        out.put("maxStreamsPerNode", maxStreams());
+        if (executor instanceof ThreadPoolExecutor tpe) {
+            out.put("executorActive", tpe.getActiveCount());
+            out.put("executorQueue", tpe.getQueue().size());
+            out.put("executorQueueRemaining", tpe.getQueue().remainingCapacity());
+        }
+        out.put("executorRejected", executorRejected.sum());
+        out.put("executorBusy", executorBusy.sum());
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        limiters.forEach((k, v) -> nodes.put(k, v.snapshot()));
+        out.put("nodes", nodes);
+        return out;
+    }
+
+    /**
+     * @param wait true：最多等待 acquire-timeout-ms；false：配额已满立即失败
+     */
+    private Lease acquire(URI uri, boolean longStream, boolean wait) throws InterruptedException {
+        String key = nodeKey(uri);
+        if (executor instanceof ThreadPoolExecutor tpe && tpe.getQueue().remainingCapacity() < queueReserve) {
+            executorBusy.increment();
+            throw new WorkspaceNodeProxyException("workspace node http executor busy: node=" + key);
+        }
+        NodeLimiter l = limiters.get(key);
+        if (l == null) {
+            l = limiters.computeIfAbsent(key, k -> {
+                NodeLimiter created = new NodeLimiter(maxConcurrent(), maxStreams());
+                MeterRegistry r = meterRegistry;
+                if (r != null) bindNode(r, k, created);
+                return created;
+            });
+        }
+        long t0 = System.nanoTime();
+        long timeoutMs = Math.max(0, httpProps == null ? 3000 : httpProps.getAcquireTimeoutMs());
+        Semaphore permits = longStream ? l.streamPermits : l.permits;
+        boolean acquired = wait ? permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS) : permits.tryAcquire();
+        if (!acquired) {
+            l.acquireTimeouts.increment();
+            throw new WorkspaceNodeProxyException("workspace node busy (too many concurrent "
+                    + (longStream ? "streams" : "requests") + "): node=" + key);
+        }
+        l.waitNanos.add(System.nanoTime() - t0);
+        l.requests.increment();
+        if (longStream) {
+            l.streamsInFlight.incrementAndGet();
+        } else {
+            int now = l.inFlight.incrementAndGet();
+            l.peakInFlight.accumulateAndGet(now, Math::max);
+        }
+        return new Lease(l, longStream);
+    }
+
+    private boolean isH2c(URI uri) {
+        if (httpProps == null || httpProps.getH2cHosts() == null || httpProps.getH2cHosts().isEmpty()) return false;
+        String key = nodeKey(uri);
+        for (String h : httpProps.getH2cHosts()) {
+            if (h != null && h.trim().equalsIgnoreCase(key)) return true;
+        }
+        return false;
+    }
+
+    private int maxConcurrent() {
+        int v = httpProps == null ? 0 : httpProps.getMaxConcurrentPerNode();
+        return v <= 0 ? 64 : v;
+    }
+
+    private int maxStreams() {
+        int v = httpProps == null ? 0 : httpProps.getMaxStreamsPerNode();
+        return v <= 0 ? 32 : v;
+    }
+
+    private static String nodeKey(URI uri) {
+        if (uri == null) return "";
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        if (port < 0) port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return host + ":" + port;
+    }
+
+    private static final class NodeLimiter {
+        final Semaphore permits;
+        final Semaphore streamPermits;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger streamsInFlight = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+        final LongAdder requests = new LongAdder();
+        final LongAdder acquireTimeouts = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+
+        NodeLimiter(int max, int maxStreams) {
+            this.permits = new Semaphore(max);
+            this.streamPermits = new Semaphore(maxStreams);
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("inFlight", inFlight.get());
+            m.put("peakInFlight", peakInFlight.get());
+            m.put("streamsInFlight", streamsInFlight.get());
+            m.put("requests", requests.sum());
+            m.put("acquireTimeouts", acquireTimeouts.sum());
+            m.put("acquireWaitMsTotal", TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+            return m;
+        }
+    }
+
+    /**
+     * 节点并发配额；close 幂等。
+     */
+    private static final class Lease implements AutoCloseable {
+        private final NodeLimiter limiter;
+        private final boolean longStream;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        Lease(NodeLimiter limiter, boolean longStream) {
+            this.limiter = limiter;
+            this.longStream = longStream;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) return;
+            if (longStream) {
+                limiter.streamsInFlight.decrementAndGet();
+                limiter.streamPermits.release();
+            } else {
+                limiter.inFlight.decrementAndGet();
+                limiter.permits.release();
+            }
+        }
+    }
+
+    private static final class LeasedInputStream extends FilterInputStream {
+        private final Lease lease;
+
+        LeasedInputStream(InputStream in, Lease lease) {
+            super(in);
+            this.lease = lease;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                lease.close();
+            }
+        }
+    }
+}
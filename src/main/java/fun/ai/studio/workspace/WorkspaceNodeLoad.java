@@ -0,0 +1,190 @@
+package fun.ai.studio.workspace;
+
+import fun.ai.studio.entity.FunAiWorkspaceNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点负载表（内存）：各 workspace-node 心跳上报的 CPU/内存/磁盘使用率、运行态占用数（busyRunCount）、容器数，
+ * 供容量准入本地判断、新用户选点避开高负载节点，以及管理端查看负载历史。
+ *
+ * <p>数据来源：</p>
+ * <ul>
+ *     <li>本实例收到的心跳（AdminWorkspaceNodeController#heartbeat）</li>
+ *     <li>节点快照刷新（WorkspaceNodeRoutingTable）：心跳可能打到另一台 API 实例，负载随节点行落库，按 lastHeartbeatAt 去重后入表</li>
+ *     <li>容量检查回退到节点远程查询时的 busyCount（旧版 workspace-node 不上报负载时）</li>
+ * </ul>
+ *
+ * <p>每个节点保留最近 {@link #HISTORY_SIZE} 个样本；超过 {@link #OBSERVATION_TTL_MS} 的样本视为过期（负载未知）。</p>
+ */
+@Component
+public class WorkspaceNodeLoad {
+
+    static final long OBSERVATION_TTL_MS = 120_000;
+    static final int HISTORY_SIZE = 240;
+
+    @Value("${funai.workspace-node.limits.max-running-per-node:0}")
+    private int maxRunningPerNode;
+
+    private final ConcurrentHashMap<Long, NodeHistory> byNode = new ConcurrentHashMap<>();
+
+    /**
+     * 一次负载样本；未上报的指标为 null。
+     *
+     * @param atMs 采样时间（心跳时间，epoch ms）
+     */
+    public record Sample(long atMs, Double cpuUsage, Double memUsage, Double diskUsage,
+                         Integer busyRunCount, Integer containerCount) {
+    }
+
+    private static final class NodeHistory {
+        private final Deque<Sample> samples = new ArrayDeque<>();
+        private volatile Sample latest;
+        /**
+         * 本实例本地放行的时间（epoch ms，升序）：新样本到来时只丢弃早于采样时间的放行（已计入样本的 busyRunCount），
+         * 采样之后的放行继续计数
+         */
+        private final Deque<Long> admits = new ArrayDeque<>();
+
+        synchronized void add(Sample s) {
+            Sample last = samples.peekLast();
+            if (last != null && s.atMs() <= last.atMs()) return;
+            samples.addLast(s);
+            while (samples.size() > HISTORY_SIZE) samples.pollFirst();
+            latest = s;
+            while (!admits.isEmpty() && admits.peekFirst() < s.atMs()) admits.pollFirst();
+        }
+
+        synchronized int admitted() {
+            return admits.size();
+        }
+
+        synchronized boolean tryAdmit(int quota, long now) {
+            if (admits.size() >= quota) return false;
+            admits.addLast(now);
+            return true;
+        }
+
+        synchronized List<Sample> tail(int limit) {
+            List<Sample> all = new ArrayList<>(samples);
+            return all.subList(Math.max(0, all.size() - limit), all.size());
+        }
+    }
+
+    /**
+     * 心跳/快照中的节点行：带 lastHeartbeatAt 与负载字段时入表（同一心跳时间只记一次）。
+     */
+    public void onNode(FunAiWorkspaceNode n) {
+        if (n == null || n.getId() == null || n.getLastHeartbeatAt() == null) return;
+        if (n.getCpuUsage() == null && n.getMemUsage() == null && n.getDiskUsage() == null
+                && n.getBusyRunCount() == null && n.getContainerCount() == null) {
+            return;
+        }
+        long at = n.getLastHeartbeatAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        record(n.getId(), new Sample(at, n.getCpuUsage(), n.getMemUsage(), n.getDiskUsage(),
+                n.getBusyRunCount(), n.getContainerCount()));
+    }
+
+    /**
+     * 容量检查远程查询得到的 busyCount（无其它指标）。
+     */
+    public void recordBusyCount(Long nodeId, long busyCount) {
+        if (nodeId == null || busyCount < 0) return;
+        record(nodeId, new Sample(System.currentTimeMillis(), null, null, null, (int) Math.min(Integer.MAX_VALUE, busyCount), null));
+    }
+
+    public void record(Long nodeId, Sample s) {
+        if (nodeId == null || s == null) return;
+        byNode.computeIfAbsent(nodeId, k -> new NodeHistory()).add(s);
+    }
+
+    /**
+     * 最近一个未过期的样本；没有则返回 null。
+     */
+    public Sample latest(Long nodeId) {
+        if (nodeId == null) return null;
+        NodeHistory h = byNode.get(nodeId);
+        Sample s = h == null ? null : h.latest;
+        if (s == null || System.currentTimeMillis() - s.atMs() > OBSERVATION_TTL_MS) return null;
+        return s;
+    }
+
+    /**
+     * 最近一个未过期样本中的运行态占用数；未知返回 null。
+     */
+    public Integer busyRunCount(Long nodeId) {
+        Sample s = latest(nodeId);
+        return s == null ? null : s.busyRunCount();
+    }
+
+    /**
+     * 估算当前运行态占用数 = 最近样本的 busyRunCount + 样本之后本实例放行的启动数；无新鲜样本返回 null。
+     */
+    public Integer estimatedBusy(Long nodeId) {
+        Integer busy = busyRunCount(nodeId);
+        if (busy == null) return null;
+        NodeHistory h = byNode.get(nodeId);
+        return busy + (h == null ? 0 : h.admitted());
+    }
+
+    /**
+     * 本地准入：最近样本之后本实例的放行数未用完额度时，记下本次放行并返回 true；无新鲜样本返回 false。
+     *
+     * <p>额度 = (limit - headroom - busyRunCount) / instances：各 API 实例互相看不到对方在下一个样本之前的放行，
+     * 按实例数均分余量，所有实例都用满时也不会超过 limit - headroom。</p>
+     */
+    public boolean tryAdmit(Long nodeId, int limit, int headroom, int instances) {
+        Integer busy = busyRunCount(nodeId);
+        if (busy == null) return false;
+        NodeHistory h = byNode.get(nodeId);
+        if (h == null) return false;
+        int quota = (limit - headroom - busy) / Math.max(1, instances);
+        return h.tryAdmit(quota, System.currentTimeMillis());
+    }
+
+    /**
+     * 负载比例 busyRunCount / max-running-per-node（可能 > 1）；未配置上限或无新鲜观测时返回 0。
+     */
+    public double loadRatio(Long nodeId) {
+        if (nodeId == null || maxRunningPerNode <= 0) return 0d;
+        Integer busy = busyRunCount(nodeId);
+        if (busy == null) return 0d;
+        return (double) busy / maxRunningPerNode;
+    }
+
+    /**
+     * 节点负载历史（按时间升序，最多 limit 个）。
+     */
+    public List<Sample> history(Long nodeId, int limit) {
+        NodeHistory h = nodeId == null ? null : byNode.get(nodeId);
+        if (h == null) return List.of();
+        return h.tail(Math.min(Math.max(limit, 1), HISTORY_SIZE));
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        byNode.forEach((id, h) -> {
+            Sample s = h.latest;
+            if (s == null) return;
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("busyRunCount", s.busyRunCount());
+            m.put("estimatedBusy", estimatedBusy(id));
+            m.put("ageMs", now - s.atMs());
+            nodes.put(String.valueOf(id), m);
+        });
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("maxRunningPerNode", maxRunningPerNode);
+        out.put("nodes", nodes);
+        return out;
+    }
+}
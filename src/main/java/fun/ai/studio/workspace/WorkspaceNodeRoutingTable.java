@@ -0,0 +1,359 @@
+package fun.ai.studio.workspace;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
+import fun.ai.studio.entity.FunAiWorkspaceNode;
+import fun.ai.studio.mapper.FunAiWorkspaceNodeMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地路由表：proxy 热路径上“userId -> workspace-node”的内存视图，稳态下不查 DB。
+ *
+ * <p>两部分：</p>
+ * <ul>
+ *     <li>userId -> nodeId：有界 ConcurrentHashMap + TTL（多实例部署时，其它实例的 reassign/drain 最多延迟一个 TTL 生效）</li>
+ *     <li>节点列表：不可变快照（含 lastHeartbeatAt），心跳/upsert/启停/定时刷新时整体原子替换</li>
+ * </ul>
+ *
+ * <p>注意：心跳可能打到另一台 API 实例，因此节点快照需要定时从 DB 刷新（间隔应明显小于 heartbeat-stale-seconds）。</p>
+ *
+ * <p>快照的每次更新都喂给 {@link WorkspaceNodeHealthTracker}；节点进入 STALE 时丢弃指向它的缓存落点。</p>
+ */
+@Component
+public class WorkspaceNodeRoutingTable {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceNodeRoutingTable.class);
+
+    private final FunAiWorkspaceNodeMapper nodeMapper;
+    private final WorkspaceNodeRegistryProperties registryProps;
+    private final WorkspaceNodeLoad nodeLoad;
+    private final WorkspaceNodeHealthTracker healthTracker;
+
+    private final ConcurrentHashMap<Long, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicReference<NodeSnapshot> snapshot = new AtomicReference<>(NodeSnapshot.EMPTY);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder snapshotReloads = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+
+    public WorkspaceNodeRoutingTable(FunAiWorkspaceNodeMapper nodeMapper, WorkspaceNodeRegistryProperties registryProps,
+                                     WorkspaceNodeLoad nodeLoad, WorkspaceNodeHealthTracker healthTracker) {
+        this.nodeMapper = nodeMapper;
+        this.registryProps = registryProps;
+        this.nodeLoad = nodeLoad;
+        this.healthTracker = healthTracker;
+    }
+
+    /**
+     * 查询 userId 的缓存落点；未命中/过期返回 null（调用方回源 DB 后调用 {@link #putRoute}）。
+     */
+    public Long getNodeId(Long userId) {
+        if (userId == null) return null;
+        Route r = routes.get(userId);
+        if (r == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.currentTimeMillis() - r.loadedAtMs > routeTtlMs()) {
+            routes.remove(userId, r);
+            expired.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return r.nodeId;
+    }
+
+    public void putRoute(Long userId, Long nodeId) {
+        if (userId == null || nodeId == null) return;
+        routes.put(userId, new Route(nodeId, System.currentTimeMillis()));
+        evictIfNeeded();
+    }
+
+    public void invalidateUser(Long userId) {
+        if (userId == null) return;
+        routes.remove(userId);
+    }
+
+    /**
+     * drain/禁用节点后：丢弃所有指向该节点的缓存落点（下次访问回源 DB）。
+     */
+    public void invalidateNodeRoutes(Long nodeId) {
+        if (nodeId == null) return;
+        routes.values().removeIf(r -> nodeId.equals(r.nodeId));
+    }
+
+    /**
+     * 节点快照中查找节点（只读，不要修改返回对象）。快照为空时会同步加载一次。
+     */
+    public FunAiWorkspaceNode getNode(Long nodeId) {
+        if (nodeId == null) return null;
+        NodeSnapshot s = snapshot.get();
+        if (!s.loaded) s = reloadNodes();
+        return s.byId.get(nodeId);
+    }
+
+    /**
+     * 全部节点（按 id 升序，只读）。
+     */
+    public List<FunAiWorkspaceNode> listNodes() {
+        NodeSnapshot s = snapshot.get();
+        if (!s.loaded) s = reloadNodes();
+        return s.nodes;
+    }
+
+    /**
+     * 按节点名查找（快照内线性查找，节点数很少）。
+     */
+    public FunAiWorkspaceNode findByName(String name) {
+        if (name == null) return null;
+        for (FunAiWorkspaceNode n : listNodes()) {
+            if (name.equals(n.getName())) return n;
+        }
+        return null;
+    }
+
+    /**
+     * 注册/upsert/启停后调用：用最新行替换快照中的单个节点（内存中更新的心跳不回退）。
+     */
+    public void onNodeChanged(FunAiWorkspaceNode node) {
+        if (node == null || node.getId() == null) return;
+        FunAiWorkspaceNode copy = copyOf(node);
+        snapshot.updateAndGet(old -> {
+            Map<Long, FunAiWorkspaceNode> m = new HashMap<>(old.byId);
+            m.put(copy.getId(), keepNewerLiveness(copyOf(copy), old.byId.get(copy.getId())));
+            return NodeSnapshot.of(m.values());
+        });
+        nodeLoad.onNode(copy);
+        healthTracker.onNode(snapshot.get().byId.get(copy.getId()));
+        if (copy.getEnabled() == null || copy.getEnabled() != 1) {
+            invalidateNodeRoutes(copy.getId());
+        }
+    }
+
+    /**
+     * 心跳（内存存活表）：只更新快照中该节点的 lastHeartbeatAt 与负载字段，不写 DB（由 WorkspaceNodeHeartbeatBuffer 批量落库）。
+     *
+     * @param heartbeat id、lastHeartbeatAt 与负载字段
+     * @return 更新后的节点（只读）；快照中不存在该节点时返回 null
+     */
+    public FunAiWorkspaceNode onHeartbeat(FunAiWorkspaceNode heartbeat) {
+        if (heartbeat == null || heartbeat.getId() == null || heartbeat.getLastHeartbeatAt() == null) return null;
+        NodeSnapshot s = snapshot.updateAndGet(old -> {
+            FunAiWorkspaceNode cur = old.byId.get(heartbeat.getId());
+            if (cur == null) return old;
+            FunAiWorkspaceNode next = copyOf(cur);
+            copyLiveness(heartbeat, next);
+            Map<Long, FunAiWorkspaceNode> m = new HashMap<>(old.byId);
+            m.put(next.getId(), next);
+            return NodeSnapshot.of(m.values());
+        });
+        FunAiWorkspaceNode updated = s.byId.get(heartbeat.getId());
+        if (updated != null) {
+            nodeLoad.onNode(updated);
+            healthTracker.onNode(updated);
+        }
+        heartbeats.increment();
+        return updated;
+    }
+
+    /**
+     * 从 DB 全量刷新节点快照（定时兜底：同步其它 API 实例收到的心跳/变更）。
+     */
+    @Scheduled(
+            initialDelayString = "${funai.workspace-node-registry.node-snapshot-refresh-ms:10000}",
+            fixedDelayString = "${funai.workspace-node-registry.node-snapshot-refresh-ms:10000}"
+    )
+    public void scheduledReload() {
+        try {
+            reloadNodes();
+        } catch (Exception e) {
+            log.warn("reload workspace node snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    public NodeSnapshot reloadNodes() {
+        List<FunAiWorkspaceNode> nodes = nodeMapper.selectList(new QueryWrapper<>());
+        List<FunAiWorkspaceNode> fresh = nodes == null ? List.of() : nodes.stream().filter(Objects::nonNull).toList();
+        // 本实例收到但尚未落库的心跳比 DB 新：保留内存中的存活信息
+        NodeSnapshot s = snapshot.updateAndGet(old -> {
+            List<FunAiWorkspaceNode> merged = new ArrayList<>(fresh.size());
+            for (FunAiWorkspaceNode n : fresh) merged.add(keepNewerLiveness(copyOf(n), old.byId.get(n.getId())));
+            return NodeSnapshot.of(merged);
+        });
+        // 其它 API 实例收到的心跳负载随节点行同步到本实例负载表
+        for (FunAiWorkspaceNode n : s.nodes) {
+            nodeLoad.onNode(n);
+            healthTracker.onNode(n);
+        }
+        healthTracker.retainOnly(s.nodes);
+        snapshotReloads.increment();
+        return s;
+    }
+
+    /**
+     * 节点进入 STALE：丢弃指向它的缓存落点，下次访问回源 DB 并走不健康节点处理（auto-reassign / 报错）。
+     */
+    @EventListener
+    public void onHealthTransition(WorkspaceNodeHealthTracker.Transition t) {
+        if (t == null || t.to() != WorkspaceNodeHealthTracker.Health.STALE) return;
+        invalidateNodeRoutes(t.nodeId());
+    }
+
+    public Map<String, Object> stats() {
+        NodeSnapshot s = snapshot.get();
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("routes", routes.size());
+        out.put("maxRoutes", maxRoutes());
+        out.put("routeTtlMs", routeTtlMs());
+        out.put("hits", h);
+        out.put("misses", m);
+        out.put("hitRatio", (h + m) == 0 ? 0d : (double) h / (h + m));
+        out.put("expired", expired.sum());
+        out.put("evictions", evictions.sum());
+        out.put("nodes", s.nodes.size());
+        out.put("snapshotReloads", snapshotReloads.sum());
+        out.put("heartbeats", heartbeats.sum());
+        out.put("snapshotBuiltAtMs", s.builtAtMs);
+        return out;
+    }
+
+    private void evictIfNeeded() {
+        int max = maxRoutes();
+        int over = routes.size() - max;
+        if (over <= 0) return;
+        // 近似淘汰：只扫描有限个条目，优先丢弃已过期的，不够再按迭代顺序丢弃（ConcurrentHashMap 迭代顺序与 hash 相关，近似随机）
+        long ttl = routeTtlMs();
+        long now = System.currentTimeMillis();
+        int budget = over * 8 + 64;
+        Iterator<Map.Entry<Long, Route>> it = routes.entrySet().iterator();
+        List<Long> fallback = new ArrayList<>();
+        while (it.hasNext() && over > 0 && budget-- > 0) {
+            Map.Entry<Long, Route> e = it.next();
+            if (now - e.getValue().loadedAtMs > ttl) {
+                it.remove();
+                evictions.increment();
+                over--;
+            } else if (fallback.size() < over) {
+                fallback.add(e.getKey());
+            }
+        }
+        for (int i = 0; i < fallback.size() && over > 0; i++) {
+            if (routes.remove(fallback.get(i)) != null) {
+                evictions.increment();
+                over--;
+            }
+        }
+    }
+
+    private int maxRoutes() {
+        int v = registryProps == null ? 0 : registryProps.getRouteCacheMaxUsers();
+        return v <= 0 ? 50_000 : v;
+    }
+
+    private long routeTtlMs() {
+        long v = registryProps == null ? 0 : registryProps.getRouteCacheTtlSeconds();
+        return Math.max(1, v <= 0 ? 60 : v) * 1000L;
+    }
+
+    /**
+     * fromDb 的心跳早于内存中的节点时，沿用内存中的心跳时间与负载（fromDb 须为调用方新建的副本，会被修改）。
+     */
+    private static FunAiWorkspaceNode keepNewerLiveness(FunAiWorkspaceNode fromDb, FunAiWorkspaceNode inMemory) {
+        if (inMemory == null || inMemory.getLastHeartbeatAt() == null) return fromDb;
+        if (fromDb.getLastHeartbeatAt() == null || inMemory.getLastHeartbeatAt().isAfter(fromDb.getLastHeartbeatAt())) {
+            copyLiveness(inMemory, fromDb);
+        }
+        return fromDb;
+    }
+
+    private static void copyLiveness(FunAiWorkspaceNode from, FunAiWorkspaceNode to) {
+        to.setLastHeartbeatAt(from.getLastHeartbeatAt());
+        to.setCpuUsage(from.getCpuUsage());
+        to.setMemUsage(from.getMemUsage());
+        to.setDiskUsage(from.getDiskUsage());
+        to.setBusyRunCount(from.getBusyRunCount());
+        to.setContainerCount(from.getContainerCount());
+    }
+
+    private static FunAiWorkspaceNode copyOf(FunAiWorkspaceNode n) {
+        FunAiWorkspaceNode c = new FunAiWorkspaceNode();
+        c.setId(n.getId());
+        c.setName(n.getName());
+        c.setNginxBaseUrl(n.getNginxBaseUrl());
+        c.setApiBaseUrl(n.getApiBaseUrl());
+        c.setEnabled(n.getEnabled());
+        c.setWeight(n.getWeight());
+        c.setLastHeartbeatAt(n.getLastHeartbeatAt());
+        c.setCpuUsage(n.getCpuUsage());
+        c.setMemUsage(n.getMemUsage());
+        c.setDiskUsage(n.getDiskUsage());
+        c.setBusyRunCount(n.getBusyRunCount());
+        c.setContainerCount(n.getContainerCount());
+        c.setCreateTime(n.getCreateTime());
+        c.setUpdateTime(n.getUpdateTime());
+        return c;
+    }
+
+    private record Route(Long nodeId, long loadedAtMs) {
+    }
+
+    /**
+     * 不可变节点快照。
+     */
+    public static final class NodeSnapshot {
+        static final NodeSnapshot EMPTY = new NodeSnapshot(Map.of(), List.of(), 0L, false);
+
+        private final Map<Long, FunAiWorkspaceNode> byId;
+        private final List<FunAiWorkspaceNode> nodes;
+        private final long builtAtMs;
+        private final boolean loaded;
+
+        private NodeSnapshot(Map<Long, FunAiWorkspaceNode> byId, List<FunAiWorkspaceNode> nodes, long builtAtMs, boolean loaded) {
+            this.byId = byId;
+            this.nodes = nodes;
+            this.builtAtMs = builtAtMs;
+            this.loaded = loaded;
+        }
+
+        static NodeSnapshot of(Collection<FunAiWorkspaceNode> nodes) {
+            List<FunAiWorkspaceNode> sorted = nodes.stream()
+                    .filter(n -> n != null && n.getId() != null)
+                    .sorted(Comparator.comparing(FunAiWorkspaceNode::getId))
+                    .toList();
+            Map<Long, FunAiWorkspaceNode> m = new HashMap<>();
+            for (FunAiWorkspaceNode n : sorted) m.put(n.getId(), n);
+            return new NodeSnapshot(Collections.unmodifiableMap(m), sorted, System.currentTimeMillis(), true);
+        }
+
+        public List<FunAiWorkspaceNode> getNodes() {
+            return nodes;
+        }
+
+        public long getBuiltAtMs() {
+            return builtAtMs;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package fun.ai.studio.workspace;
+
+import fun.ai.studio.common.WorkspaceNodeProxyException;
+import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
+import fun.ai.studio.entity.FunAiWorkspaceNode;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 新用户落点选择：带权一致性哈希环 + 负载偏置。
+ *
+ * <ul>
+ *     <li>候选节点来自 {@link WorkspaceNodeRoutingTable} 节点快照（不查 DB）：enabled、baseUrl 完整、weight>0，且健康状态为 HEALTHY（SUSPECT 节点不接新用户）</li>
+ *     <li>环只在候选节点集合（id/weight）变化时重建</li>
+ *     <li>负载偏置：沿环顺时针取第一个负载低于 load-bias-threshold 的节点；全部超过阈值时取负载最低的节点</li>
+ * </ul>
+ */
+@Component
+public class WorkspaceNodeSelector {
+
+    private final WorkspaceNodeRoutingTable routingTable;
+    private final WorkspaceNodeLoad nodeLoad;
+    private final WorkspaceNodeRegistryProperties registryProps;
+    private final WorkspaceNodeHealthTracker healthTracker;
+
+    private final AtomicReference<RingHolder> ring = new AtomicReference<>();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder primaryPicks = new LongAdder();
+    private final LongAdder biasedPicks = new LongAdder();
+
+    public WorkspaceNodeSelector(WorkspaceNodeRoutingTable routingTable, WorkspaceNodeLoad nodeLoad,
+                                 WorkspaceNodeRegistryProperties registryProps, WorkspaceNodeHealthTracker healthTracker) {
+        this.routingTable = routingTable;
+        this.nodeLoad = nodeLoad;
+        this.registryProps = registryProps;
+        this.healthTracker = healthTracker;
+    }
+
+    private record RingHolder(Map<Long, Integer> signature, ConsistentHashRing ring) {
+    }
+
+    /**
+     * 为 userId 选择节点（返回快照中的只读对象）。
+     *
+     * @throws WorkspaceNodeProxyException 没有可用节点
+     */
+    public FunAiWorkspaceNode choose(Long userId) {
+        if (userId == null) throw new IllegalArgumentException("userId 不能为空");
+        ConsistentHashRing r = currentRing();
+        if (r.isEmpty()) throw new WorkspaceNodeProxyException("no valid workspace nodes");
+
+        double threshold = registryProps == null ? 0.8 : registryProps.getLoadBiasThreshold();
+        List<Long> candidates = r.candidates(userId, r.nodeCount());
+        Long chosen = null;
+        double minLoad = Double.MAX_VALUE;
+        Long leastLoaded = null;
+        for (Long nodeId : candidates) {
+            double load = nodeLoad.loadRatio(nodeId);
+            if (load < threshold) {
+                chosen = nodeId;
+                break;
+            }
+            if (load < minLoad) {
+                minLoad = load;
+                leastLoaded = nodeId;
+            }
+        }
+        if (chosen == null) chosen = leastLoaded;
+        if (chosen != null && chosen.equals(candidates.get(0))) {
+            primaryPicks.increment();
+        } else {
+            biasedPicks.increment();
+        }
+        FunAiWorkspaceNode node = routingTable.getNode(chosen);
+        if (node == null) throw new WorkspaceNodeProxyException("no valid workspace nodes");
+        return node;
+    }
+
+    public Map<String, Object> stats() {
+        RingHolder h = ring.get();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("ringNodes", h == null ? 0 : h.ring().nodeCount());
+        out.put("ringVnodes", h == null ? 0 : h.ring().size());
+        out.put("rebuilds", rebuilds.sum());
+        out.put("primaryPicks", primaryPicks.sum());
+        out.put("biasedPicks", biasedPicks.sum());
+        out.put("load", nodeLoad.stats());
+        return out;
+    }
+
+    private ConsistentHashRing currentRing() {
+        Map<Long, Integer> sig = new LinkedHashMap<>();
+        for (FunAiWorkspaceNode n : routingTable.listNodes()) {
+            if (!isCandidate(n)) continue;
+            sig.put(n.getId(), n.getWeight() == null ? 100 : n.getWeight());
+        }
+        RingHolder h = ring.get();
+        if (h != null && h.signature().equals(sig)) return h.ring();
+        RingHolder built = new RingHolder(sig, ConsistentHashRing.build(sig, vnodesPer100()));
+        ring.set(built);
+        rebuilds.increment();
+        return built.ring();
+    }
+
+    private boolean isCandidate(FunAiWorkspaceNode n) {
+        if (n == null || n.getId() == null) return false;
+        if (n.getEnabled() == null || n.getEnabled() != 1) return false;
+        if (n.getWeight() != null && n.getWeight() <= 0) return false;
+        if (!StringUtils.hasText(n.getApiBaseUrl()) || !StringUtils.hasText(n.getNginxBaseUrl())) return false;
+        // registry 未启用时 tracker 视为 HEALTHY（兼容单机/未上线心跳阶段）
+        return healthTracker.isHealthy(n);
+    }
+
+    private int vnodesPer100() {
+        int v = registryProps == null ? 0 : registryProps.getHashVnodesPer100();
+        return v <= 0 ? 160 : v;
+    }
+}
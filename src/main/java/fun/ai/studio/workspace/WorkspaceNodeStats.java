@@ -0,0 +1,186 @@
+package fun.ai.studio.workspace;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import fun.ai.studio.config.WorkspaceNodeRegistryProperties;
+import fun.ai.studio.mapper.FunAiUserMapper;
+import fun.ai.studio.mapper.FunAiWorkspacePlacementMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 管理端节点统计：每个 workspace-node 的 placement 数（内存计数，读取为 O(节点数)）。
+ *
+ * <ul>
+ *     <li>基线：GROUP BY node_id 聚合（不再全量加载 placement 行），用户总数同时刷新</li>
+ *     <li>增量：placement 新增 / reassign / drain 时由调用方更新计数；处于事务中时在提交后（afterCommit）才生效，
+ *     回滚的变更不会计入</li>
+ *     <li>校准：读取时发现距上次聚合超过 funai.workspace-node-registry.node-stats-refresh-ms 才重新聚合（惰性），
+ *     纠正其它 API 实例的变更以及聚合期间并发增量造成的偏差；没有人查看管理端时不产生任何 GROUP BY</li>
+ * </ul>
+ */
+@Component
+public class WorkspaceNodeStats {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceNodeStats.class);
+
+    private final FunAiWorkspacePlacementMapper placementMapper;
+    private final FunAiUserMapper userMapper;
+    private final WorkspaceNodeRegistryProperties registryProps;
+
+    private volatile Map<Long, AtomicLong> placementsByNode = new ConcurrentHashMap<>();
+    private volatile long totalUsers = 0;
+    private volatile long loadedAtMs = 0;
+
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder deltas = new LongAdder();
+
+    public WorkspaceNodeStats(FunAiWorkspacePlacementMapper placementMapper, FunAiUserMapper userMapper,
+                              WorkspaceNodeRegistryProperties registryProps) {
+        this.placementMapper = placementMapper;
+        this.userMapper = userMapper;
+        this.registryProps = registryProps;
+    }
+
+    /**
+     * 新建 placement（userId 首次落点）。
+     */
+    public void onPlacementCreated(Long nodeId) {
+        add(nodeId, 1);
+    }
+
+    /**
+     * placement 从 fromNodeId 迁移到 toNodeId（reassign / drain / auto-reassign），count 为迁移条数。
+     */
+    public void onPlacementsMoved(Long fromNodeId, Long toNodeId, long count) {
+        if (count <= 0 || (fromNodeId != null && fromNodeId.equals(toNodeId))) return;
+        add(fromNodeId, -count);
+        add(toNodeId, count);
+    }
+
+    /**
+     * 各节点 placement 数（nodeId -> count，拷贝）；首次调用或超过校准间隔时同步聚合一次。
+     */
+    public Map<Long, Long> placementsByNode() {
+        ensureFresh();
+        Map<Long, Long> out = new HashMap<>();
+        placementsByNode.forEach((k, v) -> out.put(k, Math.max(0L, v.get())));
+        return out;
+    }
+
+    public long placementsOf(Long nodeId) {
+        if (nodeId == null) return 0;
+        ensureFresh();
+        AtomicLong c = placementsByNode.get(nodeId);
+        return c == null ? 0 : Math.max(0L, c.get());
+    }
+
+    public long totalPlacements() {
+        ensureFresh();
+        long sum = 0;
+        for (AtomicLong c : placementsByNode.values()) {
+            sum += Math.max(0L, c.get());
+        }
+        return sum;
+    }
+
+    public long totalUsers() {
+        ensureFresh();
+        return totalUsers;
+    }
+
+    /**
+     * 重新聚合并整体替换计数（聚合期间的并发增量可能丢失，下次校准纠正）。
+     */
+    public synchronized void reload() {
+        List<Map<String, Object>> rows = placementMapper.countGroupByNode();
+        Map<Long, AtomicLong> m = new ConcurrentHashMap<>();
+        if (rows != null) {
+            for (Map<String, Object> r : rows) {
+                if (r == null) continue;
+                Long nodeId = asLong(r.get("nodeId"));
+                Long cnt = asLong(r.get("placements"));
+                if (nodeId == null || cnt == null) continue;
+                m.put(nodeId, new AtomicLong(cnt));
+            }
+        }
+        long users = totalUsers;
+        try {
+            Long c = userMapper == null ? null : userMapper.selectCount(new QueryWrapper<>());
+            if (c != null) users = c;
+        } catch (Exception e) {
+            log.debug("count users failed: {}", e.getMessage());
+        }
+        placementsByNode = m;
+        totalUsers = users;
+        loadedAtMs = System.currentTimeMillis();
+        reloads.increment();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("nodes", placementsByNode.size());
+        out.put("loadedAtMs", loadedAtMs);
+        out.put("refreshMs", refreshMs());
+        out.put("reloads", reloads.sum());
+        out.put("deltas", deltas.sum());
+        return out;
+    }
+
+    private void add(Long nodeId, long delta) {
+        if (nodeId == null || delta == 0) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(nodeId, delta);
+                }
+            });
+            return;
+        }
+        apply(nodeId, delta);
+    }
+
+    private void apply(Long nodeId, long delta) {
+        placementsByNode.computeIfAbsent(nodeId, k -> new AtomicLong()).addAndGet(delta);
+        deltas.increment();
+    }
+
+    private void ensureFresh() {
+        long at = loadedAtMs;
+        if (at > 0 && System.currentTimeMillis() - at < refreshMs()) return;
+        synchronized (this) {
+            if (loadedAtMs != at) return;
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                // 已有基线时继续使用旧计数，等待下次校准
+                if (at == 0) throw e;
+                log.warn("reload workspace node stats failed, serving last snapshot: {}", e.getMessage());
+            }
+        }
+    }
+
+    private long refreshMs() {
+        return registryProps == null ? 600_000 : Math.max(1000, registryProps.getNodeStatsRefreshMs());
+    }
+
+    private static Long asLong(Object v) {
+        if (v instanceof Number n) return n.longValue();
+        if (v == null) return null;
+        try {
+            return Long.parseLong(v.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
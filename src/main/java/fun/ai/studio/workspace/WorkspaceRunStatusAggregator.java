@@ -0,0 +1,260 @@
+package fun.ai.studio.workspace;
+
+import fun.ai.studio.config.WorkspaceNodeProxyProperties;
+import fun.ai.studio.entity.FunAiWorkspaceRun;
+import fun.ai.studio.entity.response.FunAiWorkspaceRunStatusResponse;
+import fun.ai.studio.service.FunAiWorkspaceRunService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * /app/list、/app/info 等聚合接口的 run/status 汇聚器（API 服务器（小机）进程内）。
+ *
+ * <ul>
+ *     <li>single-flight：同一 userId 的并发请求只发起一次 workspace-node run/status 调用，其余请求等待同一结果</li>
+ *     <li>短 TTL 缓存（workspace-node-proxy.run-status-cache-ttl-ms）：翻页/刷新不再逐次访问 workspace-node</li>
+ *     <li>last-known 落库：只有观测到的运行态发生变化才写 fun_ai_workspace_run，且由定时任务异步批量写入，不阻塞请求线程</li>
+ * </ul>
+ *
+ * <p>多实例：缓存仅在本实例内，TTL 很短；各实例写入的都是同一份 workspace-node 观测结果，重复写入无副作用。</p>
+ */
+@Component
+public class WorkspaceRunStatusAggregator {
+    private static final Logger log = LoggerFactory.getLogger(WorkspaceRunStatusAggregator.class);
+
+    /**
+     * 空闲多久后清理用户条目（同时清理 last-known 副本，下次访问重新从 DB 加载）
+     */
+    private static final long IDLE_EVICT_MS = 10 * 60 * 1000L;
+
+    private final WorkspaceNodeClient workspaceNodeClient;
+    private final FunAiWorkspaceRunService runService;
+    private final WorkspaceNodeProxyProperties props;
+
+    private final ConcurrentHashMap<Long, Entry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, FunAiWorkspaceRun> pendingWrites = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    public WorkspaceRunStatusAggregator(WorkspaceNodeClient workspaceNodeClient,
+                                        FunAiWorkspaceRunService runService,
+                                        WorkspaceNodeProxyProperties props) {
+        this.workspaceNodeClient = workspaceNodeClient;
+        this.runService = runService;
+        this.props = props;
+    }
+
+    /**
+     * 聚合视图：remote 为 workspace-node 实时运行态（双机模式；失败/未启用为 null），lastKnown 为 DB last-known（可能为 null）。
+     */
+    public record View(FunAiWorkspaceRunStatusResponse remote, FunAiWorkspaceRun lastKnown) {
+    }
+
+    private record Entry(FunAiWorkspaceRunStatusResponse remote, FunAiWorkspaceRun lastKnown, long loadedAtMs) {
+    }
+
+    /**
+     * 获取运行态（TTL 内命中缓存；否则合并并发请求后只调用一次 workspace-node）。
+     */
+    public View get(Long userId) {
+        if (userId == null) return new View(null, null);
+        Entry prev = cache.get(userId);
+        long now = System.currentTimeMillis();
+        if (prev != null && now - prev.loadedAtMs() < ttlMs()) {
+            hits.increment();
+            return new View(prev.remote(), prev.lastKnown());
+        }
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inflight.putIfAbsent(userId, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                Entry e = running.get(waitMs(), TimeUnit.MILLISECONDS);
+                return new View(e.remote(), e.lastKnown());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ignore) {
+            }
+            // 等待超时：降级返回上一份结果（可能已过期）
+            return prev == null ? new View(null, null) : new View(prev.remote(), prev.lastKnown());
+        }
+
+        Entry loaded = null;
+        try {
+            loaded = load(userId, prev);
+            cache.put(userId, loaded);
+        } finally {
+            mine.complete(loaded != null ? loaded : new Entry(null, prev == null ? null : prev.lastKnown(), now));
+            inflight.remove(userId, mine);
+        }
+        return new View(loaded.remote(), loaded.lastKnown());
+    }
+
+    /**
+     * 调用方已拿到最新运行态（例如 open-editor 使用更宽松超时单独获取）：写入缓存，避免同一请求内再次访问 workspace-node。
+     */
+    public void offer(Long userId, FunAiWorkspaceRunStatusResponse status) {
+        if (userId == null || status == null) return;
+        Entry prev = cache.get(userId);
+        FunAiWorkspaceRun lastKnown = prev != null ? prev.lastKnown() : loadLastKnown(userId);
+        cache.put(userId, new Entry(status, observe(userId, status, lastKnown), System.currentTimeMillis()));
+    }
+
+    /**
+     * 运行态已知发生变化（start/stop 等）时主动失效，下次访问重新获取。
+     */
+    public void invalidate(Long userId) {
+        if (userId == null) return;
+        Entry prev = cache.get(userId);
+        if (prev != null) {
+            cache.put(userId, new Entry(prev.remote(), prev.lastKnown(), 0L));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("cachedUsers", cache.size());
+        out.put("pendingWrites", pendingWrites.size());
+        out.put("hits", hits.sum());
+        out.put("loads", loads.sum());
+        out.put("coalesced", coalesced.sum());
+        out.put("writes", writes.sum());
+        return out;
+    }
+
+    /**
+     * 异步批量落库：每个用户只写最后一次变化（中间状态被覆盖）。
+     */
+    @Scheduled(fixedDelayString = "${workspace-node-proxy.run-status-flush-ms:1000}")
+    public void flush() {
+        if (!pendingWrites.isEmpty()) {
+            List<FunAiWorkspaceRun> updates = new ArrayList<>();
+            List<FunAiWorkspaceRun> inserts = new ArrayList<>();
+            for (Map.Entry<Long, FunAiWorkspaceRun> e : pendingWrites.entrySet()) {
+                if (!pendingWrites.remove(e.getKey(), e.getValue())) continue;
+                if (e.getValue().getId() != null) {
+                    updates.add(e.getValue());
+                } else {
+                    inserts.add(e.getValue());
+                }
+            }
+            try {
+                if (!updates.isEmpty()) {
+                    runService.updateBatchById(updates);
+                    writes.add(updates.size());
+                }
+            } catch (Exception e) {
+                log.warn("workspace run last-known batch update failed: size={}, error={}", updates.size(), e.getMessage());
+                for (FunAiWorkspaceRun r : updates) pendingWrites.putIfAbsent(r.getUserId(), r);
+            }
+            for (FunAiWorkspaceRun r : inserts) {
+                try {
+                    // 首次落库：按 userId upsert（save 后 id 回填到该对象，后续变化走批量 update）
+                    runService.upsertByUserId(r);
+                    writes.increment();
+                } catch (Exception e) {
+                    log.warn("workspace run last-known upsert failed: userId={}, error={}", r.getUserId(), e.getMessage());
+                    pendingWrites.putIfAbsent(r.getUserId(), r);
+                }
+            }
+        }
+
+        long cutoff = System.currentTimeMillis() - IDLE_EVICT_MS;
+        cache.entrySet().removeIf(e -> e.getValue().loadedAtMs() < cutoff && !pendingWrites.containsKey(e.getKey()));
+    }
+
+    private Entry load(Long userId, Entry prev) {
+        loads.increment();
+        FunAiWorkspaceRunStatusResponse remote = null;
+        if (workspaceNodeClient != null && workspaceNodeClient.isEnabled()) {
+            try {
+                remote = workspaceNodeClient.getRunStatus(userId);
+            } catch (Exception ignore) {
+            }
+        }
+        FunAiWorkspaceRun lastKnown;
+        if (remote != null && prev != null && prev.lastKnown() != null) {
+            // 已有 last-known 副本：双机模式下 DB 只由本路径写入，无需每次回读
+            lastKnown = prev.lastKnown();
+        } else {
+            lastKnown = loadLastKnown(userId);
+        }
+        return new Entry(remote, observe(userId, remote, lastKnown), System.currentTimeMillis());
+    }
+
+    private FunAiWorkspaceRun loadLastKnown(Long userId) {
+        FunAiWorkspaceRun pending = pendingWrites.get(userId);
+        if (pending != null) return pending;
+        try {
+            return runService == null ? null : runService.getByUserId(userId);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 双机模式：workspace-dev（大机）不连 MySQL，由 API 服务器（小机）在“观测到运行态变化”时做 last-known 落库。
+     */
+    private FunAiWorkspaceRun observe(Long userId, FunAiWorkspaceRunStatusResponse remote, FunAiWorkspaceRun lastKnown) {
+        if (remote == null || runService == null) return lastKnown;
+        if (lastKnown != null && sameObservation(lastKnown, remote)) return lastKnown;
+
+        FunAiWorkspaceRun record = new FunAiWorkspaceRun();
+        if (lastKnown != null) {
+            record.setId(lastKnown.getId());
+            record.setContainerName(lastKnown.getContainerName());
+            record.setContainerStatus(lastKnown.getContainerStatus());
+            record.setLastStartedAt(lastKnown.getLastStartedAt());
+        }
+        record.setUserId(userId);
+        record.setAppId(remote.getAppId());
+        record.setHostPort(remote.getHostPort());
+        record.setContainerPort(remote.getContainerPort());
+        record.setRunPid(remote.getPid());
+        record.setRunState(remote.getState());
+        record.setPreviewUrl(remote.getPreviewUrl());
+        record.setLogPath(remote.getLogPath());
+        record.setLastError(remote.getMessage());
+        record.setLastActiveAt(System.currentTimeMillis());
+        pendingWrites.put(userId, record);
+        return record;
+    }
+
+    private static boolean sameObservation(FunAiWorkspaceRun r, FunAiWorkspaceRunStatusResponse s) {
+        return Objects.equals(r.getAppId(), s.getAppId())
+                && Objects.equals(r.getHostPort(), s.getHostPort())
+                && Objects.equals(r.getContainerPort(), s.getContainerPort())
+                && Objects.equals(r.getRunPid(), s.getPid())
+                && Objects.equals(r.getRunState(), s.getState())
+                && Objects.equals(r.getPreviewUrl(), s.getPreviewUrl())
+                && Objects.equals(r.getLogPath(), s.getLogPath())
+                && Objects.equals(r.getLastError(), s.getMessage());
+    }
+
+    private long ttlMs() {
+        return props == null ? 2000 : Math.max(0, props.getRunStatusCacheTtlMs());
+    }
+
+    private long waitMs() {
+        long t = props == null ? 0 : props.getRunStatusTimeoutMs();
+        // 等待者最多比发起者多等 500ms（发起者自身受 run-status-timeout-ms 约束）
+        return (t <= 0 ? 5000 : t) + 500;
+    }
+}
@@ -0,0 +1,19 @@
+-- 会话消息 content 压缩存储：达到阈值的消息以 zstd frame 写入 content_zip，content 置空串
+-- （content 保持 NOT NULL 不变；ADD COLUMN 在 MySQL 8 为 INSTANT，不重建表）
+ALTER TABLE `fun_ai_conversation_message`
+    ADD COLUMN `content_encoding` TINYINT NOT NULL DEFAULT 0 COMMENT 'content 编码：0 明文，1 zstd（content_zip）',
+    ADD COLUMN `content_zip` MEDIUMBLOB DEFAULT NULL COMMENT '压缩后的消息内容（zstd frame，帧头含字典 ID）';
+
+-- zstd 字典：定时用近期消息训练，只增不删（历史消息按帧头字典 ID 解码）
+CREATE TABLE IF NOT EXISTS `fun_ai_message_dict` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT 'ID（最大者为当前字典）',
+    `dict_id` BIGINT NOT NULL COMMENT 'zstd 字典 ID',
+    `dict_data` MEDIUMBLOB NOT NULL COMMENT '字典内容',
+    `sample_count` INT NOT NULL DEFAULT 0 COMMENT '训练样本数',
+    `eval_raw_bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '留出样本原始字节数',
+    `eval_plain_bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '留出样本无字典压缩后字节数',
+    `eval_dict_bytes` BIGINT NOT NULL DEFAULT 0 COMMENT '留出样本用该字典压缩后字节数',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_dict_id` (`dict_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='会话消息压缩字典';
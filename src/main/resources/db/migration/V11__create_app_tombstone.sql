@@ -0,0 +1,21 @@
+-- 应用删除墓碑：删除应用时先写入（读取方据此立即视应用为已删除），子数据（会话/消息/运行记录）由后台按小批分段删除
+CREATE TABLE IF NOT EXISTS `fun_ai_app_tombstone` (
+    `app_id` BIGINT NOT NULL COMMENT '已删除的应用ID',
+    `user_id` BIGINT NOT NULL COMMENT '应用所属用户ID',
+    `status` VARCHAR(16) NOT NULL COMMENT 'PENDING（子数据清理中）/DONE',
+    `conversations_deleted` INT NOT NULL DEFAULT 0 COMMENT '已删除会话数',
+    `messages_deleted` BIGINT NOT NULL DEFAULT 0 COMMENT '已删除消息数',
+    `runs_cleared` INT NOT NULL DEFAULT 0 COMMENT '已解除关联的 workspace 运行记录数',
+    `chunks` INT NOT NULL DEFAULT 0 COMMENT '分段语句数',
+    `elapsed_ms` BIGINT NOT NULL DEFAULT 0 COMMENT '清理耗时（毫秒，含分段间让出时间）',
+    `attempts` INT NOT NULL DEFAULT 0 COMMENT '执行次数（实例中途退出后由其它实例续做）',
+    `last_error` VARCHAR(512) DEFAULT NULL COMMENT '最近一次失败原因',
+    `heartbeat_at` DATETIME DEFAULT NULL COMMENT '执行中心跳（超过租约未更新视为执行实例已退出）',
+    `run_token` VARCHAR(64) DEFAULT NULL COMMENT '当前执行令牌（NULL 表示已提交、尚未开始执行）',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '删除时间',
+    `finish_time` DATETIME DEFAULT NULL COMMENT '子数据清理完成时间',
+    PRIMARY KEY (`app_id`),
+    INDEX `idx_status_heartbeat` (`status`, `heartbeat_at`),
+    INDEX `idx_finish_time` (`finish_time`),
+    INDEX `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='应用删除墓碑';
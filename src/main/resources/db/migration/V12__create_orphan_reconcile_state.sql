@@ -0,0 +1,10 @@
+-- 孤儿数据对账水位：每个清理目标（workspace 节点 / runtime）各一行，记录已确认送达的删除水位与最近一次全量对账时间
+CREATE TABLE IF NOT EXISTS `fun_ai_orphan_reconcile_state` (
+    `target` VARCHAR(128) NOT NULL COMMENT '清理目标：workspace-node:{nodeId} / workspace-url / runtime',
+    `deleted_watermark` DATETIME DEFAULT NULL COMMENT '已送达的删除水位（fun_ai_app_tombstone.create_time）',
+    `last_full_at` DATETIME DEFAULT NULL COMMENT '最近一次全量对账成功时间',
+    `last_mode` VARCHAR(16) DEFAULT NULL COMMENT '最近一次对账方式：delta/full/legacy',
+    `last_result` VARCHAR(512) DEFAULT NULL COMMENT '最近一次对账结果（成功响应或失败原因）',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (`target`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='孤儿数据对账水位';
@@ -0,0 +1,2 @@
+-- 为 fun_ai_user 表添加 Token 吊销时间点：早于该时间（毫秒）签发的 JWT 失效（改密/禁用）
+ALTER TABLE `fun_ai_user` ADD COLUMN `token_valid_after` BIGINT DEFAULT NULL COMMENT '早于该时间（毫秒）签发的JWT失效';
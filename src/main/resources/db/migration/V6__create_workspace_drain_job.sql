@@ -0,0 +1,26 @@
+-- workspace 节点 drain 后台任务（按 placement id 游标分批迁移，可暂停/续跑）
+CREATE TABLE IF NOT EXISTS `fun_ai_workspace_drain_job` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+    `source_node_id` BIGINT NOT NULL COMMENT '源节点ID',
+    `target_node_id` BIGINT NOT NULL COMMENT '目标节点ID',
+    `status` VARCHAR(16) NOT NULL COMMENT 'RUNNING/PAUSED/DONE/FAILED/CANCELLED',
+    `last_placement_id` BIGINT NOT NULL DEFAULT 0 COMMENT '检查点：已处理到的 placement id（keyset 游标）',
+    `moved` BIGINT NOT NULL DEFAULT 0 COMMENT '已迁移条数',
+    `total` BIGINT NOT NULL DEFAULT 0 COMMENT '创建时源节点 placement 数（进度参考）',
+    `batch_size` INT NOT NULL DEFAULT 200 COMMENT '每批 UPDATE 条数',
+    `rate_per_second` INT NOT NULL DEFAULT 500 COMMENT '限速（条/秒）',
+    `owner` VARCHAR(128) DEFAULT NULL COMMENT '执行中的 API 实例',
+    `heartbeat_at` DATETIME DEFAULT NULL COMMENT '执行实例最近一次检查点时间（租约）',
+    `error_message` VARCHAR(512) DEFAULT NULL COMMENT '失败原因',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    -- 未结束时取 source_node_id，结束后为 NULL（唯一键允许多个 NULL）：同一源节点最多一个 RUNNING/PAUSED 任务，
+    -- 多个 API 实例并发创建/续跑时只有一个成功
+    `active_source_node_id` BIGINT
+        GENERATED ALWAYS AS (CASE WHEN `status` IN ('RUNNING', 'PAUSED') THEN `source_node_id` END) STORED
+        COMMENT '未结束任务的源节点ID（生成列，仅用于唯一约束）',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_active_source_node` (`active_source_node_id`),
+    INDEX `idx_source_status` (`source_node_id`, `status`),
+    INDEX `idx_status_heartbeat` (`status`, `heartbeat_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Workspace 节点 drain 任务表';
@@ -0,0 +1,7 @@
+-- workspace-node 心跳上报的负载（最近一次）：两台 API 实例通过节点快照刷新共享
+ALTER TABLE `fun_ai_workspace_node`
+    ADD COLUMN `cpu_usage` DECIMAL(5,2) DEFAULT NULL COMMENT 'CPU 使用率（%）',
+    ADD COLUMN `mem_usage` DECIMAL(5,2) DEFAULT NULL COMMENT '内存使用率（%）',
+    ADD COLUMN `disk_usage` DECIMAL(5,2) DEFAULT NULL COMMENT '磁盘使用率（%）',
+    ADD COLUMN `busy_run_count` INT DEFAULT NULL COMMENT '运行态占用数（RUNNING/STARTING/BUILDING/INSTALLING）',
+    ADD COLUMN `container_count` INT DEFAULT NULL COMMENT '容器数';
@@ -0,0 +1,22 @@
+-- 邮件发件箱：告警/验证码先落库再由后台线程发送（SMTP 慢/失败不阻塞请求，重启不丢）
+CREATE TABLE IF NOT EXISTS `fun_ai_mail_outbox` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT 'ID',
+    `kind` VARCHAR(16) NOT NULL COMMENT 'ALERT（可合并为摘要）/CODE（验证码，单独尽快发送）',
+    `to_addr` VARCHAR(1024) NOT NULL COMMENT '收件人（逗号分隔）',
+    `cc_addr` VARCHAR(1024) DEFAULT NULL COMMENT '抄送（逗号分隔）',
+    `subject` VARCHAR(512) NOT NULL COMMENT '标题（已含前缀）',
+    `body` MEDIUMTEXT NOT NULL COMMENT '正文（纯文本）',
+    `status` VARCHAR(16) NOT NULL COMMENT 'PENDING/SENDING/SENT/FAILED',
+    `attempts` INT NOT NULL DEFAULT 0 COMMENT '已尝试次数',
+    `next_attempt_at` DATETIME NOT NULL COMMENT '最早发送时间（退避重试/摘要窗口）',
+    `expire_time` DATETIME DEFAULT NULL COMMENT '过期时间（验证码失效后不再发送）',
+    `claim_token` VARCHAR(128) DEFAULT NULL COMMENT '发送中批次标识（实例 + 序号）',
+    `claimed_at` DATETIME DEFAULT NULL COMMENT '领取时间（租约：超时未完成重新置为 PENDING）',
+    `last_error` VARCHAR(512) DEFAULT NULL COMMENT '最近一次失败原因',
+    `sent_time` DATETIME DEFAULT NULL COMMENT '发送成功时间',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    INDEX `idx_status_next` (`status`, `next_attempt_at`),
+    INDEX `idx_claim_token` (`claim_token`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='邮件发件箱';
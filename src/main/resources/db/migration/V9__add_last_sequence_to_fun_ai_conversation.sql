@@ -0,0 +1,13 @@
+-- 会话消息序号计数器：追加消息时用一条条件 UPDATE 分配序号（不再 MAX(sequence) 扫描）
+ALTER TABLE `fun_ai_conversation`
+    ADD COLUMN `last_sequence` INT NOT NULL DEFAULT 0 COMMENT '已分配的最大消息序号' AFTER `message_count`;
+
+-- 回填：last_sequence = 当前最大序号；message_count 以实际消息数校准
+UPDATE `fun_ai_conversation` c
+    LEFT JOIN (
+        SELECT `conversation_id`, MAX(`sequence`) AS max_seq, COUNT(*) AS cnt
+        FROM `fun_ai_conversation_message`
+        GROUP BY `conversation_id`
+    ) m ON m.`conversation_id` = c.`id`
+SET c.`last_sequence` = COALESCE(m.max_seq, 0),
+    c.`message_count` = COALESCE(m.cnt, 0);
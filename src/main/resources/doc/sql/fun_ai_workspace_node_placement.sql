@@ -7,6 +7,11 @@ CREATE TABLE IF NOT EXISTS `fun_ai_workspace_node` (
     `enabled` TINYINT(1) NOT NULL DEFAULT 1 COMMENT '是否启用',
     `weight` INT NOT NULL DEFAULT 100 COMMENT '权重（预留）',
     `last_heartbeat_at` DATETIME NULL COMMENT '最近心跳时间',
+    `cpu_usage` DECIMAL(5,2) DEFAULT NULL COMMENT 'CPU 使用率（%）',
+    `mem_usage` DECIMAL(5,2) DEFAULT NULL COMMENT '内存使用率（%）',
+    `disk_usage` DECIMAL(5,2) DEFAULT NULL COMMENT '磁盘使用率（%）',
+    `busy_run_count` INT DEFAULT NULL COMMENT '运行态占用数（RUNNING/STARTING/BUILDING/INSTALLING）',
+    `container_count` INT DEFAULT NULL COMMENT '容器数',
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
@@ -30,3 +35,24 @@ CREATE TABLE IF NOT EXISTS `fun_ai_workspace_placement` (
 -- 示例（按需替换 URL）
 -- INSERT INTO fun_ai_workspace_node (name, nginx_base_url, api_base_url, enabled, weight)
 -- VALUES ('ws-node-01', 'http://172.21.138.87', 'http://172.21.138.87:7001', 1, 100);
+
+-- drain 后台任务（见 db/migration/V6__create_workspace_drain_job.sql）
+CREATE TABLE IF NOT EXISTS `fun_ai_workspace_drain_job` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+    `source_node_id` BIGINT NOT NULL COMMENT '源节点ID',
+    `target_node_id` BIGINT NOT NULL COMMENT '目标节点ID',
+    `status` VARCHAR(16) NOT NULL COMMENT 'RUNNING/PAUSED/DONE/FAILED/CANCELLED',
+    `last_placement_id` BIGINT NOT NULL DEFAULT 0 COMMENT '检查点：已处理到的 placement id（keyset 游标）',
+    `moved` BIGINT NOT NULL DEFAULT 0 COMMENT '已迁移条数',
+    `total` BIGINT NOT NULL DEFAULT 0 COMMENT '创建时源节点 placement 数（进度参考）',
+    `batch_size` INT NOT NULL DEFAULT 200 COMMENT '每批 UPDATE 条数',
+    `rate_per_second` INT NOT NULL DEFAULT 500 COMMENT '限速（条/秒）',
+    `owner` VARCHAR(128) DEFAULT NULL COMMENT '执行中的 API 实例',
+    `heartbeat_at` DATETIME DEFAULT NULL COMMENT '执行实例最近一次检查点时间（租约）',
+    `error_message` VARCHAR(512) DEFAULT NULL COMMENT '失败原因',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    INDEX `idx_source_status` (`source_node_id`, `status`),
+    INDEX `idx_status_heartbeat` (`status`, `heartbeat_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Workspace 节点 drain 任务表';
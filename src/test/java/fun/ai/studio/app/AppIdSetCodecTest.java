@@ -0,0 +1,125 @@
+package fun.ai.studio.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AppIdSetCodecTest {
+
+    @Test
+    void roundTrip_shouldRestoreAscendingIds() {
+        long[] ids = {1, 2, 3, 10, 127, 128, 1000, 1001, 65_536, 5_000_000_000L};
+        AppIdSetCodec.Encoder enc = encode(ids);
+
+        assertEquals(ids.length, enc.count());
+        assertEquals(5_000_000_000L, enc.maxId());
+        assertArrayEquals(ids, AppIdSetCodec.decode(enc.toBytes()));
+    }
+
+    @Test
+    void roundTrip_shouldHandleMoreIdsThanInitialBuffer() {
+        // 连续 ID 每个 1 字节：解码数组按字节数分配，不会越界
+        long[] ids = new long[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 100 + i;
+        }
+        AppIdSetCodec.Encoder enc = encode(ids);
+        // 首个差值 100 占 1 字节，其余差值 1 各占 1 字节
+        assertEquals(1000, enc.toBytes().length);
+        assertArrayEquals(ids, AppIdSetCodec.decode(enc.toBytes()));
+    }
+
+    @Test
+    void emptySet_shouldEncodeToNothingWithMaxIdZero() {
+        AppIdSetCodec.Encoder enc = new AppIdSetCodec.Encoder();
+
+        assertEquals(0, enc.count());
+        assertEquals(0L, enc.maxId());
+        assertEquals(0, enc.toBytes().length);
+        assertEquals(0, AppIdSetCodec.decode(new byte[0]).length);
+
+        Map<String, Object> payload = enc.toPayload();
+        assertEquals(AppIdSetCodec.ENCODING, payload.get("encoding"));
+        assertEquals(0, payload.get("count"));
+        assertEquals(0L, payload.get("maxId"));
+        assertEquals("", payload.get("data"));
+    }
+
+    @Test
+    void varint_shouldUseLeb128BytesForLargeGaps() {
+        // 差值 127 -> 1 字节；128 -> 2 字节；16384 -> 3 字节（低 7 位在前，高位续位 0x80）
+        assertArrayEquals(new byte[]{0x7F}, encode(127).toBytes());
+        assertArrayEquals(new byte[]{(byte) 0x80, 0x01}, encode(128).toBytes());
+        assertArrayEquals(new byte[]{(byte) 0x80, (byte) 0x80, 0x01}, encode(16_384).toBytes());
+        assertArrayEquals(new byte[]{(byte) 0xAC, 0x02}, encode(300).toBytes());
+
+        // 差值按前一个 ID 计算：1 -> 301 差 300
+        assertArrayEquals(new byte[]{0x01, (byte) 0xAC, 0x02}, encode(1, 301).toBytes());
+
+        // 最大正数 ID：63 位差值占 9 字节
+        AppIdSetCodec.Encoder max = encode(Long.MAX_VALUE);
+        assertEquals(9, max.toBytes().length);
+        assertArrayEquals(new long[]{Long.MAX_VALUE}, AppIdSetCodec.decode(max.toBytes()));
+    }
+
+    @Test
+    void add_shouldRejectNonAscendingOrNonPositiveIds() {
+        assertThrows(IllegalArgumentException.class, () -> new AppIdSetCodec.Encoder().add(0));
+        assertThrows(IllegalArgumentException.class, () -> new AppIdSetCodec.Encoder().add(-5));
+
+        AppIdSetCodec.Encoder enc = encode(5);
+        assertThrows(IllegalArgumentException.class, () -> enc.add(5));
+        assertThrows(IllegalArgumentException.class, () -> enc.add(3));
+
+        // 被拒绝的 ID 不写入，编码器仍可继续追加
+        assertEquals(1, enc.count());
+        assertEquals(5L, enc.maxId());
+        enc.add(6);
+        assertArrayEquals(new long[]{5, 6}, AppIdSetCodec.decode(enc.toBytes()));
+    }
+
+    @Test
+    void decode_shouldRejectTruncatedInput() {
+        byte[] bytes = encode(1, 301).toBytes();
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> AppIdSetCodec.decode(truncated));
+        assertTrue(e.getMessage().startsWith("truncated varint"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> AppIdSetCodec.decode(new byte[]{(byte) 0x80}));
+    }
+
+    @Test
+    void decode_shouldRejectOverlongVarint() {
+        // 续位一直为 1：超过 64 位仍未结束
+        byte[] overlong = new byte[11];
+        Arrays.fill(overlong, (byte) 0x80);
+        assertThrows(IllegalArgumentException.class, () -> AppIdSetCodec.decode(overlong));
+    }
+
+    @Test
+    void toPayload_shouldCarryBase64OfEncodedBytes() {
+        AppIdSetCodec.Encoder enc = encode(7, 9, 1007);
+        Map<String, Object> payload = enc.toPayload();
+
+        assertEquals(3, payload.get("count"));
+        assertEquals(1007L, payload.get("maxId"));
+        byte[] data = Base64.getDecoder().decode((String) payload.get("data"));
+        assertArrayEquals(enc.toBytes(), data);
+        assertArrayEquals(new long[]{7, 9, 1007}, AppIdSetCodec.decode(data));
+    }
+
+    private static AppIdSetCodec.Encoder encode(long... ids) {
+        AppIdSetCodec.Encoder enc = new AppIdSetCodec.Encoder();
+        for (long id : ids) {
+            enc.add(id);
+        }
+        return enc;
+    }
+}
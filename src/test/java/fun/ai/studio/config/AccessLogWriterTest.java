@@ -0,0 +1,130 @@
+package fun.ai.studio.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccessLogWriterTest {
+
+    @Test
+    void bufferSize_shouldRoundUpToPowerOfTwoWithMinimum() {
+        assertEquals(128, newWriter(100).stats().get("capacity"));
+        assertEquals(64, newWriter(64).stats().get("capacity"));
+        // 小于下限按 64
+        assertEquals(64, newWriter(1).stats().get("capacity"));
+    }
+
+    @Test
+    void offer_shouldDropWhenRingFull() {
+        // 不启动消费线程：环形缓冲只进不出
+        AccessLogWriter w = newWriter(64);
+        for (int i = 0; i < 64; i++) {
+            assertTrue(w.offer(entry(i)), "i=" + i);
+        }
+        assertFalse(w.offer(entry(64)));
+        assertFalse(w.offer(entry(65)));
+
+        Map<String, Object> s = w.stats();
+        assertEquals(64L, s.get("pending"));
+        assertEquals(2L, s.get("dropped"));
+        assertEquals(0L, s.get("written"));
+    }
+
+    @Test
+    void concurrentProducers_shouldAcceptExactlyCapacityAndCountTheRest() throws Exception {
+        AccessLogWriter w = newWriter(64);
+        int threads = 4;
+        int perThread = 1000;
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        if (w.offer(entry(i))) accepted.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // 每条记录要么入队要么计入 dropped，不会重复占用同一槽位
+        assertEquals(64, accepted.get());
+        assertEquals((long) threads * perThread - 64, w.stats().get("dropped"));
+        assertEquals(64L, w.stats().get("pending"));
+    }
+
+    @Test
+    void consumer_shouldDrainAndFreeCapacity() {
+        AccessLogWriter w = newWriter(64);
+        assertTrue(w.isEnabled());
+        for (int i = 0; i < 64; i++) {
+            assertTrue(w.offer(entry(i)));
+        }
+        assertFalse(w.offer(entry(64)));
+
+        // stop 会等待消费线程把已入队的记录写完
+        w.start();
+        w.stop();
+
+        Map<String, Object> s = w.stats();
+        assertEquals(64L, s.get("written"));
+        assertEquals(0L, s.get("pending"));
+        assertEquals(1L, s.get("dropped"));
+
+        // 写出后槽位可复用：绕过一整圈仍能入队
+        for (int i = 0; i < 64; i++) {
+            assertTrue(w.offer(entry(i)), "i=" + i);
+        }
+        assertEquals(1L, w.stats().get("dropped"));
+    }
+
+    @Test
+    void shouldLog_shouldAlwaysKeepErrorsAndSlowRequests() {
+        AccessLogProperties props = new AccessLogProperties();
+        props.setBufferSize(64);
+        props.setSlowMs(1000);
+        props.getSampleRates().put("/api/fun-ai/workspace/internal/", 0.0);
+        AccessLogWriter w = new AccessLogWriter(props);
+
+        String uri = "/api/fun-ai/workspace/internal/heartbeat";
+        assertFalse(w.shouldLog(uri, 200, TimeUnit.MILLISECONDS.toNanos(5)));
+        assertTrue(w.shouldLog(uri, 500, TimeUnit.MILLISECONDS.toNanos(5)));
+        assertTrue(w.shouldLog(uri, 200, TimeUnit.MILLISECONDS.toNanos(1500)));
+        // 未命中前缀走默认采样率 1.0
+        assertTrue(w.shouldLog("/api/fun-ai/app/list", 200, TimeUnit.MILLISECONDS.toNanos(5)));
+        assertEquals(1L, w.stats().get("sampledOut"));
+    }
+
+    @Test
+    void encode_shouldRenderMissingFieldsAsDash() {
+        StringBuilder sb = new StringBuilder();
+        AccessLogWriter.encode(sb, new AccessLogWriter.Entry(1700000000000L, null, "GET", "/x", 200,
+                TimeUnit.MILLISECONDS.toNanos(12), -1, null));
+        assertEquals("[-] GET /x status=200 ms=12 bytes=- start=1700000000000", sb.toString());
+    }
+
+    private static AccessLogWriter newWriter(int bufferSize) {
+        AccessLogProperties props = new AccessLogProperties();
+        props.setBufferSize(bufferSize);
+        return new AccessLogWriter(props);
+    }
+
+    private static AccessLogWriter.Entry entry(int i) {
+        return new AccessLogWriter.Entry(System.currentTimeMillis(), "req-" + i, "GET", "/api/x", 200, 1000L, 10L, null);
+    }
+}
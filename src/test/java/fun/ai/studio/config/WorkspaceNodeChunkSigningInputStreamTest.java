@@ -0,0 +1,156 @@
+package fun.ai.studio.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkspaceNodeChunkSigningInputStreamTest {
+
+    private static final String SECRET = "test-secret";
+    private static final String SEED = "seed-signature";
+
+    @Test
+    void encode_shouldMatchReferenceVector() throws Exception {
+        // 参考值由独立实现（Python hmac/hashlib）按 chunked-hmac-v1 帧格式计算，workspace-node 侧按同样规则校验
+        byte[] encoded = encode("hello world".getBytes(StandardCharsets.UTF_8), 4, 11, 8192);
+
+        String expected = "4;sig=alJYiasKMf6qcQUvjHIdfA0FzJUJ1WaPAfX5AzM49Po=\r\nhell\r\n"
+                + "4;sig=MFR14OXiymR4gKgaNYuzdIUnvCQk9Bo9C7Q0SJBs23I=\r\no wo\r\n"
+                + "3;sig=EvP0fSvXG8p1CkJDrYZVpvVtEXP7bIUZjgF3PkANi4M=\r\nrld\r\n"
+                + "0;sig=EVCUFXJ9IggYu+6LD+GV8xsp4kyuZkfxy9AEyT8H+Xk=\r\n\r\n";
+        assertEquals(expected, new String(encoded, StandardCharsets.US_ASCII));
+        assertEquals(227, encoded.length);
+        assertEquals("17e6ae5eb90ff73b396e0b3e76cf116354708b4214b57510e3c8336b90d6833e",
+                WorkspaceNodeProxySigner.sha256Hex(encoded));
+    }
+
+    @Test
+    void encodedLength_shouldMatchAroundChunkBoundaries() throws Exception {
+        int chunk = 16;
+        for (int len : new int[]{0, 1, chunk - 1, chunk, chunk + 1, 2 * chunk, 3 * chunk - 1}) {
+            byte[] data = data(len);
+            byte[] encoded = encode(data, chunk, len, 8192);
+            assertEquals(WorkspaceNodeProxySigner.chunkedEncodedLength(len, chunk), encoded.length, "len=" + len);
+            assertArrayEquals(data, decodeAndVerify(encoded), "len=" + len);
+        }
+    }
+
+    @Test
+    void exactMultipleOfChunk_shouldEndWithSingleEmptyFrame() throws Exception {
+        byte[] encoded = encode(data(32), 16, 32, 8192);
+        String s = new String(encoded, StandardCharsets.US_ASCII);
+        // 两个数据帧 + 一个结束帧
+        assertEquals(3, s.split(";sig=", -1).length - 1);
+        assertTrue(s.startsWith("10;sig="));
+    }
+
+    @Test
+    void knownLength_shouldNotReadPastDecodedLength() throws Exception {
+        byte[] source = data(100);
+        ByteArrayInputStream in = new ByteArrayInputStream(source);
+        byte[] encoded = readAll(new WorkspaceNodeChunkSigningInputStream(in, SECRET, SEED, 16, 40), 8192);
+
+        assertArrayEquals(Arrays.copyOf(source, 40), decodeAndVerify(encoded));
+        assertEquals(60, in.available());
+    }
+
+    @Test
+    void unknownLength_shouldReadUntilEof() throws Exception {
+        byte[] source = data(50);
+        byte[] encoded = encode(source, 16, -1, 8192);
+        assertArrayEquals(source, decodeAndVerify(encoded));
+    }
+
+    @Test
+    void smallReads_shouldProduceSameBytesAsBulkReads() throws Exception {
+        byte[] source = data(37);
+        byte[] bulk = encode(source, 8, 37, 8192);
+        assertArrayEquals(bulk, encode(source, 8, 37, 1));
+        assertArrayEquals(bulk, encode(source, 8, 37, 3));
+
+        // 单字节 read()
+        InputStream in = new WorkspaceNodeChunkSigningInputStream(new ByteArrayInputStream(source), SECRET, SEED, 8, 37);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        assertArrayEquals(bulk, out.toByteArray());
+    }
+
+    @Test
+    void signatures_shouldChainFromSeed() throws Exception {
+        byte[] a = encode(data(20), 8, 20, 8192);
+        byte[] b = new WorkspaceNodeChunkSigningInputStream(new ByteArrayInputStream(data(20)), SECRET, "other-seed", 8, 20)
+                .readAllBytes();
+        // 帧数与数据相同，签名不同
+        assertEquals(a.length, b.length);
+        assertFalse(Arrays.equals(a, b));
+    }
+
+    private static byte[] encode(byte[] data, int chunkSize, long decodedLength, int readSize) throws Exception {
+        InputStream in = new WorkspaceNodeChunkSigningInputStream(new ByteArrayInputStream(data), SECRET, SEED, chunkSize, decodedLength);
+        return readAll(in, readSize);
+    }
+
+    private static byte[] readAll(InputStream in, int readSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[readSize];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 按 workspace-node 的方式逐帧解析并校验链式签名，返回原始 body。
+     */
+    private static byte[] decodeAndVerify(byte[] encoded) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String prev = SEED;
+        int pos = 0;
+        while (true) {
+            int eol = indexOfCrlf(encoded, pos);
+            String head = new String(encoded, pos, eol - pos, StandardCharsets.US_ASCII);
+            int semi = head.indexOf(";sig=");
+            int len = Integer.parseInt(head.substring(0, semi), 16);
+            String sig = head.substring(semi + 5);
+            byte[] chunk = Arrays.copyOfRange(encoded, eol + 2, eol + 2 + len);
+            assertEquals(WorkspaceNodeProxySigner.chunkSignature(SECRET, prev, WorkspaceNodeProxySigner.sha256Hex(chunk)), sig);
+            assertEquals('\r', encoded[eol + 2 + len]);
+            assertEquals('\n', encoded[eol + 3 + len]);
+            body.write(chunk);
+            prev = sig;
+            pos = eol + 4 + len;
+            if (len == 0) {
+                assertEquals(encoded.length, pos);
+                return body.toByteArray();
+            }
+        }
+    }
+
+    private static int indexOfCrlf(byte[] b, int from) {
+        for (int i = from; i + 1 < b.length; i++) {
+            if (b[i] == '\r' && b[i + 1] == '\n') return i;
+        }
+        throw new AssertionError("missing CRLF after " + from);
+    }
+
+    private static byte[] data(int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte) (i * 31 + 7);
+        }
+        return b;
+    }
+}
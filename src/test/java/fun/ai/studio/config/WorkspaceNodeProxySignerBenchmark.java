@@ -0,0 +1,104 @@
+package fun.ai.studio.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代理请求签名（GET 空 body：sha256 + nonce + canonical + HMAC）新旧实现对比。
+ *
+ * <p>运行：IDE 中直接执行 main，或
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=fun.ai.studio.config.WorkspaceNodeProxySignerBenchmark}；
+ * 结果中 gc.alloc.rate.norm 即每次操作分配字节数。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class WorkspaceNodeProxySignerBenchmark {
+
+    private static final String SECRET = "bench-shared-secret-0123456789abcdef";
+    private static final String PATH = "/api/fun-ai/workspace/files/content";
+    private static final String QUERY = "userId=10001&appId=20002&path=src%2FApp.vue";
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Setup
+    public void setup() throws Exception {
+        // 预热 JCA provider 查找，避免首次调用计入测量
+        WorkspaceNodeProxySigner.hmacSha256Base64(SECRET, "warmup");
+        legacyHmac(SECRET, "warmup");
+    }
+
+    @Benchmark
+    public String legacySignEmptyGet() throws Exception {
+        String nonce = legacyNonce();
+        String canonical = WorkspaceNodeProxySigner.canonical("GET", PATH, QUERY, legacySha256Hex(new byte[0]),
+                1700000000000L, nonce);
+        return legacyHmac(SECRET, canonical);
+    }
+
+    @Benchmark
+    public String signEmptyGet() throws Exception {
+        String nonce = WorkspaceNodeProxySigner.randomNonce();
+        String canonical = WorkspaceNodeProxySigner.canonical("GET", PATH, QUERY,
+                WorkspaceNodeProxySigner.sha256Hex(new byte[0]), 1700000000000L, nonce);
+        return WorkspaceNodeProxySigner.hmacSha256Base64(SECRET, canonical);
+    }
+
+    // ---------------- 旧实现（优化前的 WorkspaceNodeProxySigner / randomNonce） ----------------
+
+    private String legacyNonce() {
+        byte[] b = new byte[16];
+        random.nextBytes(b);
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b) sb.append(String.format("%02x", x));
+        return sb.toString();
+    }
+
+    private static String legacySha256Hex(byte[] bytes) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] dig = md.digest(bytes == null ? new byte[0] : bytes);
+        StringBuilder sb = new StringBuilder(dig.length * 2);
+        for (byte b : dig) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static String legacyHmac(String secret, String data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] out = mac.doFinal((data == null ? "" : data).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(out);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(WorkspaceNodeProxySignerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
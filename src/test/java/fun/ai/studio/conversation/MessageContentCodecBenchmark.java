@@ -0,0 +1,265 @@
+package fun.ai.studio.conversation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 会话消息 content 压缩：deflate（JDK 自带，对照）/ zstd / zstd + 训练字典。
+ *
+ * <p>语料为合成的 AI 回复（中文说明 + markdown + Vue/Java/SQL 代码块，结构相似、标识符随机），
+ * 尺寸覆盖 0.5KB~32KB。main 先打印（不依赖 JMH）：</p>
+ * <ul>
+ *     <li>压缩率：按尺寸分档，字典用 90% 语料训练、在其余 10% 上评估</li>
+ *     <li>吞吐：单线程编码/解码 MB/s（粗测）</li>
+ * </ul>
+ * <p>然后用 JMH 测量单条约 4KB 消息的编码/解码耗时。运行：
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=fun.ai.studio.conversation.MessageContentCodecBenchmark}</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageContentCodecBenchmark {
+
+    private static final int CORPUS_SIZE = 3000;
+    private static final int LEVEL = 3;
+    private static final int DICT_SIZE = 64 * 1024;
+    private static final int[] BUCKETS = {1024, 4096, 16384, Integer.MAX_VALUE};
+
+    @Param({"deflate", "zstd", "zstd-dict"})
+    public String codec;
+
+    private Codec impl;
+    private byte[] raw;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        List<byte[]> corpus = corpus(CORPUS_SIZE, 42);
+        impl = codec(codec, corpus.subList(0, CORPUS_SIZE * 9 / 10));
+        raw = message(new Random(7), 4096).getBytes(StandardCharsets.UTF_8);
+        encoded = impl.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return impl.encode(raw);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return impl.decode(encoded, raw.length);
+    }
+
+    interface Codec {
+        byte[] encode(byte[] raw);
+
+        byte[] decode(byte[] encoded, int rawLength);
+    }
+
+    private static Codec codec(String name, List<byte[]> trainSet) {
+        return switch (name) {
+            case "deflate" -> new DeflateCodec();
+            case "zstd" -> zstd(new ZstdTextCodec(LEVEL, null));
+            case "zstd-dict" -> zstd(new ZstdTextCodec(LEVEL, ZstdTextCodec.trainDictionary(trainSet, DICT_SIZE)));
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    private static Codec zstd(ZstdTextCodec c) {
+        return new Codec() {
+            @Override
+            public byte[] encode(byte[] raw) {
+                return c.encode(raw);
+            }
+
+            @Override
+            public byte[] decode(byte[] encoded, int rawLength) {
+                return c.decode(encoded).getBytes(StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * JDK deflate（level 6），作为不引入新依赖时的对照。
+     */
+    private static final class DeflateCodec implements Codec {
+        @Override
+        public byte[] encode(byte[] raw) {
+            Deflater d = new Deflater(6);
+            try {
+                d.setInput(raw);
+                d.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+                byte[] buf = new byte[8192];
+                while (!d.finished()) {
+                    out.write(buf, 0, d.deflate(buf));
+                }
+                return out.toByteArray();
+            } finally {
+                d.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] encoded, int rawLength) {
+            Inflater inf = new Inflater();
+            try {
+                inf.setInput(encoded);
+                byte[] out = new byte[rawLength];
+                int n = 0;
+                while (n < rawLength && !inf.finished()) {
+                    n += inf.inflate(out, n, rawLength - n);
+                }
+                return out;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+    private static final String[] PROSE = {
+            "好的，我来帮你实现这个功能。下面是修改后的代码：",
+            "这个问题是因为组件在挂载前就访问了数据，需要先判断是否为空。",
+            "我已经按照你的要求调整了页面布局，并补充了表单校验。",
+            "接口返回的数据结构如下，前端需要按 list 字段渲染列表。",
+            "注意：修改数据库结构后需要重新执行初始化脚本。",
+            "下面是完整的组件代码，你可以直接替换原来的文件：",
+    };
+
+    private static final String[] NOUNS = {"user", "order", "product", "cart", "comment", "article", "task", "report"};
+
+    private static List<byte[]> corpus(int n, long seed) {
+        Random r = new Random(seed);
+        List<byte[]> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // 对数均匀分布在 512B ~ 32KB
+            int target = (int) Math.round(512 * Math.pow(64, r.nextDouble()));
+            out.add(message(r, target).getBytes(StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static String message(Random r, int targetBytes) {
+        StringBuilder sb = new StringBuilder(targetBytes + 1024);
+        while (sb.length() * 1.2 < targetBytes) {
+            String noun = NOUNS[r.nextInt(NOUNS.length)];
+            String type = Character.toUpperCase(noun.charAt(0)) + noun.substring(1);
+            String field = "f" + Integer.toHexString(r.nextInt(1 << 16));
+            sb.append(PROSE[r.nextInt(PROSE.length)]).append("\n\n");
+            switch (r.nextInt(3)) {
+                case 0 -> sb.append("```vue\n<template>\n  <div class=\"").append(noun).append("-list\">\n")
+                        .append("    <el-table :data=\"").append(noun).append("List\" v-loading=\"loading\">\n")
+                        .append("      <el-table-column prop=\"").append(field).append("\" label=\"名称\" />\n")
+                        .append("    </el-table>\n  </div>\n</template>\n\n<script setup>\n")
+                        .append("import { ref, onMounted } from 'vue'\nimport { list").append(type)
+                        .append(" } from '@/api/").append(noun).append("'\n\nconst ").append(noun)
+                        .append("List = ref([])\nconst loading = ref(false)\n\nonMounted(async () => {\n")
+                        .append("  loading.value = true\n  const res = await list").append(type).append("({ page: 1 })\n")
+                        .append("  ").append(noun).append("List.value = res.data.list\n  loading.value = false\n})\n</script>\n```\n\n");
+                case 1 -> sb.append("```java\n@RestController\n@RequestMapping(\"/api/").append(noun).append("\")\n")
+                        .append("public class ").append(type).append("Controller {\n    private final ").append(type)
+                        .append("Service ").append(noun).append("Service;\n\n    @GetMapping(\"/list\")\n")
+                        .append("    public Result<List<").append(type).append(">> list(@RequestParam Integer page) {\n")
+                        .append("        return Result.success(").append(noun).append("Service.list(page, ")
+                        .append(r.nextInt(100)).append("));\n    }\n}\n```\n\n");
+                default -> sb.append("```sql\nCREATE TABLE `").append(noun).append("` (\n")
+                        .append("    `id` BIGINT NOT NULL AUTO_INCREMENT,\n    `").append(field)
+                        .append("` VARCHAR(").append(32 + r.nextInt(200)).append(") NOT NULL COMMENT '名称',\n")
+                        .append("    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,\n    PRIMARY KEY (`id`)\n")
+                        .append(") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;\n```\n\n");
+            }
+            sb.append("- ").append(type).append(" 列表支持分页，每页 ").append(10 + r.nextInt(40)).append(" 条\n")
+                    .append("- 字段 `").append(field).append("` 为必填\n\n");
+        }
+        return sb.toString();
+    }
+
+    private static void printRatio(String name, Codec c, List<byte[]> evalSet) {
+        long[] raw = new long[BUCKETS.length];
+        long[] enc = new long[BUCKETS.length];
+        long rawAll = 0, encAll = 0;
+        for (byte[] s : evalSet) {
+            int b = 0;
+            while (s.length >= BUCKETS[b]) b++;
+            int e = c.encode(s).length;
+            raw[b] += s.length;
+            enc[b] += e;
+            rawAll += s.length;
+            encAll += e;
+        }
+        StringBuilder sb = new StringBuilder();
+        int lo = 0;
+        for (int b = 0; b < BUCKETS.length; b++) {
+            String range = BUCKETS[b] == Integer.MAX_VALUE ? ">=" + lo / 1024 + "KB" : lo / 1024 + "-" + BUCKETS[b] / 1024 + "KB";
+            sb.append(String.format("  %-8s ratio=%.3f%n", range, raw[b] == 0 ? 0 : (double) enc[b] / raw[b]));
+            lo = BUCKETS[b];
+        }
+        System.out.printf("[ratio] %-9s total=%.3f (%d -> %d bytes)%n%s", name, (double) encAll / rawAll, rawAll, encAll, sb);
+    }
+
+    private static void printThroughput(String name, Codec c, List<byte[]> evalSet) {
+        List<byte[]> encoded = new ArrayList<>(evalSet.size());
+        long bytes = 0;
+        for (byte[] s : evalSet) {
+            encoded.add(c.encode(s));
+            bytes += s.length;
+        }
+        int rounds = 20;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (byte[] s : evalSet) c.encode(s);
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (int j = 0; j < evalSet.size(); j++) c.decode(encoded.get(j), evalSet.get(j).length);
+        }
+        long t2 = System.nanoTime();
+        double mb = bytes * rounds / 1024.0 / 1024.0;
+        System.out.printf("[throughput] %-9s encode=%.0f MB/s decode=%.0f MB/s%n",
+                name, mb / ((t1 - t0) / 1e9), mb / ((t2 - t1) / 1e9));
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<byte[]> corpus = corpus(CORPUS_SIZE, 42);
+        List<byte[]> trainSet = corpus.subList(0, CORPUS_SIZE * 9 / 10);
+        List<byte[]> evalSet = corpus.subList(CORPUS_SIZE * 9 / 10, CORPUS_SIZE);
+
+        for (String name : new String[]{"deflate", "zstd", "zstd-dict"}) {
+            Codec c = codec(name, trainSet);
+            printRatio(name, c, evalSet);
+            printThroughput(name, c, evalSet);
+        }
+
+        Options opt = new OptionsBuilder()
+                .include(MessageContentCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
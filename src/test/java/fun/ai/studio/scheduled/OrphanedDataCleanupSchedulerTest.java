@@ -0,0 +1,269 @@
+package fun.ai.studio.scheduled;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fun.ai.studio.app.AppIdSetCodec;
+import fun.ai.studio.app.AppTeardownProperties;
+import fun.ai.studio.entity.FunAiApp;
+import fun.ai.studio.entity.FunAiAppTombstone;
+import fun.ai.studio.entity.FunAiOrphanReconcileState;
+import fun.ai.studio.mapper.FunAiAppMapper;
+import fun.ai.studio.mapper.FunAiAppTombstoneMapper;
+import fun.ai.studio.mapper.FunAiOrphanReconcileStateMapper;
+import fun.ai.studio.workspace.WorkspaceNodeClient;
+import fun.ai.studio.workspace.WorkspaceNodeRoutingTable;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrphanedDataCleanupSchedulerTest {
+
+    private static final String TARGET = "runtime";
+    private static final String PATH = "/agent/cleanup-orphaned";
+
+    private final FunAiAppMapper appMapper = mock(FunAiAppMapper.class);
+    private final FunAiAppTombstoneMapper tombstoneMapper = mock(FunAiAppTombstoneMapper.class);
+    private final FunAiOrphanReconcileStateMapper stateMapper = mock(FunAiOrphanReconcileStateMapper.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void needsFull_shouldRunFullWithoutWatermarkOrPreviousFull() {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        LocalDateTime now = LocalDateTime.now();
+
+        assertTrue(s.needsFull(null, now));
+        assertTrue(s.needsFull(state(null, now.minusHours(1)), now));
+        assertTrue(s.needsFull(state(now.minusHours(1), null), now));
+        assertFalse(s.needsFull(state(now.minusHours(1), now.minusDays(1)), now));
+    }
+
+    @Test
+    void needsFull_shouldRunFullAfterFullInterval() {
+        LocalDateTime now = LocalDateTime.now();
+        FunAiOrphanReconcileState st = state(now.minusHours(1), now.minusDays(8));
+
+        assertTrue(newScheduler(7, 30).needsFull(st, now));
+        assertFalse(newScheduler(10, 30).needsFull(st, now));
+        // 0：每次都全量
+        assertTrue(newScheduler(0, 30).needsFull(state(now.minusHours(1), now.minusHours(1)), now));
+    }
+
+    @Test
+    void needsFull_shouldRunFullWhenWatermarkOlderThanTombstoneRetention() {
+        LocalDateTime now = LocalDateTime.now();
+        // 水位之后的删除可能已随墓碑清除，增量不可靠
+        FunAiOrphanReconcileState st = state(now.minusDays(31), now.minusDays(1));
+
+        assertTrue(newScheduler(7, 30).needsFull(st, now));
+        // 墓碑永久保留时不受水位年龄影响
+        assertFalse(newScheduler(7, 0).needsFull(st, now));
+    }
+
+    @Test
+    void reconcile_fullShouldSendEncodedIdSetToV2Path() throws Exception {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        givenApps(1, 2, 5);
+        RecordingTransport transport = new RecordingTransport(200);
+
+        s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+        assertEquals(List.of(PATH + "/v2"), transport.paths);
+        JsonNode req = objectMapper.readTree(transport.bodies.get(0));
+        assertEquals(2, req.get("protocol").asInt());
+        assertEquals("full", req.get("mode").asText());
+        JsonNode set = req.get("existingAppIdSet");
+        assertEquals(AppIdSetCodec.ENCODING, set.get("encoding").asText());
+        assertEquals(3, set.get("count").asInt());
+        assertEquals(5L, set.get("maxId").asLong());
+        assertArrayEquals(new long[]{1, 2, 5}, AppIdSetCodec.decode(Base64.getDecoder().decode(set.get("data").asText())));
+        verify(stateMapper).markSucceeded(eq(TARGET), any(), eq(true), eq("full"), anyString());
+    }
+
+    @Test
+    void reconcile_shouldFallBackToLegacyListWhenV2Unsupported() throws Exception {
+        for (int status : new int[]{404, 405, 501}) {
+            FunAiOrphanReconcileStateMapper stateMapper = mock(FunAiOrphanReconcileStateMapper.class);
+            OrphanedDataCleanupScheduler s = newScheduler(stateMapper, 7, 30);
+            givenApps(1, 2, 5);
+            RecordingTransport transport = new RecordingTransport(status, 200);
+
+            s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+            assertEquals(List.of(PATH + "/v2", PATH), transport.paths, "status=" + status);
+            // 旧接口只认 existingAppIds 完整列表
+            assertEquals("{\"existingAppIds\":[1,2,5]}", new String(transport.bodies.get(1), StandardCharsets.UTF_8));
+            verify(stateMapper).markSucceeded(eq(TARGET), any(), eq(true), eq("legacy"), anyString());
+        }
+    }
+
+    @Test
+    void reconcile_deltaFallbackShouldSendFullListAndCountAsFull() throws Exception {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        LocalDateTime now = LocalDateTime.now();
+        when(stateMapper.selectById(TARGET)).thenReturn(state(now.minusHours(1), now.minusDays(1)));
+        givenTombstones(9);
+        givenApps(1, 2, 5);
+        RecordingTransport transport = new RecordingTransport(404, 200);
+
+        s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+        assertEquals("delta", objectMapper.readTree(transport.bodies.get(0)).get("mode").asText());
+        assertEquals("{\"existingAppIds\":[1,2,5]}", new String(transport.bodies.get(1), StandardCharsets.UTF_8));
+        verify(stateMapper).markSucceeded(eq(TARGET), any(), eq(true), eq("legacy"), anyString());
+    }
+
+    @Test
+    void reconcile_deltaShouldSendOnlyNewDeletionsInAscendingOrder() throws Exception {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        LocalDateTime now = LocalDateTime.now();
+        when(stateMapper.selectById(TARGET)).thenReturn(state(now.minusHours(1), now.minusDays(1)));
+        givenTombstones(9, 4, 9);
+        RecordingTransport transport = new RecordingTransport(200);
+
+        s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+        JsonNode set = objectMapper.readTree(transport.bodies.get(0)).get("deletedAppIdSet");
+        assertArrayEquals(new long[]{4, 9}, AppIdSetCodec.decode(Base64.getDecoder().decode(set.get("data").asText())));
+        // 增量不需要读取全部应用 ID
+        verify(appMapper, never()).selectList(any());
+        verify(stateMapper).markSucceeded(eq(TARGET), any(), eq(false), eq("delta"), anyString());
+    }
+
+    @Test
+    void reconcile_deltaWithoutDeletionsShouldSkipRequest() {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        LocalDateTime now = LocalDateTime.now();
+        when(stateMapper.selectById(TARGET)).thenReturn(state(now.minusHours(1), now.minusDays(1)));
+        givenTombstones();
+        RecordingTransport transport = new RecordingTransport();
+
+        s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+        assertTrue(transport.paths.isEmpty());
+        verify(stateMapper).markSucceeded(eq(TARGET), any(), eq(false), eq("delta"), eq("no deletions"));
+    }
+
+    @Test
+    void reconcile_otherErrorsShouldNotFallBackAndKeepWatermark() {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        givenApps(1, 2, 5);
+        RecordingTransport transport = new RecordingTransport(500);
+
+        s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+        assertEquals(List.of(PATH + "/v2"), transport.paths);
+        verify(stateMapper).markFailed(eq(TARGET), eq("full"), startsWith("HTTP 500"));
+        verify(stateMapper, never()).markSucceeded(anyString(), any(), anyBoolean(), anyString(), anyString());
+    }
+
+    @Test
+    void reconcile_legacyFailureShouldBeRecordedAsLegacy() {
+        OrphanedDataCleanupScheduler s = newScheduler(7, 30);
+        givenApps(1, 2, 5);
+        RecordingTransport transport = new RecordingTransport(404, 503);
+
+        s.reconcile(s.new Run(), TARGET, "runtime", PATH, transport);
+
+        assertEquals(List.of(PATH + "/v2", PATH), transport.paths);
+        verify(stateMapper).markFailed(eq(TARGET), eq("legacy"), startsWith("HTTP 503"));
+    }
+
+    private OrphanedDataCleanupScheduler newScheduler(int fullIntervalDays, int retentionDays) {
+        return newScheduler(stateMapper, fullIntervalDays, retentionDays);
+    }
+
+    private OrphanedDataCleanupScheduler newScheduler(FunAiOrphanReconcileStateMapper stateMapper, int fullIntervalDays, int retentionDays) {
+        AppTeardownProperties props = new AppTeardownProperties();
+        props.setRetentionDays(retentionDays);
+        OrphanedDataCleanupScheduler s = new OrphanedDataCleanupScheduler(appMapper, tombstoneMapper, stateMapper,
+                mock(WorkspaceNodeRoutingTable.class), mock(WorkspaceNodeClient.class), props, objectMapper);
+        ReflectionTestUtils.setField(s, "fullIntervalDays", fullIntervalDays);
+        ReflectionTestUtils.setField(s, "idPageSize", 5000);
+        ReflectionTestUtils.setField(s, "deltaOverlapSeconds", 600L);
+        return s;
+    }
+
+    private void givenApps(long... ids) {
+        List<FunAiApp> apps = new ArrayList<>();
+        for (long id : ids) {
+            FunAiApp app = new FunAiApp();
+            app.setId(id);
+            apps.add(app);
+        }
+        when(appMapper.selectList(any())).thenReturn(apps);
+    }
+
+    private void givenTombstones(long... appIds) {
+        List<FunAiAppTombstone> rows = new ArrayList<>();
+        for (long id : appIds) {
+            FunAiAppTombstone t = new FunAiAppTombstone();
+            t.setAppId(id);
+            rows.add(t);
+        }
+        when(tombstoneMapper.selectList(any())).thenReturn(rows);
+    }
+
+    private static FunAiOrphanReconcileState state(LocalDateTime watermark, LocalDateTime lastFullAt) {
+        FunAiOrphanReconcileState st = new FunAiOrphanReconcileState();
+        st.setTarget(TARGET);
+        st.setDeletedWatermark(watermark);
+        st.setLastFullAt(lastFullAt);
+        return st;
+    }
+
+    /**
+     * 按顺序返回预设的 HTTP 状态码，并记录请求路径与请求体
+     */
+    private static final class RecordingTransport implements OrphanedDataCleanupScheduler.Transport {
+        private final Deque<Integer> statuses = new ArrayDeque<>();
+        private final List<String> paths = new ArrayList<>();
+        private final List<byte[]> bodies = new ArrayList<>();
+
+        RecordingTransport(int... statuses) {
+            for (int status : statuses) {
+                this.statuses.add(status);
+            }
+        }
+
+        @Override
+        public HttpResponse<byte[]> post(String path, byte[] body) {
+            paths.add(path);
+            bodies.add(body);
+            Integer status = statuses.poll();
+            if (status == null) {
+                throw new AssertionError("unexpected request: " + path);
+            }
+            return response(status);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<byte[]> response(int status) {
+        HttpResponse<byte[]> r = mock(HttpResponse.class);
+        when(r.statusCode()).thenReturn(status);
+        when(r.body()).thenReturn(("{\"status\":" + status + "}").getBytes(StandardCharsets.UTF_8));
+        return r;
+    }
+}
@@ -0,0 +1,98 @@
+package fun.ai.studio.utils;
+
+import fun.ai.studio.entity.FunAiUser;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtAuthenticationFilter 的 Token 处理路径：优化前（getUsernameFromToken + validateToken，共 3 次 HS512 验签 + JSON 解析）
+ * 对比 verify()（单次验签 / 命中验签缓存）。
+ *
+ * <p>main 依次以 1、8、32 线程运行（对应小机 API 的低/中/高并发），
+ * 也可 {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=fun.ai.studio.utils.JwtVerifyBenchmark}。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerifyBenchmark {
+
+    private static final String SECRET = "bench-jwt-secret-0123456789abcdef";
+
+    private JwtUtil cached;
+    private JwtUtil uncached;
+    private String token;
+
+    @Setup
+    public void setup() {
+        cached = newJwtUtil(10000);
+        uncached = newJwtUtil(0);
+        FunAiUser u = new FunAiUser();
+        u.setId(10001L);
+        u.setUserName("bench-user");
+        u.setUserType(0);
+        token = cached.generateToken(u);
+        cached.verify(token);
+    }
+
+    @Benchmark
+    public boolean legacyFilterPath() {
+        String username = legacyClaims(token).getSubject();
+        Claims c1 = legacyClaims(token);
+        Claims c2 = legacyClaims(token);
+        return c1.getSubject().equals(username) && !c2.getExpiration().before(new Date());
+    }
+
+    @Benchmark
+    public JwtClaims verifyUncached() {
+        return uncached.verify(token);
+    }
+
+    @Benchmark
+    public JwtClaims verifyCached() {
+        return cached.verify(token);
+    }
+
+    private static Claims legacyClaims(String token) {
+        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody();
+    }
+
+    private static JwtUtil newJwtUtil(int cacheSize) {
+        JwtUtil u = new JwtUtil();
+        ReflectionTestUtils.setField(u, "secret", SECRET);
+        ReflectionTestUtils.setField(u, "expiration", 604800L);
+        ReflectionTestUtils.setField(u, "verifyCacheMaxSize", cacheSize);
+        return u;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[]{1, 8, 32}) {
+            Options opt = new OptionsBuilder()
+                    .include(JwtVerifyBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
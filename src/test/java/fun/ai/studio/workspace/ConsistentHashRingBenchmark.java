@@ -0,0 +1,149 @@
+package fun.ai.studio.workspace;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 新用户选点：旧策略 floorMod(hash(userId), n) 对比带权一致性哈希环。
+ *
+ * <p>main 先打印模拟结果（不依赖 JMH）：</p>
+ * <ul>
+ *     <li>均衡：20 万用户在 4 个节点（weight 100/100/100/200）上的分布与按权重期望值的偏差</li>
+ *     <li>扰动：新增第 5 个节点 / 下线 1 个节点后，落点发生变化的用户比例（理想值约等于变化节点的权重占比）</li>
+ * </ul>
+ * <p>然后用 JMH 测量单次选点耗时。运行：
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=fun.ai.studio.workspace.ConsistentHashRingBenchmark}</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsistentHashRingBenchmark {
+
+    private static final int USERS = 200_000;
+    private static final int VNODES_PER_100 = 160;
+
+    private ConsistentHashRing ring;
+    private long[] sortedNodeIds;
+    private long userId;
+
+    @Setup
+    public void setup() {
+        Map<Long, Integer> weights = weights(4);
+        ring = ConsistentHashRing.build(weights, VNODES_PER_100);
+        sortedNodeIds = weights.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    @Benchmark
+    public long legacyModulo() {
+        long u = ++userId;
+        return sortedNodeIds[Math.floorMod(Long.hashCode(u), sortedNodeIds.length)];
+    }
+
+    @Benchmark
+    public Long ringPrimary() {
+        return ring.primary(++userId);
+    }
+
+    @Benchmark
+    public List<Long> ringCandidates() {
+        return ring.candidates(++userId, 4);
+    }
+
+    private static Map<Long, Integer> weights(int nodes) {
+        Map<Long, Integer> m = new LinkedHashMap<>();
+        for (long id = 1; id <= nodes; id++) {
+            // 4 号节点为大规格机器（weight=200）
+            m.put(id, id == 4 ? 200 : 100);
+        }
+        return m;
+    }
+
+    private static long[] assign(LongUnaryOperator chooser) {
+        long[] out = new long[USERS];
+        for (int i = 0; i < USERS; i++) {
+            out[i] = chooser.applyAsLong(1_000_000L + i);
+        }
+        return out;
+    }
+
+    private static LongUnaryOperator modulo(Map<Long, Integer> weights) {
+        long[] ids = weights.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        return u -> ids[Math.floorMod(Long.hashCode(u), ids.length)];
+    }
+
+    private static LongUnaryOperator ring(Map<Long, Integer> weights) {
+        ConsistentHashRing r = ConsistentHashRing.build(weights, VNODES_PER_100);
+        return r::primary;
+    }
+
+    private static void printBalance(String name, long[] assigned, Map<Long, Integer> weights) {
+        Map<Long, Long> cnt = new TreeMap<>();
+        for (long n : assigned) cnt.merge(n, 1L, Long::sum);
+        long totalWeight = weights.values().stream().mapToLong(Integer::longValue).sum();
+        double maxDev = 0;
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Long, Integer> e : weights.entrySet()) {
+            double expected = (double) USERS * e.getValue() / totalWeight;
+            long actual = cnt.getOrDefault(e.getKey(), 0L);
+            double dev = (actual - expected) / expected;
+            maxDev = Math.max(maxDev, Math.abs(dev));
+            sb.append(String.format("  node=%d weight=%d users=%d expected=%.0f dev=%+.2f%%%n",
+                    e.getKey(), e.getValue(), actual, expected, dev * 100));
+        }
+        System.out.printf("[balance] %s maxDeviation=%.2f%%%n%s", name, maxDev * 100, sb);
+    }
+
+    private static void printChurn(String name, long[] before, long[] after) {
+        long moved = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (before[i] != after[i]) moved++;
+        }
+        System.out.printf("[churn] %s moved=%d (%.2f%%)%n", name, moved, 100.0 * moved / before.length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<Long, Integer> four = weights(4);
+        Map<Long, Integer> five = new LinkedHashMap<>(four);
+        five.put(5L, 100);
+        Map<Long, Integer> three = new LinkedHashMap<>(four);
+        three.remove(2L);
+
+        long[] modFour = assign(modulo(four));
+        long[] ringFour = assign(ring(four));
+        printBalance("legacy-modulo (ignores weight)", modFour, four);
+        printBalance("weighted-ring", ringFour, four);
+
+        // 新增节点：理想扰动 = 100 / 600 ≈ 16.7%
+        printChurn("legacy-modulo add node5", modFour, assign(modulo(five)));
+        printChurn("weighted-ring add node5", ringFour, assign(ring(five)));
+        // 下线节点：理想扰动 = 100 / 500 = 20%（只有原本在 node2 上的用户移动）
+        printChurn("legacy-modulo remove node2", modFour, assign(modulo(three)));
+        printChurn("weighted-ring remove node2", ringFour, assign(ring(three)));
+
+        Options opt = new OptionsBuilder()
+                .include(ConsistentHashRingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
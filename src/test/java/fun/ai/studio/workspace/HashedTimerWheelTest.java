@@ -0,0 +1,157 @@
+package fun.ai.studio.workspace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HashedTimerWheelTest {
+
+    /**
+     * 10ms 一格、4 个槽位：一圈 40ms，超过一圈的任务要按圈数轮转
+     */
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 4;
+
+    @Test
+    void schedule_shouldFireNoEarlierThanDelay() throws Exception {
+        HashedTimerWheel wheel = start();
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            long t0 = System.nanoTime();
+            long[] firedAfterMs = new long[1];
+            wheel.schedule(() -> {
+                firedAfterMs[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+                fired.countDown();
+            }, 30);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            // deadline 向上取整到 tick：不会早于 delay
+            assertTrue(firedAfterMs[0] >= 30, "firedAfterMs=" + firedAfterMs[0]);
+            assertEquals(1L, wheel.stats().get("expired"));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void nonPositiveDelay_shouldFireOnNextTick() throws Exception {
+        HashedTimerWheel wheel = start();
+        try {
+            CountDownLatch fired = new CountDownLatch(2);
+            wheel.schedule(fired::countDown, 0);
+            wheel.schedule(fired::countDown, -100);
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void delayBeyondOneRound_shouldWaitForItsRound() throws Exception {
+        HashedTimerWheel wheel = start();
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            long t0 = System.nanoTime();
+            // 150ms ≈ 3.75 圈：槽位每圈都会被扫描，但未到 deadline 不执行
+            wheel.schedule(fired::countDown, 150);
+
+            assertFalse(fired.await(80, TimeUnit.MILLISECONDS));
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) >= 150);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void sameSlotDifferentRounds_shouldFireInDeadlineOrder() throws Exception {
+        HashedTimerWheel wheel = start();
+        try {
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            CountDownLatch fired = new CountDownLatch(3);
+            // 相差整圈（40ms）的 deadline 落在同一槽位
+            wheel.schedule(() -> { order.add(3); fired.countDown(); }, 100);
+            wheel.schedule(() -> { order.add(1); fired.countDown(); }, 20);
+            wheel.schedule(() -> { order.add(2); fired.countDown(); }, 60);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertEquals(List.of(1, 2, 3), order);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void cancel_shouldSuppressTaskAcrossRounds() throws Exception {
+        HashedTimerWheel wheel = start();
+        try {
+            AtomicBoolean ran = new AtomicBoolean(false);
+            HashedTimerWheel.Timeout timeout = wheel.schedule(() -> ran.set(true), 200);
+            // 等任务进入槽位并被扫描过至少一圈后再取消
+            Thread.sleep(100);
+            assertFalse(ran.get());
+            timeout.cancel();
+            assertTrue(timeout.isCancelled());
+
+            Thread.sleep(250);
+            assertFalse(ran.get());
+            assertEquals(0L, wheel.stats().get("expired"));
+            // 惰性取消：所在槽位下一次被扫描时移除并计数
+            assertEquals(1L, wheel.stats().get("cancelled"));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void cancelBeforeTransfer_shouldDropFromIncomingQueue() throws Exception {
+        HashedTimerWheel wheel = new HashedTimerWheel("test-wheel", TICK_MS, WHEEL_SIZE);
+        AtomicBoolean ran = new AtomicBoolean(false);
+        // 时间轮线程尚未启动：任务停留在 incoming 队列
+        wheel.schedule(() -> ran.set(true), 0).cancel();
+        wheel.start();
+        try {
+            Thread.sleep(100);
+            assertFalse(ran.get());
+            assertEquals(1L, wheel.stats().get("cancelled"));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void failingTask_shouldNotStopTheWheel() throws Exception {
+        HashedTimerWheel wheel = start();
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            wheel.schedule(() -> {
+                throw new IllegalStateException("boom");
+            }, 10);
+            wheel.schedule(fired::countDown, 50);
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertEquals(2L, wheel.stats().get("expired"));
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void wheelSize_shouldRoundUpToPowerOfTwo() {
+        assertEquals(8, new HashedTimerWheel("test-wheel", TICK_MS, 5).stats().get("wheelSize"));
+        assertEquals(4, new HashedTimerWheel("test-wheel", TICK_MS, 4).stats().get("wheelSize"));
+    }
+
+    private static HashedTimerWheel start() {
+        HashedTimerWheel wheel = new HashedTimerWheel("test-wheel", TICK_MS, WHEEL_SIZE);
+        wheel.start();
+        return wheel;
+    }
+}